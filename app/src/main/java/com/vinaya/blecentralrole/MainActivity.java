@@ -1,23 +1,35 @@
 package com.vinaya.blecentralrole;
 
 import android.bluetooth.BluetoothAdapter;
+import android.content.ComponentName;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
-import android.widget.EditText;
-import android.widget.ListView;
+import android.widget.TextView;
 import android.widget.Toast;
 
-import com.vinaya.blecentralrole.logic.Central;
+import com.vinaya.blecentralrole.logic.FrameExecutor;
+import com.vinaya.blecentralrole.logic.LinkParameters;
+import com.vinaya.blecentralrole.logic.Logger;
+import com.vinaya.blecentralrole.logic.ScanDiff;
+import com.vinaya.blecentralrole.logic.gatt.Frame;
+import com.vinaya.blecentralrole.logic.metrics.MetricsSnapshot;
 import com.vinaya.blecentralrole.model.Peripheral;
-import com.vinaya.blecentralrole.model.UUIDRepository;
+import com.vinaya.blecentralrole.service.CentralService;
+import com.vinaya.blecentralrole.viewadapter.MessageLogAdapter;
 import com.vinaya.blecentralrole.viewadapter.PeripheralListAdapter;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.List;
 
 //TODO: add logger
@@ -28,23 +40,36 @@ import java.util.List;
  *
  * The basic function of this Bluetooth Low Energy(BLE) Central Role application is to
  * allow user connect to peripherals with specific Service,
- * and perform the tasks implemented in the class {@link Central}
+ * and perform the tasks implemented in the class {@link com.vinaya.blecentralrole.logic.Central}.
+ *
+ * The Central runs in the {@link CentralService}, which outlives this Activity:
+ * it only subscribes to the service while it is visible.
  */
 public class MainActivity extends AppCompatActivity {
 	private final static int REQUEST_ENABLE_BT = 1;
+	private final static long METRICS_REFRESH_INTERVAL = 1000;    //in millisecond
+	private final static Charset UTF8 = Charset.forName("UTF-8");
 
 	//--------------------------------------------------
 	//UI components
 
-	private ListView listViewPeripherals;
+	private RecyclerView recyclerViewPeripherals;
 	private PeripheralListAdapter listAdapter;
 	private Button buttonDisconnect;
-	private EditText editText;
+	private View layoutMessages;
+	private RecyclerView recyclerViewMessages;
+	private MessageLogAdapter messageLogAdapter;
+	private Button buttonFollow;
+	private boolean isFollowingTail = true;     //scroll to every new message, until paused
+	private boolean isMessageFlushPending;
+	private FrameExecutor frameExecutor;    //the events of the service are applied once per frame
+	private TextView textMetrics;    //debug overlay, null if disabled
+	private MetricsSnapshot lastMetrics;
 
 
 	//--------------------------------------------------
-	//Controller -- the main logic
-	private Central central;
+	//Controller -- the main logic, running in the service
+	private CentralService service;
 
 
 	//--------------------------------------------------
@@ -59,31 +84,58 @@ public class MainActivity extends AppCompatActivity {
 		this.listAdapter = new PeripheralListAdapter(MainActivity.this);
 		listAdapter.setOnItemClickListener(onPeripheralClickListener);
 		listAdapter.setDisableFilter(disablePeripheralFilter);
-		listAdapter.setOnRssiAlertListener(getResources().getInteger(R.integer.rssi_threshold), rssiAlertListener);
 
-		this.listViewPeripherals = (ListView) findViewById(R.id.listViewPeripherals);
-		listViewPeripherals.setAdapter(listAdapter);
+		this.recyclerViewPeripherals = (RecyclerView) findViewById(R.id.recyclerViewPeripherals);
+		recyclerViewPeripherals.setLayoutManager(new LinearLayoutManager(this));
+		recyclerViewPeripherals.setAdapter(listAdapter);
 
 		this.buttonDisconnect = (Button) findViewById(R.id.buttonDisconnect);
 		buttonDisconnect.setVisibility(View.GONE);
 		buttonDisconnect.setOnClickListener(new View.OnClickListener() {
 			@Override
 			public void onClick(View v) {
-				//feature 6: Implement a “disconnect” button: when it is pressed the Central should disconnect from the Peripheral.
-				if (central != null) {
-					central.disconnect();
+				//feature 6: Implement a “disconnect” button: when it is pressed the Central should disconnect from the Peripherals.
+				if (service != null) {
+					service.disconnect();
 				}
 			}
 		});
 
-		this.editText = (EditText) findViewById(R.id.editText);
-		editText.setVisibility(View.GONE);
+		//the messages received, the latest only
+		this.messageLogAdapter = new MessageLogAdapter(this, getResources().getInteger(R.integer.message_log_capacity));
+		this.recyclerViewMessages = (RecyclerView) findViewById(R.id.recyclerViewMessages);
+		recyclerViewMessages.setLayoutManager(new LinearLayoutManager(this));
+		recyclerViewMessages.setAdapter(messageLogAdapter);
+		this.layoutMessages = findViewById(R.id.layoutMessages);
+		layoutMessages.setVisibility(View.GONE);
+
+		this.buttonFollow = (Button) findViewById(R.id.buttonFollow);
+		buttonFollow.setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				//paused, the messages are still kept but the list stays where it is
+				isFollowingTail = !isFollowingTail;
+				buttonFollow.setText(isFollowingTail ? R.string.btn_pause : R.string.btn_follow);
+				if (isFollowingTail) scrollToTail();
+			}
+		});
+
+		findViewById(R.id.buttonExport).setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				final Intent intent = new Intent(Intent.ACTION_SEND);
+				intent.setType("text/plain");
+				intent.putExtra(Intent.EXTRA_TEXT, messageLogAdapter.export());
+				startActivity(Intent.createChooser(intent, getString(R.string.btn_export)));
+			}
+		});
 
-		//init the models
-		UUIDRepository repository = new UUIDRepository(getResources());
+		this.frameExecutor = new FrameExecutor();
 
-		//init the controller
-		this.central = new Central(this, repository);
+		if (getResources().getBoolean(R.bool.debug_overlay)) {
+			this.textMetrics = (TextView) findViewById(R.id.textMetrics);
+			textMetrics.setVisibility(View.VISIBLE);
+		}
 	}
 
 
@@ -92,29 +144,55 @@ public class MainActivity extends AppCompatActivity {
 		super.onStart();
 		displayLoadingScreen();
 
-		final long scanPeriod = getResources().getInteger(R.integer.scan_period);
-		if (false == central.start()) {
-			askToOpenBluetooth();
-		}
-		else {
-			central.scan(onBtScanListener, scanPeriod);
-		}
+		bindService(new Intent(this, CentralService.class), serviceConnection, BIND_AUTO_CREATE);
+		if (textMetrics != null) textMetrics.postDelayed(refreshMetrics, METRICS_REFRESH_INTERVAL);
 	}
 
 
 	@Override
 	protected void onStop() {
-		central.stop();
+		if (textMetrics != null) textMetrics.removeCallbacks(refreshMetrics);
+		if (service != null) {
+			service.unsubscribe(observer);
+			//leaving the application for good, nothing to keep running for
+			if (isFinishing() && service.getConnectionCount() == 0) service.shutdown();
+			this.service = null;
+		}
+		unbindService(serviceConnection);
 		super.onStop();
 	}
 
 	//--------------------------------------------------
-	//listener callbacks
-	final Central.ScanListener onBtScanListener = new Central.ScanListener() {
+	//connection to the service
+	final ServiceConnection serviceConnection = new ServiceConnection() {
 		@Override
-		public void onScanned(List<Peripheral> list) {
+		public void onServiceConnected(ComponentName name, IBinder binder) {
+			service = ((CentralService.LocalBinder) binder).getService();
+
+			//the list so far, then the changes
+			final List<Peripheral> list = service.subscribe(observer, frameExecutor);
 			listAdapter.setPeripheralList(list);
-			listAdapter.notifyDataSetChanged();
+			if (false == list.isEmpty()) cancelLoadingScreen();
+			showConnected(service.getConnectionCount() > 0);
+
+			if (false == service.start()) {
+				askToOpenBluetooth();
+			}
+		}
+
+		@Override
+		public void onServiceDisconnected(ComponentName name) {
+			service = null;
+		}
+	};
+
+	//--------------------------------------------------
+	//events of the service, on the main thread
+	final CentralService.Observer observer = new CentralService.Observer() {
+		@Override
+		public void onScanned(ScanDiff diff) {
+			listAdapter.applyDiff(diff);
+			if (service != null) service.getMetrics().onDisplayed(diff);
 
 			cancelLoadingScreen();
 		}
@@ -128,81 +206,92 @@ public class MainActivity extends AppCompatActivity {
 				}
 			});
 		}
-	};
 
-	final PeripheralListAdapter.RssiAlertListener rssiAlertListener = new PeripheralListAdapter.RssiAlertListener() {
 		@Override
-		public void onAlertRssi(Peripheral peripheral) {
-			runOnUiThread(new Runnable() {
-				@Override
-				public void run() {
-					Toast.makeText(MainActivity.this, R.string.alert_rssi_too_low, Toast.LENGTH_SHORT);
-				}
-			});
+		public void onRssiAlert(Peripheral peripheral, int rssi, boolean isLow) {
+			if (false == isLow) return;
+			Toast.makeText(MainActivity.this, R.string.alert_rssi_too_low, Toast.LENGTH_SHORT).show();
 		}
-	};
 
-	final PeripheralListAdapter.OnItemClickListener onPeripheralClickListener = new PeripheralListAdapter.OnItemClickListener() {
 		@Override
-		public void onClick(Peripheral peripheral) {
-			central.connect(peripheral, connectListener);
+		public void onConnected(Peripheral peripheral) {
+			Log.i("MainActivity", "connected");
+			listAdapter.notifyPeripheralChanged(peripheral);
+			showConnected(true);
 		}
-	};
 
-
-	final PeripheralListAdapter.DisableFilter disablePeripheralFilter = new PeripheralListAdapter.DisableFilter() {
 		@Override
-		public boolean isDisable(Peripheral peripheral) {
-			return !central.canConnect(peripheral);
+		public void onDisconnected(Peripheral peripheral, boolean manually) {
+			if (!manually) {
+				showAlert(R.string.disconnect, null);
+			}
+
+			listAdapter.notifyPeripheralChanged(peripheral);
+			if (service != null && service.getConnectionCount() > 0) return;
+			showConnected(false);
 		}
-	};
 
+		@Override
+		public void onReceived(Peripheral peripheral, CharSequence data) {
+			if (Logger.TRACE_HOT_PATHS) Log.i("MainActivity", data.toString());
+			appendMessage(peripheral.getName() + ": " + data);
+		}
 
-	final Central.ConnectListener connectListener = new Central.ConnectListener() {
 		@Override
-		public void onConnected(Peripheral peripheral) {
-			Log.i("MainActivity", "connected");
-			runOnUiThread(new Runnable() {
-				@Override
-				public void run() {
-					buttonDisconnect.setVisibility(View.VISIBLE);
-					editText.setVisibility(View.VISIBLE);
-				}
-			});
+		public void onConnectFail(Peripheral peripheral) {
+			Log.i("MainActivity", "connection fail: " + peripheral.getAddress());
 		}
 
 		@Override
-		public void onDisconnected(Peripheral peripheral, boolean manually) {
+		public void onLinkChanged(Peripheral peripheral, LinkParameters parameters) {
+			Log.i("MainActivity", "link of " + peripheral.getAddress() + ": " + parameters);
+		}
 
-			if (!manually) {
-				showAlert(R.string.disconnect, null);
-			}
+		@Override
+		public void onFrame(Peripheral peripheral, int sequence, int type, ByteBuffer payload) {
+			final CharSequence data = (type == Frame.TYPE_TEXT)
+				? UTF8.decode(payload)
+				: payload.remaining() + " bytes of type " + type;
+			if (Logger.TRACE_HOT_PATHS) Log.i("MainActivity", sequence + ": " + data);
+			appendMessage(peripheral.getName() + ": " + data);
+		}
+	};
 
-			runOnUiThread(new Runnable() {
-				@Override
-				public void run() {
-					buttonDisconnect.setVisibility(View.GONE);
-					editText.setText("");
-					editText.setVisibility(View.GONE);
-				}
-			});
+	//the messages of a frame are shown at once, after the last of them
+	final Runnable flushMessages = new Runnable() {
+		@Override
+		public void run() {
+			isMessageFlushPending = false;
+			messageLogAdapter.notifyAppended();
+			if (isFollowingTail) scrollToTail();
+		}
+	};
 
+	//the rates are since the previous refresh
+	final Runnable refreshMetrics = new Runnable() {
+		@Override
+		public void run() {
+			if (service != null) {
+				final MetricsSnapshot metrics = service.getMetrics().snapshot();
+				textMetrics.setText(metrics.format(lastMetrics));
+				lastMetrics = metrics;
+			}
+			textMetrics.postDelayed(this, METRICS_REFRESH_INTERVAL);
 		}
+	};
 
+	final PeripheralListAdapter.OnItemClickListener onPeripheralClickListener = new PeripheralListAdapter.OnItemClickListener() {
 		@Override
-		public void onReceived(Peripheral peripheral, final String data) {
-			Log.i("MainActivity", data);
-			runOnUiThread(new Runnable() {
-				@Override
-				public void run() {
-					editText.append(data + "\n");
-				}
-			});
+		public void onClick(Peripheral peripheral) {
+			if (service != null) service.connect(peripheral);
 		}
+	};
+
 
+	final PeripheralListAdapter.DisableFilter disablePeripheralFilter = new PeripheralListAdapter.DisableFilter() {
 		@Override
-		public void onConnectFail() {
-			Log.i("MainActivity", "connection fail");
+		public boolean isDisable(Peripheral peripheral) {
+			return service == null || !service.canConnect(peripheral);
 		}
 	};
 
@@ -216,6 +305,32 @@ public class MainActivity extends AppCompatActivity {
 		//TODO: to be implmented
 	}
 
+	private void showConnected(boolean isConnected) {
+		if (isConnected) {
+			buttonDisconnect.setVisibility(View.VISIBLE);
+			layoutMessages.setVisibility(View.VISIBLE);
+		} else {
+			buttonDisconnect.setVisibility(View.GONE);
+			messageLogAdapter.clear();
+			layoutMessages.setVisibility(View.GONE);
+		}
+	}
+
+	/**
+	 * called on the frame executor, the flush is queued behind the messages of the same frame
+	 */
+	private void appendMessage(CharSequence message) {
+		messageLogAdapter.append(message);
+		if (isMessageFlushPending) return;
+		this.isMessageFlushPending = true;
+		frameExecutor.execute(flushMessages);
+	}
+
+	private void scrollToTail() {
+		final int count = messageLogAdapter.getItemCount();
+		if (count > 0) recyclerViewMessages.scrollToPosition(count - 1);
+	}
+
 	private void showAlert(final int strId, final DialogInterface.OnClickListener listener) {
 		runOnUiThread(new Runnable() {
 			@Override
@@ -235,4 +350,3 @@ public class MainActivity extends AppCompatActivity {
 	}
 
 }
-
@@ -0,0 +1,20 @@
+package com.vinaya.blecentralrole.logic;
+
+import android.util.Log;
+
+/**
+ * Logger of the logic classes writing to android.util.Log
+ */
+public class AndroidLogger extends Logger {
+
+	@Override
+	protected boolean isEnabled(String tag, int level) {
+		return Log.isLoggable(tag, level);
+	}
+
+	@Override
+	protected void write(int level, String tag, String message, Throwable throwable) {
+		if (throwable != null) message = message + '\n' + Log.getStackTraceString(throwable);
+		Log.println(level, tag, message);
+	}
+}
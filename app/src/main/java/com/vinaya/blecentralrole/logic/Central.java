@@ -1,134 +1,576 @@
 package com.vinaya.blecentralrole.logic;
 
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
-import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
-import android.bluetooth.BluetoothProfile;
 import android.content.Context;
 import android.util.Log;
 
 import com.vinaya.blecentralrole.R;
+import com.vinaya.blecentralrole.logic.capture.CaptureLog;
+import com.vinaya.blecentralrole.logic.gatt.AndroidGattLink;
+import com.vinaya.blecentralrole.logic.gatt.ExecutorConnector;
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+import com.vinaya.blecentralrole.logic.metrics.CentralMetrics;
 import com.vinaya.blecentralrole.logic.scanner.BLEScanner;
 import com.vinaya.blecentralrole.logic.scanner.BLEScannerV21;
+import com.vinaya.blecentralrole.logic.scanner.ExecutorScanner;
+import com.vinaya.blecentralrole.logic.scanner.ScanConfig;
+import com.vinaya.blecentralrole.logic.sim.TraceRecorder;
+import com.vinaya.blecentralrole.logic.sim.TraceReplayer;
+import com.vinaya.blecentralrole.logic.telemetry.TelemetryCollector;
+import com.vinaya.blecentralrole.logic.telemetry.TelemetryDecoder;
+import com.vinaya.blecentralrole.logic.telemetry.TelemetryListener;
 import com.vinaya.blecentralrole.model.Peripheral;
 import com.vinaya.blecentralrole.model.UUIDRepository;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Executor;
 
 /**
  * Main logic of the whole application.
+ *
+ * The state is owned by one thread, the {@link EventLoop}: the callbacks of Android and the calls
+ * of the application are handed off to it, and the listeners are called on it, so that nothing is locked.
+ * The setters are handed off to it as well, set them before the scan or the connect they are for.
+ * The scan results leave it as immutable snapshots.
  */
 public class Central {
 	private final static String TAG = "Central";    //for logging use
 
+	private final static long DEFAULT_DISPATCH_WINDOW = 150;   //in millisecond
+	private final static int DEFAULT_DISPATCH_BATCH_SIZE = 64;
+	private final static int DEFAULT_MAX_CONNECTIONS = 4;
+	private final static long DEFAULT_PERIPHERAL_TTL = 60000;  //in millisecond
+	private final static long STORE_SAVE_DELAY = 2000;         //in millisecond, coalesces the writes
+
+	//run the listener on the thread reporting the change
+	private final static Executor DIRECT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	static {
+		Logger.setLogger(new AndroidLogger());
+	}
+
 	//--------------------------------------------------
 	//data members
 	private Context context;
 	private UUIDRepository uuidRepository;
-	private AtomicInteger recieveCounter;
 
-	private List<Peripheral> peripheralList;
+	private PeripheralRegistry peripheralRegistry;
 	private BluetoothAdapter bluetoothAdapter;
 
-	private BLEScanner.ScanTask scanTask;
-	private Timer scanTimer;
-
-	private BluetoothGatt gatt;
-	private boolean isManuallyDisconnect = false;
+	private Scheduler scheduler;
+	private Executor loop;    //the thread owning the state, the callbacks of the scanner and of the links are handed off to it
+	private BLEScanner scanner;
+	private ScanScheduler scanScheduler;
+	private volatile boolean isScanning;    //set by the callers, so that it holds as soon as scan or stop returns
+	private ScanConfig scanConfig = ScanConfig.DEFAULT;
+	private long maxScanIdle = ScanScheduler.DEFAULT_MAX_IDLE;
+	private long peripheralTtl = DEFAULT_PERIPHERAL_TTL;
+	private Scheduler.Task evictionTask;
+
+	//smoothing only, until an alert is set
+	private RssiProcessor rssiProcessor = new RssiProcessor(Integer.MIN_VALUE, null);
+	private ScanDispatcher scanDispatcher;
+	private long dispatchWindow = DEFAULT_DISPATCH_WINDOW;
+	private int dispatchBatchSize = DEFAULT_DISPATCH_BATCH_SIZE;
+	private TelemetryCollector telemetryCollector;
+
+	private GattLink.Connector gattConnector;
+	private volatile ConnectionManager connectionManager;    //read by getConnectionCount from any thread
+	private ReconnectPolicy reconnectPolicy = new BackoffReconnectPolicy();
+	private CentralMetrics metrics;
+	private ConnectionMetrics connectionMetrics;
+	private CaptureLog captureLog;
+	private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+	private PeripheralStore peripheralStore;
+	private Executor storeExecutor;    //where the store reads and writes its file, off the loop
+	private long[] storedMacs;         //of the peripherals in the store, a superset once it is read, null before
+	private int storedCount;
+	private Scheduler.Task saveTask;
+
+	private TraceRecorder traceRecorder;
 
 	//--------------------------------------------------
 	//listener class definition
 
-	public interface ScanListener {
-		void onScanned(List<Peripheral> peripheralList);
-
-		void onFailed(int errorCode);
+	public interface ScanListener extends com.vinaya.blecentralrole.logic.ScanListener {
 	}
 
-	public interface ConnectListener {
-		void onConnected(Peripheral peripheral);
-
-		/**
-		 * react when
-		 *
-		 * @param peripheral connected peripheral
-		 * @param isManually is the disconnect triggered by us manually?
-		 */
-		void onDisconnected(Peripheral peripheral, boolean isManually);
+	public interface ConnectListener extends com.vinaya.blecentralrole.logic.ConnectListener {
+	}
 
+	/**
+	 * feature 10: alert when the RSSI of a connected peripheral goes low
+	 */
+	public interface RssiAlertListener {
 		/**
-		 * react on what received from the subscribe characterics
+		 * called on the event loop
 		 *
-		 * @param peripheral connected peripheral
-		 * @param data       received data, assumed to be string
+		 * @param rssi  the smoothed RSSI
+		 * @param isLow true when it went below the threshold, false when it has recovered
 		 */
-		void onReceived(Peripheral peripheral, String data);
-
-		void onConnectFail();
+		void onRssiAlert(Peripheral peripheral, int rssi, boolean isLow);
 	}
 
 
 	//--------------------------------------------------
 	//class methods
-	public Central(Context context, UUIDRepository uuidRepository) {
+	/**
+	 * run the timed work and the callbacks of the scanner and of the connections on the event loop.
+	 * The loop belongs to the caller, which quits it after {@link #stop()}
+	 */
+	public Central(Context context, UUIDRepository uuidRepository, EventLoop loop) {
+		this(context, uuidRepository, null, null, loop, loop);
+	}
+
+	/**
+	 * everything runs on the thread calling, e.g. driven by a fake scheduler in the tests
+	 *
+	 * @param scanner       the scanner to use, or null to use the one of the running Android version
+	 * @param gattConnector how to connect to the peripherals, or null to use the BluetoothAdapter
+	 * @param scheduler     source of time and delayed execution
+	 */
+	public Central(Context context, UUIDRepository uuidRepository, BLEScanner scanner,
+	               GattLink.Connector gattConnector, Scheduler scheduler) {
+		this(context, uuidRepository, scanner, gattConnector, scheduler, DIRECT_EXECUTOR);
+	}
+
+	/**
+	 * @param loop the single thread owning the state: the callbacks of the scanner, of the links
+	 *             and the calls of the scans, of the connects and of the setters are handed off to it.
+	 *             The scheduler must run its tasks on it as well
+	 */
+	public Central(Context context, UUIDRepository uuidRepository, BLEScanner scanner,
+	               GattLink.Connector gattConnector, Scheduler scheduler, Executor loop) {
 		this.context = context;
 		this.uuidRepository = uuidRepository;
-		this.peripheralList = Collections.synchronizedList(new ArrayList());
-		this.recieveCounter = new AtomicInteger(0);
+		this.scanner = scanner;
+		this.gattConnector = gattConnector;
+		this.scheduler = scheduler;
+		this.loop = loop;
+		this.peripheralRegistry = new PeripheralRegistry();
+		this.metrics = new CentralMetrics(scheduler);
+		this.connectionMetrics = metrics;
+	}
+
+
+
+
+	/**
+	 * how often the scan result is delivered to the {@link ScanListener}
+	 *
+	 * @param windowMillis the changes within this period are delivered at once, in millisecond
+	 * @param batchSize    deliver before the end of window if this number of peripherals have changed
+	 */
+	public void setScanDispatch(final long windowMillis, final int batchSize) {
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				Central.this.dispatchWindow = windowMillis;
+				Central.this.dispatchBatchSize = batchSize;
+			}
+		});
+	}
+
+	/**
+	 * @param scanConfig filters and settings of the scans started afterwards
+	 */
+	public void setScanConfig(final ScanConfig scanConfig) {
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				Central.this.scanConfig = scanConfig;
+			}
+		});
+	}
+
+	/**
+	 * @param maxScanIdle idle time between the scan windows once nothing new is found, in millisecond.
+	 *                    0 to scan continuously
+	 */
+	public void setMaxScanIdle(final long maxScanIdle) {
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				Central.this.maxScanIdle = maxScanIdle;
+			}
+		});
+	}
+
+	/**
+	 * @param peripheralTtl the peripherals not seen for this period are removed from the list, unless connected,
+	 *                      in millisecond. 0 to keep them until the scan is stopped
+	 */
+	public void setPeripheralTtl(final long peripheralTtl) {
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				Central.this.peripheralTtl = peripheralTtl;
+			}
+		});
+	}
+
+	/**
+	 * feature 10: alert when the smoothed RSSI of a connected peripheral goes below the threshold.
+	 * Set it before scanning.
+	 *
+	 * @param threshold     in dBm
+	 * @param hysteresis    the RSSI has to be back above threshold plus this before the next alert, in dBm
+	 * @param alertInterval the least time between two alerts of the same peripheral, in millisecond
+	 */
+	public void setRssiAlert(int threshold, int hysteresis, long alertInterval, final RssiAlertListener listener) {
+		final RssiProcessor rssiProcessor = new RssiProcessor(threshold, hysteresis, RssiProcessor.DEFAULT_ALPHA,
+			RssiProcessor.DEFAULT_WINDOW, alertInterval, new RssiProcessor.AlertListener() {
+			@Override
+			public void onRssiAlert(long mac, int rssi, boolean isLow) {
+				final Peripheral peripheral = peripheralRegistry.get(mac);
+				if (peripheral != null && peripheral.isConnected()) listener.onRssiAlert(peripheral, rssi, isLow);
+			}
+		});
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				Central.this.rssiProcessor = rssiProcessor;
+			}
+		});
+	}
+
+	/**
+	 * feature 7 across the runs: the connected peripherals are remembered in the store,
+	 * listed as soon as the scan starts and the latest one can be connected by {@link #connectLast(ConnectListener)}.
+	 * Set it before scanning, null not to remember them.
+	 *
+	 * @param executor where the file is read and written, so that a slow flash does not hold up the loop.
+	 *                 It must run the tasks one by one in order, e.g. a single thread executor,
+	 *                 and outlive the {@link #stop()}, which hands the last write to it
+	 */
+	public void setPeripheralStore(final PeripheralStore peripheralStore, final Executor executor) {
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				Central.this.peripheralStore = peripheralStore;
+				Central.this.storeExecutor = executor;
+				Central.this.storedMacs = null;
+				Central.this.storedCount = 0;
+			}
+		});
 	}
 
+	/**
+	 * @param maxConnections number of peripherals connected at the same time, set before the first connect
+	 */
+	public void setMaxConnections(final int maxConnections) {
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				Central.this.maxConnections = maxConnections;
+			}
+		});
+	}
+
+	/**
+	 * @param reconnectPolicy when to reconnect after the link is lost, for the connections opened afterwards
+	 */
+	public void setReconnectPolicy(final ReconnectPolicy reconnectPolicy) {
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				Central.this.reconnectPolicy = reconnectPolicy;
+			}
+		});
+	}
 
+	/**
+	 * @param connectionMetrics hooks on the connection attempts, for the connections opened afterwards.
+	 *                          They replace the connection side of {@link #getMetrics()}
+	 */
+	public void setConnectionMetrics(final ConnectionMetrics connectionMetrics) {
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				Central.this.connectionMetrics = connectionMetrics;
+				if (connectionManager != null) connectionManager.setMetrics(connectionMetrics);
+			}
+		});
+	}
 
+	/**
+	 * @param captureLog where the connections opened afterwards record what they receive and write,
+	 *                   null not to. It is not closed by the Central
+	 */
+	public void setCaptureLog(final CaptureLog captureLog) {
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				Central.this.captureLog = captureLog;
+				if (connectionManager != null) connectionManager.setCaptureLog(captureLog);
+			}
+		});
+	}
 
 	/**
-	 * feature 1: scan for BLE peripherals around you
+	 * @return the counters of the scan and of the connections, always on.
+	 * Report the display of the scan result by {@link CentralMetrics#onDisplayed(ScanDiff)}
+	 */
+	public CentralMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * record what the scanner and the links report, to replay it by {@link TraceReplayer}.
+	 * Set it before scanning and connecting, null not to record
+	 */
+	public void setTraceRecorder(final TraceRecorder traceRecorder) {
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				Central.this.traceRecorder = traceRecorder;
+			}
+		});
+	}
+
+	/**
+	 * feature 1: scan for BLE peripherals around you.
+	 * The listener is called on the event loop.
 	 *
 	 * @param listener   what to do after scanned or failed
-	 * @param scanPeriod preiod to wait until next rescan, in millisecond
+	 * @param scanPeriod length of a scan window, and the shortest idle time until the next one, in millisecond
 	 */
 	public void scan(final ScanListener listener, final long scanPeriod) {
+		scan(listener, scanPeriod, DIRECT_EXECUTOR);
+	}
+
+	/**
+	 * feature 1: scan for BLE peripherals around you, in windows of the scan period.
+	 * The idle time between the windows grows up to {@link #setMaxScanIdle(long)} while nothing new is found.
+	 *
+	 * @param listener   what to do after scanned or failed
+	 * @param scanPeriod length of a scan window, and the shortest idle time until the next one, in millisecond
+	 * @param executor   where to call the listener, e.g. {@link LooperExecutor} of the main thread
+	 */
+	public void scan(final ScanListener listener, final long scanPeriod, final Executor executor) {
+		this.isScanning = true;
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				scanInLoop(listener, scanPeriod, executor);
+			}
+		});
+	}
+
+	private void scanInLoop(final ScanListener listener, long scanPeriod, final Executor executor) {
 		stopScan();
 
+		final ScanDispatcher dispatcher = new ScanDispatcher(peripheralRegistry, scheduler, executor,
+			dispatchWindow, dispatchBatchSize, listener);
+		this.scanDispatcher = dispatcher;
+
 		//if bluetoothAdapter is null, bluetooth seems to be not supported
 
-		//TODO: better inject a scanner instead of contruct here
 		//TODO: implement a BLEScanner support android API < 21
-		final BLEScanner scanner = new BLEScannerV21(bluetoothAdapter);
-		this.scanTask = scanner.asyncScan(new BLEScanner.BLEScanListener() {
+		final RssiProcessor rssiProcessor = this.rssiProcessor;
+		final BLEScanner scanner = (this.scanner != null) ? this.scanner : new BLEScannerV21(bluetoothAdapter);
+		final ScanScheduler scanScheduler = new ScanScheduler(handOff(record(scanner)), scanConfig, scheduler,
+			scanPeriod, scanPeriod, maxScanIdle);
+		this.scanScheduler = scanScheduler;
+		scanScheduler.start(new BLEScanner.BLEScanListener() {
 			@Override
 			public void onDiscovered(Peripheral peripheral) {
 				if (peripheral == null) return;
-
-				int index = peripheralList.indexOf(peripheral);
-				if (index == -1) {
-					//avoid duplication
-					peripheralList.add(peripheral);
+				final long now = scheduler.now();
+				peripheral.setLastSeen(now);
+
+				final long mac = peripheral.getMacAddress();
+				final int rssi = rssiProcessor.add(mac, peripheral.getRssi(), now);
+				peripheral.setSmoothedRssi(rssi, rssiProcessor.isLow(mac));
+				if (isStored(mac)) updateStore(peripheral);
+
+				//add the new peripheral, or update the existing one with the same address
+				final boolean isNew = peripheralRegistry.upsert(peripheral);
+				metrics.onAdvertisement(isNew);
+				if (isNew) {
+					scanScheduler.onNewPeripheral();
+					dispatcher.onAdded(peripheral);
 				} else {
-					//updated the existing peripherals
-					peripheralList.set(index, peripheral);
+					dispatcher.onUpdated(peripheral);
 				}
+			}
 
-				listener.onScanned(peripheralList);
+			@Override
+			public void onFailed(final int errorCode) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						listener.onFailed(errorCode);
+					}
+				});
 			}
+		});
 
+		if (peripheralTtl > 0) scheduleEviction(dispatcher, rssiProcessor);
+		if (peripheralStore != null) restore(dispatcher, peripheralStore, storeExecutor);
+	}
+
+	/**
+	 * passive mode: collect the sensor data the peripherals advertise, without listing nor connecting them,
+	 * so that there is no limit on the number of sensors. Stops the scan of {@link #scan(ScanListener, long, Executor)},
+	 * only one of them runs at a time. The readings are delivered like the scan result, see {@link #setScanDispatch(long, int)}
+	 *
+	 * @param decoder    finds the frames in the advertisements
+	 * @param listener   what to do with the new frames, the repeats are dropped
+	 * @param scanPeriod length of a scan window, and the shortest idle time until the next one, in millisecond
+	 * @param executor   where to call the listener
+	 */
+	public void collect(final TelemetryDecoder decoder, final TelemetryListener listener, final long scanPeriod,
+	                    final Executor executor) {
+		this.isScanning = true;
+		loop.execute(new Runnable() {
 			@Override
-			public void onFailed(int errorCode) {
-				listener.onFailed(errorCode);
+			public void run() {
+				collectInLoop(decoder, listener, scanPeriod, executor);
 			}
 		});
+	}
+
+	private void collectInLoop(TelemetryDecoder decoder, final TelemetryListener listener, long scanPeriod,
+	                           final Executor executor) {
+		stopScan();
 
+		final TelemetryCollector collector = new TelemetryCollector(decoder, scheduler, executor,
+			dispatchWindow, dispatchBatchSize, TelemetryCollector.DEFAULT_MAX_DEVICES, listener);
+		this.telemetryCollector = collector;
+
+		final BLEScanner scanner = (this.scanner != null) ? this.scanner : new BLEScannerV21(bluetoothAdapter);
+		final ScanScheduler scanScheduler = new ScanScheduler(handOff(record(scanner)), scanConfig, scheduler,
+			scanPeriod, scanPeriod, maxScanIdle);
+		this.scanScheduler = scanScheduler;
+		scanScheduler.start(new BLEScanner.BLEScanListener() {
+			@Override
+			public void onDiscovered(Peripheral peripheral) {
+				if (peripheral == null) return;
+
+				//a new frame keeps the scan from idling, as a new peripheral does
+				final boolean isNew = collector.onAdvertisement(peripheral);
+				metrics.onAdvertisement(isNew);
+				if (isNew) scanScheduler.onNewPeripheral();
+			}
+
+			@Override
+			public void onFailed(final int errorCode) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						listener.onFailed(errorCode);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * list the stored peripherals before their first advertisement, reading the store after the scan has started.
+	 * They are evicted after the TTL like the others if they are not around.
+	 */
+	private void restore(final ScanDispatcher dispatcher, final PeripheralStore peripheralStore, final Executor executor) {
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						final List<Peripheral> peripherals = peripheralStore.getPeripherals();
+						loop.execute(new Runnable() {
+							@Override
+							public void run() {
+								onStoreRead(peripheralStore, peripherals);
+								if (scanDispatcher != dispatcher) return;
+
+								final long now = scheduler.now();
+								for (Peripheral peripheral : peripherals) {
+									peripheral.setLastSeen(now);
+									if (peripheralRegistry.addIfAbsent(peripheral)) dispatcher.onAdded(peripheral);
+								}
+							}
+						});
+					}
+				});
+			}
+		}, 0);
+	}
+
+	/**
+	 * the advertisements of the stored peripherals are handed to the store from now on
+	 */
+	private void onStoreRead(PeripheralStore peripheralStore, List<Peripheral> peripherals) {
+		if (peripheralStore != this.peripheralStore || storedMacs != null) return;
+		this.storedMacs = new long[Math.max(PeripheralStore.DEFAULT_MAX_ENTRIES, peripherals.size())];
+		this.storedCount = 0;
+		for (Peripheral peripheral : peripherals) {
+			addStored(peripheral.getMacAddress());
+		}
+	}
+
+	/**
+	 * @return true if the peripheral may be in the store, false if it is not or the store has not been read yet
+	 */
+	private boolean isStored(long mac) {
+		for (int i = 0; i < storedCount; i++) {
+			if (storedMacs[i] == mac) return true;
+		}
+		return false;
+	}
+
+	private void addStored(long mac) {
+		if (storedMacs == null || isStored(mac)) return;
+		if (storedCount == storedMacs.length) storedMacs = Arrays.copyOf(storedMacs, storedCount * 2);
+		storedMacs[storedCount++] = mac;
+	}
+
+	/**
+	 * refresh the stored peripheral from its advertisement, off the loop
+	 */
+	private void updateStore(final Peripheral peripheral) {
+		final PeripheralStore peripheralStore = this.peripheralStore;
+		storeExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				peripheralStore.update(peripheral);
+			}
+		});
+	}
+
+	/**
+	 * sweep the stale peripherals a few times per TTL, so that one lives at most 1.25 TTL after its last advertisement
+	 */
+	private void scheduleEviction(final ScanDispatcher dispatcher, final RssiProcessor rssiProcessor) {
+		final long ttl = peripheralTtl;
+		this.evictionTask = scheduler.schedule(new Runnable() {
+			private final List<Peripheral> evicted = new ArrayList<>();
+
+			@Override
+			public void run() {
+				if (scanDispatcher != dispatcher) return;
+
+				peripheralRegistry.evictSeenBefore(scheduler.now() - ttl, evicted);
+				for (int i = 0; i < evicted.size(); i++) {
+					rssiProcessor.remove(evicted.get(i).getMacAddress());
+				}
+				dispatcher.onRemoved(evicted);
+				evicted.clear();
+
+				evictionTask = scheduler.schedule(this, Math.max(1, ttl / 4));
+			}
+		}, Math.max(1, ttl / 4));
 	}
 
 	/**
@@ -149,197 +591,287 @@ public class Central {
 		return true;
 	}
 
-	private void refreshPeripheralList(long scanPeriod) {
-		if (this.scanTimer != null) scanTimer.cancel();
-
-		this.scanTimer = new Timer();
-		scanTimer.scheduleAtFixedRate(new TimerTask() {
-			@Override
-			public void run() {
-				//clear the whole peripheral list except the connected one
-				Peripheral connectedPeripheral = null;
-				if (peripheralList == null) return;
-				if (peripheralList.size() == 0) return;
-				for (Peripheral p : peripheralList) {
-					if (p == null) continue;
-					if (p.isConnected()) {
-						connectedPeripheral = p;
-						break;
-					}
-				}
-				peripheralList.clear();
-				peripheralList.add(connectedPeripheral);
-			}
-		}, 0, scanPeriod);
-	}
-
 	/**
-	 * check if the peripheral is enabled by the application
+	 * check if the peripheral is enabled by the application, i.e. it advertises the service of a profile
 	 */
 	public boolean canConnect(Peripheral peripheral) {
-		return peripheral.getServiceUUIDs().contains(uuidRepository.getServiceID());
+		return uuidRepository.findProfileOf(peripheral) != null;
 	}
 
 	/**
-	 * feature 4: Allow user to connect to peripherals with Service
+	 * feature 4: Allow user to connect to peripherals with Service.
+	 * The other peripherals stay connected, up to {@link #setMaxConnections(int)} of them.
+	 *
+	 * Safe from any thread, the connection is opened on the loop and the listener is called there.
 	 *
 	 * @param peripheral the BLE Device
 	 * @param listener   callbacks about what to do upon connection/disconnect
 	 */
-	public void connect(final Peripheral peripheral, final ConnectListener listener) {
+	public void connect(Peripheral peripheral, ConnectListener listener) {
+		connect(peripheral, listener, LinkProfile.BALANCED);
+	}
+
+	/**
+	 * connect as {@link #connect(Peripheral, ConnectListener)}, with a link set up for the expected traffic
+	 *
+	 * @param linkProfile e.g. {@link LinkProfile#THROUGHPUT} for bulk transfers, the listener gets what is negotiated
+	 */
+	public void connect(final Peripheral peripheral, final ConnectListener listener, final LinkProfile linkProfile) {
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				connectInLoop(peripheral, listener, linkProfile);
+			}
+		});
+	}
 
+	private void connectInLoop(Peripheral peripheral, ConnectListener listener, LinkProfile linkProfile) {
 		Log.d(TAG, "Trying to connect.");
-		if (bluetoothAdapter == null) {
+		if (gattConnector == null && bluetoothAdapter == null) {
 			Log.e(TAG, "BluetoothAdapter not initialized.");
-			listener.onConnectFail();
+			listener.onConnectFail(peripheral);
 			return;
 		}
 
-		final String address = peripheral.getAddress();
-		final BluetoothDevice device = bluetoothAdapter.getRemoteDevice(address);
-		if (device == null) {
-			Log.e(TAG, "Device not found.  Unable to connect.");
-			listener.onConnectFail();
-			return;
-		}
+		final ConnectListener connectListener = (peripheralStore == null) ?
+			listener : new RememberingListener(listener, peripheralStore, storeExecutor);
 
-		disconnect();
+		if (false == getConnectionManager().connect(peripheral, connectListener, reconnectPolicy, linkProfile)) {
+			Log.e(TAG, "Device not found or too many connections.  Unable to connect.");
+			listener.onConnectFail(peripheral);
+		}
+	}
 
-		// We want to directly connect to the device,
-		// so we are setting the autoConnect parameter to false.
-		this.gatt = device.connectGatt(context, false, new BluetoothGattCallback() {
+	/**
+	 * feature 7 across the runs: connect to the peripheral connected most recently, without waiting for its advertisement.
+	 * The store is read on its executor, and nothing is done if there is none or it is empty.
+	 * Call it after {@link #start()}, along with the scan.
+	 */
+	public void connectLast(final ConnectListener listener) {
+		loop.execute(new Runnable() {
 			@Override
-			public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-				super.onConnectionStateChange(gatt, status, newState);
-
-				switch (newState) {
-					case BluetoothProfile.STATE_CONNECTED:
-						isManuallyDisconnect = false;
-						if (gatt.discoverServices()) {
-							listener.onConnected(peripheral);
-							peripheral.setConnected(true);
-						} else {
-							listener.onConnectFail();
-						}
-						return;
-
-					case BluetoothProfile.STATE_DISCONNECTED:
-						peripheral.setConnected(false);
-
-						listener.onDisconnected(peripheral, isManuallyDisconnect);
-
-						//feature 7: Automatically Reconnect if there is a cause of disconnection other
-						// than the intentional disconnection performed by the user.
-						if (false == isManuallyDisconnect) {
-							Log.i(TAG, "Automatically Reconnect");
-							connect(peripheral, listener);
-						}
-						return;
-				}
+			public void run() {
+				final PeripheralStore peripheralStore = Central.this.peripheralStore;
+				if (peripheralStore == null) return;
+				storeExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						final Peripheral last = peripheralStore.getLastConnected();
+						if (last == null) return;
+						loop.execute(new Runnable() {
+							@Override
+							public void run() {
+								connectInLoop(last, listener, LinkProfile.BALANCED);
+							}
+						});
+					}
+				});
 			}
+		});
+	}
 
-			@Override
-			public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-				super.onServicesDiscovered(gatt, status);
+	/**
+	 * remember the peripheral once connected, then pass the callbacks on
+	 */
+	private class RememberingListener implements ConnectListener {
+		private final ConnectListener listener;
+		private final PeripheralStore peripheralStore;
+		private final Executor executor;
+
+		RememberingListener(ConnectListener listener, PeripheralStore peripheralStore, Executor executor) {
+			this.listener = listener;
+			this.peripheralStore = peripheralStore;
+			this.executor = executor;
+		}
 
-				if (status != BluetoothGatt.GATT_SUCCESS) {
-					Log.w("Central", "onServicesDiscovered received: " + status);
-					return;
+		@Override
+		public void onConnected(final Peripheral peripheral) {
+			final long time = System.currentTimeMillis();
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					peripheralStore.onConnected(peripheral, time);
 				}
+			});
+			if (peripheralStore == Central.this.peripheralStore) addStored(peripheral.getMacAddress());
+			scheduleSave(STORE_SAVE_DELAY);
+			listener.onConnected(peripheral);
+		}
 
+		@Override
+		public void onDisconnected(Peripheral peripheral, boolean isManually) {
+			listener.onDisconnected(peripheral, isManually);
+		}
 
-				BluetoothGattService service = gatt.getService(uuidRepository.getServiceID());
-
-				//feature 5a: Discover TX Characteristic and RX Characteristic
-				BluetoothGattCharacteristic txCharacteristic = service.getCharacteristic(uuidRepository.getTXCharacteristic());
-				if (txCharacteristic == null) return;
-
-				BluetoothGattCharacteristic rxCharacteristic = service.getCharacteristic(uuidRepository.getRXCharacteristic());
-				if (rxCharacteristic == null) return;
+		@Override
+		public void onReceived(Peripheral peripheral, CharSequence data) {
+			listener.onReceived(peripheral, data);
+		}
 
-				//feature 5b: Subscribe to RX Characteristic
-				if (false == subscriptCharacteristic(gatt, rxCharacteristic)) return;
+		@Override
+		public void onConnectFail(Peripheral peripheral) {
+			listener.onConnectFail(peripheral);
+		}
 
-				//feature 5c: Once successfully subscribed to RX Characteristic,
-				// send the following Zero terminated string through TX Characteristic: “Ready”.
-				txCharacteristic.setValue(context.getResources().getString(R.string.str_ready));
-				gatt.writeCharacteristic(txCharacteristic);
+		@Override
+		public void onLinkChanged(Peripheral peripheral, LinkParameters parameters) {
+			listener.onLinkChanged(peripheral, parameters);
+		}
 
-			}
+		@Override
+		public void onFrame(Peripheral peripheral, int sequence, int type, ByteBuffer payload) {
+			listener.onFrame(peripheral, sequence, type, payload);
+		}
+	}
 
+	/**
+	 * write the store after the delay, the changes within the delay are written at once
+	 */
+	private void scheduleSave(long delayMillis) {
+		if (peripheralStore == null || saveTask != null) return;
 
-			/* Callback triggered as a result of a remote characteristic notification.*/
+		final PeripheralStore peripheralStore = this.peripheralStore;
+		final Executor executor = this.storeExecutor;
+		this.saveTask = scheduler.schedule(new Runnable() {
 			@Override
-			public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-				super.onCharacteristicChanged(gatt, characteristic);
-
-				final UUID rxUUID = uuidRepository.getRXCharacteristic();
-				if (false == characteristic.getUuid().equals(rxUUID)) return;
-
-				final String received = new String(characteristic.getValue());
-				Log.d(TAG, "Read Characteristic value = " + received);
-				listener.onReceived(peripheral, received);
-
-				//feature 5e: Reformat every string received and loop it back by sending it via TX Characteristic
-				final String hexStr = String.format("%02X", recieveCounter.incrementAndGet());
-				final String returnValue = hexStr + received + "\0";
-
-				//TODO: refactor this part
-				BluetoothGattService service = gatt.getService(uuidRepository.getServiceID());
-				BluetoothGattCharacteristic txCharacteristic = service.getCharacteristic(uuidRepository.getTXCharacteristic());
-				if (txCharacteristic == null) return;
-				txCharacteristic.setValue(returnValue);
-				gatt.writeCharacteristic(txCharacteristic);
+			public void run() {
+				saveTask = null;
+				save(peripheralStore, executor);
 			}
+		}, delayMillis);
+	}
 
+	/**
+	 * write the store on its executor, after the changes handed to it before
+	 */
+	private static void save(final PeripheralStore peripheralStore, Executor executor) {
+		executor.execute(new Runnable() {
 			@Override
-			public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-				super.onCharacteristicWrite(gatt, characteristic, status);
-				if (false == characteristic.getUuid().equals(uuidRepository.getTXCharacteristic()))
-					return;
-
-				Log.d(TAG, "write tx characteristic: " + new String(characteristic.getValue()) + "status=" + String.valueOf(status));
+			public void run() {
+				try {
+					peripheralStore.save();
+				} catch (IOException e) {
+					Log.w(TAG, "cannot save the peripherals", e);
+				}
 			}
 		});
+	}
+
+	private ConnectionManager getConnectionManager() {
+		if (connectionManager == null) {
+			final GattLink.Connector connector = (gattConnector != null) ?
+				gattConnector : new AndroidGattLink.Connector(context, bluetoothAdapter);
+			this.connectionManager = new ConnectionManager(handOff(record(connector)), scheduler, peripheralRegistry,
+				uuidRepository, context.getResources().getString(R.string.str_ready), maxConnections);
+			connectionManager.setMetrics(connectionMetrics);
+			connectionManager.setCaptureLog(captureLog);
+		}
+		return connectionManager;
+	}
+
+	/**
+	 * called on the loop
+	 */
+	private BLEScanner record(BLEScanner scanner) {
+		return (traceRecorder == null) ? scanner : traceRecorder.wrap(scanner);
+	}
 
+	/**
+	 * called on the loop
+	 */
+	private GattLink.Connector record(GattLink.Connector connector) {
+		return (traceRecorder == null) ? connector : traceRecorder.wrap(connector);
 	}
 
-	private boolean subscriptCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic rxCharacteristic) {
-		boolean subscribedResult = gatt.setCharacteristicNotification(rxCharacteristic, true);
-		if (false == subscribedResult) return false;
+	/**
+	 * the callbacks of the scanner come on the loop, where the scan scheduler drops those after the stop
+	 */
+	private BLEScanner handOff(BLEScanner scanner) {
+		return (loop == DIRECT_EXECUTOR) ? scanner : new ExecutorScanner(scanner, loop);
+	}
 
-		final BluetoothGattDescriptor descriptor = rxCharacteristic.getDescriptor(uuidRepository.getSubscriptUUID());
-		if (descriptor == null) return false;
+	/**
+	 * the callbacks of the links come on the loop
+	 */
+	private GattLink.Connector handOff(GattLink.Connector connector) {
+		return (loop == DIRECT_EXECUTOR) ? connector : new ExecutorConnector(connector, loop);
+	}
 
-		descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-		return gatt.writeDescriptor(descriptor);
+	/**
+	 * @return true from {@link #scan(ScanListener, long, Executor)} or {@link #collect} until stopped, also while idle between the scan windows
+	 */
+	public boolean isScanning() {
+		return isScanning;
 	}
 
+	/**
+	 * @return number of peripherals connected or reconnecting
+	 */
+	public int getConnectionCount() {
+		final ConnectionManager connectionManager = this.connectionManager;
+		return (connectionManager == null) ? 0 : connectionManager.size();
+	}
 
 	private void stopScan() {
-		if (scanTimer != null) {
-			scanTimer.cancel();
+		if (evictionTask != null) {
+			evictionTask.cancel();
+			evictionTask = null;
+		}
+
+		if (scanScheduler != null) {
+			scanScheduler.stop();
+			scanScheduler = null;
 		}
 
-		if (scanTask != null) {
-			scanTask.stop();
-			scanTask = null;
+		if (scanDispatcher != null) {
+			scanDispatcher.cancel();
+			scanDispatcher = null;
+		}
+
+		if (telemetryCollector != null) {
+			telemetryCollector.cancel();
+			telemetryCollector = null;
 		}
 	}
 
+	/**
+	 * disconnect all the peripherals
+	 */
 	public void disconnect() {
-		if (this.gatt != null) {
-			this.isManuallyDisconnect = true;
-			gatt.disconnect();
-			gatt.close();
-			this.gatt = null;
-		}
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (connectionManager != null) connectionManager.disconnectAll();
+			}
+		});
+	}
+
+	public void disconnect(final Peripheral peripheral) {
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (connectionManager != null) connectionManager.disconnect(peripheral);
+			}
+		});
 	}
 
 	public void stop() {
-		stopScan();
-		disconnect();
+		this.isScanning = false;
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				stopScan();
+				if (connectionManager != null) connectionManager.disconnectAll();
+
+				//hand the RSSI and names seen during the scan to the store now, not after the delay:
+				//a task scheduled here would come after the quit of the loop which may follow the stop
+				if (saveTask != null) {
+					saveTask.cancel();
+					saveTask = null;
+				}
+				if (peripheralStore != null) save(peripheralStore, storeExecutor);
+			}
+		});
 	}
 
 }
-
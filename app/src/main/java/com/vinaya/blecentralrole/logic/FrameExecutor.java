@@ -0,0 +1,42 @@
+package com.vinaya.blecentralrole.logic;
+
+import android.view.Choreographer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executor which runs the commands on the main thread at the next frame, all the commands of a frame at once,
+ * so that the UI is updated at most once per vsync however often the events come.
+ * Create it on the main thread, the commands can be handed off from any thread.
+ */
+public class FrameExecutor implements Executor {
+
+	private final Choreographer choreographer;
+	private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean isScheduled = new AtomicBoolean();
+
+	private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+		@Override
+		public void doFrame(long frameTimeNanos) {
+			//first, so that a command handed off meanwhile is never left without a frame
+			isScheduled.set(false);
+			Runnable command;
+			while ((command = commands.poll()) != null) {
+				command.run();
+			}
+		}
+	};
+
+	public FrameExecutor() {
+		this.choreographer = Choreographer.getInstance();
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		commands.offer(command);
+		if (isScheduled.compareAndSet(false, true)) choreographer.postFrameCallback(frameCallback);
+	}
+}
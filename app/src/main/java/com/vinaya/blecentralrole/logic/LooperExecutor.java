@@ -0,0 +1,23 @@
+package com.vinaya.blecentralrole.logic;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executor which runs the commands on the thread of a Looper, e.g. the main thread
+ */
+public class LooperExecutor implements Executor {
+
+	private final Handler handler;
+
+	public LooperExecutor(Looper looper) {
+		this.handler = new Handler(looper);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		handler.post(command);
+	}
+}
@@ -0,0 +1,204 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * GattLink backed by the BluetoothGatt of Android
+ */
+public class AndroidGattLink implements GattLink {
+	private final static String TAG = "AndroidGattLink";
+
+	//BluetoothGatt#setPreferredPhy comes with Android 8.0, newer than the SDK compiled against
+	private final static int PHY_API_LEVEL = 26;
+	private final static int PHY_OPTION_NO_PREFERRED = 0;
+
+	private BluetoothGatt gatt;
+
+	//characteristics by their UUID, resolved once the services are discovered so that a write does not search them
+	private volatile Map<UUID, BluetoothGattCharacteristic> characteristics = Collections.emptyMap();
+
+	/**
+	 * connect to the peripherals by the BluetoothAdapter
+	 */
+	public static class Connector implements GattLink.Connector {
+		private final Context context;
+		private final BluetoothAdapter adapter;
+
+		public Connector(Context context, BluetoothAdapter adapter) {
+			this.context = context;
+			this.adapter = adapter;
+		}
+
+		@Override
+		public GattLink connect(String address, boolean autoConnect, Callback callback) {
+			final BluetoothDevice device = adapter.getRemoteDevice(address);
+			if (device == null) return null;
+
+			final AndroidGattLink link = new AndroidGattLink();
+			link.gatt = device.connectGatt(context, autoConnect, link.wrap(callback));
+			return (link.gatt == null) ? null : link;
+		}
+	}
+
+	private AndroidGattLink() {
+	}
+
+	private BluetoothGattCallback wrap(final Callback callback) {
+		return new BluetoothGattCallback() {
+			@Override
+			public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+				callback.onConnectionStateChange(status, newState);
+			}
+
+			@Override
+			public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+				if (status == GATT_SUCCESS) resolveCharacteristics(gatt);
+				callback.onServicesDiscovered(status);
+			}
+
+			@Override
+			public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+				callback.onCharacteristicChanged(characteristic.getUuid(), characteristic.getValue());
+			}
+
+			@Override
+			public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+				callback.onCharacteristicWrite(characteristic.getUuid(), status);
+			}
+
+			@Override
+			public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+				callback.onDescriptorWrite(descriptor.getUuid(), status);
+			}
+
+			@Override
+			public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+				callback.onMtuChanged(mtu, status);
+			}
+
+			//overrides the method of Android 8.0 at run time, never called before
+			public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+				callback.onPhyUpdate(txPhy, rxPhy, status);
+			}
+		};
+	}
+
+	/**
+	 * walk the discovered services once, the map is replaced and never changed afterwards
+	 */
+	private void resolveCharacteristics(BluetoothGatt gatt) {
+		final Map<UUID, BluetoothGattCharacteristic> resolved = new HashMap<>();
+		for (BluetoothGattService service : gatt.getServices()) {
+			for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+				//first one wins, the same characteristic in another service is found by the search below
+				if (false == resolved.containsKey(characteristic.getUuid())) {
+					resolved.put(characteristic.getUuid(), characteristic);
+				}
+			}
+		}
+		this.characteristics = resolved;
+	}
+
+	private BluetoothGattCharacteristic getCharacteristic(UUID service, UUID characteristic) {
+		final BluetoothGattCharacteristic cached = characteristics.get(characteristic);
+		if (cached != null && cached.getService().getUuid().equals(service)) return cached;
+
+		final BluetoothGattService gattService = gatt.getService(service);
+		if (gattService == null) return null;
+		return gattService.getCharacteristic(characteristic);
+	}
+
+	@Override
+	public boolean discoverServices() {
+		//the services are replaced by the discovery
+		this.characteristics = Collections.emptyMap();
+		return gatt.discoverServices();
+	}
+
+	@Override
+	public boolean requestMtu(int mtu) {
+		return gatt.requestMtu(mtu);
+	}
+
+	@Override
+	public boolean requestConnectionPriority(int priority) {
+		return gatt.requestConnectionPriority(priority);
+	}
+
+	/**
+	 * by reflection on Android 8.0 and later, the PHY masks are 1 &lt;&lt; (phy - 1)
+	 */
+	@Override
+	public boolean setPreferredPhy(int phy) {
+		if (Build.VERSION.SDK_INT < PHY_API_LEVEL) return false;
+		final int mask = 1 << (phy - 1);
+		try {
+			final Method method = BluetoothGatt.class.getMethod("setPreferredPhy", int.class, int.class, int.class);
+			method.invoke(gatt, mask, mask, PHY_OPTION_NO_PREFERRED);
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			Log.w(TAG, "setPreferredPhy failed", e);
+			return false;
+		}
+	}
+
+	@Override
+	public boolean hasCharacteristic(UUID service, UUID characteristic) {
+		return getCharacteristic(service, characteristic) != null;
+	}
+
+	@Override
+	public boolean setCharacteristicNotification(UUID service, UUID characteristic, boolean enable) {
+		final BluetoothGattCharacteristic gattCharacteristic = getCharacteristic(service, characteristic);
+		if (gattCharacteristic == null) return false;
+		return gatt.setCharacteristicNotification(gattCharacteristic, enable);
+	}
+
+	@Override
+	public boolean writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value) {
+		final BluetoothGattCharacteristic gattCharacteristic = getCharacteristic(service, characteristic);
+		if (gattCharacteristic == null) return false;
+
+		final BluetoothGattDescriptor gattDescriptor = gattCharacteristic.getDescriptor(descriptor);
+		if (gattDescriptor == null) return false;
+
+		gattDescriptor.setValue(value);
+		return gatt.writeDescriptor(gattDescriptor);
+	}
+
+	@Override
+	public boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value, boolean withResponse) {
+		final BluetoothGattCharacteristic gattCharacteristic = getCharacteristic(service, characteristic);
+		if (gattCharacteristic == null) return false;
+
+		gattCharacteristic.setWriteType(withResponse ?
+			BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT : BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+		gattCharacteristic.setValue(value);
+		return gatt.writeCharacteristic(gattCharacteristic);
+	}
+
+	@Override
+	public void disconnect() {
+		gatt.disconnect();
+	}
+
+	@Override
+	public void close() {
+		gatt.close();
+	}
+}
@@ -1,19 +1,30 @@
 package com.vinaya.blecentralrole.logic.scanner;
 
 import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
 import android.bluetooth.le.BluetoothLeScanner;
 import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
 import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.Build;
+import android.os.ParcelUuid;
 import android.util.Log;
 
+import com.vinaya.blecentralrole.logic.Logger;
+import com.vinaya.blecentralrole.model.Advertisement;
 import com.vinaya.blecentralrole.model.Peripheral;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * BLEScanner support Android API Version >= 21
  */
 public class BLEScannerV21 implements BLEScanner {
+	private final static String TAG = "BLEScannerV21";
 
 	private BluetoothAdapter adapter;
 	private BluetoothLeScanner leScanner;
@@ -23,7 +34,7 @@ public class BLEScannerV21 implements BLEScanner {
 	}
 
 	@Override
-	public ScanTask asyncScan(final BLEScanListener listener) {
+	public ScanTask asyncScan(ScanConfig config, final BLEScanListener listener) {
 		//achieve a bluetoothLehScanner for scanning bluetooth devices
 		this.leScanner = adapter.getBluetoothLeScanner();
 		if (leScanner == null) {
@@ -34,27 +45,25 @@ public class BLEScannerV21 implements BLEScanner {
 		final ScanCallback callback = new ScanCallback() {
 			@Override
 			public void onScanResult(int callbackType, ScanResult result) {
-				Log.i("callbackType", String.valueOf(callbackType));
-				Log.i("result", result.toString());
-				listener.onDiscovered(new Peripheral(result));
+				if (Logger.TRACE_HOT_PATHS && Log.isLoggable(TAG, Log.VERBOSE)) Log.v(TAG, "callbackType " + callbackType + " " + result);
+				listener.onDiscovered(toPeripheral(result));
 			}
 
 			@Override
 			public void onBatchScanResults(List<ScanResult> results) {
-				for (ScanResult result : results) {
-					Log.i("ScanResult - Results", result.toString());
-					listener.onDiscovered(new Peripheral(result));
+				for (int i = 0; i < results.size(); i++) {
+					listener.onDiscovered(toPeripheral(results.get(i)));
 				}
 			}
 
 			@Override
 			public void onScanFailed(int errorCode) {
-				Log.e("Scan Failed", "Error Code: " + errorCode);
+				Log.e(TAG, "Scan Failed, Error Code: " + errorCode);
 				listener.onFailed(errorCode);
 			}
 		};
 
-		leScanner.startScan(callback);
+		leScanner.startScan(toScanFilters(config), toScanSettings(config), callback);
 
 
 		return new ScanTask() {
@@ -67,6 +76,48 @@ public class BLEScannerV21 implements BLEScanner {
 		};
 	}
 
+	/**
+	 * @return null if there is no result
+	 */
+	private static Peripheral toPeripheral(ScanResult scanResult) {
+		if (scanResult == null) return null;
+
+		//read the device once, instead of calling into it on every getter
+		final BluetoothDevice device = scanResult.getDevice();
+		//keep the raw bytes, the fields are decoded only for the peripherals which need them
+		final ScanRecord scanRecord = scanResult.getScanRecord();
+		final Advertisement advertisement = (scanRecord == null) ? null : new Advertisement(scanRecord.getBytes());
+		return Peripheral.fromAdvertisement(device.getAddress(), device.getName(), scanResult.getRssi(), advertisement);
+	}
+
+	private static List<ScanFilter> toScanFilters(ScanConfig config) {
+		final List<ScanFilter> filters = new ArrayList<>(config.getFilters().size());
+		for (ScanConfig.Filter filter : config.getFilters()) {
+			final ScanFilter.Builder builder = new ScanFilter.Builder();
+			if (filter.getServiceUUID() != null) builder.setServiceUuid(new ParcelUuid(filter.getServiceUUID()));
+			if (filter.getName() != null) builder.setDeviceName(filter.getName());
+			//the controller expects the upper case form
+			if (filter.getAddress() != null) builder.setDeviceAddress(filter.getAddress().toUpperCase(Locale.US));
+			filters.add(builder.build());
+		}
+		return filters;
+	}
+
+	private ScanSettings toScanSettings(ScanConfig config) {
+		final ScanSettings.Builder builder = new ScanSettings.Builder()
+			.setScanMode(config.getScanMode());
+
+		//the scan fails at once if batching is asked from a controller without it
+		if (config.getReportDelay() > 0 && adapter.isOffloadedScanBatchingSupported()) {
+			builder.setReportDelay(config.getReportDelay());
+		}
+
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+			builder.setMatchMode(config.getMatchMode());
+		}
+		return builder.build();
+	}
+
 
 	/**
 	 * use of NullObject design pattern
@@ -0,0 +1,29 @@
+package com.vinaya.blecentralrole.model;
+
+import android.content.res.Resources;
+
+import com.vinaya.blecentralrole.R;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+
+/**
+ * The service profiles bundled with the application, see {@link UUIDRepository} for the format
+ */
+public final class ServiceProfiles {
+
+	private ServiceProfiles() {
+	}
+
+	/**
+	 * read the profiles bundled in res/raw/service_profiles.json
+	 */
+	public static UUIDRepository load(Resources resources) {
+		try {
+			return UUIDRepository.load(resources.openRawResource(R.raw.service_profiles));
+		} catch (IOException | JSONException e) {
+			throw new IllegalStateException("cannot read the service profiles", e);
+		}
+	}
+}
@@ -0,0 +1,454 @@
+package com.vinaya.blecentralrole.service;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.IBinder;
+import android.support.v4.app.NotificationCompat;
+
+import com.vinaya.blecentralrole.MainActivity;
+import com.vinaya.blecentralrole.R;
+import com.vinaya.blecentralrole.logic.BackoffReconnectPolicy;
+import com.vinaya.blecentralrole.logic.Central;
+import com.vinaya.blecentralrole.logic.EventLoop;
+import com.vinaya.blecentralrole.logic.FrameExecutor;
+import com.vinaya.blecentralrole.logic.LinkParameters;
+import com.vinaya.blecentralrole.logic.LinkProfile;
+import com.vinaya.blecentralrole.logic.PeripheralStore;
+import com.vinaya.blecentralrole.logic.ScanDiff;
+import com.vinaya.blecentralrole.logic.capture.CaptureLog;
+import com.vinaya.blecentralrole.logic.metrics.CentralMetrics;
+import com.vinaya.blecentralrole.logic.scanner.ScanConfig;
+import com.vinaya.blecentralrole.model.Peripheral;
+import com.vinaya.blecentralrole.model.ServiceProfiles;
+import com.vinaya.blecentralrole.model.UUIDRepository;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hosts the {@link Central} in the foreground, so that the scan and the connections go on
+ * while no Activity is visible, e.g. with the screen off.
+ *
+ * The timed work and the callbacks of the Central, of the scanner and of the links run on the {@link EventLoop}
+ * of the service. An Activity binds to it and subscribes an {@link Observer}: it gets the current
+ * peripheral list at once, and the events afterwards on its own executor.
+ * The scan diffs not yet delivered to an observer are merged into one, so that a slow observer,
+ * e.g. one called once per frame, gets the latest snapshot rather than a backlog.
+ */
+public class CentralService extends Service {
+	private final static int NOTIFICATION_ID = 1;
+	private final static String PERIPHERAL_STORE_FILE = "peripherals.bin";
+	private final static String CAPTURE_DIRECTORY = "capture";
+
+	/**
+	 * everything the Central reports, the received data is a String which can be kept
+	 */
+	public interface Observer extends Central.ScanListener, Central.ConnectListener, Central.RssiAlertListener {
+	}
+
+	public class LocalBinder extends Binder {
+		public CentralService getService() {
+			return CentralService.this;
+		}
+	}
+
+	private static class Subscription implements Runnable {
+		final Observer observer;
+		final Executor executor;
+		volatile boolean isActive = true;    //the events already queued are dropped once unsubscribed
+
+		//the diffs not yet delivered, merged; the one swapping it from null posts this to the executor
+		private final AtomicReference<ScanDiff> pendingDiff = new AtomicReference<>();
+
+		Subscription(Observer observer, Executor executor) {
+			this.observer = observer;
+			this.executor = executor;
+		}
+
+		void onScanned(ScanDiff diff) {
+			ScanDiff pending;
+			do {
+				pending = pendingDiff.get();
+			} while (false == pendingDiff.compareAndSet(pending, ScanDiff.merge(pending, diff)));
+			if (pending == null) executor.execute(this);
+		}
+
+		/**
+		 * deliver the pending diff, on the executor
+		 */
+		@Override
+		public void run() {
+			final ScanDiff diff = pendingDiff.getAndSet(null);
+			if (diff != null && isActive) observer.onScanned(diff);
+		}
+	}
+
+	//--------------------------------------------------
+	//data members
+	private final IBinder binder = new LocalBinder();
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	private EventLoop loop;
+	private ExecutorService storeExecutor;    //reads and writes the peripheral store, off the loop
+	private Central central;
+	private CaptureLog captureLog;    //null unless enabled in the resources
+	private volatile boolean isForeground;
+
+	//the latest list delivered to the observers
+	private List<Peripheral> peripheralList = Collections.emptyList();
+
+
+	//--------------------------------------------------
+	//Override callback methods of Service
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		this.central = createCentral(ServiceProfiles.load(getResources()));
+	}
+
+	@Override
+	public IBinder onBind(Intent intent) {
+		return binder;
+	}
+
+	@Override
+	public int onStartCommand(Intent intent, int flags, int startId) {
+		//also after the process is restarted, then nobody is bound yet
+		if (false == start()) stopSelf(startId);
+		return START_STICKY;
+	}
+
+	@Override
+	public void onDestroy() {
+		central.stop();
+		final CaptureLog captureLog = this.captureLog;
+		if (loop != null) {
+			//after the disconnects and the last write of the store are handed off, on the loop:
+			//the store executor still runs that write, and the capture keeps the records of the disconnects
+			loop.execute(new Runnable() {
+				@Override
+				public void run() {
+					storeExecutor.shutdown();
+					//waits for the writer to write its last batch, on the loop rather than the main thread
+					if (captureLog != null) captureLog.close();
+				}
+			});
+			loop.quit();
+		} else if (captureLog != null) {
+			captureLog.close();
+		}
+		super.onDestroy();
+	}
+
+
+	//--------------------------------------------------
+	//the binder api
+
+	/**
+	 * feature 1 and 7: start the scan and connect to the latest peripheral,
+	 * then keep on in the foreground until {@link #shutdown()}. Nothing is done if it is running already.
+	 *
+	 * @return false if bluetooth is off or not supported
+	 */
+	public synchronized boolean start() {
+		if (central.isScanning()) return true;
+		if (false == central.start()) return false;
+
+		//started as well as bound, so that it outlives the Activity
+		startService(new Intent(this, CentralService.class));
+		startForeground(NOTIFICATION_ID, buildNotification());
+		this.isForeground = true;
+
+		central.scan(scanListener, getResources().getInteger(R.integer.scan_period));
+		central.connectLast(connectListener);
+		return true;
+	}
+
+	/**
+	 * stop scanning, disconnect all and leave the foreground, the service is destroyed once unbound
+	 */
+	public synchronized void shutdown() {
+		central.stop();
+		stopForeground(true);
+		this.isForeground = false;
+		stopSelf();
+	}
+
+	/**
+	 * @param executor where the observer is called, e.g. {@link FrameExecutor} of the main thread
+	 * @return the current peripheral list, the first {@link ScanDiff} delivered afterwards applies to it
+	 */
+	public synchronized List<Peripheral> subscribe(Observer observer, Executor executor) {
+		subscriptions.add(new Subscription(observer, executor));
+		return peripheralList;
+	}
+
+	/**
+	 * the events not yet delivered to the observer are dropped,
+	 * if they are queued on the same thread as the one calling this
+	 */
+	public synchronized void unsubscribe(Observer observer) {
+		for (Subscription subscription : subscriptions) {
+			if (subscription.observer != observer) continue;
+			subscription.isActive = false;
+			subscriptions.remove(subscription);
+		}
+	}
+
+	public synchronized List<Peripheral> getPeripheralList() {
+		return peripheralList;
+	}
+
+	public boolean isScanning() {
+		return central.isScanning();
+	}
+
+	public int getConnectionCount() {
+		return central.getConnectionCount();
+	}
+
+	/**
+	 * @return the counters of the Central, tell it when a scan result is shown
+	 */
+	public CentralMetrics getMetrics() {
+		return central.getMetrics();
+	}
+
+	public boolean canConnect(Peripheral peripheral) {
+		return central.canConnect(peripheral);
+	}
+
+	/**
+	 * feature 4, the result is reported to the observers
+	 */
+	public void connect(Peripheral peripheral) {
+		final LinkProfile linkProfile = getResources().getBoolean(R.bool.throughput_link) ?
+			LinkProfile.THROUGHPUT : LinkProfile.BALANCED;
+		central.connect(peripheral, connectListener, linkProfile);
+	}
+
+	/**
+	 * feature 6: disconnect all the peripherals, the service keeps on scanning
+	 */
+	public void disconnect() {
+		central.disconnect();
+	}
+
+
+	//--------------------------------------------------
+	//creation of the Central, overridden by the tests
+
+	/**
+	 * @return the Central on its own event loop, set up from the resources
+	 */
+	protected Central createCentral(UUIDRepository repository) {
+		this.loop = new EventLoop("Central");
+		this.storeExecutor = Executors.newSingleThreadExecutor();
+		final Central central = new Central(this, repository, loop);
+		configure(central, repository, storeExecutor);
+		return central;
+	}
+
+	/**
+	 * @param storeExecutor where the peripheral store reads and writes its file, one task at a time
+	 */
+	protected void configure(Central central, UUIDRepository repository, Executor storeExecutor) {
+		central.setScanDispatch(
+			getResources().getInteger(R.integer.scan_dispatch_window),
+			getResources().getInteger(R.integer.scan_dispatch_batch_size));
+		//only the peripherals of the known services wake us up
+		central.setScanConfig(new ScanConfig.Builder()
+			.addServiceFilters(repository.getProfiles())
+			.setScanMode(getResources().getInteger(R.integer.scan_mode))
+			.setReportDelay(getResources().getInteger(R.integer.scan_report_delay))
+			.setMatchMode(ScanConfig.MATCH_MODE_STICKY)
+			.build());
+		central.setMaxScanIdle(getResources().getInteger(R.integer.scan_max_idle));
+		central.setPeripheralTtl(getResources().getInteger(R.integer.peripheral_ttl));
+		central.setRssiAlert(
+			getResources().getInteger(R.integer.rssi_threshold),
+			getResources().getInteger(R.integer.rssi_hysteresis),
+			getResources().getInteger(R.integer.rssi_alert_interval),
+			rssiAlertListener);
+		central.setMaxConnections(getResources().getInteger(R.integer.max_connections));
+		central.setReconnectPolicy(new BackoffReconnectPolicy(
+			getResources().getInteger(R.integer.reconnect_base_delay),
+			getResources().getInteger(R.integer.reconnect_max_delay),
+			getResources().getInteger(R.integer.reconnect_max_attempts),
+			getResources().getInteger(R.integer.reconnect_auto_connect_after),
+			BackoffReconnectPolicy.DEFAULT_JITTER, new Random()));
+		central.setPeripheralStore(new PeripheralStore(new File(getFilesDir(), PERIPHERAL_STORE_FILE)), storeExecutor);
+		if (getResources().getBoolean(R.bool.capture)) {
+			this.captureLog = new CaptureLog(new File(getFilesDir(), CAPTURE_DIRECTORY),
+				getResources().getInteger(R.integer.capture_segment_size),
+				getResources().getInteger(R.integer.capture_max_segments),
+				CaptureLog.DEFAULT_BUFFER_SIZE);
+			central.setCaptureLog(captureLog);
+		}
+	}
+
+
+	//--------------------------------------------------
+	//listeners of the Central, called on its loop and passed on to the observers
+
+	private final Central.ScanListener scanListener = new Central.ScanListener() {
+		@Override
+		public void onScanned(ScanDiff diff) {
+			//under the lock, so that a new observer gets either the list before this diff, or this diff
+			synchronized (CentralService.this) {
+				peripheralList = diff.getPeripheralList();
+				for (Subscription subscription : subscriptions) {
+					subscription.onScanned(diff);
+				}
+			}
+		}
+
+		@Override
+		public void onFailed(final int errorCode) {
+			for (final Subscription subscription : subscriptions) {
+				subscription.executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (subscription.isActive) subscription.observer.onFailed(errorCode);
+					}
+				});
+			}
+		}
+	};
+
+	private final Central.ConnectListener connectListener = new Central.ConnectListener() {
+		@Override
+		public void onConnected(final Peripheral peripheral) {
+			updateNotification();
+			for (final Subscription subscription : subscriptions) {
+				subscription.executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (subscription.isActive) subscription.observer.onConnected(peripheral);
+					}
+				});
+			}
+		}
+
+		@Override
+		public void onDisconnected(final Peripheral peripheral, final boolean isManually) {
+			updateNotification();
+			for (final Subscription subscription : subscriptions) {
+				subscription.executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (subscription.isActive) subscription.observer.onDisconnected(peripheral, isManually);
+					}
+				});
+			}
+		}
+
+		@Override
+		public void onReceived(final Peripheral peripheral, CharSequence data) {
+			//nothing is copied while nobody is watching, the session loops back by itself
+			if (subscriptions.isEmpty()) return;
+
+			final String text = data.toString();
+			for (final Subscription subscription : subscriptions) {
+				subscription.executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (subscription.isActive) subscription.observer.onReceived(peripheral, text);
+					}
+				});
+			}
+		}
+
+		@Override
+		public void onConnectFail(final Peripheral peripheral) {
+			for (final Subscription subscription : subscriptions) {
+				subscription.executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (subscription.isActive) subscription.observer.onConnectFail(peripheral);
+					}
+				});
+			}
+		}
+
+		@Override
+		public void onLinkChanged(final Peripheral peripheral, final LinkParameters parameters) {
+			for (final Subscription subscription : subscriptions) {
+				subscription.executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (subscription.isActive) subscription.observer.onLinkChanged(peripheral, parameters);
+					}
+				});
+			}
+		}
+
+		@Override
+		public void onFrame(final Peripheral peripheral, final int sequence, final int type, ByteBuffer payload) {
+			if (subscriptions.isEmpty()) return;
+
+			//the payload is reused by the session once this returns
+			final ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+			copy.put(payload.duplicate());
+			copy.flip();
+			for (final Subscription subscription : subscriptions) {
+				final ByteBuffer view = copy.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+				subscription.executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (subscription.isActive) subscription.observer.onFrame(peripheral, sequence, type, view);
+					}
+				});
+			}
+		}
+	};
+
+	private final Central.RssiAlertListener rssiAlertListener = new Central.RssiAlertListener() {
+		@Override
+		public void onRssiAlert(final Peripheral peripheral, final int rssi, final boolean isLow) {
+			for (final Subscription subscription : subscriptions) {
+				subscription.executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (subscription.isActive) subscription.observer.onRssiAlert(peripheral, rssi, isLow);
+					}
+				});
+			}
+		}
+	};
+
+
+	//--------------------------------------------------
+	//helper methods
+
+	private Notification buildNotification() {
+		final PendingIntent intent = PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class), 0);
+		return new NotificationCompat.Builder(this)
+			.setSmallIcon(R.drawable.icon)
+			.setContentTitle(getString(R.string.app_name))
+			.setContentText(getString(R.string.notification_connections, central.getConnectionCount()))
+			.setContentIntent(intent)
+			.setOngoing(true)
+			.build();
+	}
+
+	private void updateNotification() {
+		if (false == isForeground) return;
+		final NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+		manager.notify(NOTIFICATION_ID, buildNotification());
+	}
+}
@@ -0,0 +1,110 @@
+package com.vinaya.blecentralrole.viewadapter;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.vinaya.blecentralrole.R;
+import com.vinaya.blecentralrole.model.MessageLog;
+
+
+/**
+ * The messages received, one row each, from a {@link MessageLog} of fixed capacity:
+ * only the rows on the screen are bound, however many messages have come.
+ *
+ * The messages are appended at any rate, the RecyclerView is told about them in one go
+ * by {@link #notifyAppended()}, once per frame.
+ */
+public class MessageLogAdapter extends RecyclerView.Adapter<MessageLogAdapter.ViewHolder> {
+	private final MessageLog log;
+	private LayoutInflater layoutInflater;
+
+	//what the RecyclerView knows of: the rows are the messages numbered shownAddedCount - shownSize on
+	private long shownAddedCount;
+	private int shownSize;
+
+
+	class ViewHolder extends RecyclerView.ViewHolder {
+		final TextView textViewMessage;
+
+		ViewHolder(View view) {
+			super(view);
+			this.textViewMessage = (TextView) view.findViewById(R.id.textViewMessage);
+		}
+	}
+
+
+	/**
+	 * @param capacity the most messages kept, the oldest are dropped
+	 */
+	public MessageLogAdapter(Context context, int capacity) {
+		this.layoutInflater = LayoutInflater.from(context);
+		this.log = new MessageLog(capacity);
+	}
+
+
+	@Override
+	public int getItemCount() {
+		return shownSize;
+	}
+
+	@Override
+	public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+		return new ViewHolder(layoutInflater.inflate(R.layout.item_message, parent, false));
+	}
+
+	@Override
+	public void onBindViewHolder(ViewHolder holder, int position) {
+		//a row dropped from the log since the last notifyAppended() is on its way out
+		final long index = (shownAddedCount - shownSize + position) - (log.getAddedCount() - log.size());
+		holder.textViewMessage.setText(index < 0 ? "" : log.get((int) index));
+	}
+
+
+	/**
+	 * add a message, it is shown after the next {@link #notifyAppended()}
+	 */
+	public void append(CharSequence message) {
+		log.add(message);
+	}
+
+	/**
+	 * tell the RecyclerView of the messages appended and dropped since the last call,
+	 * in at most one removal from the top and one insertion at the bottom
+	 */
+	public void notifyAppended() {
+		final long addedCount = log.getAddedCount();
+		final int size = log.size();
+		final int removed = (int) Math.min(shownSize, (addedCount - size) - (shownAddedCount - shownSize));
+		final int kept = shownSize - removed;
+		this.shownAddedCount = addedCount;
+		this.shownSize = size;
+
+		if (removed > 0) notifyItemRangeRemoved(0, removed);
+		if (size > kept) notifyItemRangeInserted(kept, size - kept);
+	}
+
+	/**
+	 * drop every message, e.g. once disconnected
+	 */
+	public void clear() {
+		log.clear();
+		this.shownAddedCount = log.getAddedCount();
+		this.shownSize = 0;
+		notifyDataSetChanged();
+	}
+
+	/**
+	 * @return the messages, from the oldest, one per line
+	 */
+	public String export() {
+		return log.appendTo(new StringBuilder()).toString();
+	}
+
+	MessageLog getLog() {
+		return log;
+	}
+}
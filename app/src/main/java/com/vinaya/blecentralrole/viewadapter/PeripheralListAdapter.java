@@ -2,28 +2,32 @@ package com.vinaya.blecentralrole.viewadapter;
 
 import android.content.Context;
 import android.graphics.Color;
+import android.support.v7.widget.RecyclerView;
+import android.util.LongSparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.vinaya.blecentralrole.R;
+import com.vinaya.blecentralrole.logic.ScanDiff;
 import com.vinaya.blecentralrole.model.Peripheral;
 
+import java.util.Collections;
 import java.util.List;
 
 
-public class PeripheralListAdapter extends BaseAdapter {
-	private List<Peripheral> list;
+public class PeripheralListAdapter extends RecyclerView.Adapter<PeripheralListAdapter.ViewHolder> {
+	//payload of a change which only needs the RSSI to be rebound
+	final static Object PAYLOAD_RSSI = new Object();
+
+	private List<Peripheral> list = Collections.emptyList();
+	private final LongSparseArray<Integer> positions = new LongSparseArray<>();   //mac address to position
 	private LayoutInflater layoutInflater;
 	private OnItemClickListener onItemClickListener;
 	private DisableFilter disableFilter;
 
-	private int rssiThreshold;
-	private RssiAlertListener rssiAlertListener;
-
 
 	public interface OnItemClickListener {
 		void onClick(Peripheral peripheral);
@@ -33,100 +37,110 @@ public class PeripheralListAdapter extends BaseAdapter {
 		boolean isDisable(Peripheral peripheral);
 	}
 
-	public interface RssiAlertListener {
-		void onAlertRssi(Peripheral peripheral);
+
+	/**
+	 * views of a row, looked up once when the row is inflated
+	 */
+	class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+		final ImageView imageIcon;
+		final TextView textViewDevName;
+		final TextView textViewDevAddress;
+		final TextView textViewRssi;
+		boolean isDisabled;
+
+		ViewHolder(View view) {
+			super(view);
+			this.imageIcon = (ImageView) view.findViewById(R.id.imageViewIcon);
+			this.textViewDevName = (TextView) view.findViewById(R.id.textViewDevName);
+			this.textViewDevAddress = (TextView) view.findViewById(R.id.textViewDevAddress);
+			this.textViewRssi = (TextView) view.findViewById(R.id.textViewRssi);
+			view.setOnClickListener(this);
+		}
+
+		@Override
+		public void onClick(View v) {
+			//feature 4: allow user to connect to peripherals with Service
+			final int position = getAdapterPosition();
+			if (isDisabled || onItemClickListener == null || position == RecyclerView.NO_POSITION) return;
+			onItemClickListener.onClick(list.get(position));
+		}
 	}
 
 
 	public PeripheralListAdapter(Context context) {
 		this.layoutInflater = LayoutInflater.from(context);
+		setHasStableIds(true);
 	}
 
 
 	@Override
-	public int getCount() {
-		if (list==null) return 0;
+	public int getItemCount() {
 		return list.size();
 	}
 
-	@Override
 	public Peripheral getItem(int position) {
-		if (list==null) return null;
 		return list.get(position);
 	}
 
 	@Override
 	public long getItemId(int position) {
-		//TODO: find a better way to generate the uniqueness
-		Peripheral item = getItem(position);
-		if (item == null) return 0;
-
-		final String address = item.getAddress();
-		if (address == null) return 0;
+		//the 48-bit address is unique by itself
+		return list.get(position).getMacAddress();
+	}
 
-		return address.hashCode();
+	@Override
+	public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+		return new ViewHolder(layoutInflater.inflate(R.layout.item_list, parent, false));
 	}
 
 	@Override
-	public View getView(int position, View convertView, ViewGroup parent) {
-		final View view = layoutInflater.inflate(R.layout.item_list, parent, false);
+	public void onBindViewHolder(ViewHolder holder, int position) {
 		final Peripheral peripheral = list.get(position);
-
-		final ImageView imageIcon = (ImageView) view.findViewById(R.id.imageViewIcon);
-		final TextView textViewDevName = (TextView) view.findViewById(R.id.textViewDevName);
-		final TextView textViewDevAddress = (TextView) view.findViewById(R.id.textViewDevAddress);
-		final TextView textViewRssi = (TextView) view.findViewById(R.id.textViewRssi);
-
+		final View view = holder.itemView;
 
 		//set the background to green is the peripheral is connected
-		if (peripheral.isConnected()) {
-			view.setBackgroundColor(Color.GREEN);
-
-			//feature 10: Display an alert to the user whenever the RSSI value of the connected Peripheral goes below a certain value
-			if (rssiAlertListener != null && peripheral.getRssi() < rssiThreshold) {
-				rssiAlertListener.onAlertRssi(peripheral);
-			}
-		}
-		else {
-			view.setBackgroundColor(Color.WHITE);
-		}
+		view.setBackgroundColor(peripheral.isConnected() ? Color.GREEN : Color.WHITE);
 
 		//feature 2: Display peripherals found and their RSSI values.
-		textViewDevName.setText(peripheral.getName());
-		textViewDevAddress.setText(peripheral.getAddress());
-		textViewRssi.setText(String.valueOf(peripheral.getRssi()));
+		holder.textViewDevName.setText(peripheral.getName());
+		holder.textViewDevAddress.setText(peripheral.getAddress());
 
 		//feature 3: greying out the Peripherals that do not fulfill the condition
-		if (disableFilter != null && disableFilter.isDisable(peripheral)) {
-			imageIcon.setImageResource(R.drawable.icon_gray);
-			textViewDevName.setTextColor(Color.GRAY);
-			textViewDevAddress.setTextColor(Color.GRAY);
-			textViewRssi.setTextColor(Color.GRAY);
-			view.setEnabled(false);
-			return view;
+		holder.isDisabled = disableFilter != null && disableFilter.isDisable(peripheral);
+		if (holder.isDisabled) {
+			holder.imageIcon.setImageResource(R.drawable.icon_gray);
+			holder.textViewDevName.setTextColor(Color.GRAY);
+			holder.textViewDevAddress.setTextColor(Color.GRAY);
+		} else {
+			//otherwise, set the text color to black, and show the colorful icon
+			holder.imageIcon.setImageResource(R.drawable.icon);
+			holder.textViewDevName.setTextColor(Color.BLACK);
+			holder.textViewDevAddress.setTextColor(Color.BLACK);
 		}
+		view.setEnabled(!holder.isDisabled);
 
-		//otherwise, set the text color to black, and show the colorful icon
-		imageIcon.setImageResource(R.drawable.icon);
-		textViewDevName.setTextColor(Color.BLACK);
-		textViewDevAddress.setTextColor(Color.BLACK);
-		textViewRssi.setTextColor(
-			(rssiAlertListener != null && peripheral.getRssi() < rssiThreshold) ?
-				Color.RED : Color.BLUE
-		);
-		view.setEnabled(true);
-
-		//feature 4: allow user to connect to peripherals with Service
-		if (onItemClickListener != null) {
-			view.setOnClickListener(new View.OnClickListener() {
-				@Override
-				public void onClick(View v) {
-					onItemClickListener.onClick(peripheral);
-				}
-			});
+		bindRssi(holder, peripheral);
+	}
+
+	@Override
+	public void onBindViewHolder(ViewHolder holder, int position, List<Object> payloads) {
+		if (payloads.isEmpty()) {
+			onBindViewHolder(holder, position);
+			return;
 		}
 
-		return view;
+		//every payload is PAYLOAD_RSSI, the rest of the row is still valid
+		bindRssi(holder, list.get(position));
+	}
+
+	private void bindRssi(ViewHolder holder, Peripheral peripheral) {
+		//the alerts of feature 10 are raised by the Central, the row only shows the smoothed value
+		holder.textViewRssi.setText(String.valueOf(peripheral.getSmoothedRssi()));
+		if (holder.isDisabled) {
+			holder.textViewRssi.setTextColor(Color.GRAY);
+		} else {
+			holder.textViewRssi.setTextColor(peripheral.isRssiLow() ? Color.RED : Color.BLUE);
+		}
 	}
 
 
@@ -134,20 +148,90 @@ public class PeripheralListAdapter extends BaseAdapter {
 		this.onItemClickListener = onItemClickListener;
 	}
 
-	public void setOnRssiAlertListener(int rssiThreshold, RssiAlertListener listener) {
-		this.rssiThreshold = rssiThreshold;
-		this.rssiAlertListener = listener;
-	}
-
-
 	public void setDisableFilter(DisableFilter disableFilter) {
 		this.disableFilter = disableFilter;
 	}
 
 
+	/**
+	 * replace the whole list, every row is rebound
+	 */
 	public void setPeripheralList(List<Peripheral> list) {
 		this.list = list;
+		positions.clear();
+		for (int i = 0; i < list.size(); i++) {
+			positions.put(list.get(i).getMacAddress(), i);
+		}
+		notifyDataSetChanged();
 	}
 
-}
+	/**
+	 * apply the changes of a scan, only the affected rows are rebound
+	 */
+	public void applyDiff(ScanDiff diff) {
+		final List<Peripheral> newList = diff.getPeripheralList();
+		final List<Peripheral> added = diff.getAdded();
+		final int oldSize = list.size();
+
+		//a removal moves the peripherals around, so as anything not appended to the end,
+		//or an updated one which was removed and discovered again within the window
+		if (false == diff.getRemoved().isEmpty() || newList.size() != oldSize + added.size()
+			|| false == isAppended(newList, oldSize, added) || false == isInPlace(newList, diff.getUpdated())) {
+			setPeripheralList(newList);
+			return;
+		}
+
+		final List<Peripheral> oldList = this.list;
+		this.list = newList;
+
+		for (Peripheral peripheral : diff.getUpdated()) {
+			final int position = positions.get(peripheral.getMacAddress());
+			final Peripheral old = oldList.get(position);
+			notifyItemChanged(position, isOnlyRssiChanged(old, peripheral) ? PAYLOAD_RSSI : null);
+		}
+
+		for (int i = 0; i < added.size(); i++) {
+			positions.put(added.get(i).getMacAddress(), oldSize + i);
+		}
+		if (false == added.isEmpty()) {
+			notifyItemRangeInserted(oldSize, added.size());
+		}
+	}
 
+	/**
+	 * rebind the row of the peripheral, e.g. after it is connected
+	 */
+	public void notifyPeripheralChanged(Peripheral peripheral) {
+		final Integer position = positions.get(peripheral.getMacAddress());
+		if (position != null) notifyItemChanged(position);
+	}
+
+	private static boolean isAppended(List<Peripheral> newList, int oldSize, List<Peripheral> added) {
+		for (int i = 0; i < added.size(); i++) {
+			if (false == newList.get(oldSize + i).equals(added.get(i))) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * the rows which are not updated only ever move towards the head of the registry,
+	 * so if none of the updated ones has moved, none of the others has
+	 */
+	private boolean isInPlace(List<Peripheral> newList, List<Peripheral> updated) {
+		for (int i = 0; i < updated.size(); i++) {
+			final Peripheral peripheral = updated.get(i);
+			final Integer position = positions.get(peripheral.getMacAddress());
+			if (position == null || newList.get(position).getMacAddress() != peripheral.getMacAddress()) return false;
+		}
+		return true;
+	}
+
+	private static boolean isOnlyRssiChanged(Peripheral old, Peripheral peripheral) {
+		if (old.isConnected() != peripheral.isConnected()) return false;
+		if (old.getName() == null ? peripheral.getName() != null : false == old.getName().equals(peripheral.getName())) return false;
+
+		final List<?> oldUUIDs = old.getServiceUUIDs();
+		return oldUUIDs == null ? peripheral.getServiceUUIDs() == null : oldUUIDs.equals(peripheral.getServiceUUIDs());
+	}
+
+}
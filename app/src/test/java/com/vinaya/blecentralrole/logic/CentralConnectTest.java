@@ -0,0 +1,245 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.BuildConfig;
+import com.vinaya.blecentralrole.logic.gatt.FakeGattConnector;
+import com.vinaya.blecentralrole.logic.gatt.FakeGattLink;
+import com.vinaya.blecentralrole.logic.gatt.Fragmenter;
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+import com.vinaya.blecentralrole.model.Peripheral;
+import com.vinaya.blecentralrole.model.ServiceProfiles;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * feature 4 to 7, driven by a fake GATT link instead of the radio
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class CentralConnectTest {
+	private final static UUID RX = UUID.fromString("abc00003-1234-5678-1234-abcd0123abcd");
+
+	private FakeScheduler scheduler;
+	private FakeGattConnector connector;
+	private Central central;
+	private Peripheral peripheral;
+
+	private final List<String> received = new ArrayList<>();
+	private final List<String> events = new ArrayList<>();
+
+	private final Central.ConnectListener listener = new NoOpConnectListener() {
+		@Override
+		public void onConnected(Peripheral peripheral) {
+			events.add("connected");
+		}
+
+		@Override
+		public void onDisconnected(Peripheral peripheral, boolean isManually) {
+			events.add(isManually ? "disconnected manually" : "disconnected");
+		}
+
+		@Override
+		public void onReceived(Peripheral peripheral, CharSequence data) {
+			received.add(data.toString());
+		}
+
+		@Override
+		public void onConnectFail(Peripheral peripheral) {
+			events.add("fail");
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		this.scheduler = new FakeScheduler();
+		this.connector = new FakeGattConnector();
+		this.central = new Central(RuntimeEnvironment.application,
+			ServiceProfiles.load(RuntimeEnvironment.application.getResources()), null, connector, scheduler);
+		this.peripheral = FakeScanner.peripheral(1, -50);
+	}
+
+	private static String valueOf(FakeGattLink.Request request) {
+		return new String(request.value);
+	}
+
+	/**
+	 * connect, negotiate the MTU, discover and subscribe
+	 */
+	private FakeGattLink connectAndSubscribe(int mtu) {
+		central.connect(peripheral, listener);
+		final FakeGattLink link = connector.getLastLink();
+		link.connected();
+		link.mtuChanged(mtu);
+		link.servicesDiscovered();
+		link.acknowledge(GattLink.GATT_SUCCESS);   //descriptor write of the subscription
+		return link;
+	}
+
+	private FakeGattLink connectAndSubscribe() {
+		return connectAndSubscribe(GattLink.DEFAULT_MTU);
+	}
+
+	private static String join(List<FakeGattLink.Request> requests) {
+		final StringBuilder builder = new StringBuilder();
+		for (FakeGattLink.Request request : requests) {
+			builder.append(valueOf(request));
+		}
+		return builder.toString();
+	}
+
+	private static String repeat(char c, int count) {
+		final char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	@Test
+	public void mtu_isRequestedBeforeDiscovery() throws Exception {
+		central.connect(peripheral, listener);
+		final FakeGattLink link = connector.getLastLink();
+		link.connected();
+
+		assertEquals(FakeGattLink.REQUEST_MTU, link.getLastRequest().type);
+		assertTrue(link.getRequests(FakeGattLink.DISCOVER).isEmpty());
+
+		//a peripheral not supporting it keeps the default
+		link.acknowledge(GattLink.GATT_FAILURE);
+		assertEquals(FakeGattLink.DISCOVER, link.getLastRequest().type);
+		assertEquals("[connected]", events.toString());
+	}
+
+	@Test
+	public void ready_isWrittenAfterSubscribed() throws Exception {
+		central.connect(peripheral, listener);
+		final FakeGattLink link = connector.getLastLink();
+		link.connected();
+		link.acknowledge(GattLink.GATT_SUCCESS);
+		link.servicesDiscovered();
+
+		assertEquals(FakeGattLink.WRITE_DESCRIPTOR, link.getLastRequest().type);
+		assertTrue(link.getRequests(FakeGattLink.WRITE_CHARACTERISTIC).isEmpty());
+
+		link.acknowledge(GattLink.GATT_SUCCESS);
+		assertEquals("Ready", valueOf(link.getLastRequest()));
+		assertTrue(peripheral.isConnected());
+	}
+
+	@Test
+	public void loopBack_waitsForPreviousWrite() throws Exception {
+		final FakeGattLink link = connectAndSubscribe();
+
+		//"Ready" is still in flight
+		link.notify(RX, "Hello World".getBytes());
+		link.notify(RX, "Again".getBytes());
+		assertEquals("Ready", valueOf(link.getLastRequest()));
+
+		link.acknowledge(GattLink.GATT_SUCCESS);
+		assertEquals("01Hello World\0", valueOf(link.getLastRequest()));
+
+		link.acknowledge(GattLink.GATT_SUCCESS);
+		assertEquals("02Again\0", valueOf(link.getLastRequest()));
+		assertEquals("[Hello World, Again]", received.toString());
+	}
+
+	@Test
+	public void longLoopBack_isFragmentedToMtu() throws Exception {
+		final FakeGattLink link = connectAndSubscribe();
+		link.acknowledge(GattLink.GATT_SUCCESS);   //"Ready"
+
+		final String message = repeat('a', 45);
+		for (byte[] chunk : Fragmenter.split((message + "\0").getBytes(), GattLink.DEFAULT_MTU)) {
+			link.notify(RX, chunk);
+		}
+		//one chunk in flight at a time
+		assertEquals(2, link.getRequests(FakeGattLink.WRITE_CHARACTERISTIC).size());
+		link.acknowledge(GattLink.GATT_SUCCESS);
+		link.acknowledge(GattLink.GATT_SUCCESS);
+		link.acknowledge(GattLink.GATT_SUCCESS);
+
+		final List<FakeGattLink.Request> writes = link.getRequests(FakeGattLink.WRITE_CHARACTERISTIC);
+		final List<FakeGattLink.Request> frame = writes.subList(1, writes.size());
+		assertEquals(3, frame.size());
+		for (FakeGattLink.Request request : frame) {
+			assertTrue(request.value.length <= Fragmenter.getPayloadSize(GattLink.DEFAULT_MTU));
+		}
+		assertEquals("01" + message + "\0", join(frame));
+	}
+
+	@Test
+	public void chunkedNotifications_areReceivedAsOneMessage() throws Exception {
+		final FakeGattLink link = connectAndSubscribe();
+
+		final String message = repeat('b', 30);
+		for (byte[] chunk : Fragmenter.split((message + "\0").getBytes(), GattLink.DEFAULT_MTU)) {
+			link.notify(RX, chunk);
+		}
+		assertEquals(Collections.singletonList(message), received);
+	}
+
+	/**
+	 * loop back messages of 200 bytes on a link whose write response comes 2 connection intervals later
+	 */
+	private long measureLoopBackBytesPerSecond(int mtu) {
+		final long interval = 15;   //connection interval, in millisecond
+		final FakeGattLink link = connectAndSubscribe(mtu);
+
+		int acknowledged = 0;
+		long bytes = 0;
+		final long start = scheduler.now();
+		for (int i = 0; i < 50; i++) {
+			final String message = repeat('c', 200);
+			for (byte[] chunk : Fragmenter.split((message + "\0").getBytes(), mtu)) {
+				link.notify(RX, chunk);
+			}
+
+			//writes are serial, the last request is the one in flight
+			List<FakeGattLink.Request> writes;
+			while ((writes = link.getRequests(FakeGattLink.WRITE_CHARACTERISTIC)).size() > acknowledged) {
+				scheduler.advanceBy(2 * interval);
+				link.acknowledge(GattLink.GATT_SUCCESS);
+				final FakeGattLink.Request write = writes.get(acknowledged++);
+				if (acknowledged > 1) bytes += write.value.length;   //not "Ready"
+			}
+		}
+		central.disconnect();
+		return bytes * 1000 / (scheduler.now() - start);
+	}
+
+	@Test
+	public void largerMtu_increasesLoopBackThroughput() throws Exception {
+		final long small = measureLoopBackBytesPerSecond(GattLink.DEFAULT_MTU);
+		final long large = measureLoopBackBytesPerSecond(GattSession.PREFERRED_MTU);
+
+		assertEquals(100, received.size());
+		assertTrue(small > 0);
+		assertTrue(large >= small * 5);
+	}
+
+	@Test
+	public void disconnect_closesLink() throws Exception {
+		final FakeGattLink link = connectAndSubscribe();
+
+		central.disconnect();
+		assertTrue(link.isDisconnected());
+		assertTrue(link.isClosed());
+	}
+
+	@Test
+	public void deviceNotFound_failsToConnect() throws Exception {
+		connector.setDeviceFound(false);
+		central.connect(peripheral, listener);
+		assertEquals("[fail]", events.toString());
+	}
+}
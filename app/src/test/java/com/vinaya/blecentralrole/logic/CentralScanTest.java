@@ -0,0 +1,129 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.logic.scanner.ScanConfig;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * feature 1 and 2, driven by a fake scanner instead of the radio
+ */
+public class CentralScanTest {
+	private final static UUID SERVICE_UUID = UUID.fromString("abc00001-1234-5678-1234-abcd0123abcd");
+
+	private FakeScanner scanner;
+	private FakeScheduler scheduler;
+	private Central central;
+
+	private List<Peripheral> lastScanned;
+	private int scannedCount;
+	private int failedCode;
+
+	private final Central.ScanListener scanListener = new Central.ScanListener() {
+		@Override
+		public void onScanned(ScanDiff diff) {
+			lastScanned = diff.getPeripheralList();
+			scannedCount++;
+		}
+
+		@Override
+		public void onFailed(int errorCode) {
+			failedCode = errorCode;
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		this.scanner = new FakeScanner();
+		this.scheduler = new FakeScheduler();
+		this.central = new Central(null, null, scanner, null, scheduler);
+	}
+
+	@Test
+	public void scan_deduplicatesByAddress() throws Exception {
+		central.scan(scanListener, 2000);
+
+		scanner.advertise(FakeScanner.address(1), -40, SERVICE_UUID);
+		scanner.advertise(FakeScanner.address(2), -50);
+		scanner.advertise(FakeScanner.address(1), -45, SERVICE_UUID);
+		scheduler.advanceBy(1000);
+
+		assertEquals(1, scannedCount);
+		assertEquals(2, lastScanned.size());
+		assertEquals(-45, lastScanned.get(0).getRssi());
+		assertEquals(-50, lastScanned.get(1).getRssi());
+	}
+
+	@Test
+	public void scan_ignoresNullPeripheral() throws Exception {
+		central.scan(scanListener, 2000);
+		scanner.advertise((Peripheral) null);
+		scheduler.advanceBy(1000);
+		assertEquals(0, scannedCount);
+	}
+
+	@Test
+	public void scan_reportsFailure() throws Exception {
+		central.scan(scanListener, 2000);
+		scanner.fail(2);
+		assertEquals(2, failedCode);
+	}
+
+	@Test
+	public void rescan_stopsPreviousScan() throws Exception {
+		central.scan(scanListener, 2000);
+		central.scan(scanListener, 2000);
+		assertEquals(2, scanner.getStartCount());
+		assertEquals(1, scanner.getStopCount());
+
+		central.stop();
+		assertFalse(scanner.isScanning());
+		assertEquals(0, scheduler.getPendingCount());
+	}
+
+	@Test
+	public void scan_reportsOnlyFilteredPeripherals() throws Exception {
+		final ScanConfig config = new ScanConfig.Builder()
+			.addServiceFilter(SERVICE_UUID)
+			.addAddressFilter(FakeScanner.address(3).toLowerCase())
+			.setScanMode(ScanConfig.SCAN_MODE_BALANCED)
+			.setReportDelay(500)
+			.build();
+		central.setScanConfig(config);
+		central.scan(scanListener, 2000);
+		assertSame(config, scanner.getConfig());
+
+		scanner.advertise(FakeScanner.address(1), -40, SERVICE_UUID);
+		scanner.advertise(FakeScanner.address(2), -50);
+		scanner.advertise(FakeScanner.address(3), -60);
+		scheduler.advanceBy(1000);
+
+		assertEquals(2, scanner.getReportCount());
+		assertEquals(2, lastScanned.size());
+		assertEquals(FakeScanner.address(1), lastScanned.get(0).getAddress());
+		assertEquals(FakeScanner.address(3), lastScanned.get(1).getAddress());
+	}
+
+	@Test
+	public void scanConfig_matchesAnyFilter() throws Exception {
+		final List<UUID> services = Collections.singletonList(SERVICE_UUID);
+		assertTrue(ScanConfig.DEFAULT.matches("00:00:00:00:00:01", null, null));
+
+		final ScanConfig config = new ScanConfig.Builder()
+			.addFilter(new ScanConfig.Filter(SERVICE_UUID, "sensor", null))
+			.addNameFilter("thermometer")
+			.build();
+		assertTrue(config.matches("00:00:00:00:00:01", "sensor", services));
+		assertFalse(config.matches("00:00:00:00:00:01", "other", services));
+		assertFalse(config.matches("00:00:00:00:00:01", "sensor", Collections.<UUID>emptyList()));
+		assertFalse(config.matches("00:00:00:00:00:01", "sensor", null));
+		assertTrue(config.matches("00:00:00:00:00:02", "thermometer", null));
+	}
+}
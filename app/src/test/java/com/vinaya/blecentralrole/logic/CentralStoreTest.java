@@ -0,0 +1,81 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Central on its event loop stopped as the service is destroyed: the last write of the store is handed off before the loop quits
+ */
+public class CentralStoreTest {
+	private final static long TIMEOUT = 10;    //in second
+	private final static UUID SERVICE_UUID = UUID.fromString("abc00001-1234-5678-1234-abcd0123abcd");
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		this.file = File.createTempFile("peripherals", ".bin");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void stopThenQuit_savesTheStore() throws Exception {
+		final PeripheralStore previousRun = new PeripheralStore(file);
+		previousRun.onConnected(FakeScanner.peripheral(1, -50, SERVICE_UUID), 1000);
+		previousRun.save();
+
+		final EventLoop loop = new EventLoop("central");
+		final ExecutorService storeExecutor = Executors.newSingleThreadExecutor();
+		final FakeScanner scanner = new FakeScanner();
+		final Central central = new Central(null, null, scanner, null, loop, loop);
+		central.setPeripheralStore(new PeripheralStore(file), storeExecutor);
+		final CountDownLatch restored = new CountDownLatch(1);
+		central.scan(new Central.ScanListener() {
+			@Override
+			public void onScanned(ScanDiff diff) {
+				//read off the loop, listed before its first advertisement
+				if (false == diff.getAdded().isEmpty()) restored.countDown();
+			}
+
+			@Override
+			public void onFailed(int errorCode) {
+			}
+		}, 10000);
+		assertTrue(restored.await(TIMEOUT, TimeUnit.SECONDS));
+
+		//the RSSI seen during the scan is only written after the save delay, unless stopped before
+		scanner.advertise(FakeScanner.peripheral(1, -80, SERVICE_UUID));
+		central.stop();
+		//as the service does on its way out
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				storeExecutor.shutdown();
+			}
+		});
+		loop.quit();
+
+		assertTrue(storeExecutor.awaitTermination(TIMEOUT, TimeUnit.SECONDS));
+		final List<Peripheral> peripherals = new PeripheralStore(file).getPeripherals();
+		assertEquals(1, peripherals.size());
+		assertEquals(-80, peripherals.get(0).getRssi());
+	}
+}
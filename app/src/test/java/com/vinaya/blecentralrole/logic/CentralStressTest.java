@@ -0,0 +1,246 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.logic.scanner.BLEScanner;
+import com.vinaya.blecentralrole.logic.scanner.ScanConfig;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Central on its event loop, with the scan results coming from many threads at once as they do from the binder threads:
+ * every diff must apply to the list of the one before, whatever the interleaving
+ */
+public class CentralStressTest {
+	private final static long TIMEOUT = 10;    //in second
+	private final static long TTL = 20;        //in millisecond
+	private final static int EDGE = 1 << 20;   //index of the first address of the devices at the edge of the range
+	private final static int EDGE_DEVICES = 4;
+	private final static int EDGE_ROUNDS = 40;
+
+	/**
+	 * a scanner whose results come from the threads of the test
+	 */
+	private static class ConcurrentScanner implements BLEScanner {
+		private volatile BLEScanListener listener;
+
+		@Override
+		public ScanTask asyncScan(ScanConfig config, BLEScanListener listener) {
+			this.listener = listener;
+			return new ScanTask() {
+				@Override
+				public void stop() {
+					ConcurrentScanner.this.listener = null;
+				}
+			};
+		}
+
+		void advertise(Peripheral peripheral) {
+			final BLEScanListener listener = this.listener;
+			if (listener != null) listener.onDiscovered(peripheral);
+		}
+	}
+
+	/**
+	 * the peripheral list as the UI builds it from the diffs, checked against the snapshot of every diff.
+	 * The rows are also kept in order the way the list adapter does
+	 */
+	private static class DiffChecker implements Central.ScanListener {
+		private final EventLoop loop;
+		private final Map<Long, Peripheral> list = new HashMap<>();
+		private List<Peripheral> rows = Collections.emptyList();
+		private final Map<Long, Integer> positions = new HashMap<>();
+		int diffCount;
+		int inPlaceCount;
+		int addedCount;
+		int removedCount;
+		int errorCount;
+
+		DiffChecker(EventLoop loop) {
+			this.loop = loop;
+		}
+
+		@Override
+		public void onScanned(ScanDiff diff) {
+			if (false == loop.isInLoop()) errorCount++;
+			diffCount++;
+			for (Peripheral peripheral : diff.getAdded()) {
+				if (list.put(peripheral.getMacAddress(), peripheral) != null) errorCount++;
+				addedCount++;
+			}
+			for (Peripheral peripheral : diff.getUpdated()) {
+				if (list.put(peripheral.getMacAddress(), peripheral) == null) errorCount++;
+			}
+			for (Peripheral peripheral : diff.getRemoved()) {
+				if (list.remove(peripheral.getMacAddress()) == null) errorCount++;
+				removedCount++;
+			}
+
+			if (list.size() != diff.getPeripheralList().size()) errorCount++;
+			for (Peripheral peripheral : diff.getPeripheralList()) {
+				if (list.get(peripheral.getMacAddress()) != peripheral) errorCount++;
+			}
+			checkOrder(diff);
+		}
+
+		/**
+		 * when nothing is removed, the added ones are appended and the updated ones are where they were,
+		 * the adapter only rebinds these: every other row must be in place too
+		 */
+		private void checkOrder(ScanDiff diff) {
+			final List<Peripheral> newList = diff.getPeripheralList();
+			final List<Peripheral> added = diff.getAdded();
+			boolean isInPlace = diff.getRemoved().isEmpty() && newList.size() == rows.size() + added.size();
+			for (int i = 0; isInPlace && i < added.size(); i++) {
+				isInPlace = newList.get(rows.size() + i) == added.get(i);
+			}
+			final Map<Long, Peripheral> updated = new HashMap<>();
+			for (Peripheral peripheral : diff.getUpdated()) {
+				final Integer position = positions.get(peripheral.getMacAddress());
+				isInPlace = isInPlace && position != null && newList.get(position) == peripheral;
+				updated.put(peripheral.getMacAddress(), peripheral);
+			}
+
+			if (isInPlace) {
+				inPlaceCount++;
+				for (int i = 0; i < rows.size(); i++) {
+					final Peripheral row = rows.get(i);
+					final Peripheral latest = updated.get(row.getMacAddress());
+					if (newList.get(i) != (latest == null ? row : latest)) errorCount++;
+				}
+			}
+
+			this.rows = newList;
+			positions.clear();
+			for (int i = 0; i < newList.size(); i++) {
+				positions.put(newList.get(i).getMacAddress(), i);
+			}
+		}
+
+		@Override
+		public void onFailed(int errorCode) {
+			errorCount++;
+		}
+	}
+
+	private static void awaitIdle(EventLoop loop) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(TIMEOUT, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * @return once all the peripherals discovered have been evicted and delivered, or after the timeout.
+	 * The list stays empty for a TTL, so that no diff of the last advertisements is still pending
+	 */
+	private static void awaitAllRemoved(EventLoop loop, final DiffChecker checker) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+		final boolean[] isEmpty = new boolean[1];
+		int emptyCount = 0;
+		while (emptyCount < 2 && System.nanoTime() < deadline) {
+			Thread.sleep(TTL);
+			final CountDownLatch latch = new CountDownLatch(1);
+			loop.execute(new Runnable() {
+				@Override
+				public void run() {
+					isEmpty[0] = checker.list.isEmpty();
+					latch.countDown();
+				}
+			});
+			assertTrue(latch.await(TIMEOUT, TimeUnit.SECONDS));
+			emptyCount = isEmpty[0] ? emptyCount + 1 : 0;
+		}
+	}
+
+	@Test
+	public void concurrentScanResults_diffsStayConsistent() throws Exception {
+		final int producers = 8;
+		final int advertisementsPerProducer = 20000;
+		final int devicesAround = 64;
+
+		final EventLoop loop = new EventLoop("central");
+		final ConcurrentScanner scanner = new ConcurrentScanner();
+		final Central central = new Central(null, null, scanner, null, loop, loop);
+		central.setScanDispatch(5, 32);
+		central.setMaxScanIdle(0);
+		central.setPeripheralTtl(TTL);
+
+		final DiffChecker checker = new DiffChecker(loop);
+		central.scan(checker, 10000);
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(producers);
+		for (int p = 0; p < producers; p++) {
+			final Random random = new Random(p);
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < advertisementsPerProducer; i++) {
+						//the devices around move on, so that the ones left behind are evicted meanwhile
+						final int device = (i / 2000) * devicesAround + random.nextInt(devicesAround);
+						scanner.advertise(new Peripheral(FakeScanner.address(device), null,
+							-40 - random.nextInt(50), Collections.<UUID>emptyList()));
+						if (i % 2000 == 0) Thread.yield();
+					}
+					done.countDown();
+				}
+			}, "binder " + p).start();
+		}
+
+		//a few devices heard again about when they are evicted, often within the window of their eviction,
+		//which moves the last peripheral of the registry into their place
+		final Thread edge = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final Random random = new Random(producers);
+				try {
+					start.await();
+					for (int round = 0; round < EDGE_ROUNDS; round++) {
+						for (int i = 0; i < EDGE_DEVICES; i++) {
+							scanner.advertise(new Peripheral(FakeScanner.address(EDGE + i), null, -90, Collections.<UUID>emptyList()));
+						}
+						Thread.sleep(TTL + random.nextInt((int) TTL / 2));
+					}
+				} catch (InterruptedException e) {
+					//the test fails on the counts
+				}
+			}
+		}, "edge");
+		edge.start();
+
+		start.countDown();
+		assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+		edge.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+		awaitAllRemoved(loop, checker);
+		central.stop();
+		awaitIdle(loop);
+		loop.quit();
+
+		assertEquals(0, checker.errorCount);
+		assertTrue(checker.diffCount > 1);
+		assertTrue(checker.inPlaceCount > 0);
+		assertTrue(checker.addedCount >= devicesAround * advertisementsPerProducer / 2000);
+		assertEquals(checker.addedCount, checker.removedCount);
+		assertTrue(checker.list.isEmpty());
+	}
+}
@@ -0,0 +1,140 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.BuildConfig;
+import com.vinaya.blecentralrole.logic.gatt.SimulatedGattConnector;
+import com.vinaya.blecentralrole.model.Peripheral;
+import com.vinaya.blecentralrole.model.ServiceProfiles;
+import com.vinaya.blecentralrole.model.UUIDRepository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Time from a cold start to the first connection of the peripheral used last time, on the virtual clock:
+ * the first run finds it by its advertisement and connects on discovery, the second run connects
+ * to it from the store at once, in parallel with the scan.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ColdStartTest {
+	private final static UUID SERVICE_UUID = UUID.fromString("abc00001-1234-5678-1234-abcd0123abcd");
+	private final static String ADDRESS = FakeScanner.address(7);
+	private final static long ADVERTISING_INTERVAL = 1000;    //a peripheral saving its battery, in millisecond
+	private final static long SCAN_PERIOD = 2000;             //in millisecond
+	private final static long TIMEOUT = 10000;                //in millisecond
+	private final static int TRIALS = 50;
+
+	//the store is read and written on the thread of the test as well
+	private final static Executor DIRECT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private UUIDRepository repository;
+	private File file;
+
+	private static class Result {
+		long connected = -1;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		this.repository = ServiceProfiles.load(RuntimeEnvironment.application.getResources());
+		this.file = File.createTempFile("peripherals", ".bin");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	/**
+	 * start the application, the peripheral advertises first after the phase
+	 */
+	private Result coldStart(long phase) {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final FakeScanner scanner = new FakeScanner();
+		final Central central = new Central(RuntimeEnvironment.application, repository,
+			scanner, new SimulatedGattConnector(scheduler, 247), scheduler);
+		central.setPeripheralStore(new PeripheralStore(file), DIRECT_EXECUTOR);
+
+		final Result result = new Result();
+		final Central.ConnectListener listener = new NoOpConnectListener() {
+			@Override
+			public void onConnected(Peripheral peripheral) {
+				if (result.connected < 0) result.connected = scheduler.now();
+			}
+		};
+
+		central.scan(new Central.ScanListener() {
+			@Override
+			public void onScanned(ScanDiff diff) {
+				//the best case without the store: connect as soon as it is discovered
+				for (Peripheral peripheral : diff.getAdded()) {
+					if (peripheral.getAddress().equals(ADDRESS)) central.connect(peripheral, listener);
+				}
+			}
+
+			@Override
+			public void onFailed(int errorCode) {
+				fail("unexpected scan failure");
+			}
+		}, SCAN_PERIOD);
+		central.connectLast(listener);
+
+		final List<UUID> services = Collections.singletonList(SERVICE_UUID);
+		for (long time = phase; result.connected < 0 && time < TIMEOUT; time += ADVERTISING_INTERVAL) {
+			scheduler.advanceTo(time);
+			scanner.advertise(ADDRESS, "loop back", -60, services);
+		}
+		scheduler.advanceBy(ADVERTISING_INTERVAL);
+
+		//the store is written on the way out
+		central.stop();
+		scheduler.advanceBy(ADVERTISING_INTERVAL);
+		return result;
+	}
+
+	@Test
+	public void storedPeripheral_connectsBeforeAdvertising() throws Exception {
+		final Random random = new Random(3);
+		long scannedTotal = 0, storedTotal = 0, storedMax = 0;
+
+		for (int i = 0; i < TRIALS; i++) {
+			file.delete();
+			final long phase = random.nextInt((int) ADVERTISING_INTERVAL);
+
+			final Result scanned = coldStart(phase);
+			assertTrue(scanned.connected >= phase);
+			assertTrue(file.length() > 0);
+
+			final Result stored = coldStart(phase);
+			assertTrue(stored.connected >= 0);
+
+			scannedTotal += scanned.connected;
+			storedTotal += stored.connected;
+			storedMax = Math.max(storedMax, stored.connected);
+		}
+		assertEquals(ADDRESS, new PeripheralStore(file).getLastConnected().getAddress());
+
+		//the connection does not wait for the advertisement any more
+		assertTrue(storedMax < ADVERTISING_INTERVAL / 4);
+		assertTrue(storedTotal < scannedTotal / 4);
+	}
+}
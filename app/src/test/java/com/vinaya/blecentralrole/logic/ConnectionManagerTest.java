@@ -0,0 +1,205 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.BuildConfig;
+import com.vinaya.blecentralrole.logic.gatt.FakeGattConnector;
+import com.vinaya.blecentralrole.logic.gatt.FakeGattLink;
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+import com.vinaya.blecentralrole.logic.gatt.SimulatedGattConnector;
+import com.vinaya.blecentralrole.model.Peripheral;
+import com.vinaya.blecentralrole.model.ServiceProfiles;
+import com.vinaya.blecentralrole.model.UUIDRepository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ConnectionManagerTest {
+	private final static UUID RX = UUID.fromString("abc00003-1234-5678-1234-abcd0123abcd");
+
+	private FakeScheduler scheduler;
+	private PeripheralRegistry registry;
+	private UUIDRepository uuidRepository;
+	private final List<String> events = new ArrayList<>();
+
+	private final Central.ConnectListener listener = new NoOpConnectListener() {
+		@Override
+		public void onConnected(Peripheral peripheral) {
+			events.add("connected " + peripheral.getName());
+		}
+
+		@Override
+		public void onDisconnected(Peripheral peripheral, boolean isManually) {
+			events.add((isManually ? "disconnected manually " : "disconnected ") + peripheral.getName());
+		}
+
+		@Override
+		public void onReceived(Peripheral peripheral, CharSequence data) {
+			events.add(peripheral.getName() + " received " + data);
+		}
+
+		@Override
+		public void onConnectFail(Peripheral peripheral) {
+			events.add("fail " + peripheral.getName());
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		this.scheduler = new FakeScheduler();
+		this.registry = new PeripheralRegistry();
+		this.uuidRepository = ServiceProfiles.load(RuntimeEnvironment.application.getResources());
+	}
+
+	private ConnectionManager manager(GattLink.Connector connector, int maxConnections) {
+		return new ConnectionManager(connector, scheduler, registry, uuidRepository, "Ready", maxConnections);
+	}
+
+	/**
+	 * bring the fake link to the ready state
+	 */
+	private static void subscribe(FakeGattLink link) {
+		link.connected();
+		link.mtuChanged(GattLink.DEFAULT_MTU);
+		link.servicesDiscovered();
+		link.acknowledge(GattLink.GATT_SUCCESS);   //descriptor
+		link.acknowledge(GattLink.GATT_SUCCESS);   //"Ready"
+	}
+
+	@Test
+	public void pool_isBounded() throws Exception {
+		final ConnectionManager manager = manager(new FakeGattConnector(), 2);
+
+		assertTrue(manager.connect(FakeScanner.peripheral(1, -50), listener, ReconnectPolicy.IMMEDIATE));
+		assertTrue(manager.connect(FakeScanner.peripheral(2, -50), listener, ReconnectPolicy.IMMEDIATE));
+		assertTrue("already connected", manager.connect(FakeScanner.peripheral(1, -50), listener, ReconnectPolicy.IMMEDIATE));
+		assertFalse(manager.connect(FakeScanner.peripheral(3, -50), listener, ReconnectPolicy.IMMEDIATE));
+		assertEquals(2, manager.size());
+
+		manager.disconnect(FakeScanner.peripheral(1, -50));
+		assertTrue(manager.connect(FakeScanner.peripheral(3, -50), listener, ReconnectPolicy.IMMEDIATE));
+	}
+
+	@Test
+	public void sessions_haveOwnCounterAndFlags() throws Exception {
+		final FakeGattConnector connector = new FakeGattConnector();
+		final ConnectionManager manager = manager(connector, 4);
+		final Peripheral p1 = FakeScanner.peripheral(1, -50);
+		final Peripheral p2 = FakeScanner.peripheral(2, -50);
+		registry.upsert(FakeScanner.peripheral(1, -50));
+		registry.upsert(FakeScanner.peripheral(2, -50));
+
+		manager.connect(p1, listener, ReconnectPolicy.IMMEDIATE);
+		final FakeGattLink link1 = connector.getLastLink();
+		manager.connect(p2, listener, ReconnectPolicy.IMMEDIATE);
+		final FakeGattLink link2 = connector.getLastLink();
+		subscribe(link1);
+		subscribe(link2);
+
+		link1.notify(RX, "a\0".getBytes());
+		link2.notify(RX, "b\0".getBytes());
+		assertEquals("01a\0", new String(link1.getLastRequest().value));
+		assertEquals("01b\0", new String(link2.getLastRequest().value));
+		assertEquals(GattSession.State.READY, manager.get(p1.getMacAddress()).getState());
+
+		//the registry keeps the flag of every session across newer scan results
+		registry.upsert(FakeScanner.peripheral(2, -50));
+		assertTrue(registry.get(p1.getMacAddress()).isConnected());
+		assertTrue(registry.get(p2.getMacAddress()).isConnected());
+
+		manager.disconnect(p1);
+		assertFalse(registry.get(p1.getMacAddress()).isConnected());
+		assertTrue(registry.get(p2.getMacAddress()).isConnected());
+		assertTrue(link1.isClosed());
+		assertFalse(link2.isClosed());
+		assertEquals("[connected device 1, connected device 2, device 1 received a, device 2 received b, disconnected manually device 1]", events.toString());
+	}
+
+	@Test
+	public void lostLink_isReplacedByPolicy() throws Exception {
+		final FakeGattConnector connector = new FakeGattConnector();
+		final ConnectionManager manager = manager(connector, 4);
+		final ReconnectPolicy never = new ReconnectPolicy() {
+			@Override
+			public long getDelay(int failures) {
+				return NO_RECONNECT;
+			}
+
+			@Override
+			public boolean isAutoConnect(int failures) {
+				return false;
+			}
+		};
+
+		manager.connect(FakeScanner.peripheral(1, -50), listener, ReconnectPolicy.IMMEDIATE);
+		manager.connect(FakeScanner.peripheral(2, -50), listener, never);
+		final FakeGattLink link1 = connector.getLinks().get(0);
+		final FakeGattLink link2 = connector.getLinks().get(1);
+		subscribe(link1);
+		subscribe(link2);
+
+		link1.disconnected(8);
+		link2.disconnected(8);
+		assertTrue(link1.isClosed());
+		assertEquals(GattSession.State.WAITING_TO_RECONNECT, manager.get(FakeScanner.peripheral(1, -50).getMacAddress()).getState());
+		assertNull(manager.get(FakeScanner.peripheral(2, -50).getMacAddress()));
+
+		scheduler.advanceBy(0);
+		assertEquals(3, connector.getLinks().size());
+		assertEquals(1, connector.getOpenCount());
+
+		//the closed link is ignored
+		link1.connected();
+		assertEquals(GattSession.State.CONNECTING, manager.get(FakeScanner.peripheral(1, -50).getMacAddress()).getState());
+	}
+
+	/**
+	 * every device sends messages of 200 bytes as fast as they are looped back
+	 */
+	private long measureAggregateBytesPerSecond(int devices) {
+		this.scheduler = new FakeScheduler();
+		final SimulatedGattConnector connector = new SimulatedGattConnector(scheduler, GattLink.DEFAULT_MTU);
+		final ConnectionManager manager = manager(connector, devices);
+		for (int i = 0; i < devices; i++) {
+			assertTrue(manager.connect(FakeScanner.peripheral(i, -50), listener, ReconnectPolicy.IMMEDIATE));
+		}
+		scheduler.advanceBy(1000);
+		final long start = scheduler.now();
+		final long readyBytes = connector.getWrittenBytes();
+
+		final char[] message = new char[200];
+		Arrays.fill(message, 'x');
+		for (int i = 0; i < 20; i++) {
+			for (SimulatedGattConnector.SimulatedGattLink link : connector.getLinks()) {
+				link.notifyMessage(RX, new String(message));
+			}
+		}
+		final long expected = readyBytes + 20L * devices * ("01".length() + message.length + 1);
+		while (connector.getWrittenBytes() < expected) {
+			scheduler.advanceBy(SimulatedGattConnector.INTERVAL);
+		}
+
+		manager.disconnectAll();
+		return (connector.getWrittenBytes() - readyBytes) * 1000 / (scheduler.now() - start);
+	}
+
+	@Test
+	public void aggregateThroughput_scalesWithLinks() throws Exception {
+		final long one = measureAggregateBytesPerSecond(1);
+		final long four = measureAggregateBytesPerSecond(4);
+
+		assertTrue(one > 0);
+		assertTrue(four >= one * 3);
+	}
+}
@@ -0,0 +1,34 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A ConnectListener which ignores everything, the tests override what they look at
+ */
+public class NoOpConnectListener implements Central.ConnectListener {
+	@Override
+	public void onConnected(Peripheral peripheral) {
+	}
+
+	@Override
+	public void onDisconnected(Peripheral peripheral, boolean isManually) {
+	}
+
+	@Override
+	public void onReceived(Peripheral peripheral, CharSequence data) {
+	}
+
+	@Override
+	public void onFrame(Peripheral peripheral, int sequence, int type, ByteBuffer payload) {
+	}
+
+	@Override
+	public void onConnectFail(Peripheral peripheral) {
+	}
+
+	@Override
+	public void onLinkChanged(Peripheral peripheral, LinkParameters parameters) {
+	}
+}
@@ -0,0 +1,101 @@
+package com.vinaya.blecentralrole.logic;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * 24 hours of scanning in a crowded venue on the simulated clock: people walk in,
+ * stay for a few minutes and leave, so that the addresses seen add up to far more than are around at once.
+ * The list delivered to the listener must stay bounded by the crowd, not by the addresses seen so far.
+ */
+public class PeripheralEvictionSoakTest {
+	private final static long DURATION = 24 * 60 * 60 * 1000;
+	private final static long TTL = 60000;                   //in millisecond
+	private final static long TICK = 1000;                   //in millisecond
+	private final static int ADVERTISING_TICKS = 5;          //every device advertises once per this number of ticks
+	private final static int ARRIVALS_PER_TICK = 2;
+	private final static int MAX_STAY = 5 * 60;              //in ticks
+
+	private static class Visitor {
+		final String address;
+		final long leaveAt;
+
+		Visitor(String address, long leaveAt) {
+			this.address = address;
+			this.leaveAt = leaveAt;
+		}
+	}
+
+	@Test
+	public void crowdedVenue_listStaysBounded() throws Exception {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final FakeScanner scanner = new FakeScanner();
+		final Central central = new Central(null, null, scanner, null, scheduler);
+		central.setScanDispatch(TICK, Integer.MAX_VALUE);
+		central.setMaxScanIdle(0);
+		central.setPeripheralTtl(TTL);
+
+		final int[] listSize = new int[2];    //current, max
+		final int[] removed = new int[1];
+		central.scan(new Central.ScanListener() {
+			@Override
+			public void onScanned(ScanDiff diff) {
+				listSize[0] = diff.getPeripheralList().size();
+				listSize[1] = Math.max(listSize[1], listSize[0]);
+				removed[0] += diff.getRemoved().size();
+			}
+
+			@Override
+			public void onFailed(int errorCode) {
+				fail("unexpected scan failure");
+			}
+		}, 2000);
+
+		final Random random = new Random(24);
+		final List<UUID> services = Collections.emptyList();
+		final ArrayDeque<Visitor> arriving = new ArrayDeque<>();
+		List<Visitor> present = new ArrayList<>();
+		int visitors = 0;
+		int maxPresent = 0;
+
+		for (long tick = 0; tick * TICK < DURATION; tick++) {
+			for (int i = 0; i < ARRIVALS_PER_TICK; i++) {
+				final long leaveAt = tick + 1 + random.nextInt(MAX_STAY);
+				arriving.add(new Visitor(FakeScanner.address(visitors++), leaveAt));
+			}
+			present.addAll(arriving);
+			arriving.clear();
+
+			final List<Visitor> staying = new ArrayList<>(present.size());
+			for (int i = 0; i < present.size(); i++) {
+				final Visitor visitor = present.get(i);
+				if (visitor.leaveAt <= tick) continue;
+				staying.add(visitor);
+				if ((tick + i) % ADVERTISING_TICKS == 0) scanner.advertise(visitor.address, null, -60, services);
+			}
+			present = staying;
+			maxPresent = Math.max(maxPresent, present.size());
+
+			scheduler.advanceBy(TICK);
+		}
+
+		//everybody leaves, and is forgotten after at most 1.25 TTL
+		present.clear();
+		scheduler.advanceBy(TTL + TTL / 4 + TICK);
+		central.stop();
+
+		//the ones around, plus those gone within the last TTL and a quarter
+		final int bound = maxPresent + (int) (ARRIVALS_PER_TICK * (TTL + TTL / 4 + ADVERTISING_TICKS * TICK) / TICK);
+		assertTrue("max listed " + listSize[1] + " > " + bound, listSize[1] <= bound);
+		assertEquals(0, listSize[0]);
+		assertTrue(removed[0] > visitors * 9 / 10);
+	}
+}
@@ -0,0 +1,217 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.BuildConfig;
+import com.vinaya.blecentralrole.logic.gatt.FakeGattLink;
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+import com.vinaya.blecentralrole.model.MacAddress;
+import com.vinaya.blecentralrole.model.Peripheral;
+import com.vinaya.blecentralrole.model.ServiceProfiles;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * feature 7 when the devices go out of range, on the virtual clock
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ReconnectStormTest {
+	private final static int DEVICES = 4;
+	private final static long CONNECT_TIMEOUT = 30;   //a direct connection to an absent device fails after this
+
+	/**
+	 * devices which can be out of range, a direct connection then fails and an autoConnect one waits
+	 */
+	private class RangeConnector implements GattLink.Connector {
+		final List<FakeGattLink> links = new ArrayList<>();
+		boolean isInRange = true;
+		int maxOpenCount;
+
+		@Override
+		public GattLink connect(String address, boolean autoConnect, GattLink.Callback callback) {
+			final FakeGattLink link = new FakeGattLink(address, autoConnect, callback);
+			links.add(link);
+			maxOpenCount = Math.max(maxOpenCount, getOpenCount());
+
+			if (false == isInRange && false == autoConnect) {
+				scheduler.schedule(new Runnable() {
+					@Override
+					public void run() {
+						if (false == link.isClosed()) link.disconnected(133);
+					}
+				}, CONNECT_TIMEOUT);
+			}
+			return link;
+		}
+
+		int getOpenCount() {
+			int count = 0;
+			for (FakeGattLink link : links) {
+				if (false == link.isClosed()) count++;
+			}
+			return count;
+		}
+	}
+
+	private final ConnectionMetrics recorder = new ConnectionMetrics() {
+		@Override
+		public void onConnectAttempt(Peripheral peripheral, int attempt, boolean isAutoConnect) {
+			attempts++;
+		}
+
+		@Override
+		public void onConnected(Peripheral peripheral, int attempts, long elapsedMillis) {
+			connected.add(attempts);
+		}
+
+		@Override
+		public void onConnectFailed(Peripheral peripheral, int failures, long nextDelay) {
+			delays.add(nextDelay);
+		}
+
+		@Override
+		public void onServicesDiscovered(Peripheral peripheral, long elapsedMillis) {
+		}
+
+		@Override
+		public void onNotification(Peripheral peripheral) {
+		}
+
+		@Override
+		public void onLoopBack(Peripheral peripheral, long roundTripMillis) {
+		}
+
+		@Override
+		public void onWrite(Peripheral peripheral, int attempts, boolean isSuccess) {
+		}
+	};
+
+	private final Central.ConnectListener listener = new NoOpConnectListener();
+
+	private FakeScheduler scheduler;
+	private RangeConnector connector;
+	private int attempts;
+	private final List<Integer> connected = new ArrayList<>();
+	private final List<Long> delays = new ArrayList<>();
+
+	@Before
+	public void setUp() throws Exception {
+		this.scheduler = new FakeScheduler();
+		this.connector = new RangeConnector();
+	}
+
+	private ConnectionManager connectAll(ReconnectPolicy policy) {
+		final ConnectionManager manager = new ConnectionManager(connector, scheduler, new PeripheralRegistry(),
+			ServiceProfiles.load(RuntimeEnvironment.application.getResources()), "Ready", DEVICES);
+		manager.setMetrics(recorder);
+		for (int i = 0; i < DEVICES; i++) {
+			final Peripheral peripheral = FakeScanner.peripheral(i, -50);
+			manager.connect(peripheral, listener, policy);
+		}
+		for (FakeGattLink link : new ArrayList<>(connector.links)) {
+			link.connected();
+			link.mtuChanged(GattLink.DEFAULT_MTU);
+		}
+		return manager;
+	}
+
+	/**
+	 * all the devices go out of range together for 10 minutes
+	 */
+	private void stormOf(ReconnectPolicy policy) {
+		connectAll(policy);
+		connector.isInRange = false;
+		for (FakeGattLink link : new ArrayList<>(connector.links)) {
+			link.disconnected(8);
+		}
+		scheduler.advanceBy(10 * 60 * 1000);
+	}
+
+	@Test
+	public void backoff_delaysGrowWithJitterUpToCap() throws Exception {
+		final BackoffReconnectPolicy policy = new BackoffReconnectPolicy(100, 1000, 6, 3, 0.5, new Random(1));
+
+		long previousMax = 0;
+		for (int failures = 1; failures <= 6; failures++) {
+			final long max = Math.min(1000, 100L << (failures - 1));
+			final long delay = policy.getDelay(failures);
+			assertTrue(delay + " at " + failures, delay > max / 2 && delay <= max);
+			assertTrue(max >= previousMax);
+			previousMax = max;
+		}
+		assertEquals(ReconnectPolicy.NO_RECONNECT, policy.getDelay(7));
+		assertFalse(policy.isAutoConnect(2));
+		assertTrue(policy.isAutoConnect(3));
+		assertEquals(1000, new BackoffReconnectPolicy(1000, 60000, Integer.MAX_VALUE, 3, 0, new Random()).getDelay(1));
+		assertEquals(60000, new BackoffReconnectPolicy(1000, 60000, Integer.MAX_VALUE, 3, 0, new Random()).getDelay(100));
+	}
+
+	@Test
+	public void storm_isBoundedByBackoff() throws Exception {
+		stormOf(ReconnectPolicy.IMMEDIATE);
+		final int immediateAttempts = attempts;
+		final int immediateMaxOpen = connector.maxOpenCount;
+
+		setUp();
+		this.attempts = 0;
+		stormOf(new BackoffReconnectPolicy(1000, 60000, 10, 3, 0.5, new Random(7)));
+
+		//3 direct attempts each, the 4th is autoConnect and waits without timeout
+		assertEquals(DEVICES * (1 + 3), attempts);
+		assertTrue(immediateAttempts > attempts * 100);
+
+		//never more than one GATT client per session, even while storming
+		assertTrue(immediateMaxOpen <= DEVICES);
+		assertTrue(connector.maxOpenCount <= DEVICES);
+		assertEquals(DEVICES, connector.getOpenCount());
+
+		for (FakeGattLink link : connector.links) {
+			if (false == link.isClosed()) assertTrue(link.isAutoConnect());
+		}
+	}
+
+	@Test
+	public void backInRange_connectsByAutoConnect() throws Exception {
+		final ConnectionManager manager = connectAll(new BackoffReconnectPolicy(1000, 60000, 10, 3, 0.5, new Random(7)));
+		connector.isInRange = false;
+		final FakeGattLink first = connector.links.get(0);
+		first.disconnected(8);
+		scheduler.advanceBy(10 * 60 * 1000);
+
+		final FakeGattLink waiting = connector.links.get(connector.links.size() - 1);
+		assertTrue(waiting.isAutoConnect());
+		connector.isInRange = true;
+		waiting.connected();
+		waiting.mtuChanged(GattLink.DEFAULT_MTU);
+
+		assertEquals(GattSession.State.DISCOVERING, manager.get(MacAddress.parse(first.getAddress())).getState());
+		assertEquals(4, (int) connected.get(connected.size() - 1));
+
+		//the next loss starts from the first delay again
+		waiting.disconnected(8);
+		assertTrue(delays.get(delays.size() - 1) <= 1000);
+	}
+
+	@Test
+	public void manualDisconnect_stopsReconnecting() throws Exception {
+		final ConnectionManager manager = connectAll(new BackoffReconnectPolicy());
+		connector.isInRange = false;
+		connector.links.get(0).disconnected(8);
+
+		manager.disconnectAll();
+		scheduler.advanceBy(10 * 60 * 1000);
+		assertEquals(DEVICES, connector.links.size());
+		assertEquals(0, connector.getOpenCount());
+		assertEquals(0, scheduler.getPendingCount());
+	}
+}
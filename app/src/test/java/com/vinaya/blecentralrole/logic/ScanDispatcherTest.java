@@ -0,0 +1,230 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class ScanDispatcherTest {
+	private final static Executor DIRECT = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private final List<ScanDiff> delivered = new ArrayList<>();
+
+	private final Central.ScanListener recorder = new Central.ScanListener() {
+		@Override
+		public void onScanned(ScanDiff diff) {
+			delivered.add(diff);
+		}
+
+		@Override
+		public void onFailed(int errorCode) {
+			fail("unexpected scan failure");
+		}
+	};
+
+	@Test
+	public void changesWithinWindow_areMerged() throws Exception {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final PeripheralRegistry registry = new PeripheralRegistry();
+		final ScanDispatcher dispatcher = new ScanDispatcher(registry, scheduler, DIRECT, 100, 64, recorder);
+
+		//already delivered before this window
+		registry.upsert(FakeScanner.peripheral(9, -50));
+
+		dispatcher.onAdded(FakeScanner.peripheral(1, -40));
+		dispatcher.onUpdated(FakeScanner.peripheral(1, -41));
+		dispatcher.onAdded(FakeScanner.peripheral(2, -40));
+		dispatcher.onRemoved(FakeScanner.peripheral(2, -40));
+		dispatcher.onUpdated(FakeScanner.peripheral(9, -55));
+		dispatcher.onRemoved(FakeScanner.peripheral(9, -55));
+
+		scheduler.advanceBy(99);
+		assertTrue(delivered.isEmpty());
+
+		scheduler.advanceBy(1);
+		assertEquals(1, delivered.size());
+
+		final ScanDiff diff = delivered.get(0);
+		assertEquals(1, diff.getAdded().size());
+		assertEquals(-41, diff.getAdded().get(0).getRssi());
+		assertTrue(diff.getUpdated().isEmpty());
+		assertEquals(1, diff.getRemoved().size());
+		assertEquals(FakeScanner.peripheral(9, 0), diff.getRemoved().get(0));
+	}
+
+	@Test
+	public void fullBatch_isDeliveredBeforeWindowEnds() throws Exception {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final ScanDispatcher dispatcher = new ScanDispatcher(new PeripheralRegistry(), scheduler, DIRECT, 100, 3, recorder);
+
+		dispatcher.onAdded(FakeScanner.peripheral(1, -40));
+		dispatcher.onAdded(FakeScanner.peripheral(2, -40));
+		assertTrue(delivered.isEmpty());
+
+		dispatcher.onAdded(FakeScanner.peripheral(3, -40));
+		assertEquals(1, delivered.size());
+
+		//the window timer of the first change must not deliver an empty diff
+		scheduler.advanceBy(1000);
+		assertEquals(1, delivered.size());
+	}
+
+	@Test
+	public void cancel_dropsPendingChanges() throws Exception {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final ScanDispatcher dispatcher = new ScanDispatcher(new PeripheralRegistry(), scheduler, DIRECT, 100, 64, recorder);
+
+		dispatcher.onAdded(FakeScanner.peripheral(1, -40));
+		dispatcher.cancel();
+		dispatcher.onAdded(FakeScanner.peripheral(2, -40));
+
+		scheduler.advanceBy(1000);
+		assertTrue(delivered.isEmpty());
+		assertEquals(0, scheduler.getPendingCount());
+	}
+
+	@Test
+	public void diff_isImmutable() throws Exception {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final ScanDispatcher dispatcher = new ScanDispatcher(new PeripheralRegistry(), scheduler, DIRECT, 100, 64, recorder);
+
+		dispatcher.onAdded(FakeScanner.peripheral(1, -40));
+		dispatcher.flush();
+
+		final ScanDiff diff = delivered.get(0);
+		try {
+			diff.getAdded().clear();
+			fail("the changes should be immutable");
+		} catch (UnsupportedOperationException e) {
+			//expected
+		}
+		assertEquals(1, diff.getAdded().size());
+	}
+
+	@Test
+	public void removedAtOnce_fullBatchMatchesSnapshot() throws Exception {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final PeripheralRegistry registry = new PeripheralRegistry();
+		final ScanDispatcher dispatcher = new ScanDispatcher(registry, scheduler, DIRECT, 100, 2, recorder);
+		for (int i = 1; i <= 3; i++) {
+			registry.upsert(FakeScanner.peripheral(i, -50));
+		}
+
+		final List<Peripheral> evicted = new ArrayList<>();
+		registry.evictSeenBefore(1, evicted);
+		dispatcher.onRemoved(evicted);
+
+		assertEquals(1, delivered.size());
+		assertEquals(3, delivered.get(0).getRemoved().size());
+		assertTrue(delivered.get(0).getPeripheralList().isEmpty());
+	}
+
+	@Test
+	public void consecutiveDiffs_mergeLikeOneWindow() throws Exception {
+		final List<Peripheral> newerList = Collections.singletonList(FakeScanner.peripheral(1, -42));
+		final ScanDiff older = new ScanDiff(Collections.<Peripheral>emptyList(),
+			Arrays.asList(FakeScanner.peripheral(1, -40), FakeScanner.peripheral(2, -40)),
+			Collections.singletonList(FakeScanner.peripheral(9, -50)),
+			Collections.singletonList(FakeScanner.peripheral(8, -50)));
+		final ScanDiff newer = new ScanDiff(newerList,
+			Collections.singletonList(FakeScanner.peripheral(8, -60)),
+			Collections.singletonList(FakeScanner.peripheral(1, -42)),
+			Arrays.asList(FakeScanner.peripheral(2, -40), FakeScanner.peripheral(9, -50)));
+
+		assertSame(older, ScanDiff.merge(null, older));
+
+		final ScanDiff merged = ScanDiff.merge(older, newer);
+		assertSame(newerList, merged.getPeripheralList());
+		//added then updated: added in the latest state; added then removed: never seen
+		assertEquals(1, merged.getAdded().size());
+		assertEquals(-42, merged.getAdded().get(0).getRssi());
+		//removed then added again: updated
+		assertEquals(1, merged.getUpdated().size());
+		assertEquals(-60, merged.getUpdated().get(0).getRssi());
+		//updated then removed: removed
+		assertEquals(Collections.singletonList(FakeScanner.peripheral(9, 0)), merged.getRemoved());
+	}
+
+	/**
+	 * replay a recorded burst of advertisements through Central,
+	 * check how often the UI would be refreshed and how stale the data is when it arrives
+	 */
+	@Test
+	public void replayRecordedBurst() throws Exception {
+		final long window = 150;
+		final FakeScheduler scheduler = new FakeScheduler();
+		final FakeScanner scanner = new FakeScanner();
+		final Central central = new Central(null, null, scanner, null, scheduler);
+		central.setScanDispatch(window, 64);
+
+		//time of the oldest advertisement of every device not yet delivered
+		final Map<Long, Long> pendingSince = new HashMap<>();
+		final long[] maxLatency = new long[1];
+		final int[] dispatches = new int[1];
+
+		central.scan(new Central.ScanListener() {
+			@Override
+			public void onScanned(ScanDiff diff) {
+				dispatches[0]++;
+				final List<Peripheral> changed = new ArrayList<>(diff.getAdded());
+				changed.addAll(diff.getUpdated());
+				for (Peripheral p : changed) {
+					final long delay = scheduler.now() - pendingSince.remove(p.getMacAddress());
+					maxLatency[0] = Math.max(maxLatency[0], delay);
+				}
+			}
+
+			@Override
+			public void onFailed(int errorCode) {
+				fail("unexpected scan failure");
+			}
+		}, 2000);
+
+		int advertisements = 0;
+		long lastTime = 0;
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(
+			getClass().getClassLoader().getResourceAsStream("scan_burst.csv"), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("#")) continue;
+				final String[] fields = line.split(",");
+				lastTime = Long.parseLong(fields[0]);
+				scheduler.advanceTo(lastTime);
+
+				final Peripheral peripheral = new Peripheral(fields[1], null, Integer.parseInt(fields[2]), Collections.<UUID>emptyList());
+				if (false == pendingSince.containsKey(peripheral.getMacAddress())) {
+					pendingSince.put(peripheral.getMacAddress(), scheduler.now());
+				}
+				scanner.advertise(peripheral);
+				advertisements++;
+			}
+		} finally {
+			reader.close();
+		}
+		scheduler.advanceBy(window);
+
+		assertTrue(pendingSince.isEmpty());
+		assertTrue("at most one dispatch per window", dispatches[0] <= lastTime / window + 2);
+		assertTrue("batched", dispatches[0] < advertisements / 10);
+		assertTrue("delivered within the window", maxLatency[0] <= window);
+		central.stop();
+	}
+}
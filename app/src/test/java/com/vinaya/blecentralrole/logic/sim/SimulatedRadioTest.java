@@ -0,0 +1,404 @@
+package com.vinaya.blecentralrole.logic.sim;
+
+import com.vinaya.blecentralrole.BuildConfig;
+import com.vinaya.blecentralrole.logic.Central;
+import com.vinaya.blecentralrole.logic.FakeScanner;
+import com.vinaya.blecentralrole.logic.FakeScheduler;
+import com.vinaya.blecentralrole.logic.GattSession;
+import com.vinaya.blecentralrole.logic.LinkParameters;
+import com.vinaya.blecentralrole.logic.LinkProfile;
+import com.vinaya.blecentralrole.logic.NoOpConnectListener;
+import com.vinaya.blecentralrole.logic.ScanDiff;
+import com.vinaya.blecentralrole.logic.capture.CaptureLog;
+import com.vinaya.blecentralrole.logic.capture.CaptureReader;
+import com.vinaya.blecentralrole.logic.gatt.Frame;
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+import com.vinaya.blecentralrole.logic.metrics.MetricsSnapshot;
+import com.vinaya.blecentralrole.model.Peripheral;
+import com.vinaya.blecentralrole.model.ServiceProfile;
+import com.vinaya.blecentralrole.model.ServiceProfiles;
+import com.vinaya.blecentralrole.model.UUIDRepository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * the Central against simulated peripherals, from the scan to the loop back
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SimulatedRadioTest {
+	private UUIDRepository uuidRepository;
+	private ServiceProfile profile;
+
+	private final List<String> events = new ArrayList<>();
+	private final List<Peripheral> scanned = new ArrayList<>();
+	private final List<LinkParameters> linkChanges = new ArrayList<>();
+	private final List<String> frames = new ArrayList<>();
+
+	private final Central.ScanListener scanListener = new Central.ScanListener() {
+		@Override
+		public void onScanned(ScanDiff diff) {
+			scanned.clear();
+			scanned.addAll(diff.getPeripheralList());
+		}
+
+		@Override
+		public void onFailed(int errorCode) {
+			fail("unexpected scan failure");
+		}
+	};
+
+	private final Central.ConnectListener connectListener = new NoOpConnectListener() {
+		@Override
+		public void onConnected(Peripheral peripheral) {
+			events.add("connected");
+		}
+
+		@Override
+		public void onDisconnected(Peripheral peripheral, boolean isManually) {
+			events.add(isManually ? "disconnected manually" : "disconnected");
+		}
+
+		@Override
+		public void onReceived(Peripheral peripheral, CharSequence data) {
+			events.add("received " + data);
+		}
+
+		@Override
+		public void onConnectFail(Peripheral peripheral) {
+			events.add("fail");
+		}
+
+		@Override
+		public void onLinkChanged(Peripheral peripheral, LinkParameters parameters) {
+			linkChanges.add(parameters);
+		}
+
+		@Override
+		public void onFrame(Peripheral peripheral, int sequence, int type, ByteBuffer payload) {
+			assertEquals(Frame.TYPE_TEXT, type);
+			frames.add(sequence + " " + Charset.forName("UTF-8").decode(payload));
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		this.uuidRepository = ServiceProfiles.load(RuntimeEnvironment.application.getResources());
+		this.profile = uuidRepository.getDefaultProfile();
+	}
+
+	private Central central(SimulatedRadio radio, FakeScheduler scheduler) {
+		final Central central = new Central(RuntimeEnvironment.application, uuidRepository, radio, radio, scheduler);
+		central.setMaxScanIdle(0);
+		return central;
+	}
+
+	@Test
+	public void scanConnectAndLoopBack() throws Exception {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final SimulatedRadio radio = new SimulatedRadio(scheduler, 1);
+		for (int i = 1; i <= 3; i++) {
+			radio.add(new SimulatedPeripheral.Builder(FakeScanner.address(i), profile)
+				.setNotifications(500, "hello " + i).build());
+		}
+		final Central central = central(radio, scheduler);
+
+		central.scan(scanListener, 1000);
+		scheduler.advanceBy(1000);
+		assertEquals(3, scanned.size());
+		for (Peripheral peripheral : scanned) {
+			assertTrue(central.canConnect(peripheral));
+		}
+
+		central.connect(scanned.get(0), connectListener);
+		scheduler.advanceBy(1200);
+		assertEquals("connected", events.get(0));
+		assertTrue(events.contains("received hello 1"));
+		//"Ready" then the echoes
+		assertTrue(radio.getWrittenBytes() > "Ready".length());
+
+		central.stop();
+		scheduler.advanceBy(1000);
+		assertEquals("disconnected manually", events.get(events.size() - 1));
+		assertEquals(0, radio.getLinkCount());
+	}
+
+	@Test
+	public void metrics_countTheRun() throws Exception {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final SimulatedRadio radio = new SimulatedRadio(scheduler, 1);
+		final SimulatedPeripheral simulated = new SimulatedPeripheral.Builder(FakeScanner.address(1), profile)
+			.setNotifications(100, "hello").build();
+		radio.add(simulated);
+		final Central central = central(radio, scheduler);
+
+		central.scan(new Central.ScanListener() {
+			@Override
+			public void onScanned(ScanDiff diff) {
+				scanListener.onScanned(diff);
+				central.getMetrics().onDisplayed(diff);
+			}
+
+			@Override
+			public void onFailed(int errorCode) {
+				scanListener.onFailed(errorCode);
+			}
+		}, 1000);
+		scheduler.advanceBy(1000);
+		central.connect(scanned.get(0), connectListener);
+		scheduler.advanceBy(2000);
+		radio.remove(simulated.getAddress());
+		scheduler.advanceBy(3000);
+		central.stop();
+
+		final MetricsSnapshot metrics = central.getMetrics().snapshot();
+		assertTrue(metrics.getAdvertisements() > 1);
+		assertEquals(metrics.getAdvertisements() - 1, metrics.getDuplicates());
+		assertTrue(metrics.getScanToDisplay().getCount() > 0);
+		assertEquals(1, metrics.getConnectTime().getCount());
+		assertEquals(1, metrics.getDiscoveryTime().getCount());
+		assertTrue(metrics.getNotifications() > 5);
+		//one echo for each message, plus "Ready"
+		assertEquals(metrics.getNotifications(), metrics.getEchoRoundTrip().getCount());
+		assertEquals(metrics.getNotifications() + 1, metrics.getWrites());
+		assertEquals(0, metrics.getWriteFailures());
+		assertTrue(metrics.getReconnects() > 0);
+		assertTrue(metrics.toString().startsWith("adv "));
+	}
+
+	@Test
+	public void outOfRange_linkIsLost() throws Exception {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final SimulatedRadio radio = new SimulatedRadio(scheduler, 1);
+		final SimulatedPeripheral simulated = new SimulatedPeripheral.Builder(FakeScanner.address(1), profile).build();
+		radio.add(simulated);
+		final Central central = central(radio, scheduler);
+
+		central.scan(scanListener, 1000);
+		scheduler.advanceBy(1000);
+		central.connect(scanned.get(0), connectListener);
+		scheduler.advanceBy(1000);
+
+		radio.remove(simulated.getAddress());
+		scheduler.advanceBy(1000);
+		assertTrue(events.contains("disconnected"));
+		central.stop();
+	}
+
+	@Test
+	public void throughputProfile_boostsWhileBusy() throws Exception {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final SimulatedRadio radio = new SimulatedRadio(scheduler, 1);
+		radio.add(new SimulatedPeripheral.Builder(FakeScanner.address(1), profile)
+			.setPhy2M(true).setNotifications(0, null).build());
+		final Central central = central(radio, scheduler);
+
+		central.scan(scanListener, 1000);
+		scheduler.advanceBy(1000);
+		central.connect(scanned.get(0), connectListener, LinkProfile.THROUGHPUT);
+		scheduler.advanceBy(1000);
+		LinkParameters last = linkChanges.get(linkChanges.size() - 1);
+		assertEquals(GattSession.PREFERRED_MTU, last.getMtu());
+		assertEquals(GattLink.PHY_LE_2M, last.getTxPhy());
+		assertEquals(GattLink.CONNECTION_PRIORITY_HIGH, last.getConnectionPriority());
+
+		//nothing after "Ready", back to balanced
+		scheduler.advanceBy(LinkProfile.THROUGHPUT.getIdleTimeout());
+		last = linkChanges.get(linkChanges.size() - 1);
+		assertEquals(GattLink.CONNECTION_PRIORITY_BALANCED, last.getConnectionPriority());
+		assertEquals(GattLink.PHY_LE_2M, last.getTxPhy());
+		central.stop();
+	}
+
+	@Test
+	public void throughputProfile_boostHeldThroughSlowDiscovery() throws Exception {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final SimulatedRadio radio = new SimulatedRadio(scheduler, 1);
+		//400 events of the high priority interval, longer than the idle timeout
+		radio.add(new SimulatedPeripheral.Builder(FakeScanner.address(1), profile)
+			.setDiscoveryEvents(400).setNotifications(0, null).build());
+		final Central central = central(radio, scheduler);
+
+		central.scan(scanListener, 1000);
+		scheduler.advanceBy(1000);
+		central.connect(scanned.get(0), connectListener, LinkProfile.THROUGHPUT);
+		scheduler.advanceBy(LinkProfile.THROUGHPUT.getIdleTimeout() + 500);
+		assertTrue(events.contains("connected"));
+		assertEquals(0, central.getMetrics().snapshot().getDiscoveryTime().getCount());
+		assertEquals(GattLink.CONNECTION_PRIORITY_HIGH, linkChanges.get(linkChanges.size() - 1).getConnectionPriority());
+
+		scheduler.advanceBy(1000);
+		//discovered, subscribed and "Ready" written
+		assertEquals(1, central.getMetrics().snapshot().getDiscoveryTime().getCount());
+		assertTrue(radio.getWrittenBytes() > 0);
+		assertEquals(GattLink.CONNECTION_PRIORITY_HIGH, linkChanges.get(linkChanges.size() - 1).getConnectionPriority());
+
+		//the idle timeout counts from the end of the set up
+		scheduler.advanceBy(LinkProfile.THROUGHPUT.getIdleTimeout());
+		assertEquals(GattLink.CONNECTION_PRIORITY_BALANCED, linkChanges.get(linkChanges.size() - 1).getConnectionPriority());
+		central.stop();
+	}
+
+	@Test
+	public void linkProfiles_loopBack() throws Exception {
+		//the round trip while the link keeps up, the rate when it does not
+		final long balancedRoundTrip = loopBack(LinkProfile.BALANCED, 400)[0];
+		final long throughputRoundTrip = loopBack(LinkProfile.THROUGHPUT, 400)[0];
+		final long balancedRate = loopBack(LinkProfile.BALANCED, 20)[1];
+		final long throughputRate = loopBack(LinkProfile.THROUGHPUT, 20)[1];
+
+		assertTrue(throughputRoundTrip > 0);
+		assertTrue(throughputRoundTrip * 2 < balancedRoundTrip);
+		assertTrue(balancedRate > 0);
+		assertTrue(throughputRate > 2 * balancedRate);
+	}
+
+	/**
+	 * @param notificationInterval how often the peripheral sends the message, in millisecond
+	 * @return the median round trip of the echoes in millisecond, and the bytes written per second
+	 */
+	private long[] loopBack(LinkProfile linkProfile, long notificationInterval) {
+		final StringBuilder message = new StringBuilder();
+		while (message.length() < 600) message.append("0123456789");
+
+		final FakeScheduler scheduler = new FakeScheduler();
+		final SimulatedRadio radio = new SimulatedRadio(scheduler, 1);
+		radio.add(new SimulatedPeripheral.Builder(FakeScanner.address(1), profile)
+			.setConnectionInterval(30).setMaxDataLength(SimulatedPeripheral.MAX_DATA_LENGTH).setPhy2M(true)
+			.setNotifications(notificationInterval, message.toString()).build());
+		final Central central = central(radio, scheduler);
+
+		central.scan(scanListener, 1000);
+		scheduler.advanceBy(1000);
+		central.connect(scanned.get(0), connectListener, linkProfile);
+		scheduler.advanceBy(2000);
+		final long start = radio.getWrittenBytes();
+		scheduler.advanceBy(10000);
+		final long bytesPerSecond = (radio.getWrittenBytes() - start) / 10;
+		central.stop();
+
+		final MetricsSnapshot metrics = central.getMetrics().snapshot();
+		assertEquals(0, metrics.getWriteFailures());
+		return new long[]{metrics.getEchoRoundTrip().getValueAtPercentile(50), bytesPerSecond};
+	}
+
+	@Test
+	public void binaryFraming_loopBack() throws Exception {
+		final ServiceProfile binary = new ServiceProfile("binary", profile.getServiceID(), profile.getTXCharacteristic(),
+			profile.getRXCharacteristic(), profile.getSubscriptUUID(), ServiceProfile.Framing.BINARY);
+		this.uuidRepository = new UUIDRepository(binary);
+		//longer than the MTU, and than a 1 byte length
+		final StringBuilder message = new StringBuilder();
+		while (message.length() < 300) message.append("0123456789");
+
+		final FakeScheduler scheduler = new FakeScheduler();
+		final SimulatedRadio radio = new SimulatedRadio(scheduler, 1);
+		radio.add(new SimulatedPeripheral.Builder(FakeScanner.address(1), binary)
+			.setNotifications(100, message.toString()).build());
+		final Central central = central(radio, scheduler);
+
+		central.scan(scanListener, 1000);
+		scheduler.advanceBy(1000);
+		central.connect(scanned.get(0), connectListener);
+		scheduler.advanceBy(1050);
+		central.stop();
+		scheduler.advanceBy(1000);
+
+		assertTrue(frames.size() >= 5);
+		for (int i = 0; i < frames.size(); i++) {
+			assertEquals(i + " " + message, frames.get(i));
+		}
+		for (String event : events) {
+			assertFalse(event.startsWith("received"));
+		}
+		//"Ready" and the echoes, each a frame
+		assertTrue(radio.getWrittenBytes() >= frames.size() * Frame.getFrameSize(message.length()));
+	}
+
+	@Test
+	public void capture_recordsWhatIsReceivedAndWritten() throws Exception {
+		final File directory = File.createTempFile("capture", "");
+		directory.delete();
+		final FakeScheduler scheduler = new FakeScheduler();
+		final SimulatedRadio radio = new SimulatedRadio(scheduler, 1);
+		radio.add(new SimulatedPeripheral.Builder(FakeScanner.address(1), profile)
+			.setNotifications(500, "hello").build());
+		final Central central = central(radio, scheduler);
+		final CaptureLog captureLog = new CaptureLog(directory);
+		central.setCaptureLog(captureLog);
+
+		central.scan(scanListener, 1000);
+		scheduler.advanceBy(1000);
+		central.connect(scanned.get(0), connectListener);
+		scheduler.advanceBy(1200);
+		central.stop();
+		scheduler.advanceBy(1000);
+		captureLog.close();
+
+		final List<String> records = new ArrayList<>();
+		new CaptureReader(directory).read(0, new CaptureReader.Visitor() {
+			@Override
+			public boolean onRecord(long time, long macAddress, int direction, ByteBuffer value) {
+				assertEquals(scanned.get(0).getMacAddress(), macAddress);
+				records.add((direction == CaptureLog.RX ? "rx " : "tx ") + Charset.forName("UTF-8").decode(value));
+				return true;
+			}
+		});
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+
+		assertEquals("tx Ready", records.get(0));
+		assertTrue(records.contains("rx hello\0"));
+		assertTrue(records.contains("tx 01hello\0"));
+	}
+
+	@Test
+	public void sameSeed_sameRun() throws Exception {
+		assertEquals(run(7), run(7));
+	}
+
+	/**
+	 * @return what the Central saw of a few noisy peripherals
+	 */
+	private List<String> run(long seed) {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final SimulatedRadio radio = new SimulatedRadio(scheduler, seed);
+		for (int i = 1; i <= 5; i++) {
+			radio.add(new SimulatedPeripheral.Builder(FakeScanner.address(i), profile)
+				.setRssi(-50 - 5 * i, 8).setAdvertisingInterval(20 * i).build());
+		}
+		final Central central = central(radio, scheduler);
+		final List<String> seen = new ArrayList<>();
+		central.scan(new Central.ScanListener() {
+			@Override
+			public void onScanned(ScanDiff diff) {
+				for (Peripheral peripheral : diff.getUpdated()) {
+					seen.add(scheduler.now() + " " + peripheral.getAddress() + " " + peripheral.getRssi());
+				}
+			}
+
+			@Override
+			public void onFailed(int errorCode) {
+				fail("unexpected scan failure");
+			}
+		}, 1000);
+		scheduler.advanceBy(5000);
+		central.stop();
+		return seen;
+	}
+}
@@ -0,0 +1,238 @@
+package com.vinaya.blecentralrole.logic.sim;
+
+import com.vinaya.blecentralrole.BuildConfig;
+import com.vinaya.blecentralrole.logic.Central;
+import com.vinaya.blecentralrole.logic.FakeScanner;
+import com.vinaya.blecentralrole.logic.FakeScheduler;
+import com.vinaya.blecentralrole.logic.NoOpConnectListener;
+import com.vinaya.blecentralrole.logic.ScanDiff;
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+import com.vinaya.blecentralrole.logic.scanner.BLEScanner;
+import com.vinaya.blecentralrole.logic.scanner.ScanConfig;
+import com.vinaya.blecentralrole.logic.telemetry.Reading;
+import com.vinaya.blecentralrole.logic.telemetry.ServiceDataDecoder;
+import com.vinaya.blecentralrole.logic.telemetry.TelemetryListener;
+import com.vinaya.blecentralrole.model.Advertisement;
+import com.vinaya.blecentralrole.model.Peripheral;
+import com.vinaya.blecentralrole.model.ServiceProfiles;
+import com.vinaya.blecentralrole.model.UUIDRepository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * record a session against the simulated radio, replay it, the Central sees the same
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TraceTest {
+	//environmental sensing, as a 16 bit UUID
+	private final static UUID SENSOR_SERVICE = UUID.fromString("0000181a-0000-1000-8000-00805f9b34fb");
+
+	private final static Executor DIRECT = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private UUIDRepository uuidRepository;
+
+	@Before
+	public void setUp() throws Exception {
+		this.uuidRepository = ServiceProfiles.load(RuntimeEnvironment.application.getResources());
+	}
+
+	/**
+	 * scan for a while, connect the first peripheral seen and loop back its messages
+	 *
+	 * @return what the Central reported, with the times
+	 */
+	private List<String> session(BLEScanner scanner, GattLink.Connector connector, TraceRecorder recorder,
+	                             final FakeScheduler scheduler) {
+		final Central central = new Central(RuntimeEnvironment.application, uuidRepository, scanner, connector, scheduler);
+		central.setMaxScanIdle(0);
+		central.setTraceRecorder(recorder);
+
+		final List<String> events = new ArrayList<>();
+		final List<Peripheral> scanned = new ArrayList<>();
+		central.scan(new Central.ScanListener() {
+			@Override
+			public void onScanned(ScanDiff diff) {
+				scanned.clear();
+				scanned.addAll(diff.getPeripheralList());
+				for (Peripheral peripheral : diff.getAdded()) {
+					events.add(scheduler.now() + " added " + peripheral.getAddress() + " " + peripheral.getName());
+				}
+				for (Peripheral peripheral : diff.getUpdated()) {
+					events.add(scheduler.now() + " updated " + peripheral.getAddress() + " " + peripheral.getRssi());
+				}
+			}
+
+			@Override
+			public void onFailed(int errorCode) {
+				events.add(scheduler.now() + " scan failed " + errorCode);
+			}
+		}, 1000);
+		scheduler.advanceBy(2000);
+
+		central.connect(scanned.get(0), new NoOpConnectListener() {
+			@Override
+			public void onConnected(Peripheral peripheral) {
+				events.add(scheduler.now() + " connected " + peripheral.getAddress());
+			}
+
+			@Override
+			public void onDisconnected(Peripheral peripheral, boolean isManually) {
+				events.add(scheduler.now() + " disconnected " + isManually);
+			}
+
+			@Override
+			public void onReceived(Peripheral peripheral, CharSequence data) {
+				events.add(scheduler.now() + " received " + data);
+			}
+
+			@Override
+			public void onConnectFail(Peripheral peripheral) {
+				events.add(scheduler.now() + " connect failed");
+			}
+		});
+		scheduler.advanceBy(5000);
+		central.stop();
+		scheduler.advanceBy(1000);
+		return events;
+	}
+
+	@Test
+	public void replay_reportsWhatWasRecorded() throws Exception {
+		final FakeScheduler recordScheduler = new FakeScheduler();
+		final SimulatedRadio radio = new SimulatedRadio(recordScheduler, 3);
+		for (int i = 1; i <= 4; i++) {
+			radio.add(new SimulatedPeripheral.Builder(FakeScanner.address(i), uuidRepository.getDefaultProfile())
+				.setRssi(-50 - 5 * i, 6).setNotifications(300, "message " + i).build());
+		}
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final TraceRecorder recorder = new TraceRecorder(output, recordScheduler);
+		final List<String> recorded = session(radio, radio, recorder, recordScheduler);
+		recorder.close();
+
+		final FakeScheduler replayScheduler = new FakeScheduler();
+		final TraceReplayer replayer = TraceReplayer.read(new ByteArrayInputStream(output.toByteArray()), replayScheduler);
+		final List<String> replayed = session(replayer, replayer, null, replayScheduler);
+
+		assertTrue(recorded.size() > 10);
+		assertEquals(recorded, replayed);
+
+		final int records = replayer.getReplayedCount();
+		assertTrue("compact", output.size() < 16 * records);
+	}
+
+	/**
+	 * collect the sensor frames for a while
+	 *
+	 * @return the readings, with the times
+	 */
+	private List<String> collect(BLEScanner scanner, TraceRecorder recorder, final FakeScheduler scheduler) {
+		final Central central = new Central(RuntimeEnvironment.application, uuidRepository, scanner, null, scheduler);
+		central.setMaxScanIdle(0);
+		central.setTraceRecorder(recorder);
+
+		final List<String> readings = new ArrayList<>();
+		central.collect(new ServiceDataDecoder(SENSOR_SERVICE), new TelemetryListener() {
+			@Override
+			public void onReadings(List<Reading> batch) {
+				for (Reading reading : batch) {
+					readings.add(scheduler.now() + " " + reading.getAddress() + " " + reading.getSequence()
+						+ " " + reading.getPayload().getShort(0));
+				}
+			}
+
+			@Override
+			public void onFailed(int errorCode) {
+				readings.add(scheduler.now() + " scan failed " + errorCode);
+			}
+		}, 1000, DIRECT);
+		scheduler.advanceBy(3000);
+		central.stop();
+		return readings;
+	}
+
+	@Test
+	public void replay_rawAdvertisements() throws Exception {
+		final FakeScheduler recordScheduler = new FakeScheduler();
+		final FakeScanner scanner = new FakeScanner();
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final TraceRecorder recorder = new TraceRecorder(output, recordScheduler);
+		//a sensor advertising its sequence and temperature every 100 ms
+		recordScheduler.schedule(new Runnable() {
+			private int sequence;
+
+			@Override
+			public void run() {
+				final byte[] record = {
+					2, Advertisement.TYPE_TX_POWER_LEVEL, -8,
+					6, Advertisement.TYPE_SERVICE_DATA_UUID16, 0x1a, 0x18, (byte) sequence,
+					(byte) (2000 + sequence), (byte) ((2000 + sequence) >> 8),
+					5, (byte) Advertisement.TYPE_MANUFACTURER_DATA, 0x59, 0x00, 1, 2};
+				scanner.advertise(Peripheral.fromAdvertisement(FakeScanner.address(1), null, -60, new Advertisement(record)));
+				sequence++;
+				recordScheduler.schedule(this, 100);
+			}
+		}, 100);
+		final List<String> recorded = collect(scanner, recorder, recordScheduler);
+		recorder.close();
+
+		final FakeScheduler replayScheduler = new FakeScheduler();
+		final TraceReplayer replayer = TraceReplayer.read(new ByteArrayInputStream(output.toByteArray()), replayScheduler);
+		final List<String> replayed = collect(replayer, null, replayScheduler);
+		assertTrue(recorded.size() > 10);
+		assertEquals(recorded, replayed);
+
+		//the fields which are not decoded into the peripheral are there too
+		final List<Peripheral> peripherals = new ArrayList<>();
+		TraceReplayer.read(new ByteArrayInputStream(output.toByteArray()), replayScheduler)
+			.asyncScan(ScanConfig.DEFAULT, new BLEScanner.BLEScanListener() {
+				@Override
+				public void onDiscovered(Peripheral peripheral) {
+					peripherals.add(peripheral);
+				}
+
+				@Override
+				public void onFailed(int errorCode) {
+				}
+			});
+		replayScheduler.advanceBy(1000);
+		final Advertisement advertisement = peripherals.get(0).getAdvertisement();
+		assertEquals(-8, advertisement.getTxPowerLevel());
+		assertEquals(ByteBuffer.wrap(new byte[]{1, 2}), advertisement.getManufacturerData(0x0059));
+	}
+
+	@Test
+	public void replay_connectNotRecorded_returnsNull() throws Exception {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new TraceRecorder(output, new FakeScheduler()).close();
+
+		final TraceReplayer replayer = TraceReplayer.read(new ByteArrayInputStream(output.toByteArray()), new FakeScheduler());
+		assertNull(replayer.connect(FakeScanner.address(1), false, null));
+	}
+
+	@Test(expected = IOException.class)
+	public void read_rejectsOtherFiles() throws Exception {
+		TraceReplayer.read(new ByteArrayInputStream("not a trace".getBytes()), new FakeScheduler());
+	}
+}
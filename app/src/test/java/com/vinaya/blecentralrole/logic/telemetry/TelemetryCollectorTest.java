@@ -0,0 +1,150 @@
+package com.vinaya.blecentralrole.logic.telemetry;
+
+import com.vinaya.blecentralrole.logic.Central;
+import com.vinaya.blecentralrole.logic.FakeScanner;
+import com.vinaya.blecentralrole.logic.FakeScheduler;
+import com.vinaya.blecentralrole.model.Advertisement;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class TelemetryCollectorTest {
+	//environmental sensing, as a 16 bit UUID
+	private final static UUID SENSOR_SERVICE = UUID.fromString("0000181a-0000-1000-8000-00805f9b34fb");
+
+	private final static Executor DIRECT = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private final FakeScheduler scheduler = new FakeScheduler();
+	private final List<List<Reading>> batches = new ArrayList<>();
+	private final TelemetryListener listener = new TelemetryListener() {
+		@Override
+		public void onReadings(List<Reading> readings) {
+			batches.add(readings);
+		}
+
+		@Override
+		public void onFailed(int errorCode) {
+			fail("unexpected scan failure");
+		}
+	};
+
+	/**
+	 * an advertisement with the service data of a sensor: sequence then a 16 bit temperature
+	 */
+	private static Peripheral advertisement(int device, int sequence, int temperature) {
+		final byte[] record = {
+			2, Advertisement.TYPE_FLAGS, 0x06,
+			6, Advertisement.TYPE_SERVICE_DATA_UUID16, 0x1a, 0x18, (byte) sequence,
+			(byte) temperature, (byte) (temperature >> 8)};
+		return Peripheral.fromAdvertisement(FakeScanner.address(device), null, -60, new Advertisement(record));
+	}
+
+	private TelemetryCollector collector(int maxBatchSize, int maxDevices) {
+		return new TelemetryCollector(new ServiceDataDecoder(SENSOR_SERVICE), scheduler, DIRECT,
+			100, maxBatchSize, maxDevices, listener);
+	}
+
+	@Test
+	public void repeats_areDropped() throws Exception {
+		final TelemetryCollector collector = collector(64, 16);
+
+		assertTrue(collector.onAdvertisement(advertisement(1, 7, 2150)));
+		assertFalse(collector.onAdvertisement(advertisement(1, 7, 2150)));
+		assertTrue(collector.onAdvertisement(advertisement(2, 7, 1800)));
+		assertTrue(collector.onAdvertisement(advertisement(1, 8, 2160)));
+		//not a sensor
+		assertFalse(collector.onAdvertisement(new Peripheral(FakeScanner.address(3), null, -60, null)));
+		assertTrue(batches.isEmpty());
+
+		scheduler.advanceBy(100);
+		assertEquals(1, batches.size());
+		final List<Reading> readings = batches.get(0);
+		assertEquals(3, readings.size());
+		assertEquals(FakeScanner.address(1), readings.get(0).getAddress());
+		assertEquals(7, readings.get(0).getSequence());
+		assertEquals(2150, readings.get(0).getPayload().getShort(0));
+		assertEquals(1800, readings.get(1).getPayload().getShort(0));
+		assertEquals(8, readings.get(2).getSequence());
+
+		assertEquals(4, collector.getFrameCount());
+		assertEquals(1, collector.getRepeatCount());
+	}
+
+	@Test
+	public void fullBatch_isDeliveredAtOnce() throws Exception {
+		final TelemetryCollector collector = collector(4, 16);
+		for (int device = 0; device < 6; device++) {
+			collector.onAdvertisement(advertisement(device, 1, 0));
+		}
+
+		assertEquals(1, batches.size());
+		assertEquals(4, batches.get(0).size());
+		scheduler.advanceBy(100);
+		assertEquals(2, batches.get(1).size());
+	}
+
+	@Test
+	public void forgottenDevice_isNotARepeat() throws Exception {
+		final TelemetryCollector collector = collector(64, 2);
+		collector.onAdvertisement(advertisement(1, 5, 0));
+		collector.onAdvertisement(advertisement(2, 5, 0));
+		collector.onAdvertisement(advertisement(3, 5, 0));
+
+		//the oldest one is no longer remembered
+		assertTrue(collector.onAdvertisement(advertisement(1, 5, 0)));
+		assertFalse(collector.onAdvertisement(advertisement(3, 5, 0)));
+	}
+
+	@Test
+	public void cancel_dropsPending() throws Exception {
+		final TelemetryCollector collector = collector(64, 16);
+		collector.onAdvertisement(advertisement(1, 1, 0));
+		collector.cancel();
+		scheduler.advanceBy(1000);
+
+		assertTrue(batches.isEmpty());
+		assertFalse(collector.onAdvertisement(advertisement(1, 2, 0)));
+	}
+
+	@Test
+	public void central_collectsHundredsOfSensors() throws Exception {
+		final FakeScanner scanner = new FakeScanner();
+		final Central central = new Central(null, null, scanner, null, scheduler);
+		central.setMaxScanIdle(0);
+		central.collect(new ServiceDataDecoder(SENSOR_SERVICE), listener, 1000, DIRECT);
+		assertTrue(central.isScanning());
+
+		final int sensors = 300;
+		for (int round = 0; round < 5; round++) {
+			//every sensor advertises each frame a few times
+			for (int repeat = 0; repeat < 3; repeat++) {
+				for (int device = 0; device < sensors; device++) {
+					scanner.advertise(advertisement(device, round, device));
+				}
+			}
+			scheduler.advanceBy(200);
+		}
+		central.stop();
+
+		int readings = 0;
+		for (List<Reading> batch : batches) {
+			readings += batch.size();
+		}
+		assertEquals(5 * sensors, readings);
+		assertEquals(0, central.getConnectionCount());
+		assertEquals(15 * sensors, central.getMetrics().snapshot().getAdvertisements());
+		assertEquals(10 * sensors, central.getMetrics().snapshot().getDuplicates());
+	}
+}
@@ -0,0 +1,120 @@
+package com.vinaya.blecentralrole.model;
+
+import com.vinaya.blecentralrole.BuildConfig;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class UUIDRepositoryTest {
+	private final static UUID LOOPBACK_SERVICE = UUID.fromString("abc00001-1234-5678-1234-abcd0123abcd");
+	private final static UUID SENSOR_SERVICE = UUID.fromString("def00001-1234-5678-1234-abcd0123abcd");
+
+	private final static String JSON = "{\"default\": \"sensor\", \"profiles\": ["
+		+ "{\"name\": \"loopback\", \"service\": \"abc00001-1234-5678-1234-abcd0123abcd\","
+		+ " \"tx\": \"abc00002-1234-5678-1234-abcd0123abcd\", \"rx\": \"abc00003-1234-5678-1234-abcd0123abcd\","
+		+ " \"subscript\": \"00002902-0000-1000-8000-00805f9b34fb\"},"
+		+ "{\"name\": \"sensor\", \"service\": \"def00001-1234-5678-1234-abcd0123abcd\","
+		+ " \"tx\": \"def00002-1234-5678-1234-abcd0123abcd\", \"rx\": \"def00003-1234-5678-1234-abcd0123abcd\","
+		+ " \"framing\": \"binary\"}]}";
+
+	@Test
+	public void load_readsBundledProfiles() throws Exception {
+		final UUIDRepository repository = ServiceProfiles.load(RuntimeEnvironment.application.getResources());
+
+		assertEquals("loopback", repository.getDefaultProfile().getName());
+		assertEquals(LOOPBACK_SERVICE, repository.getServiceID());
+		assertEquals(UUID.fromString("abc00002-1234-5678-1234-abcd0123abcd"), repository.getTXCharacteristic());
+		assertEquals(UUID.fromString("abc00003-1234-5678-1234-abcd0123abcd"), repository.getRXCharacteristic());
+		assertEquals(ServiceProfile.CCCD, repository.getSubscriptUUID());
+	}
+
+	@Test
+	public void fromJson_keepsEveryProfile() throws Exception {
+		final UUIDRepository repository = UUIDRepository.fromJson(JSON);
+
+		assertEquals(2, repository.getProfiles().size());
+		assertEquals("sensor", repository.getDefaultProfile().getName());
+		assertEquals(SENSOR_SERVICE, repository.getServiceID());
+		assertEquals(LOOPBACK_SERVICE, repository.getProfile("loopback").getServiceID());
+		assertNull(repository.getProfile("unknown"));
+
+		//the subscript UUID defaults to the Client Characteristic Configuration descriptor
+		assertEquals(ServiceProfile.CCCD, repository.getProfile("sensor").getSubscriptUUID());
+
+		//and the framing to the zero terminated strings
+		assertEquals(ServiceProfile.Framing.BINARY, repository.getProfile("sensor").getFraming());
+		assertEquals(ServiceProfile.Framing.STRING, repository.getProfile("loopback").getFraming());
+	}
+
+	@Test
+	public void findProfile_byAdvertisedService() throws Exception {
+		final UUIDRepository repository = UUIDRepository.fromJson(JSON);
+		final UUID other = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+
+		assertSame(repository.getProfile("loopback"), repository.findProfile(Arrays.asList(other, LOOPBACK_SERVICE)));
+		assertSame(repository.getProfile("sensor"), repository.findProfile(Collections.singletonList(SENSOR_SERVICE)));
+		assertNull(repository.findProfile(Collections.singletonList(other)));
+		assertNull(repository.findProfile(Collections.<UUID>emptyList()));
+		assertNull(repository.findProfile(null));
+	}
+
+	@Test
+	public void findProfile_ofPeripheral_isMemoized() throws Exception {
+		final UUIDRepository repository = UUIDRepository.fromJson(JSON);
+		final Peripheral listed = new Peripheral("00:11:22:33:44:55", "listed", -60, Collections.singletonList(SENSOR_SERVICE));
+		final Peripheral advertised = Peripheral.fromAdvertisement("00:11:22:33:44:56", null, -60, new Advertisement(
+			AdvertisementTest.concat(AdvertisementTest.structure(Advertisement.TYPE_UUID16, 0x0f, 0x18),
+				AdvertisementTest.uuid128(LOOPBACK_SERVICE))));
+		final Peripheral unknown = Peripheral.fromAdvertisement("00:11:22:33:44:57", null, -60, new Advertisement(new byte[0]));
+
+		assertSame(repository.getProfile("sensor"), repository.findProfileOf(listed));
+		assertSame(repository.getProfile("loopback"), repository.findProfileOf(advertised));
+		assertNull(repository.findProfileOf(unknown));
+		assertSame(repository.findProfileOf(advertised), repository.findProfileOf(advertised));
+
+		//another repository does not take the profile found by this one
+		final UUIDRepository other = new UUIDRepository(repository.getProfile("sensor"));
+		assertNull(other.findProfileOf(advertised));
+		assertSame(repository.getProfile("loopback"), repository.findProfileOf(advertised));
+	}
+
+	@Test
+	public void fromJson_rejectsBadFiles() throws Exception {
+		try {
+			UUIDRepository.fromJson("{\"profiles\": []}");
+			fail();
+		} catch (JSONException expected) {
+		}
+
+		try {
+			UUIDRepository.fromJson("{\"profiles\": [{\"name\": \"loopback\", \"service\": \"abc00001\"}]}");
+			fail();
+		} catch (JSONException | IllegalArgumentException expected) {
+		}
+
+		try {
+			UUIDRepository.fromJson("{\"default\": \"unknown\", \"profiles\": [{\"name\": \"loopback\","
+				+ " \"service\": \"abc00001-1234-5678-1234-abcd0123abcd\", \"tx\": \"abc00002-1234-5678-1234-abcd0123abcd\","
+				+ " \"rx\": \"abc00003-1234-5678-1234-abcd0123abcd\"}]}");
+			fail();
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void profiles_areImmutable() throws Exception {
+		UUIDRepository.fromJson(JSON).getProfiles().clear();
+	}
+}
@@ -0,0 +1,206 @@
+package com.vinaya.blecentralrole.service;
+
+import android.content.Intent;
+
+import com.vinaya.blecentralrole.BuildConfig;
+import com.vinaya.blecentralrole.logic.Central;
+import com.vinaya.blecentralrole.logic.FakeScanner;
+import com.vinaya.blecentralrole.logic.FakeScheduler;
+import com.vinaya.blecentralrole.logic.ScanDiff;
+import com.vinaya.blecentralrole.logic.gatt.SimulatedGattConnector;
+import com.vinaya.blecentralrole.model.Peripheral;
+import com.vinaya.blecentralrole.model.UUIDRepository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * the binder api of the service, with the UI attached and detached
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class CentralServiceTest {
+	private final static UUID SERVICE_UUID = UUID.fromString("abc00001-1234-5678-1234-abcd0123abcd");
+	private final static UUID RX = UUID.fromString("abc00003-1234-5678-1234-abcd0123abcd");
+	private final static List<UUID> SERVICES = Collections.singletonList(SERVICE_UUID);
+
+	private final static Executor DIRECT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	/**
+	 * the service on the virtual clock, with a fake scanner and simulated links, everything on the main thread
+	 */
+	public static class TestCentralService extends CentralService {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final FakeScanner scanner = new FakeScanner();
+		final SimulatedGattConnector connector = new SimulatedGattConnector(scheduler, 247);
+
+		@Override
+		protected Central createCentral(UUIDRepository repository) {
+			final Central central = new Central(this, repository, scanner, connector, scheduler) {
+				@Override
+				public boolean start() {
+					//bluetooth is always on
+					return true;
+				}
+			};
+			configure(central, repository, DIRECT_EXECUTOR);
+			return central;
+		}
+	}
+
+	private TestCentralService service;
+	private final List<String> events = new ArrayList<>();
+
+	private final CentralService.Observer observer = new CentralService.Observer() {
+		@Override
+		public void onScanned(ScanDiff diff) {
+			for (Peripheral peripheral : diff.getAdded()) {
+				events.add("added " + peripheral.getName());
+			}
+		}
+
+		@Override
+		public void onFailed(int errorCode) {
+			events.add("failed");
+		}
+
+		@Override
+		public void onConnected(Peripheral peripheral) {
+			events.add("connected " + peripheral.getName());
+		}
+
+		@Override
+		public void onDisconnected(Peripheral peripheral, boolean isManually) {
+			events.add("disconnected " + peripheral.getName());
+		}
+
+		@Override
+		public void onReceived(Peripheral peripheral, CharSequence data) {
+			events.add("received " + data);
+		}
+
+		@Override
+		public void onConnectFail(Peripheral peripheral) {
+			events.add("fail");
+		}
+
+		@Override
+		public void onRssiAlert(Peripheral peripheral, int rssi, boolean isLow) {
+			events.add("rssi");
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		this.service = Robolectric.buildService(TestCentralService.class).create().get();
+		final Intent intent = new Intent(RuntimeEnvironment.application, TestCentralService.class);
+		assertSame(service, ((CentralService.LocalBinder) service.onBind(intent)).getService());
+	}
+
+	/**
+	 * scan until the peripheral is listed, and connect to it
+	 */
+	private SimulatedGattConnector.SimulatedGattLink connect(String name) {
+		service.scanner.advertise(FakeScanner.address(1), name, -60, SERVICES);
+		service.scheduler.advanceBy(1000);
+		service.connect(service.getPeripheralList().get(0));
+		service.scheduler.advanceBy(1000);
+		return service.connector.getLinks().get(0);
+	}
+
+	@Test
+	public void start_scansInForeground() throws Exception {
+		assertFalse(service.isScanning());
+		assertTrue(service.start());
+		assertTrue(service.start());
+
+		assertTrue(service.isScanning());
+		assertEquals(1, service.scanner.getStartCount());
+		assertNotNull(shadowOf(service).getLastForegroundNotification());
+	}
+
+	@Test
+	public void subscribe_getsListThenChanges() throws Exception {
+		service.start();
+		service.scanner.advertise(FakeScanner.address(1), "one", -60, SERVICES);
+		service.scheduler.advanceBy(1000);
+
+		final List<Peripheral> list = service.subscribe(observer, DIRECT_EXECUTOR);
+		assertEquals(1, list.size());
+		assertTrue(events.isEmpty());
+
+		service.scanner.advertise(FakeScanner.address(2), "two", -60, SERVICES);
+		service.scheduler.advanceBy(1000);
+		assertEquals("[added two]", events.toString());
+		assertEquals(2, service.getPeripheralList().size());
+	}
+
+	@Test
+	public void detached_keepsLoopBackSteady() throws Exception {
+		service.start();
+		service.subscribe(observer, DIRECT_EXECUTOR);
+		final SimulatedGattConnector.SimulatedGattLink link = connect("one");
+		assertEquals("[added one, connected one]", events.toString());
+
+		//the screen goes off
+		service.unsubscribe(observer);
+		events.clear();
+
+		final long start = link.getWrittenBytes();
+		long half = 0;
+		for (int i = 0; i < 600; i++) {
+			link.notifyMessage(RX, "Hello World");
+			service.scheduler.advanceBy(100);
+			if (i == 299) half = link.getWrittenBytes() - start;
+		}
+		final long total = link.getWrittenBytes() - start;
+
+		assertTrue(half > 0);
+		assertEquals(half, total - half);
+		assertTrue(events.isEmpty());
+		assertTrue(service.isScanning());
+		assertEquals(1, service.getConnectionCount());
+
+		//and the UI gets the events again once back
+		service.subscribe(observer, DIRECT_EXECUTOR);
+		link.notifyMessage(RX, "Back");
+		assertEquals("[received Back]", events.toString());
+	}
+
+	@Test
+	public void shutdown_stopsEverything() throws Exception {
+		service.start();
+		service.subscribe(observer, DIRECT_EXECUTOR);
+		connect("one");
+		assertEquals(1, service.getConnectionCount());
+
+		service.shutdown();
+		assertFalse(service.isScanning());
+		assertEquals(0, service.getConnectionCount());
+		assertTrue(events.contains("disconnected one"));
+
+		final ShadowService shadow = shadowOf(service);
+		assertTrue(shadow.isForegroundStopped());
+		assertTrue(shadow.isStoppedBySelf());
+	}
+}
@@ -0,0 +1,120 @@
+package com.vinaya.blecentralrole.viewadapter;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import com.vinaya.blecentralrole.BuildConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Streams 100k messages into the log, 10 per frame, following the tail like MainActivity does:
+ * the log stays bounded and a frame notifies the same changes from the first frames to the last
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MessageLogAdapterTest {
+	private final static int CAPACITY = 1000;
+	private final static int MESSAGE_COUNT = 100000;
+	private final static int MESSAGES_PER_FRAME = 10;
+	private final static int VISIBLE_ROWS = 20;
+	private final static int SAMPLE_FRAMES = 1000;
+
+	private MessageLogAdapter adapter;
+	private ViewGroup parent;
+	private int notifications;
+	private int removedRows;
+	private int insertedRows;
+
+	@Before
+	public void setUp() throws Exception {
+		this.parent = new FrameLayout(RuntimeEnvironment.application);
+		this.adapter = new MessageLogAdapter(RuntimeEnvironment.application, CAPACITY);
+		adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+			@Override
+			public void onItemRangeRemoved(int positionStart, int itemCount) {
+				assertEquals(0, positionStart);
+				notifications++;
+				removedRows += itemCount;
+			}
+
+			@Override
+			public void onItemRangeInserted(int positionStart, int itemCount) {
+				notifications++;
+				insertedRows += itemCount;
+			}
+		});
+	}
+
+	@Test
+	public void streamManyMessages() throws Exception {
+		final String[] messages = new String[MESSAGES_PER_FRAME * 7];
+		for (int i = 0; i < messages.length; i++) {
+			messages[i] = "peripheral: message " + i;
+		}
+		final List<MessageLogAdapter.ViewHolder> screen = new ArrayList<>();
+		for (int i = 0; i < VISIBLE_ROWS; i++) {
+			screen.add(adapter.onCreateViewHolder(parent, 0));
+		}
+
+		final int frames = MESSAGE_COUNT / MESSAGES_PER_FRAME;
+		int lateNotifications = 0;
+
+		for (int frame = 0; frame < frames; frame++) {
+			final int notificationsBefore = notifications;
+
+			for (int i = 0; i < MESSAGES_PER_FRAME; i++) {
+				adapter.append(messages[(frame * MESSAGES_PER_FRAME + i) % messages.length]);
+			}
+			adapter.notifyAppended();
+			//the rows at the tail are rebound
+			final int count = adapter.getItemCount();
+			for (int i = 0; i < screen.size() && i < count; i++) {
+				adapter.onBindViewHolder(screen.get(i), count - screen.size() + i, Collections.<Object>emptyList());
+			}
+
+			if (frame >= frames - SAMPLE_FRAMES) lateNotifications += notifications - notificationsBefore;
+		}
+
+		//bounded by the capacity
+		assertEquals(CAPACITY, adapter.getItemCount());
+		assertEquals(CAPACITY, adapter.getLog().size());
+		assertEquals(MESSAGE_COUNT, insertedRows);
+		assertEquals(MESSAGE_COUNT - CAPACITY, removedRows);
+
+		//one removal and one insertion a frame, however many messages were streamed before
+		assertEquals(2 * SAMPLE_FRAMES, lateNotifications);
+
+		//the last row is the last message
+		final String last = messages[(MESSAGE_COUNT - 1) % messages.length];
+		assertEquals(last, screen.get(VISIBLE_ROWS - 1).textViewMessage.getText().toString());
+	}
+
+	@Test
+	public void clear_emptiesTheList() throws Exception {
+		adapter.append("a");
+		adapter.append("b");
+		adapter.notifyAppended();
+		assertEquals(2, adapter.getItemCount());
+		assertEquals("a\nb\n", adapter.export());
+
+		adapter.clear();
+		assertEquals(0, adapter.getItemCount());
+		adapter.append("c");
+		adapter.notifyAppended();
+		assertEquals(1, adapter.getItemCount());
+		assertEquals("c\n", adapter.export());
+	}
+}
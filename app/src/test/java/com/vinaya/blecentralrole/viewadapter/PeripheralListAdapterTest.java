@@ -0,0 +1,276 @@
+package com.vinaya.blecentralrole.viewadapter;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import com.vinaya.blecentralrole.BuildConfig;
+import com.vinaya.blecentralrole.R;
+import com.vinaya.blecentralrole.logic.FakeScanner;
+import com.vinaya.blecentralrole.logic.FakeScheduler;
+import com.vinaya.blecentralrole.logic.PeripheralRegistry;
+import com.vinaya.blecentralrole.logic.ScanDiff;
+import com.vinaya.blecentralrole.logic.ScanDispatcher;
+import com.vinaya.blecentralrole.logic.ScanListener;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts the inflations, full binds, partial binds and allocations
+ * of refreshing 500 peripherals whose RSSI have changed
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PeripheralListAdapterTest {
+	private final static int DEVICE_COUNT = 500;
+	private final static int VISIBLE_ROWS = 20;
+	private final static int REFRESH_COUNT = 50;
+
+	private final static Executor DIRECT = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private int inflations;
+	private int fullBinds;
+	private int partialBinds;
+
+	private PeripheralListAdapter adapter;
+	private ViewGroup parent;
+	private final List<Object> rssiPayloads = new ArrayList<>();
+	private final List<Integer> changedPositions = new ArrayList<>();
+
+	@Before
+	public void setUp() throws Exception {
+		this.parent = new FrameLayout(RuntimeEnvironment.application);
+		this.adapter = new PeripheralListAdapter(RuntimeEnvironment.application) {
+			@Override
+			public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+				inflations++;
+				return super.onCreateViewHolder(parent, viewType);
+			}
+
+			@Override
+			public void onBindViewHolder(ViewHolder holder, int position, List<Object> payloads) {
+				if (payloads.isEmpty()) fullBinds++; else partialBinds++;
+				super.onBindViewHolder(holder, position, payloads);
+			}
+		};
+
+		//record what RecyclerView would be asked to rebind
+		adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+			@Override
+			public void onChanged() {
+				for (int i = 0; i < adapter.getItemCount(); i++) {
+					changedPositions.add(i);
+					rssiPayloads.add(null);
+				}
+			}
+
+			@Override
+			public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+				for (int i = 0; i < itemCount; i++) {
+					changedPositions.add(positionStart + i);
+					rssiPayloads.add(payload);
+				}
+			}
+		});
+	}
+
+	private static List<Peripheral> peripherals(int rssi) {
+		final List<Peripheral> list = new ArrayList<>(DEVICE_COUNT);
+		for (int i = 0; i < DEVICE_COUNT; i++) {
+			final String address = String.format("00:00:00:00:%02X:%02X", i >>> 8, i & 0xFF);
+			list.add(new Peripheral(address, "device" + i, rssi - (i % 30), Collections.<UUID>emptyList()));
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * bind the rows on the screen like RecyclerView does, rebinding those which have changed
+	 */
+	private void layout(List<PeripheralListAdapter.ViewHolder> screen) {
+		for (int i = 0; i < changedPositions.size(); i++) {
+			final int position = changedPositions.get(i);
+			if (position >= screen.size()) continue;
+
+			final List<Object> payloads = (rssiPayloads.get(i) == null)
+				? Collections.<Object>emptyList() : Collections.singletonList(rssiPayloads.get(i));
+			adapter.onBindViewHolder(screen.get(position), position, payloads);
+		}
+		changedPositions.clear();
+		rssiPayloads.clear();
+	}
+
+	/**
+	 * list the peripherals and bind the rows on the screen
+	 */
+	private List<PeripheralListAdapter.ViewHolder> firstLayout() {
+		final List<Peripheral> initial = peripherals(-50);
+		adapter.applyDiff(new ScanDiff(initial, initial, Collections.<Peripheral>emptyList(), Collections.<Peripheral>emptyList()));
+		assertEquals(DEVICE_COUNT, adapter.getItemCount());
+
+		final List<PeripheralListAdapter.ViewHolder> screen = new ArrayList<>();
+		for (int i = 0; i < VISIBLE_ROWS; i++) {
+			final PeripheralListAdapter.ViewHolder holder = adapter.onCreateViewHolder(parent, 0);
+			adapter.onBindViewHolder(holder, i, Collections.<Object>emptyList());
+			screen.add(holder);
+		}
+		return screen;
+	}
+
+	/**
+	 * the scans of the refreshes, built before anything is measured
+	 */
+	private static List<ScanDiff> refreshes() {
+		final List<ScanDiff> diffs = new ArrayList<>(REFRESH_COUNT);
+		for (int refresh = 0; refresh < REFRESH_COUNT; refresh++) {
+			final List<Peripheral> list = peripherals(-60 - refresh);
+			diffs.add(new ScanDiff(list, Collections.<Peripheral>emptyList(), list, Collections.<Peripheral>emptyList()));
+		}
+		return diffs;
+	}
+
+	/**
+	 * bytes allocated by the current thread so far
+	 */
+	private static long allocatedBytes(ThreadMXBean threadBean) {
+		return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	@Test
+	public void refreshRssiOfManyPeripherals() throws Exception {
+		final List<PeripheralListAdapter.ViewHolder> screen = firstLayout();
+		final int inflationsAfterFirstLayout = inflations;
+		final int fullBindsAfterFirstLayout = fullBinds;
+
+		for (ScanDiff diff : refreshes()) {
+			adapter.applyDiff(diff);
+			layout(screen);
+		}
+
+		assertEquals(inflationsAfterFirstLayout, inflations);
+		assertEquals(fullBindsAfterFirstLayout, fullBinds);
+		assertEquals(VISIBLE_ROWS * REFRESH_COUNT, partialBinds);
+
+		//the rows show the latest RSSI
+		final TextView rssi = (TextView) screen.get(1).itemView.findViewById(R.id.textViewRssi);
+		assertEquals(String.valueOf(-60 - (REFRESH_COUNT - 1) - 1), rssi.getText().toString());
+	}
+
+	@Test
+	public void refreshRssi_allocatesLessThanReplacingTheList() throws Exception {
+		final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean
+			&& ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported());
+
+		final List<PeripheralListAdapter.ViewHolder> screen = firstLayout();
+		final List<ScanDiff> diffs = refreshes();
+
+		//once to let the recorded changes and the rows reach their size, then measured
+		long applied = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			final long before = allocatedBytes(threadBean);
+			for (ScanDiff diff : diffs) {
+				adapter.applyDiff(diff);
+				layout(screen);
+			}
+			applied = allocatedBytes(threadBean) - before;
+		}
+
+		long replaced = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			final long before = allocatedBytes(threadBean);
+			for (ScanDiff diff : diffs) {
+				adapter.setPeripheralList(diff.getPeripheralList());
+				layout(screen);
+			}
+			replaced = allocatedBytes(threadBean) - before;
+		}
+
+		//the diff only rebinds the RSSI, replacing the list rebuilds the positions and rebinds the rows
+		assertTrue("applied " + applied / REFRESH_COUNT + " B, replaced " + replaced / REFRESH_COUNT + " B per refresh",
+			applied < replaced);
+	}
+
+	@Test
+	public void stableIds_comeFromMacAddress() throws Exception {
+		final List<Peripheral> initial = peripherals(-50);
+		adapter.applyDiff(new ScanDiff(initial, initial, Collections.<Peripheral>emptyList(), Collections.<Peripheral>emptyList()));
+
+		assertTrue(adapter.hasStableIds());
+		assertEquals(initial.get(3).getMacAddress(), adapter.getItemId(3));
+	}
+
+	@Test
+	public void evictedAndDiscoveredAgainWithinWindow_rowsFollowTheRegistry() throws Exception {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final PeripheralRegistry registry = new PeripheralRegistry();
+		final ScanDispatcher dispatcher = new ScanDispatcher(registry, scheduler, DIRECT, 100, 64, new ScanListener() {
+			@Override
+			public void onScanned(ScanDiff diff) {
+				adapter.applyDiff(diff);
+			}
+
+			@Override
+			public void onFailed(int errorCode) {
+				fail("unexpected scan failure");
+			}
+		});
+
+		for (int i = 0; i < 4; i++) {
+			final Peripheral peripheral = FakeScanner.peripheral(i, -50);
+			registry.upsert(peripheral);
+			dispatcher.onAdded(peripheral);
+		}
+		scheduler.advanceBy(100);
+
+		final List<PeripheralListAdapter.ViewHolder> screen = new ArrayList<>();
+		for (int i = 0; i < adapter.getItemCount(); i++) {
+			final PeripheralListAdapter.ViewHolder holder = adapter.onCreateViewHolder(parent, 0);
+			adapter.onBindViewHolder(holder, i, Collections.<Object>emptyList());
+			screen.add(holder);
+		}
+		changedPositions.clear();
+		rssiPayloads.clear();
+
+		//the last one fills the hole of the evicted one, which comes back at the end: reported as updated only
+		final Peripheral evicted = registry.remove(FakeScanner.peripheral(1, 0).getMacAddress());
+		dispatcher.onRemoved(evicted);
+		final Peripheral discovered = FakeScanner.peripheral(1, -70);
+		registry.upsert(discovered);
+		dispatcher.onAdded(discovered);
+		scheduler.advanceBy(100);
+		layout(screen);
+
+		final List<Peripheral> expected = registry.snapshot();
+		assertEquals(expected.size(), adapter.getItemCount());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getMacAddress(), adapter.getItemId(i));
+			final TextView name = (TextView) screen.get(i).itemView.findViewById(R.id.textViewDevName);
+			final TextView rssi = (TextView) screen.get(i).itemView.findViewById(R.id.textViewRssi);
+			assertEquals(expected.get(i).getName(), name.getText().toString());
+			assertEquals(String.valueOf(expected.get(i).getSmoothedRssi()), rssi.getText().toString());
+		}
+	}
+}
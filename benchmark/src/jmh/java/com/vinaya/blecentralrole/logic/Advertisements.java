@@ -0,0 +1,110 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.Advertisement;
+import com.vinaya.blecentralrole.model.MacAddress;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * what the benchmarks are fed with: the fields of the scan results of a crowd of devices,
+ * a quarter of them advertising the loop back service
+ */
+final class Advertisements {
+	final static UUID LOOP_BACK_SERVICE = UUID.fromString("abc00001-1234-5678-1234-abcd0123abcd");
+	final static UUID LOOP_BACK_TX = UUID.fromString("abc00002-1234-5678-1234-abcd0123abcd");
+	final static UUID LOOP_BACK_RX = UUID.fromString("abc00003-1234-5678-1234-abcd0123abcd");
+
+	final String[] addresses;
+	final String[] names;
+	final int[] rssis;
+	final List<List<UUID>> serviceUUIDs;
+	final byte[][] scanRecords;    //the same fields as the controller sends them, with manufacturer data
+
+	/**
+	 * @param devices number of different addresses
+	 */
+	Advertisements(int devices) {
+		final Random random = new Random(devices);
+		this.addresses = new String[devices];
+		this.names = new String[devices];
+		this.rssis = new int[devices];
+		this.serviceUUIDs = new ArrayList<>(devices);
+		this.scanRecords = new byte[devices][];
+		for (int i = 0; i < devices; i++) {
+			addresses[i] = MacAddress.format(0xC0FFEE000000L + i);
+			names[i] = (i % 3 == 0) ? null : "device " + i;
+			rssis[i] = -40 - random.nextInt(60);
+			if (i % 4 == 0) {
+				serviceUUIDs.add(Collections.singletonList(LOOP_BACK_SERVICE));
+			} else if (i % 4 == 1) {
+				serviceUUIDs.add(Collections.<UUID>emptyList());
+			} else {
+				final List<UUID> uuids = new ArrayList<>();
+				for (int j = 0; j < i % 4; j++) {
+					uuids.add(new UUID(random.nextLong(), random.nextLong()));
+				}
+				serviceUUIDs.add(uuids);
+			}
+			scanRecords[i] = scanRecord(names[i], serviceUUIDs.get(i));
+		}
+	}
+
+	/**
+	 * flags, 128 bit services, name and manufacturer data, padded to the 62 bytes of advertisement and scan response
+	 */
+	private static byte[] scanRecord(String name, List<UUID> uuids) {
+		final ByteBuffer buffer = ByteBuffer.allocate(62);
+		buffer.put((byte) 2).put((byte) Advertisement.TYPE_FLAGS).put((byte) 0x06);
+		if (false == uuids.isEmpty()) {
+			buffer.put((byte) (1 + 16 * uuids.size())).put((byte) Advertisement.TYPE_UUID128);
+			for (UUID uuid : uuids) {
+				putLittleEndian(buffer, uuid.getLeastSignificantBits());
+				putLittleEndian(buffer, uuid.getMostSignificantBits());
+			}
+		}
+		buffer.put((byte) 5).put((byte) Advertisement.TYPE_MANUFACTURER_DATA).put((byte) 0x59).put((byte) 0x00)
+			.put((byte) 0x01).put((byte) 0x02);
+		if (name != null && buffer.remaining() >= name.length() + 2) {
+			buffer.put((byte) (1 + name.length())).put((byte) Advertisement.TYPE_COMPLETE_NAME)
+				.put(name.getBytes(Charset.forName("UTF-8")));
+		}
+		return buffer.array();
+	}
+
+	private static void putLittleEndian(ByteBuffer buffer, long value) {
+		for (int i = 0; i < 8; i++) {
+			buffer.put((byte) (value >>> (8 * i)));
+		}
+	}
+
+	int size() {
+		return addresses.length;
+	}
+
+	Peripheral peripheral(int index) {
+		return new Peripheral(addresses[index], names[index], rssis[index], serviceUUIDs.get(index));
+	}
+
+	/**
+	 * as the scanner makes it: the name known by the system and the raw scan record
+	 */
+	Peripheral fromScanRecord(int index) {
+		return Peripheral.fromAdvertisement(addresses[index], names[index], rssis[index],
+			new Advertisement(scanRecords[index]));
+	}
+
+	Peripheral[] peripherals() {
+		final Peripheral[] peripherals = new Peripheral[size()];
+		for (int i = 0; i < peripherals.length; i++) {
+			peripherals[i] = peripheral(i);
+		}
+		return peripherals;
+	}
+}
@@ -0,0 +1,62 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+import com.vinaya.blecentralrole.model.ServiceProfile;
+import com.vinaya.blecentralrole.model.UUIDRepository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the check of Central.canConnect, done for every row of the list:
+ * does the peripheral advertise a known service. Once per peripheral it is looked up in the list of services
+ * or in the raw scan record, then the result is kept on the peripheral
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CanConnectBenchmark {
+	private Advertisements advertisements;
+	private Peripheral[] peripherals;
+	private UUIDRepository uuidRepository;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		this.advertisements = new Advertisements(256);
+		this.peripherals = advertisements.peripherals();
+		this.uuidRepository = new UUIDRepository(new ServiceProfile("loopback", Advertisements.LOOP_BACK_SERVICE,
+			Advertisements.LOOP_BACK_TX, Advertisements.LOOP_BACK_RX, ServiceProfile.CCCD));
+	}
+
+	@Benchmark
+	public boolean canConnect() {
+		next = (next + 1) % peripherals.length;
+		return uuidRepository.findProfile(peripherals[next].getServiceUUIDs()) != null;
+	}
+
+	/**
+	 * the first check of a new peripheral, from the raw scan record
+	 */
+	@Benchmark
+	public boolean canConnectFromScanRecord() {
+		next = (next + 1) % advertisements.size();
+		return uuidRepository.findProfileOf(advertisements.fromScanRecord(next)) != null;
+	}
+
+	/**
+	 * the next checks, e.g. on every bind of its row
+	 */
+	@Benchmark
+	public boolean canConnectMemoized() {
+		next = (next + 1) % peripherals.length;
+		return uuidRepository.findProfileOf(peripherals[next]) != null;
+	}
+}
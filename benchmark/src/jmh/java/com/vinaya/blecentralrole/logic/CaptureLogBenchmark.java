@@ -0,0 +1,80 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.logic.capture.CaptureLog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 4 links capturing notifications of 20 bytes in bursts, each waiting for its burst to be written
+ * before the next: the frames per second sustained through the writer thread into the mapped segments,
+ * rotation and force included. A frame dropped fails the run, the rate would not mean anything
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class CaptureLogBenchmark {
+	private final static int BURST_SIZE = 1000;
+	private final static int VALUE_SIZE = 20;
+
+	private final AtomicLong nextMac = new AtomicLong(0x001122334400L);
+	private File directory;
+	private CaptureLog log;
+
+	@State(Scope.Thread)
+	public static class Link {
+		final byte[] value = new byte[VALUE_SIZE];
+		long mac;
+
+		@Setup
+		public void setUp(CaptureLogBenchmark benchmark) {
+			this.mac = benchmark.nextMac.getAndIncrement();
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		this.directory = File.createTempFile("capture", "");
+		directory.delete();
+		this.log = new CaptureLog(directory);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		log.close();
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+		if (log.getDroppedCount() != 0) throw new IllegalStateException(log.getDroppedCount() + " frames dropped");
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BURST_SIZE)
+	public void burst(Link link) throws InterruptedException {
+		final byte[] value = link.value;
+		for (int i = 0; i < BURST_SIZE; i++) {
+			value[0] = (byte) i;
+			log.append(System.currentTimeMillis(), link.mac, CaptureLog.RX, value, 0, value.length);
+		}
+		log.flush();
+	}
+}
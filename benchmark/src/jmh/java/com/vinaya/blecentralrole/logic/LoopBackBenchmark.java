@@ -0,0 +1,92 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.logic.gatt.Fragmenter;
+import com.vinaya.blecentralrole.logic.gatt.Frame;
+import com.vinaya.blecentralrole.logic.gatt.FrameEncoder;
+import com.vinaya.blecentralrole.logic.gatt.FrameParser;
+import com.vinaya.blecentralrole.logic.gatt.Reassembler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * feature 5e without the radio, per message: the RX notifications are reassembled and decoded,
+ * then the counter and the message are encoded into the TX frame, as GattSession does.
+ * The same with the binary framing, where the payload is passed on without being decoded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LoopBackBenchmark {
+	@Param({"23", "247"})
+	public int mtu;
+
+	@Param({"12", "200"})
+	public int messageLength;
+
+	private byte[][] chunks;
+	private final Reassembler reassembler = new Reassembler();
+	private final LoopBackCodec codec = new LoopBackCodec();
+	private byte[][] frameChunks;
+	private final FrameParser frameParser = new FrameParser();
+	private final FrameEncoder frameEncoder = new FrameEncoder();
+	private int counter;
+	private int sum;
+
+	private final Reassembler.Listener listener = new Reassembler.Listener() {
+		@Override
+		public void onMessage(byte[] buffer, int length) {
+			final CharSequence received = codec.decode(buffer, length);
+			final int frameLength = codec.encodeLoopBack(++counter & 0xFF, buffer, length);
+			//what is left of the TX path is copying the frame in chunks of the MTU
+			sum += received.length() + frameLength + codec.getFrame()[frameLength / 2];
+		}
+	};
+
+	private final FrameParser.Listener frameListener = new FrameParser.Listener() {
+		@Override
+		public void onFrame(int sequence, int type, byte[] payload, int length) {
+			final int frameLength = frameEncoder.encode(++counter, type, payload, 0, length);
+			sum += length + frameLength + frameEncoder.getFrame()[frameLength / 2];
+		}
+	};
+
+	@Setup
+	public void setUp() {
+		final byte[] message = new byte[messageLength + 1];
+		Arrays.fill(message, (byte) 'x');
+		message[messageLength] = 0;
+		final List<byte[]> list = Fragmenter.split(message, mtu);
+		this.chunks = list.toArray(new byte[list.size()][]);
+
+		final int frameLength = frameEncoder.encode(0, Frame.TYPE_TEXT, message, 0, messageLength);
+		final List<byte[]> frames = Fragmenter.split(Arrays.copyOf(frameEncoder.getFrame(), frameLength), mtu);
+		this.frameChunks = frames.toArray(new byte[frames.size()][]);
+	}
+
+	@Benchmark
+	public int rxToTx() {
+		for (byte[] chunk : chunks) {
+			reassembler.append(chunk, mtu, listener);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int binaryRxToTx() {
+		for (byte[] chunk : frameChunks) {
+			frameParser.append(chunk, frameListener);
+		}
+		return sum;
+	}
+}
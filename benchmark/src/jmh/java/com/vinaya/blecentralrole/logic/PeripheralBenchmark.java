@@ -0,0 +1,42 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a Peripheral from a scan result, as the scanner does for every advertisement:
+ * from the decoded fields, or from the raw scan record decoded on demand
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PeripheralBenchmark {
+	private Advertisements advertisements;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		this.advertisements = new Advertisements(256);
+	}
+
+	@Benchmark
+	public Peripheral fromScanResult() {
+		next = (next + 1) % advertisements.size();
+		return advertisements.peripheral(next);
+	}
+
+	@Benchmark
+	public Peripheral fromScanRecord() {
+		next = (next + 1) % advertisements.size();
+		return advertisements.fromScanRecord(next);
+	}
+}
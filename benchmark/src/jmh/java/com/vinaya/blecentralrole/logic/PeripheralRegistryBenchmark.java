@@ -0,0 +1,64 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the registry in a steady scan: every advertisement replaces the one of the same device.
+ * Against the synchronized list it replaced, searched from the start for every advertisement
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PeripheralRegistryBenchmark {
+	@Param({"10", "100", "1000"})
+	public int devices;
+
+	private Peripheral[] peripherals;
+	private PeripheralRegistry registry;
+	private List<Peripheral> list;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		this.peripherals = new Advertisements(devices).peripherals();
+		this.registry = new PeripheralRegistry();
+		for (Peripheral peripheral : peripherals) {
+			registry.upsert(peripheral);
+		}
+		this.list = Collections.synchronizedList(new ArrayList<Peripheral>());
+		Collections.addAll(list, peripherals);
+	}
+
+	@Benchmark
+	public boolean upsertSeen() {
+		next = (next + 1) % peripherals.length;
+		return registry.upsert(peripherals[next]);
+	}
+
+	@Benchmark
+	public boolean upsertSeenSynchronizedList() {
+		next = (next + 1) % peripherals.length;
+		final Peripheral peripheral = peripherals[next];
+		final int index = list.indexOf(peripheral);
+		if (index == -1) {
+			list.add(peripheral);
+		} else {
+			list.set(index, peripheral);
+		}
+		return index == -1;
+	}
+}
@@ -0,0 +1,75 @@
+package com.vinaya.blecentralrole.logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a crowd of peripherals advertising 10 times a second, with the multipath noise of a room,
+ * most of them hovering around the threshold: the smoothing and the alert check of one sample
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RssiProcessorBenchmark {
+	private final static int SAMPLES = 600;
+	private final static long SAMPLE_INTERVAL = 100;    //in millisecond
+	private final static int THRESHOLD = -70;
+	private final static double NOISE = 4;              //standard deviation, in dBm
+	private final static double FADE = 0.05;            //chance of a deep fade of a sample
+
+	@Param({"100", "5000"})
+	public int devices;
+
+	private byte[] rssi;
+	private RssiProcessor processor;
+	private int alerts;
+	private int next;
+	private long round;    //the time goes on when the recording starts over
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(13);
+		final double[] means = new double[devices];
+		for (int i = 0; i < devices; i++) means[i] = THRESHOLD + random.nextGaussian() * 3;
+
+		this.rssi = new byte[SAMPLES * devices];
+		for (int s = 0; s < SAMPLES; s++) {
+			for (int i = 0; i < devices; i++) {
+				double value = means[i] + random.nextGaussian() * NOISE;
+				if (random.nextDouble() < FADE) value -= 20;
+				rssi[s * devices + i] = (byte) Math.round(value);
+			}
+		}
+
+		this.processor = new RssiProcessor(THRESHOLD, new RssiProcessor.AlertListener() {
+			@Override
+			public void onRssiAlert(long mac, int rssi, boolean isLow) {
+				alerts++;
+			}
+		});
+		//every slot is created before the measurement
+		for (int i = 0; i < devices * RssiProcessor.DEFAULT_WINDOW; i++) {
+			sample();
+		}
+	}
+
+	@Benchmark
+	public int sample() {
+		final int index = next;
+		if (++next == rssi.length) {
+			next = 0;
+			round++;
+		}
+		final long now = (round * SAMPLES + index / devices) * SAMPLE_INTERVAL;
+		return processor.add(index % devices, rssi[index], now) + alerts;
+	}
+}
@@ -0,0 +1,91 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the scan to UI path per advertisement: upsert into the registry, record the change,
+ * and every batch size changes, deliver a diff with its snapshot
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScanDispatchBenchmark {
+	//the window never ends, only the full batches are delivered
+	private final static Scheduler NO_TIMER = new Scheduler() {
+		@Override
+		public long now() {
+			return 0;
+		}
+
+		@Override
+		public Task schedule(Runnable runnable, long delayMillis) {
+			return new Task() {
+				@Override
+				public void cancel() {
+				}
+			};
+		}
+	};
+
+	private final static Executor DIRECT = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	@Param({"100", "1000"})
+	public int devices;
+
+	@Param({"16", "64"})
+	public int batchSize;
+
+	private Peripheral[] peripherals;
+	private PeripheralRegistry registry;
+	private ScanDispatcher dispatcher;
+	private int next;
+	private int delivered;
+
+	@Setup
+	public void setUp() {
+		this.peripherals = new Advertisements(devices).peripherals();
+		this.registry = new PeripheralRegistry();
+		for (Peripheral peripheral : peripherals) {
+			registry.upsert(peripheral);
+		}
+		this.dispatcher = new ScanDispatcher(registry, NO_TIMER, DIRECT, Long.MAX_VALUE, batchSize, new ScanListener() {
+			@Override
+			public void onScanned(ScanDiff diff) {
+				delivered += diff.getPeripheralList().size() + diff.getUpdated().size();
+			}
+
+			@Override
+			public void onFailed(int errorCode) {
+			}
+		});
+	}
+
+	@Benchmark
+	public int advertisement() {
+		next = (next + 1) % peripherals.length;
+		final Peripheral peripheral = peripherals[next];
+		if (registry.upsert(peripheral)) {
+			dispatcher.onAdded(peripheral);
+		} else {
+			dispatcher.onUpdated(peripheral);
+		}
+		return delivered;
+	}
+}
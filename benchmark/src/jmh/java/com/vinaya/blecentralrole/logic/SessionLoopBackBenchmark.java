@@ -0,0 +1,174 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+import com.vinaya.blecentralrole.model.Peripheral;
+import com.vinaya.blecentralrole.model.ServiceProfile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * feature 5e through the whole session, per notification: from onCharacteristicChanged
+ * to the loop back written and acknowledged by a link which answers at once.
+ * Run with -prof gc to see the bytes allocated per notification
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SessionLoopBackBenchmark {
+	private final static UUID CCCD = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+	private final static ServiceProfile PROFILE = new ServiceProfile("loopback", Advertisements.LOOP_BACK_SERVICE,
+		Advertisements.LOOP_BACK_TX, Advertisements.LOOP_BACK_RX, CCCD);
+
+	//never fires, so that the timeouts of the queue do not count
+	private final static Scheduler IDLE_SCHEDULER = new Scheduler() {
+		private final Task task = new Task() {
+			@Override
+			public void cancel() {
+			}
+		};
+
+		@Override
+		public long now() {
+			return 0;
+		}
+
+		@Override
+		public Task schedule(Runnable runnable, long delayMillis) {
+			return task;
+		}
+	};
+
+	private final static ConnectListener IGNORE = new ConnectListener() {
+		@Override
+		public void onConnected(Peripheral peripheral) {
+		}
+
+		@Override
+		public void onDisconnected(Peripheral peripheral, boolean isManually) {
+		}
+
+		@Override
+		public void onReceived(Peripheral peripheral, CharSequence data) {
+		}
+
+		@Override
+		public void onFrame(Peripheral peripheral, int sequence, int type, ByteBuffer payload) {
+		}
+
+		@Override
+		public void onConnectFail(Peripheral peripheral) {
+		}
+
+		@Override
+		public void onLinkChanged(Peripheral peripheral, LinkParameters parameters) {
+		}
+	};
+
+	private final static GattSession.Observer IGNORE_SESSION = new GattSession.Observer() {
+		@Override
+		public void onConnectionChanged(GattSession session, boolean isConnected) {
+		}
+
+		@Override
+		public void onClosed(GattSession session) {
+		}
+	};
+
+	/**
+	 * acknowledges every request at once, and keeps nothing
+	 */
+	private static class EchoLink implements GattLink, GattLink.Connector {
+		Callback callback;
+		int written;
+
+		@Override
+		public GattLink connect(String address, boolean autoConnect, Callback callback) {
+			this.callback = callback;
+			return this;
+		}
+
+		@Override
+		public boolean discoverServices() {
+			return true;
+		}
+
+		@Override
+		public boolean requestMtu(int mtu) {
+			callback.onMtuChanged(DEFAULT_MTU, GATT_SUCCESS);
+			return true;
+		}
+
+		@Override
+		public boolean requestConnectionPriority(int priority) {
+			return true;
+		}
+
+		@Override
+		public boolean setPreferredPhy(int phy) {
+			return true;
+		}
+
+		@Override
+		public boolean hasCharacteristic(UUID service, UUID characteristic) {
+			return true;
+		}
+
+		@Override
+		public boolean setCharacteristicNotification(UUID service, UUID characteristic, boolean enable) {
+			return true;
+		}
+
+		@Override
+		public boolean writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value) {
+			callback.onDescriptorWrite(descriptor, GATT_SUCCESS);
+			return true;
+		}
+
+		@Override
+		public boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value, boolean withResponse) {
+			written += value.length;
+			callback.onCharacteristicWrite(characteristic, GATT_SUCCESS);
+			return true;
+		}
+
+		@Override
+		public void disconnect() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private final byte[] value = "temperature=21.5\0".getBytes();
+	private EchoLink link;
+
+	@Setup
+	public void setUp() {
+		this.link = new EchoLink();
+		final Peripheral peripheral = new Peripheral("C0:FF:EE:00:00:01", "device", -50, Collections.<UUID>emptyList());
+		final GattSession session = new GattSession(peripheral, IGNORE, link, IDLE_SCHEDULER, PROFILE, "Ready",
+			ReconnectPolicy.IMMEDIATE, LinkProfile.BALANCED, ConnectionMetrics.NONE, null, IGNORE_SESSION);
+		if (false == session.open()) throw new IllegalStateException("cannot open the session");
+		link.callback.onConnectionStateChange(GattLink.GATT_SUCCESS, GattLink.STATE_CONNECTED);
+		link.callback.onServicesDiscovered(GattLink.GATT_SUCCESS);
+		if (session.getState() != GattSession.State.READY) throw new IllegalStateException("session not ready");
+	}
+
+	@Benchmark
+	public int notification() {
+		link.callback.onCharacteristicChanged(Advertisements.LOOP_BACK_RX, value);
+		return link.written;
+	}
+}
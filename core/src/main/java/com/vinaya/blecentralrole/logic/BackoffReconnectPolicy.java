@@ -0,0 +1,75 @@
+package com.vinaya.blecentralrole.logic;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter, so that the sessions losing their links at the same time
+ * do not reconnect at the same time, nor keep the radio busy while the device is out of range.
+ *
+ * After a few failures the connection is left to the controller by autoConnect,
+ * which waits for the device in the background at a low duty cycle.
+ */
+public class BackoffReconnectPolicy implements ReconnectPolicy {
+	public final static long DEFAULT_BASE_DELAY = 1000;    //in millisecond
+	public final static long DEFAULT_MAX_DELAY = 60000;    //in millisecond
+	public final static int DEFAULT_MAX_ATTEMPTS = 10;
+	public final static int DEFAULT_AUTO_CONNECT_AFTER = 3;
+	public final static double DEFAULT_JITTER = 0.5;
+
+	//--------------------------------------------------
+	//data members
+	private final long baseDelay;
+	private final long maxDelay;
+	private final int maxAttempts;
+	private final int autoConnectAfter;
+	private final double jitter;
+	private final Random random;
+
+
+	//--------------------------------------------------
+	//class methods
+	public BackoffReconnectPolicy() {
+		this(DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MAX_ATTEMPTS, DEFAULT_AUTO_CONNECT_AFTER, DEFAULT_JITTER, new Random());
+	}
+
+	/**
+	 * @param baseDelay        delay after the first failure, doubled on every failure, in millisecond
+	 * @param maxDelay         the delay does not grow beyond this, in millisecond
+	 * @param maxAttempts      give up after this number of failures in a row
+	 * @param autoConnectAfter use autoConnect after this number of failures in a row
+	 * @param jitter           fraction of the delay which is random, from 0 to 1
+	 * @param random           source of the jitter, seeded in the tests
+	 */
+	public BackoffReconnectPolicy(long baseDelay, long maxDelay, int maxAttempts, int autoConnectAfter,
+	                              double jitter, Random random) {
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+		this.maxAttempts = maxAttempts;
+		this.autoConnectAfter = autoConnectAfter;
+		this.jitter = jitter;
+		this.random = random;
+	}
+
+	@Override
+	public long getDelay(int failures) {
+		if (failures > maxAttempts) return NO_RECONNECT;
+
+		//shift no more than needed to reach maxDelay, so that it does not overflow
+		long delay = baseDelay;
+		for (int i = 1; i < failures && delay < maxDelay; i++) {
+			delay <<= 1;
+		}
+		delay = Math.min(delay, maxDelay);
+
+		final long random;
+		synchronized (this.random) {
+			random = (long) (this.random.nextDouble() * jitter * delay);
+		}
+		return delay - random;
+	}
+
+	@Override
+	public boolean isAutoConnect(int failures) {
+		return failures >= autoConnectAfter;
+	}
+}
@@ -0,0 +1,47 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.nio.ByteBuffer;
+
+/**
+ * callbacks of the connections, every one is tagged with the peripheral it is about
+ */
+public interface ConnectListener {
+	void onConnected(Peripheral peripheral);
+
+	/**
+	 * react when
+	 *
+	 * @param peripheral connected peripheral
+	 * @param isManually is the disconnect triggered by us manually?
+	 */
+	void onDisconnected(Peripheral peripheral, boolean isManually);
+
+	/**
+	 * react on what received from the subscribe characterics
+	 *
+	 * @param peripheral connected peripheral
+	 * @param data       received data, assumed to be string. It is a reused buffer,
+	 *                   valid only during the call, so call toString() to keep it
+	 */
+	void onReceived(Peripheral peripheral, CharSequence data);
+
+	/**
+	 * react on a frame from a peripheral whose profile has the binary framing, instead of {@link #onReceived}
+	 *
+	 * @param sequence 0 to 255, as sent by the peripheral
+	 * @param type     e.g. {@link com.vinaya.blecentralrole.logic.gatt.Frame#TYPE_TEXT}
+	 * @param payload  read-only, little endian. It is a reused buffer, valid only during the call
+	 */
+	void onFrame(Peripheral peripheral, int sequence, int type, ByteBuffer payload);
+
+	void onConnectFail(Peripheral peripheral);
+
+	/**
+	 * called once the MTU is negotiated, then whenever the PHY or the connection priority changes
+	 *
+	 * @param parameters what the link runs with now
+	 */
+	void onLinkChanged(Peripheral peripheral, LinkParameters parameters);
+}
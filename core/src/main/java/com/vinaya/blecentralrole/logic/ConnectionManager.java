@@ -0,0 +1,160 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.logic.capture.CaptureLog;
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+import com.vinaya.blecentralrole.model.Peripheral;
+import com.vinaya.blecentralrole.model.ServiceProfile;
+import com.vinaya.blecentralrole.model.UUIDRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded pool of {@link GattSession}, at most one for each peripheral.
+ *
+ * The sessions run concurrently, each on its own link, so the throughput adds up with the number of links.
+ * The connected flag of the peripherals in the registry follows the sessions.
+ * Not thread safe, it is owned by the event loop of the Central, only {@link #size()} may be read from any thread.
+ */
+public class ConnectionManager {
+
+	//--------------------------------------------------
+	//data members
+	private final GattLink.Connector connector;
+	private final Scheduler scheduler;
+	private final PeripheralRegistry registry;
+	private final UUIDRepository uuidRepository;
+	private final String readyMessage;
+	private final int maxConnections;
+	private ConnectionMetrics metrics = ConnectionMetrics.NONE;
+	private CaptureLog captureLog;
+
+	//key is the mac address
+	private final Map<Long, GattSession> sessions = new HashMap<>();
+	private volatile int sessionCount;    //size of sessions, for the UI thread
+
+	private final GattSession.Observer observer = new GattSession.Observer() {
+		@Override
+		public void onConnectionChanged(GattSession session, boolean isConnected) {
+			final Peripheral peripheral = session.getPeripheral();
+			peripheral.setConnected(isConnected);
+			registry.setConnected(peripheral.getMacAddress(), isConnected, scheduler.now());
+		}
+
+		@Override
+		public void onClosed(GattSession session) {
+			final long mac = session.getPeripheral().getMacAddress();
+			if (sessions.get(mac) == session) remove(mac);
+		}
+	};
+
+
+	//--------------------------------------------------
+	//class methods
+
+	/**
+	 * @param readyMessage   what is written once subscribed
+	 * @param maxConnections number of sessions at the same time, the controller supports only a few links
+	 */
+	public ConnectionManager(GattLink.Connector connector, Scheduler scheduler, PeripheralRegistry registry,
+	                         UUIDRepository uuidRepository, String readyMessage, int maxConnections) {
+		this.connector = connector;
+		this.scheduler = scheduler;
+		this.registry = registry;
+		this.uuidRepository = uuidRepository;
+		this.readyMessage = readyMessage;
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * @param metrics hooks for the sessions opened afterwards
+	 */
+	public void setMetrics(ConnectionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @param captureLog where the sessions opened afterwards record what they receive and write, null not to
+	 */
+	public void setCaptureLog(CaptureLog captureLog) {
+		this.captureLog = captureLog;
+	}
+
+	/**
+	 * open a session to the peripheral on a balanced link, nothing is done if there is one already
+	 *
+	 * @return false if the pool is full or the device is not found
+	 */
+	public boolean connect(Peripheral peripheral, ConnectListener listener, ReconnectPolicy reconnectPolicy) {
+		return connect(peripheral, listener, reconnectPolicy, LinkProfile.BALANCED);
+	}
+
+	/**
+	 * open a session to the peripheral, nothing is done if there is one already
+	 *
+	 * @param linkProfile how the link is set up, e.g. {@link LinkProfile#THROUGHPUT}
+	 * @return false if the pool is full or the device is not found
+	 */
+	public boolean connect(Peripheral peripheral, ConnectListener listener, ReconnectPolicy reconnectPolicy,
+	                       LinkProfile linkProfile) {
+		final long mac = peripheral.getMacAddress();
+		if (sessions.containsKey(mac)) return true;
+		if (sessions.size() >= maxConnections) return false;
+
+		//the profile of the advertised service, or the default one for a peripheral connected by address
+		ServiceProfile profile = uuidRepository.findProfileOf(peripheral);
+		if (profile == null) profile = uuidRepository.getDefaultProfile();
+
+		final GattSession session = new GattSession(peripheral, listener, connector, scheduler,
+			profile, readyMessage, reconnectPolicy, linkProfile, metrics, captureLog, observer);
+		sessions.put(mac, session);
+		this.sessionCount = sessions.size();
+
+		//in the pool before it is opened, the link may call back at once
+		if (session.open()) return true;
+
+		remove(mac);
+		return false;
+	}
+
+	/**
+	 * close the session to the peripheral, if any
+	 */
+	public void disconnect(Peripheral peripheral) {
+		final GattSession session = get(peripheral.getMacAddress());
+		if (session != null) session.close();
+	}
+
+	public void disconnectAll() {
+		//closing a session removes it from the pool
+		final List<GattSession> sessions = new ArrayList<>(this.sessions.values());
+		for (GattSession session : sessions) {
+			session.close();
+		}
+	}
+
+	/**
+	 * @return the session to the peripheral with this mac address, or null
+	 */
+	public GattSession get(long mac) {
+		return sessions.get(mac);
+	}
+
+	/**
+	 * @return number of sessions, including those waiting to reconnect. May be called from any thread
+	 */
+	public int size() {
+		return sessionCount;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	private void remove(long mac) {
+		sessions.remove(mac);
+		this.sessionCount = sessions.size();
+	}
+}
@@ -0,0 +1,82 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+
+/**
+ * Hooks on the connection attempts and the traffic of the {@link GattSession}, e.g. to count them or to measure the time to connect.
+ * Called on the threads of the {@link com.vinaya.blecentralrole.logic.gatt.GattLink}, some once per message, keep them cheap
+ */
+public interface ConnectionMetrics {
+
+	ConnectionMetrics NONE = new ConnectionMetrics() {
+		@Override
+		public void onConnectAttempt(Peripheral peripheral, int attempt, boolean isAutoConnect) {
+		}
+
+		@Override
+		public void onConnected(Peripheral peripheral, int attempts, long elapsedMillis) {
+		}
+
+		@Override
+		public void onConnectFailed(Peripheral peripheral, int failures, long nextDelay) {
+		}
+
+		@Override
+		public void onServicesDiscovered(Peripheral peripheral, long elapsedMillis) {
+		}
+
+		@Override
+		public void onNotification(Peripheral peripheral) {
+		}
+
+		@Override
+		public void onLoopBack(Peripheral peripheral, long roundTripMillis) {
+		}
+
+		@Override
+		public void onWrite(Peripheral peripheral, int attempts, boolean isSuccess) {
+		}
+	};
+
+	/**
+	 * @param attempt 1 for the first attempt after connected or opened
+	 */
+	void onConnectAttempt(Peripheral peripheral, int attempt, boolean isAutoConnect);
+
+	/**
+	 * @param attempts      number of attempts it takes
+	 * @param elapsedMillis time since the first of these attempts
+	 */
+	void onConnected(Peripheral peripheral, int attempts, long elapsedMillis);
+
+	/**
+	 * the link is lost or cannot be opened
+	 *
+	 * @param nextDelay delay before the next attempt, or {@link ReconnectPolicy#NO_RECONNECT} if it gives up
+	 */
+	void onConnectFailed(Peripheral peripheral, int failures, long nextDelay);
+
+	/**
+	 * @param elapsedMillis time since the discovery is requested
+	 */
+	void onServicesDiscovered(Peripheral peripheral, long elapsedMillis);
+
+	/**
+	 * a notification of the rx characteristic, one chunk of a message
+	 */
+	void onNotification(Peripheral peripheral);
+
+	/**
+	 * the echo of a message is written
+	 *
+	 * @param roundTripMillis time from its last chunk received to the last chunk of the echo written
+	 */
+	void onLoopBack(Peripheral peripheral, long roundTripMillis);
+
+	/**
+	 * a write of the tx characteristic is done
+	 *
+	 * @param attempts 1 if it is not retried
+	 */
+	void onWrite(Peripheral peripheral, int attempts, boolean isSuccess);
+}
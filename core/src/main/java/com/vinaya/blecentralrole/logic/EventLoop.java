@@ -0,0 +1,243 @@
+package com.vinaya.blecentralrole.logic;
+
+
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One thread which owns the state of the Central: the callbacks of the scanner, of the links and the timers
+ * are all handed off to it, so that the state is never touched by two threads at once.
+ *
+ * The handoff is a lock-free multi producer, single consumer queue: a producer swaps the tail and links
+ * the previous node, the loop follows the links from the head. The delayed tasks are sorted in a heap
+ * which only the loop touches. Each pass takes the tasks handed off up to the tail it sees, then runs
+ * the due timers. The loop parks when idle, and is unparked only by the producer
+ * which finds it parked.
+ */
+public class EventLoop implements Scheduler, Executor {
+	private final static String TAG = "EventLoop";
+	private final static int MIN_PURGE_SIZE = 64;    //the cancelled tasks are purged from a heap larger than this
+
+	/**
+	 * node of the queue, and entry of the heap once it has been taken from the queue
+	 */
+	private final static class ScheduledTask implements Task, Comparable<ScheduledTask> {
+		private final static AtomicReferenceFieldUpdater<ScheduledTask, ScheduledTask> NEXT =
+			AtomicReferenceFieldUpdater.newUpdater(ScheduledTask.class, ScheduledTask.class, "next");
+
+		final Runnable runnable;
+		final long dueTime;
+		long sequence;    //the ties are run in the order of arrival, set by the loop
+		volatile ScheduledTask next;
+		volatile boolean isCancelled;
+
+		ScheduledTask(Runnable runnable, long dueTime) {
+			this.runnable = runnable;
+			this.dueTime = dueTime;
+		}
+
+		@Override
+		public void cancel() {
+			isCancelled = true;
+		}
+
+		@Override
+		public int compareTo(ScheduledTask o) {
+			if (dueTime != o.dueTime) return (dueTime < o.dueTime) ? -1 : 1;
+			return (sequence < o.sequence) ? -1 : ((sequence == o.sequence) ? 0 : 1);
+		}
+	}
+
+	//--------------------------------------------------
+	//data members
+	private final Thread thread;
+
+	//the queue, the head is a consumed node which only the loop reads
+	private final AtomicReference<ScheduledTask> tail;
+	private ScheduledTask head;
+
+	//owned by the loop
+	private final PriorityQueue<ScheduledTask> timers = new PriorityQueue<>();
+	private long sequence;
+	private int purgeSize = MIN_PURGE_SIZE;    //doubled after every purge, so that it is amortized
+
+	private volatile boolean isParked;
+	private volatile boolean isQuitting;
+
+
+	//--------------------------------------------------
+	//class methods
+
+	/**
+	 * start the thread of the loop
+	 */
+	public EventLoop(String name) {
+		this.head = new ScheduledTask(null, 0);
+		this.tail = new AtomicReference<>(head);
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public long now() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	/**
+	 * run the runnable on the loop, after those handed off before by the same thread. Safe from any thread
+	 */
+	@Override
+	public void execute(Runnable runnable) {
+		offer(new ScheduledTask(runnable, 0));
+	}
+
+	/**
+	 * safe from any thread
+	 */
+	@Override
+	public Task schedule(Runnable runnable, long delayMillis) {
+		final ScheduledTask task = new ScheduledTask(runnable, (delayMillis <= 0) ? 0 : now() + delayMillis);
+		offer(task);
+		return task;
+	}
+
+	/**
+	 * @return true if called on the thread of the loop
+	 */
+	public boolean isInLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * run what is already handed off, then stop the thread. The delayed tasks are dropped
+	 */
+	public void quit() {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				isQuitting = true;
+			}
+		});
+	}
+
+
+	//--------------------------------------------------
+	//the queue
+
+	private void offer(ScheduledTask task) {
+		final ScheduledTask previous = tail.getAndSet(task);
+		//the queue is broken between the swap and this link, the loop waits for it
+		ScheduledTask.NEXT.lazySet(previous, task);
+		if (isParked) LockSupport.unpark(thread);
+	}
+
+	/**
+	 * @return the next task handed off, or null if there is none
+	 */
+	private ScheduledTask poll() {
+		ScheduledTask next = head.next;
+		if (next == null) {
+			if (tail.get() == head) return null;
+			//a producer has swapped the tail but not linked it yet
+			while ((next = head.next) == null) {
+				Thread.yield();
+			}
+		}
+		//the consumed node may wait in the heap, it must not keep the rest of the queue
+		head.next = null;
+		head = next;
+		return next;
+	}
+
+
+	//--------------------------------------------------
+	//the loop
+
+	private void loop() {
+		while (false == isQuitting) {
+			final long now = now();
+
+			//the tasks handed off up to the tail seen now, the immediate ones run now. Those handed off
+			//meanwhile wait for the next pass, so that the due timers are not starved by busy producers
+			final ScheduledTask last = tail.get();
+			ScheduledTask task;
+			while (false == isQuitting && head != last && (task = poll()) != null) {
+				if (task.isCancelled) continue;
+				if (task.dueTime <= now) {
+					run(task);
+				} else {
+					task.sequence = sequence++;
+					timers.add(task);
+				}
+			}
+			if (isQuitting) break;
+
+			final long delay = runTimers(now());
+			if (delay == 0) continue;
+
+			//announce the park first, so that a producer coming in between unparks it
+			isParked = true;
+			if (tail.get() == head) {
+				if (delay < 0) {
+					LockSupport.park(this);
+				} else {
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(delay));
+				}
+			}
+			isParked = false;
+		}
+	}
+
+	/**
+	 * @return delay until the next timer, 0 if one is due already, -1 if there is none
+	 */
+	private long runTimers(long now) {
+		purge();
+		ScheduledTask task;
+		while ((task = timers.peek()) != null) {
+			if (task.isCancelled) {
+				timers.poll();
+				continue;
+			}
+			if (task.dueTime > now) return task.dueTime - now;
+			timers.poll();
+			run(task);
+			if (isQuitting) return 0;
+		}
+		return -1;
+	}
+
+	/**
+	 * the cancelled timers wait in the heap until due, e.g. the timeouts of the GATT operations,
+	 * drop them once the heap has grown
+	 */
+	private void purge() {
+		if (timers.size() < purgeSize) return;
+
+		final ScheduledTask[] tasks = timers.toArray(new ScheduledTask[timers.size()]);
+		timers.clear();
+		for (ScheduledTask task : tasks) {
+			if (false == task.isCancelled) timers.add(task);
+		}
+		this.purgeSize = Math.max(MIN_PURGE_SIZE, timers.size() * 2);
+	}
+
+	private static void run(ScheduledTask task) {
+		try {
+			task.runnable.run();
+		} catch (RuntimeException e) {
+			//a failing callback must not stop the loop
+			Logger.e(TAG, "task failed", e);
+		}
+	}
+}
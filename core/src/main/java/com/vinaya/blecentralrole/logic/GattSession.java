@@ -0,0 +1,612 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.logic.capture.CaptureLog;
+import com.vinaya.blecentralrole.logic.gatt.Fragmenter;
+import com.vinaya.blecentralrole.logic.gatt.FrameEncoder;
+import com.vinaya.blecentralrole.logic.gatt.FrameParser;
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+import com.vinaya.blecentralrole.logic.gatt.GattOperation;
+import com.vinaya.blecentralrole.logic.gatt.GattOperationQueue;
+import com.vinaya.blecentralrole.logic.gatt.Reassembler;
+import com.vinaya.blecentralrole.logic.gatt.WritePool;
+import com.vinaya.blecentralrole.model.Peripheral;
+import com.vinaya.blecentralrole.model.ServiceProfile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+/**
+ * The connection to one peripheral, run by the {@link ConnectionManager}.
+ *
+ * It goes through connect, MTU negotiation, service discovery and subscription, then loops back what is received:
+ * the zero terminated strings, or the binary frames if the profile says so, see {@link ServiceProfile.Framing}.
+ * If the link is lost, it is closed before a new one is opened by the {@link ReconnectPolicy},
+ * so that there is at most one GATT client of the session at any time.
+ * Every link has its own callback, so the late callbacks of a closed link are ignored.
+ * The PHY and the connection priority of the link follow its {@link LinkProfile}.
+ * Not thread safe, it is owned by the event loop of the Central, where the callbacks of the links are handed off.
+ */
+public class GattSession {
+	private final static String TAG = "GattSession";    //for logging use
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	//247 fills one LE data length extended packet, larger values are fragmented by the controller
+	public final static int PREFERRED_MTU = 247;
+	//echoes timed at once, the ones beyond are written without timing
+	private final static int MAX_TIMED_ECHOES = 32;
+
+	public enum State {
+		CONNECTING,
+		NEGOTIATING,
+		DISCOVERING,
+		SUBSCRIBING,
+		READY,
+		WAITING_TO_RECONNECT,
+		CLOSED
+	}
+
+	/**
+	 * what the owner of the session is told, once the state of the session is settled
+	 */
+	interface Observer {
+		void onConnectionChanged(GattSession session, boolean isConnected);
+
+		/**
+		 * the session will not reconnect any more
+		 */
+		void onClosed(GattSession session);
+	}
+
+	//--------------------------------------------------
+	//data members
+	private final Peripheral peripheral;
+	private final ConnectListener listener;
+	private final GattLink.Connector connector;
+	private final Scheduler scheduler;
+	private final String readyMessage;
+	private final ReconnectPolicy reconnectPolicy;
+	private final LinkProfile linkProfile;
+	private final ConnectionMetrics metrics;
+	private final CaptureLog captureLog;    //null not to capture
+	private final Observer observer;
+	private int receiveCount;
+
+	private final ServiceProfile profile;
+
+	private final GattOperation.Callback txCallback = new GattOperation.Callback() {
+		@Override
+		public void onComplete(GattOperation operation, int status) {
+			final boolean isSuccess = status == GattLink.GATT_SUCCESS;
+			metrics.onWrite(peripheral, operation.getAttempts(), isSuccess);
+			if (false == isSuccess) {
+				Logger.w(TAG, "write tx characteristic failed after " + operation.getAttempts() + " attempts: " + status);
+			}
+		}
+	};
+
+	private State state = State.CLOSED;
+	private Link link;
+	private boolean isConnected = false;
+	private int failures;
+	private long firstAttemptTime;
+	private Scheduler.Task reconnectTask;
+
+
+	//--------------------------------------------------
+	//class methods
+	GattSession(Peripheral peripheral, ConnectListener listener, GattLink.Connector connector,
+	            Scheduler scheduler, ServiceProfile profile, String readyMessage,
+	            ReconnectPolicy reconnectPolicy, LinkProfile linkProfile, ConnectionMetrics metrics, CaptureLog captureLog,
+	            Observer observer) {
+		this.peripheral = peripheral;
+		this.listener = listener;
+		this.connector = connector;
+		this.scheduler = scheduler;
+		this.readyMessage = readyMessage;
+		this.profile = profile;
+		this.reconnectPolicy = reconnectPolicy;
+		this.linkProfile = linkProfile;
+		this.metrics = metrics;
+		this.captureLog = captureLog;
+		this.observer = observer;
+	}
+
+	/**
+	 * open the first link
+	 *
+	 * @return false if the device is not found
+	 */
+	boolean open() {
+		final Link link = new Link();
+		this.state = State.CONNECTING;
+		this.link = link;
+
+		// We want to directly connect to the device,
+		// so we are setting the autoConnect parameter to false.
+		if (openLink(link, false)) return true;
+
+		this.state = State.CLOSED;
+		this.link = null;
+		return false;
+	}
+
+	/**
+	 * close the link and stop reconnecting, e.g. disconnected by the user
+	 */
+	public void close() {
+		if (state == State.CLOSED) return;
+		this.state = State.CLOSED;
+		cancelReconnect();
+		closeLink();
+		final boolean wasConnected = isConnected;
+		this.isConnected = false;
+
+		if (wasConnected) observer.onConnectionChanged(this, false);
+		observer.onClosed(this);
+		if (wasConnected) listener.onDisconnected(peripheral, true);
+	}
+
+	/**
+	 * queue a write to the TX characteristic, so that it is not dropped if another write is in flight.
+	 * The value is split into chunks of the negotiated MTU, the peripheral joins them by the zero terminator.
+	 * With the binary framing, it is sent as a text frame.
+	 *
+	 * @return false if there is no link
+	 */
+	public boolean writeTX(String value) {
+		if (link == null || link.queue == null) return false;
+
+		link.writeTX(value);
+		return true;
+	}
+
+	public Peripheral getPeripheral() {
+		return peripheral;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return number of messages received on all the links of this session
+	 */
+	public int getReceiveCount() {
+		return receiveCount;
+	}
+
+
+	//--------------------------------------------------
+	//helpers
+
+	/**
+	 * the link is gone or could not be opened, reconnect by the policy
+	 */
+	private void onLinkLost(Link lost) {
+		if (link != lost) return;
+		closeLink();
+		final boolean wasConnected = isConnected;
+		this.isConnected = false;
+
+		final long delay = reconnectPolicy.getDelay(++failures);
+		final boolean isGivingUp = delay == ReconnectPolicy.NO_RECONNECT;
+		if (isGivingUp) {
+			this.state = State.CLOSED;
+		} else {
+			this.state = State.WAITING_TO_RECONNECT;
+			this.reconnectTask = scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					reconnect();
+				}
+			}, delay);
+		}
+
+		metrics.onConnectFailed(peripheral, failures, delay);
+		if (wasConnected) observer.onConnectionChanged(this, false);
+		if (isGivingUp) observer.onClosed(this);
+
+		if (wasConnected) {
+			listener.onDisconnected(peripheral, false);
+		} else {
+			listener.onConnectFail(peripheral);
+		}
+	}
+
+	//feature 7: Automatically Reconnect if there is a cause of disconnection other
+	// than the intentional disconnection performed by the user.
+	private void reconnect() {
+		if (state != State.WAITING_TO_RECONNECT) return;
+		final Link link = new Link();
+		this.reconnectTask = null;
+		this.state = State.CONNECTING;
+		this.link = link;
+		final boolean isAutoConnect = reconnectPolicy.isAutoConnect(failures);
+
+		Logger.i(TAG, "Automatically Reconnect, autoConnect=" + isAutoConnect);
+		if (false == openLink(link, isAutoConnect)) onLinkLost(link);
+	}
+
+	/**
+	 * @return false if the device is not found
+	 */
+	private boolean openLink(Link link, boolean isAutoConnect) {
+		if (failures == 0) this.firstAttemptTime = scheduler.now();
+		metrics.onConnectAttempt(peripheral, failures + 1, isAutoConnect);
+
+		final GattLink gatt = connector.connect(peripheral.getAddress(), isAutoConnect, link);
+		if (gatt == null) return false;
+
+		link.attach(gatt, new GattOperationQueue(gatt, scheduler));
+		return true;
+	}
+
+	private void closeLink() {
+		if (link == null) return;
+		link.close();
+		this.link = null;
+	}
+
+	private void cancelReconnect() {
+		if (reconnectTask == null) return;
+		reconnectTask.cancel();
+		this.reconnectTask = null;
+	}
+
+	/**
+	 * move to the next state if the link is still the current one
+	 */
+	private boolean advance(Link from, State next) {
+		if (link != from) return false;
+		this.state = next;
+		return true;
+	}
+
+
+	/**
+	 * one GATT link of the session and what to do on its callbacks
+	 */
+	private class Link implements GattLink.Callback, Reassembler.Listener, FrameParser.Listener {
+		private final boolean isBinary = profile.getFraming() == ServiceProfile.Framing.BINARY;
+		//the zero terminated strings
+		private final Reassembler reassembler = isBinary ? null : new Reassembler();
+		private final LoopBackCodec codec = isBinary ? null : new LoopBackCodec();
+		//the binary frames, and a view of the payload for the listener
+		private final FrameParser frameParser = isBinary ? new FrameParser() : null;
+		private final FrameEncoder frameEncoder = isBinary ? new FrameEncoder() : null;
+		private int txSequence;
+		private byte[] viewedPayload;
+		private ByteBuffer payloadView;
+
+		private final WritePool txPool = new WritePool(profile.getServiceID(), profile.getTXCharacteristic(), true);
+
+		private GattLink gatt;
+		private GattOperationQueue queue;
+		private int mtu = GattLink.DEFAULT_MTU;
+		private long discoveryStartTime;
+		private boolean isClosed = false;
+
+		//what the link runs with, reported once negotiated
+		private int txPhy = GattLink.PHY_LE_1M;
+		private int rxPhy = GattLink.PHY_LE_1M;
+		private boolean isBoosted = false;
+		private boolean isReporting = false;
+		//from connected to subscribed, the busy priority is held however long it takes
+		private boolean isSettingUp = true;
+		//of the last notification or write, the busy priority is dropped after the idle timeout since then
+		private long lastTrafficTime;
+		private Scheduler.Task idleTask;
+
+		private final Runnable idleCheck = new Runnable() {
+			@Override
+			public void run() {
+				if (isClosed || false == isBoosted) return;
+				if (isSettingUp) {
+					idleTask = scheduler.schedule(this, linkProfile.getIdleTimeout());
+					return;
+				}
+				final long idle = scheduler.now() - lastTrafficTime;
+				if (idle < linkProfile.getIdleTimeout()) {
+					idleTask = scheduler.schedule(this, linkProfile.getIdleTimeout() - idle);
+					return;
+				}
+				idleTask = null;
+				isBoosted = false;
+				gatt.requestConnectionPriority(GattLink.CONNECTION_PRIORITY_BALANCED);
+				reportLinkChanged();
+			}
+		};
+
+		//when the echoes in flight have been received, oldest first. The queue completes the writes in order
+		private final long[] echoStartTimes = new long[MAX_TIMED_ECHOES];
+		private int echoHead;
+		private int echoCount;
+
+		//on the last chunk of a timed echo
+		private final GattOperation.Callback echoCallback = new GattOperation.Callback() {
+			@Override
+			public void onComplete(GattOperation operation, int status) {
+				final long startTime = echoStartTimes[echoHead];
+				echoHead = (echoHead + 1) % MAX_TIMED_ECHOES;
+				echoCount--;
+				txCallback.onComplete(operation, status);
+				if (status == GattLink.GATT_SUCCESS) metrics.onLoopBack(peripheral, scheduler.now() - startTime);
+			}
+		};
+
+		void attach(GattLink gatt, GattOperationQueue queue) {
+			this.gatt = gatt;
+			this.queue = queue;
+			if (isClosed) close();
+		}
+
+		void close() {
+			this.isClosed = true;
+			if (idleTask != null) {
+				idleTask.cancel();
+				this.idleTask = null;
+			}
+			if (gatt == null) return;
+			queue.close();
+			gatt.disconnect();
+			gatt.close();
+		}
+
+		@Override
+		public void onConnectionStateChange(int status, int newState) {
+			switch (newState) {
+				case GattLink.STATE_CONNECTED:
+					if (false == advance(this, State.NEGOTIATING)) return;
+
+					//neither holds up the GATT operations, the discovery runs on the busy priority
+					if (linkProfile.getPreferredPhy() != GattLink.PHY_LE_1M) gatt.setPreferredPhy(linkProfile.getPreferredPhy());
+					boost();
+
+					//negotiate the MTU before anything else is queued, a peripheral not supporting it keeps the default
+					final GattOperation requestMtu = GattOperation.requestMtu(PREFERRED_MTU).setMaxRetries(0);
+					requestMtu.setCallback(new GattOperation.Callback() {
+						@Override
+						public void onComplete(GattOperation operation, int status) {
+							if (Logger.isLoggable(TAG, Logger.DEBUG)) Logger.d(TAG, "mtu=" + mtu + " status=" + status);
+							onNegotiated();
+						}
+					});
+					queue.enqueue(requestMtu);
+					return;
+
+				case GattLink.STATE_DISCONNECTED:
+					if (isBinary) {
+						frameParser.reset();
+					} else {
+						reassembler.reset();
+					}
+					onLinkLost(this);
+					return;
+			}
+		}
+
+		private void onNegotiated() {
+			if (false == advance(this, State.DISCOVERING)) return;
+
+			this.discoveryStartTime = scheduler.now();
+			if (false == gatt.discoverServices()) {
+				onLinkLost(this);
+				return;
+			}
+
+			isConnected = true;
+			final int attempts = failures + 1;
+			final long elapsed = scheduler.now() - firstAttemptTime;
+			failures = 0;
+			metrics.onConnected(peripheral, attempts, elapsed);
+			observer.onConnectionChanged(GattSession.this, true);
+			listener.onConnected(peripheral);
+
+			this.isReporting = true;
+			reportLinkChanged();
+		}
+
+		@Override
+		public void onServicesDiscovered(int status) {
+			if (status != GattLink.GATT_SUCCESS) {
+				Logger.w(TAG, "onServicesDiscovered received: " + status);
+				endSetUp();
+				return;
+			}
+
+			final UUID serviceUUID = profile.getServiceID();
+
+			//feature 5a: Discover TX Characteristic and RX Characteristic
+			if (false == gatt.hasCharacteristic(serviceUUID, profile.getTXCharacteristic())
+				|| false == gatt.hasCharacteristic(serviceUUID, profile.getRXCharacteristic())
+				|| false == advance(this, State.SUBSCRIBING)) {
+				endSetUp();
+				return;
+			}
+			metrics.onServicesDiscovered(peripheral, scheduler.now() - discoveryStartTime);
+
+			//feature 5b: Subscribe to RX Characteristic
+			final GattOperation subscribe = GattOperation.enableNotification(serviceUUID, profile.getRXCharacteristic(),
+				profile.getSubscriptUUID(), GattLink.ENABLE_NOTIFICATION_VALUE);
+			subscribe.setCallback(new GattOperation.Callback() {
+				@Override
+				public void onComplete(GattOperation operation, int status) {
+					endSetUp();
+					if (status != GattLink.GATT_SUCCESS) {
+						Logger.w(TAG, "subscribe RX characteristic failed: " + status);
+						return;
+					}
+					if (false == advance(Link.this, State.READY)) return;
+
+					//feature 5c: Once successfully subscribed to RX Characteristic,
+					// send the following Zero terminated string through TX Characteristic: “Ready”.
+					writeTX(readyMessage);
+				}
+			});
+			queue.enqueue(subscribe);
+		}
+
+		/* Callback triggered as a result of a remote characteristic notification.*/
+		@Override
+		public void onCharacteristicChanged(UUID characteristic, byte[] value) {
+			if (false == characteristic.equals(profile.getRXCharacteristic())) return;
+			metrics.onNotification(peripheral);
+			if (captureLog != null) {
+				captureLog.append(System.currentTimeMillis(), peripheral.getMacAddress(), CaptureLog.RX, value, 0, value.length);
+			}
+			onTraffic();
+
+			if (isBinary) {
+				frameParser.append(value, this);
+			} else {
+				//a message longer than the MTU comes in several notifications
+				reassembler.append(value, mtu, this);
+			}
+		}
+
+		@Override
+		public void onMessage(byte[] buffer, int length) {
+			final long receivedTime = scheduler.now();
+			final CharSequence received = codec.decode(buffer, length);
+			if (Logger.TRACE_HOT_PATHS && Logger.isLoggable(TAG, Logger.DEBUG)) Logger.d(TAG, "Read Characteristic value = " + received);
+			listener.onReceived(peripheral, received);
+
+			//feature 5e: Reformat every string received and loop it back by sending it via TX Characteristic.
+			// The counter is two hex digits, it wraps around after FF
+			final int frameLength = codec.encodeLoopBack(++receiveCount & 0xFF, buffer, length);
+			writeEcho(codec.getFrame(), frameLength, receivedTime);
+		}
+
+		@Override
+		public void onFrame(int sequence, int type, byte[] payload, int length) {
+			final long receivedTime = scheduler.now();
+			receiveCount++;
+			if (payload != viewedPayload) {
+				this.viewedPayload = payload;
+				this.payloadView = ByteBuffer.wrap(payload).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+			}
+			payloadView.clear();
+			payloadView.limit(length);
+			listener.onFrame(peripheral, sequence, type, payloadView);
+
+			//the same payload and type back, in a frame of our own sequence
+			final int frameLength = frameEncoder.encode(txSequence++, type, payload, 0, length);
+			writeEcho(frameEncoder.getFrame(), frameLength, receivedTime);
+		}
+
+		@Override
+		public void onCharacteristicWrite(UUID characteristic, int status) {
+			queue.onCharacteristicWrite(characteristic, status);
+			if (false == characteristic.equals(profile.getTXCharacteristic()))
+				return;
+
+			if (Logger.TRACE_HOT_PATHS && Logger.isLoggable(TAG, Logger.DEBUG)) {
+				Logger.d(TAG, "write tx characteristic status=" + status);
+			}
+		}
+
+		@Override
+		public void onDescriptorWrite(UUID descriptor, int status) {
+			queue.onDescriptorWrite(descriptor, status);
+		}
+
+		@Override
+		public void onMtuChanged(int mtu, int status) {
+			if (status == GattLink.GATT_SUCCESS) this.mtu = mtu;
+			queue.onMtuChanged(mtu, status);
+		}
+
+		@Override
+		public void onPhyUpdate(int txPhy, int rxPhy, int status) {
+			if (status != GattLink.GATT_SUCCESS) {
+				Logger.w(TAG, "phy update failed: " + status);
+				return;
+			}
+			this.txPhy = txPhy;
+			this.rxPhy = rxPhy;
+			reportLinkChanged();
+		}
+
+		/**
+		 * the discovery and the subscription are over, the idle timeout counts from now
+		 */
+		private void endSetUp() {
+			this.lastTrafficTime = scheduler.now();
+			this.isSettingUp = false;
+		}
+
+		/**
+		 * the link is busy, raise its priority if the profile asks for it
+		 */
+		private void onTraffic() {
+			if (boost()) reportLinkChanged();
+		}
+
+		/**
+		 * @return true if the priority has been raised, false if it is up already or the profile keeps it balanced
+		 */
+		private boolean boost() {
+			if (false == linkProfile.isBoosting()) return false;
+			this.lastTrafficTime = scheduler.now();
+			if (isBoosted) return false;
+
+			if (isClosed || gatt == null) return false;
+			if (false == gatt.requestConnectionPriority(linkProfile.getBusyPriority())) return false;
+			this.isBoosted = true;
+			this.idleTask = scheduler.schedule(idleCheck, linkProfile.getIdleTimeout());
+			return true;
+		}
+
+		private void reportLinkChanged() {
+			if (false == isReporting) return;
+			final int priority = isBoosted ? linkProfile.getBusyPriority() : GattLink.CONNECTION_PRIORITY_BALANCED;
+			listener.onLinkChanged(peripheral, new LinkParameters(mtu, txPhy, rxPhy, priority));
+		}
+
+		void writeTX(String value) {
+			if (isBinary) {
+				//the frame is copied into the writes, the encoder is free for the next one
+				final int frameLength = frameEncoder.encode(txSequence++, value);
+				write(frameEncoder.getFrame(), frameLength);
+				return;
+			}
+			final byte[] bytes = value.getBytes(UTF8);
+			write(bytes, bytes.length);
+		}
+
+		/**
+		 * queue the frame in chunks of the negotiated MTU, the bytes are copied
+		 */
+		private void write(byte[] frame, int length) {
+			write(frame, length, txCallback);
+		}
+
+		/**
+		 * queue the echo of a message, its round trip is measured up to the write of its last chunk
+		 */
+		private void writeEcho(byte[] frame, int length, long receivedTime) {
+			GattOperation.Callback lastCallback = txCallback;
+			if (echoCount < MAX_TIMED_ECHOES) {
+				echoStartTimes[(echoHead + echoCount) % MAX_TIMED_ECHOES] = receivedTime;
+				echoCount++;
+				lastCallback = echoCallback;
+			}
+			write(frame, length, lastCallback);
+		}
+
+		private void write(byte[] frame, int length, GattOperation.Callback lastCallback) {
+			if (captureLog != null) {
+				captureLog.append(System.currentTimeMillis(), peripheral.getMacAddress(), CaptureLog.TX, frame, 0, length);
+			}
+			onTraffic();
+			final int payloadSize = Fragmenter.getPayloadSize(mtu);
+			for (int offset = 0; offset < length; offset += payloadSize) {
+				final int chunkLength = Math.min(payloadSize, length - offset);
+				final boolean isLast = offset + chunkLength >= length;
+				queue.enqueue(txPool.obtain(frame, offset, chunkLength, isLast ? lastCallback : txCallback));
+			}
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+
+/**
+ * What a link runs with, as reported by {@link ConnectListener#onLinkChanged(com.vinaya.blecentralrole.model.Peripheral, LinkParameters)}.
+ * Immutable.
+ *
+ * The connection interval and the data length are not reported by Android, the priority is the one last asked for.
+ */
+public final class LinkParameters {
+	private final int mtu;
+	private final int txPhy;
+	private final int rxPhy;
+	private final int connectionPriority;
+
+	public LinkParameters(int mtu, int txPhy, int rxPhy, int connectionPriority) {
+		this.mtu = mtu;
+		this.txPhy = txPhy;
+		this.rxPhy = rxPhy;
+		this.connectionPriority = connectionPriority;
+	}
+
+	/**
+	 * @return the negotiated ATT MTU, {@link GattLink#DEFAULT_MTU} until then
+	 */
+	public int getMtu() {
+		return mtu;
+	}
+
+	/**
+	 * @return e.g. {@link GattLink#PHY_LE_2M}
+	 */
+	public int getTxPhy() {
+		return txPhy;
+	}
+
+	public int getRxPhy() {
+		return rxPhy;
+	}
+
+	/**
+	 * @return e.g. {@link GattLink#CONNECTION_PRIORITY_HIGH}
+	 */
+	public int getConnectionPriority() {
+		return connectionPriority;
+	}
+
+	@Override
+	public String toString() {
+		return "mtu=" + mtu + " phy=" + txPhy + "/" + rxPhy + " priority=" + connectionPriority;
+	}
+}
@@ -0,0 +1,57 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+
+/**
+ * How a {@link GattSession} sets up its link for the traffic it expects. Immutable.
+ *
+ * While busy, i.e. from the connect through the service discovery, and as long as notifications or writes go on,
+ * the link runs at the busy priority; it goes back to the balanced one after the idle timeout,
+ * so that a short connection interval does not drain the battery of both sides for nothing.
+ * The data length is extended by the controllers by themselves, along with the larger MTU.
+ */
+public final class LinkProfile {
+	/**
+	 * the link as the controller sets it up, nothing is asked
+	 */
+	public final static LinkProfile BALANCED = new LinkProfile(GattLink.PHY_LE_1M, GattLink.CONNECTION_PRIORITY_BALANCED, 0);
+
+	/**
+	 * the shortest connection interval while busy, on the 2M PHY if both sides support it
+	 */
+	public final static LinkProfile THROUGHPUT = new LinkProfile(GattLink.PHY_LE_2M, GattLink.CONNECTION_PRIORITY_HIGH, 2000);
+
+	private final int preferredPhy;
+	private final int busyPriority;
+	private final long idleTimeout;
+
+	/**
+	 * @param preferredPhy e.g. {@link GattLink#PHY_LE_2M}, nothing is asked for {@link GattLink#PHY_LE_1M}
+	 * @param busyPriority e.g. {@link GattLink#CONNECTION_PRIORITY_HIGH}, nothing is asked for the balanced one
+	 * @param idleTimeout  how long without traffic before going back to the balanced priority, in millisecond
+	 */
+	public LinkProfile(int preferredPhy, int busyPriority, long idleTimeout) {
+		this.preferredPhy = preferredPhy;
+		this.busyPriority = busyPriority;
+		this.idleTimeout = idleTimeout;
+	}
+
+	public int getPreferredPhy() {
+		return preferredPhy;
+	}
+
+	public int getBusyPriority() {
+		return busyPriority;
+	}
+
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * @return true if the priority changes with the traffic
+	 */
+	public boolean isBoosting() {
+		return busyPriority != GattLink.CONNECTION_PRIORITY_BALANCED;
+	}
+}
@@ -0,0 +1,66 @@
+package com.vinaya.blecentralrole.logic;
+
+/**
+ * Where the logic classes log, so that they run on any JVM.
+ * Nothing is logged until the application sets a logger, e.g. one writing to android.util.Log
+ */
+public abstract class Logger {
+	//same values as android.util.Log
+	public final static int DEBUG = 3;
+	public final static int INFO = 4;
+	public final static int WARN = 5;
+	public final static int ERROR = 6;
+
+	//the logs of every advertisement, notification and write. A constant, so that javac drops them from the build,
+	//even checking isLoggable costs more than handling the event
+	public final static boolean TRACE_HOT_PATHS = false;
+
+	private static volatile Logger logger = new Logger() {
+		@Override
+		protected boolean isEnabled(String tag, int level) {
+			return false;
+		}
+
+		@Override
+		protected void write(int level, String tag, String message, Throwable throwable) {
+		}
+	};
+
+	public static void setLogger(Logger logger) {
+		Logger.logger = logger;
+	}
+
+	/**
+	 * check it before building a costly message
+	 */
+	public static boolean isLoggable(String tag, int level) {
+		return logger.isEnabled(tag, level);
+	}
+
+	public static void d(String tag, String message) {
+		logger.write(DEBUG, tag, message, null);
+	}
+
+	public static void i(String tag, String message) {
+		logger.write(INFO, tag, message, null);
+	}
+
+	public static void w(String tag, String message) {
+		logger.write(WARN, tag, message, null);
+	}
+
+	public static void w(String tag, String message, Throwable throwable) {
+		logger.write(WARN, tag, message, throwable);
+	}
+
+	public static void e(String tag, String message, Throwable throwable) {
+		logger.write(ERROR, tag, message, throwable);
+	}
+
+	protected abstract boolean isEnabled(String tag, int level);
+
+	/**
+	 * @param throwable null if none
+	 */
+	protected abstract void write(int level, String tag, String message, Throwable throwable);
+}
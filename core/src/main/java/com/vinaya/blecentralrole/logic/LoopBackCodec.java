@@ -0,0 +1,74 @@
+package com.vinaya.blecentralrole.logic;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes the received messages and encodes their loop back into reused buffers,
+ * so that nothing is allocated for a message once the buffers are large enough.
+ *
+ * Not thread safe, one for each link whose notifications come one by one.
+ */
+class LoopBackCodec {
+	private final static byte[] HEX_DIGITS = {
+		'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+	};
+
+	//malformed input is replaced, the same as new String(bytes, UTF8)
+	private final CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder()
+		.onMalformedInput(CodingErrorAction.REPLACE)
+		.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	private ByteBuffer bytes = ByteBuffer.allocate(64);
+	private CharBuffer chars = CharBuffer.allocate(64);
+	private byte[] frame = new byte[64];
+
+	/**
+	 * @return the message as text, valid only until the next call
+	 */
+	CharSequence decode(byte[] message, int length) {
+		if (bytes.capacity() < length) {
+			//UTF-8 never decodes into more chars than bytes
+			this.bytes = ByteBuffer.allocate(length * 2);
+			this.chars = CharBuffer.allocate(length * 2);
+		}
+
+		bytes.clear();
+		bytes.put(message, 0, length);
+		bytes.flip();
+		chars.clear();
+		decoder.reset();
+		decoder.decode(bytes, chars, true);
+		decoder.flush(chars);
+		chars.flip();
+		return chars;
+	}
+
+	/**
+	 * feature 5e: the counter in hex, as by "%02X", then the message and the zero terminator
+	 *
+	 * @return length of the frame, which is in {@link #getFrame()}
+	 */
+	int encodeLoopBack(int counter, byte[] message, int length) {
+		//at least 2 digits, the counter is unsigned as by %X
+		final int digits = Math.max(2, (32 - Integer.numberOfLeadingZeros(counter) + 3) / 4);
+		final int frameLength = digits + length + 1;
+		if (frame.length < frameLength) this.frame = new byte[frameLength * 2];
+
+		int value = counter;
+		for (int i = digits - 1; i >= 0; i--) {
+			frame[i] = HEX_DIGITS[value & 0xF];
+			value >>>= 4;
+		}
+		System.arraycopy(message, 0, frame, digits, length);
+		frame[frameLength - 1] = 0;
+		return frameLength;
+	}
+
+	byte[] getFrame() {
+		return frame;
+	}
+}
@@ -0,0 +1,132 @@
+package com.vinaya.blecentralrole.logic;
+
+import java.util.Arrays;
+
+/**
+ * Maps a 48-bit MAC address to the index of a dense array, without boxing.
+ *
+ * An open addressing hash table with linear probing, its capacity is always a power of 2
+ * and it is at most half full. The owner keeps the dense arrays, and moves the last element
+ * into the hole on removal, see {@link PeripheralRegistry}. Not thread safe.
+ */
+final class MacIndex {
+	final static int NONE = -1;
+	private final static int MIN_CAPACITY = 16;
+
+	//--------------------------------------------------
+	//data members
+	private long[] keys;
+	private int[] values;    //index plus one, 0 means empty
+	private int size;
+
+
+	//--------------------------------------------------
+	//class methods
+	MacIndex(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2) capacity <<= 1;
+
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+	}
+
+	/**
+	 * @return the index of the address, or {@link #NONE}
+	 */
+	int get(long mac) {
+		return values[findBucket(mac)] - 1;
+	}
+
+	/**
+	 * insert the address, or move it to another index
+	 */
+	void put(long mac, int index) {
+		int bucket = findBucket(mac);
+		if (values[bucket] == 0) {
+			if ((size + 1) * 2 > keys.length) {
+				grow();
+				bucket = findBucket(mac);
+			}
+			keys[bucket] = mac;
+			size++;
+		}
+		values[bucket] = index + 1;
+	}
+
+	/**
+	 * @return the index the address had, or {@link #NONE}
+	 */
+	int remove(long mac) {
+		final int bucket = findBucket(mac);
+		final int index = values[bucket] - 1;
+		if (index == NONE) return NONE;
+
+		deleteBucket(bucket);
+		size--;
+		return index;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		Arrays.fill(values, 0);
+		size = 0;
+	}
+
+
+	//--------------------------------------------------
+	//hash table helpers
+
+	private static int hash(long mac) {
+		final long h = mac * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * @return the bucket holding the address, or the empty bucket where it should be inserted
+	 */
+	private int findBucket(long mac) {
+		final int mask = keys.length - 1;
+		int bucket = hash(mac) & mask;
+		while (values[bucket] != 0 && keys[bucket] != mac) {
+			bucket = (bucket + 1) & mask;
+		}
+		return bucket;
+	}
+
+	/**
+	 * backward shift deletion, so that no tombstone is needed for linear probing
+	 */
+	private void deleteBucket(int bucket) {
+		final int mask = keys.length - 1;
+		int hole = bucket;
+		int next = (hole + 1) & mask;
+		while (values[next] != 0) {
+			final int home = hash(keys[next]) & mask;
+			//move the entry back only if the hole lies cyclically between its home and its position
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				values[hole] = values[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		values[hole] = 0;
+	}
+
+	private void grow() {
+		final long[] oldKeys = keys;
+		final int[] oldValues = values;
+		this.keys = new long[oldKeys.length * 2];
+		this.values = new int[oldValues.length * 2];
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] == 0) continue;
+			final int bucket = findBucket(oldKeys[i]);
+			keys[bucket] = oldKeys[i];
+			values[bucket] = oldValues[i];
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.MacAddress;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The set of peripherals discovered so far, keyed by their 48-bit MAC address.
+ *
+ * Lookup, upsert and removal are O(1): a {@link MacIndex} maps
+ * the address to a slot of a dense array, which keeps the peripherals themselves.
+ * Removal moves the last peripheral into the hole, so the order is the order of discovery
+ * only until the first removal.
+ *
+ * The peripherals which are not connected are also linked from the least to the most recently seen,
+ * so that the stale ones are evicted in O(expired) from the head of the list.
+ * Not thread safe, it is owned by the event loop of the Central.
+ */
+public class PeripheralRegistry {
+	private final static int MIN_CAPACITY = 8;
+	private final static int NONE = -1;         //end of the age list
+	private final static int UNLINKED = -2;     //connected, not in the age list
+
+	//--------------------------------------------------
+	//data members
+
+	//mac address to index into entries
+	private final MacIndex macIndex;
+
+	//dense storage
+	private Peripheral[] entries;
+	private int size;
+
+	//age list over the indexes of entries, oldest first
+	private int[] older;
+	private int[] newer;
+	private int oldest = NONE;
+	private int newest = NONE;
+
+	//immutable view handed out to listeners, rebuilt lazily after a modification
+	private List<Peripheral> snapshot;
+
+
+	//--------------------------------------------------
+	//class methods
+	public PeripheralRegistry() {
+		this(MIN_CAPACITY);
+	}
+
+	public PeripheralRegistry(int expectedSize) {
+		final int capacity = Math.max(MIN_CAPACITY, expectedSize);
+		this.macIndex = new MacIndex(capacity);
+		this.entries = new Peripheral[capacity];
+		this.older = new int[capacity];
+		this.newer = new int[capacity];
+	}
+
+	/**
+	 * insert the peripheral, or replace the one with the same address, as the most recently seen.
+	 * The connected flag of the replaced one is kept, a scan result does not know about the connection,
+	 * and its advertisement count is carried over.
+	 *
+	 * @return true if the peripheral was not in the registry before;
+	 *         false if it replaced an existing one, or its address is malformed
+	 */
+	public boolean upsert(Peripheral peripheral) {
+		final long mac = peripheral.getMacAddress();
+		if (mac == MacAddress.INVALID) return false;
+
+		final int existing = macIndex.get(mac);
+		snapshot = null;
+
+		if (existing != MacIndex.NONE) {
+			final Peripheral previous = entries[existing];
+			if (previous.isConnected()) peripheral.setConnected(true);
+			peripheral.setAdvertisementCount(previous.getAdvertisementCount() + 1);
+			entries[existing] = peripheral;
+
+			if (older[existing] != UNLINKED) {
+				unlink(existing);
+				link(existing);
+			}
+			return false;
+		}
+
+		if (size == entries.length) grow();
+
+		final int added = size++;
+		entries[added] = peripheral;
+		macIndex.put(mac, added);
+		if (peripheral.isConnected()) {
+			older[added] = UNLINKED;
+		} else {
+			link(added);
+		}
+		return true;
+	}
+
+	/**
+	 * insert the peripheral only if there is none with the same address,
+	 * e.g. a stored one must not replace the one just advertised
+	 *
+	 * @return true if it is inserted
+	 */
+	public boolean addIfAbsent(Peripheral peripheral) {
+		return macIndex.get(peripheral.getMacAddress()) == MacIndex.NONE && upsert(peripheral);
+	}
+
+	/**
+	 * @return the removed peripheral, or null if there is no peripheral with this address
+	 */
+	public Peripheral remove(long mac) {
+		final int hole = macIndex.remove(mac);
+		if (hole == MacIndex.NONE) return null;
+
+		final Peripheral removed = entries[hole];
+		if (older[hole] != UNLINKED) unlink(hole);
+
+		//fill the hole with the last entry
+		final int last = size - 1;
+		if (hole != last) {
+			final Peripheral moved = entries[last];
+			entries[hole] = moved;
+			macIndex.put(moved.getMacAddress(), hole);
+			relink(last, hole);
+		}
+		entries[last] = null;
+		size--;
+
+		snapshot = null;
+		return removed;
+	}
+
+	/**
+	 * remove the peripherals which are not connected and not seen since the deadline.
+	 * Only the expired ones are visited, plus one.
+	 *
+	 * @param deadline the peripherals last seen before this are removed
+	 * @param evicted  where the removed peripherals are added, may be null
+	 * @return number of peripherals removed
+	 */
+	public int evictSeenBefore(long deadline, Collection<Peripheral> evicted) {
+		int count = 0;
+		while (oldest != NONE && entries[oldest].getLastSeen() < deadline) {
+			final Peripheral peripheral = remove(entries[oldest].getMacAddress());
+			if (evicted != null) evicted.add(peripheral);
+			count++;
+		}
+		return count;
+	}
+
+	public Peripheral get(long mac) {
+		final int i = macIndex.get(mac);
+		return (i == MacIndex.NONE) ? null : entries[i];
+	}
+
+	/**
+	 * mark the peripheral with this address as connected or not.
+	 * A connected peripheral is never evicted, once disconnected it is as if it had been seen now.
+	 *
+	 * @param now time of the change, on the clock of the last seen times
+	 * @return false if there is no peripheral with this address
+	 */
+	public boolean setConnected(long mac, boolean isConnected, long now) {
+		final int i = macIndex.get(mac);
+		if (i == MacIndex.NONE) return false;
+
+		final Peripheral peripheral = entries[i];
+		peripheral.setConnected(isConnected);
+
+		if (isConnected) {
+			if (older[i] != UNLINKED) unlink(i);
+			older[i] = UNLINKED;
+		} else if (older[i] == UNLINKED) {
+			peripheral.setLastSeen(Math.max(peripheral.getLastSeen(), now));
+			link(i);
+		}
+		return true;
+	}
+
+	public boolean contains(long mac) {
+		return macIndex.get(mac) != MacIndex.NONE;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		macIndex.clear();
+		Arrays.fill(entries, 0, size, null);
+		size = 0;
+		oldest = NONE;
+		newest = NONE;
+		snapshot = null;
+	}
+
+	/**
+	 * @return the least recently seen peripheral which may be evicted, or null
+	 */
+	public Peripheral getOldest() {
+		return (oldest == NONE) ? null : entries[oldest];
+	}
+
+	/**
+	 * @return an immutable copy of the peripherals, it does not change along with the registry.
+	 * The same copy is returned until the registry is modified.
+	 */
+	public List<Peripheral> snapshot() {
+		if (snapshot == null) {
+			snapshot = Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(entries, size)));
+		}
+		return snapshot;
+	}
+
+
+	//--------------------------------------------------
+	//age list helpers
+
+	/**
+	 * append the entry as the most recently seen
+	 */
+	private void link(int index) {
+		older[index] = newest;
+		newer[index] = NONE;
+		if (newest == NONE) {
+			oldest = index;
+		} else {
+			newer[newest] = index;
+		}
+		newest = index;
+	}
+
+	private void unlink(int index) {
+		final int before = older[index];
+		final int after = newer[index];
+		if (before == NONE) {
+			oldest = after;
+		} else {
+			newer[before] = after;
+		}
+		if (after == NONE) {
+			newest = before;
+		} else {
+			older[after] = before;
+		}
+		older[index] = UNLINKED;
+	}
+
+	/**
+	 * the entry moved from one index to another, keep its place in the list
+	 */
+	private void relink(int from, int to) {
+		final int before = older[from];
+		older[to] = before;
+		newer[to] = newer[from];
+		if (before == UNLINKED) return;
+
+		if (before == NONE) {
+			oldest = to;
+		} else {
+			newer[before] = to;
+		}
+		if (newer[to] == NONE) {
+			newest = to;
+		} else {
+			older[newer[to]] = to;
+		}
+	}
+
+	private void grow() {
+		final int capacity = entries.length * 2;
+		this.entries = Arrays.copyOf(entries, capacity);
+		this.older = Arrays.copyOf(older, capacity);
+		this.newer = Arrays.copyOf(newer, capacity);
+	}
+}
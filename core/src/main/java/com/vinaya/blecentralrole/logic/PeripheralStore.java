@@ -0,0 +1,251 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.MacAddress;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The peripherals connected before, kept in a small binary file across the runs of the application,
+ * so that they are listed before the first advertisement and the latest one can be connected at once.
+ *
+ * The file is read once, on the first access, and written as a whole to a temporary file
+ * which then replaces it, so that a crash while writing leaves the previous content.
+ * Both do I/O, so call them off the main thread and off the event loop, the Central hands them to an executor.
+ *
+ * Format, big endian: magic, version, count, then per peripheral the 48-bit address, the last connected time,
+ * the RSSI, the name (absent if the flag is false) and the service UUIDs.
+ */
+public class PeripheralStore {
+	public final static int DEFAULT_MAX_ENTRIES = 16;
+	private final static int MAGIC = 0x424C4550;    //"BLEP"
+	private final static int VERSION = 1;
+
+	private static class Entry {
+		final long mac;
+		String name;
+		List<UUID> serviceUUIDs;
+		int rssi;
+		long lastConnected;
+
+		Entry(long mac) {
+			this.mac = mac;
+		}
+	}
+
+	//--------------------------------------------------
+	//data members
+	private final File file;
+	private final int maxEntries;
+
+	//key is the mac address, from the least to the most recently connected
+	private Map<Long, Entry> entries;
+	private boolean isDirty;
+
+
+	//--------------------------------------------------
+	//class methods
+	public PeripheralStore(File file) {
+		this(file, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries the least recently connected peripherals are forgotten beyond this number
+	 */
+	public PeripheralStore(File file, int maxEntries) {
+		this.file = file;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * @return the stored peripherals, the most recently connected first
+	 */
+	public synchronized List<Peripheral> getPeripherals() {
+		final List<Peripheral> list = new ArrayList<>(load().size());
+		for (Entry entry : load().values()) {
+			list.add(toPeripheral(entry));
+		}
+		Collections.reverse(list);
+		return list;
+	}
+
+	/**
+	 * @return the most recently connected peripheral, or null
+	 */
+	public synchronized Peripheral getLastConnected() {
+		Entry last = null;
+		for (Entry entry : load().values()) {
+			last = entry;
+		}
+		return (last == null) ? null : toPeripheral(last);
+	}
+
+	/**
+	 * @return true if the peripheral has been connected before
+	 */
+	public synchronized boolean contains(long mac) {
+		return load().containsKey(mac);
+	}
+
+	/**
+	 * remember the peripheral as the most recently connected one
+	 *
+	 * @param time wall clock time of the connection, in millisecond
+	 */
+	public synchronized void onConnected(Peripheral peripheral, long time) {
+		final long mac = peripheral.getMacAddress();
+		if (mac == MacAddress.INVALID) return;
+
+		final Map<Long, Entry> entries = load();
+		Entry entry = entries.remove(mac);
+		if (entry == null) entry = new Entry(mac);
+		copy(peripheral, entry);
+		entry.lastConnected = time;
+		entries.put(mac, entry);
+
+		//the iteration order is the order of the connections, the first is the oldest
+		while (entries.size() > maxEntries) {
+			entries.remove(entries.keySet().iterator().next());
+		}
+		this.isDirty = true;
+	}
+
+	/**
+	 * refresh the name, services and RSSI of a stored peripheral from a new advertisement,
+	 * nothing is done for the others
+	 */
+	public synchronized void update(Peripheral peripheral) {
+		final Entry entry = load().get(peripheral.getMacAddress());
+		if (entry == null) return;
+		copy(peripheral, entry);
+		this.isDirty = true;
+	}
+
+	/**
+	 * @return true if there are changes not yet saved
+	 */
+	public synchronized boolean isDirty() {
+		return isDirty;
+	}
+
+	public synchronized void clear() {
+		load().clear();
+		this.isDirty = true;
+	}
+
+	/**
+	 * write the changes to the file, if any
+	 */
+	public synchronized void save() throws IOException {
+		if (false == isDirty) return;
+
+		final File temp = new File(file.getPath() + ".tmp");
+		final FileOutputStream stream = new FileOutputStream(temp);
+		try {
+			final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+			write(output, load());
+			output.flush();
+			stream.getFD().sync();
+		} finally {
+			stream.close();
+		}
+
+		if (false == temp.renameTo(file)) {
+			temp.delete();
+			throw new IOException("cannot replace " + file);
+		}
+		this.isDirty = false;
+	}
+
+
+	//--------------------------------------------------
+	//helpers
+
+	private Map<Long, Entry> load() {
+		if (entries != null) return entries;
+
+		this.entries = new LinkedHashMap<>();
+		try {
+			final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				read(input, entries);
+			} finally {
+				input.close();
+			}
+		} catch (FileNotFoundException e) {
+			//nothing connected yet
+		} catch (IOException e) {
+			//truncated or from another version, start over rather than fail the startup
+			entries.clear();
+		}
+		return entries;
+	}
+
+	private static void read(DataInputStream input, Map<Long, Entry> entries) throws IOException {
+		if (input.readInt() != MAGIC || input.readUnsignedByte() != VERSION) throw new IOException("unknown format");
+
+		final int count = input.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			final Entry entry = new Entry(input.readLong());
+			entry.lastConnected = input.readLong();
+			entry.rssi = input.readByte();
+			entry.name = input.readBoolean() ? input.readUTF() : null;
+
+			final int uuidCount = input.readUnsignedByte();
+			final List<UUID> uuids = new ArrayList<>(uuidCount);
+			for (int j = 0; j < uuidCount; j++) {
+				uuids.add(new UUID(input.readLong(), input.readLong()));
+			}
+			entry.serviceUUIDs = Collections.unmodifiableList(uuids);
+			entries.put(entry.mac, entry);
+		}
+	}
+
+	private static void write(DataOutputStream output, Map<Long, Entry> entries) throws IOException {
+		output.writeInt(MAGIC);
+		output.writeByte(VERSION);
+		output.writeShort(entries.size());
+		for (Entry entry : entries.values()) {
+			output.writeLong(entry.mac);
+			output.writeLong(entry.lastConnected);
+			output.writeByte(Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, entry.rssi)));
+			output.writeBoolean(entry.name != null);
+			if (entry.name != null) output.writeUTF(entry.name);
+
+			final int uuidCount = Math.min(255, entry.serviceUUIDs.size());
+			output.writeByte(uuidCount);
+			for (int j = 0; j < uuidCount; j++) {
+				final UUID uuid = entry.serviceUUIDs.get(j);
+				output.writeLong(uuid.getMostSignificantBits());
+				output.writeLong(uuid.getLeastSignificantBits());
+			}
+		}
+	}
+
+	private static void copy(Peripheral peripheral, Entry entry) {
+		//keep the name and services of the previous advertisements if this one does not carry them
+		if (peripheral.getName() != null) entry.name = peripheral.getName();
+		final List<UUID> uuids = peripheral.getServiceUUIDs();
+		if (uuids != null && false == uuids.isEmpty()) entry.serviceUUIDs = Collections.unmodifiableList(new ArrayList<>(uuids));
+		if (entry.serviceUUIDs == null) entry.serviceUUIDs = Collections.emptyList();
+		entry.rssi = peripheral.getRssi();
+	}
+
+	private static Peripheral toPeripheral(Entry entry) {
+		return new Peripheral(MacAddress.format(entry.mac), entry.name, entry.rssi, entry.serviceUUIDs);
+	}
+}
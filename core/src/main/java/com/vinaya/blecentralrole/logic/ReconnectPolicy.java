@@ -0,0 +1,36 @@
+package com.vinaya.blecentralrole.logic;
+
+/**
+ * When a {@link GattSession} tries again after its link is lost or cannot be opened
+ */
+public interface ReconnectPolicy {
+	long NO_RECONNECT = -1;
+
+	/**
+	 * try again at once, without limit
+	 */
+	ReconnectPolicy IMMEDIATE = new ReconnectPolicy() {
+		@Override
+		public long getDelay(int failures) {
+			return 0;
+		}
+
+		@Override
+		public boolean isAutoConnect(int failures) {
+			return false;
+		}
+	};
+
+	/**
+	 * @param failures number of failures in a row, 1 for the first one
+	 * @return the delay before the next attempt in millisecond, or {@link #NO_RECONNECT} to give up
+	 */
+	long getDelay(int failures);
+
+	/**
+	 * @param failures number of failures in a row
+	 * @return true to let the controller connect whenever the device is available,
+	 * instead of a direct connection which times out
+	 */
+	boolean isAutoConnect(int failures);
+}
@@ -0,0 +1,222 @@
+package com.vinaya.blecentralrole.logic;
+
+import java.util.Arrays;
+
+/**
+ * Smooths the RSSI of every peripheral, and raises an alert when the smoothed value crosses a threshold.
+ *
+ * A sample goes through a median of the last few samples, which drops the single deep fades of multipath,
+ * then through an exponentially weighted moving average. The alert uses hysteresis: it is raised below
+ * the threshold and cleared only above the threshold plus the hysteresis, so the noise around the
+ * threshold does not make it flap. A peripheral is alerted at most once per alert interval.
+ *
+ * The state of all the peripherals is kept in primitive arrays, the samples in one ring buffer per peripheral,
+ * so that adding a sample does not allocate. Not thread safe, it is owned by the event loop of the Central.
+ */
+public class RssiProcessor {
+	public final static int DEFAULT_WINDOW = 5;            //samples of the median
+	public final static float DEFAULT_ALPHA = 0.25f;       //weight of the new sample in the average
+	public final static int DEFAULT_HYSTERESIS = 6;        //in dBm
+	public final static long DEFAULT_ALERT_INTERVAL = 10000;    //in millisecond
+	private final static int MIN_CAPACITY = 16;
+
+	/**
+	 * called on the thread adding the sample, once its state is updated
+	 */
+	public interface AlertListener {
+		/**
+		 * @param rssi  the smoothed RSSI
+		 * @param isLow true when it went below the threshold, false when it is back above the threshold plus hysteresis
+		 */
+		void onRssiAlert(long mac, int rssi, boolean isLow);
+	}
+
+	//--------------------------------------------------
+	//data members
+	private final int threshold;
+	private final int hysteresis;
+	private final float alpha;
+	private final int window;
+	private final long alertInterval;
+	private final AlertListener listener;
+
+	private final MacIndex macIndex = new MacIndex(MIN_CAPACITY);
+	private int size;
+
+	//indexed by the slot of the peripheral
+	private long[] macs;
+	private byte[] samples;         //ring buffers of the raw samples, window bytes per slot
+	private int[] sampleCounts;     //samples since the slot was created, the ring position is the count modulo window
+	private float[] smoothed;
+	private boolean[] isLow;
+	private boolean[] isAlerted;    //a low alert has been raised and not yet cleared
+	private long[] lastAlert;
+
+	private final int[] median;     //scratch for sorting the window
+
+
+	//--------------------------------------------------
+	//class methods
+	public RssiProcessor(int threshold, AlertListener listener) {
+		this(threshold, DEFAULT_HYSTERESIS, DEFAULT_ALPHA, DEFAULT_WINDOW, DEFAULT_ALERT_INTERVAL, listener);
+	}
+
+	/**
+	 * @param threshold     alert when the smoothed RSSI goes below this, in dBm
+	 * @param hysteresis    clear the alert only when the smoothed RSSI is back above threshold plus this, in dBm
+	 * @param alpha         weight of a new sample in the average, from 0 to 1; smaller is smoother but slower
+	 * @param window        number of samples of the median, 1 to not use it
+	 * @param alertInterval the least time between two alerts of the same peripheral, in millisecond
+	 * @param listener      where the alerts go, may be null
+	 */
+	public RssiProcessor(int threshold, int hysteresis, float alpha, int window, long alertInterval,
+	                     AlertListener listener) {
+		this.threshold = threshold;
+		this.hysteresis = hysteresis;
+		this.alpha = alpha;
+		this.window = Math.max(1, window);
+		this.alertInterval = alertInterval;
+		this.listener = listener;
+		this.median = new int[this.window];
+		allocate(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param now time of the sample, in millisecond
+	 * @return the smoothed RSSI of the peripheral, including this sample
+	 */
+	public int add(long mac, int rssi, long now) {
+		int slot = macIndex.get(mac);
+		if (slot == MacIndex.NONE) slot = create(mac);
+
+		//ring buffer of the raw samples
+		final int count = sampleCounts[slot];
+		samples[slot * window + count % window] = (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, rssi));
+		sampleCounts[slot] = count + 1;
+		final int filtered = median(slot, Math.min(count + 1, window));
+
+		final float average = (count == 0) ? filtered : smoothed[slot] + alpha * (filtered - smoothed[slot]);
+		smoothed[slot] = average;
+		final int result = Math.round(average);
+
+		int alert = 0;    //-1 low, 1 recovered
+		if (false == isLow[slot] && average < threshold) {
+			isLow[slot] = true;
+			if (lastAlert[slot] == Long.MIN_VALUE || now - lastAlert[slot] >= alertInterval) {
+				lastAlert[slot] = now;
+				isAlerted[slot] = true;
+				alert = -1;
+			}
+		} else if (isLow[slot] && average > threshold + hysteresis) {
+			isLow[slot] = false;
+			if (isAlerted[slot]) {
+				isAlerted[slot] = false;
+				alert = 1;
+			}
+		}
+
+		if (alert != 0 && listener != null) listener.onRssiAlert(mac, result, alert < 0);
+		return result;
+	}
+
+	/**
+	 * @return the smoothed RSSI, or {@link Integer#MIN_VALUE} if there is no sample of the peripheral
+	 */
+	public int getRssi(long mac) {
+		final int slot = macIndex.get(mac);
+		return (slot == MacIndex.NONE) ? Integer.MIN_VALUE : Math.round(smoothed[slot]);
+	}
+
+	/**
+	 * @return true from going below the threshold until back above the threshold plus hysteresis
+	 */
+	public boolean isLow(long mac) {
+		final int slot = macIndex.get(mac);
+		return slot != MacIndex.NONE && isLow[slot];
+	}
+
+	/**
+	 * forget the peripheral, e.g. once it is evicted
+	 */
+	public void remove(long mac) {
+		final int slot = macIndex.remove(mac);
+		if (slot == MacIndex.NONE) return;
+
+		//fill the hole with the last slot
+		final int last = --size;
+		if (slot != last) {
+			macs[slot] = macs[last];
+			System.arraycopy(samples, last * window, samples, slot * window, window);
+			sampleCounts[slot] = sampleCounts[last];
+			smoothed[slot] = smoothed[last];
+			isLow[slot] = isLow[last];
+			isAlerted[slot] = isAlerted[last];
+			lastAlert[slot] = lastAlert[last];
+			macIndex.put(macs[slot], slot);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		macIndex.clear();
+		size = 0;
+	}
+
+
+	//--------------------------------------------------
+	//helpers
+
+	private int create(long mac) {
+		if (size == macs.length) allocate(size * 2);
+
+		final int slot = size++;
+		macs[slot] = mac;
+		sampleCounts[slot] = 0;
+		smoothed[slot] = 0;
+		isLow[slot] = false;
+		isAlerted[slot] = false;
+		lastAlert[slot] = Long.MIN_VALUE;
+		macIndex.put(mac, slot);
+		return slot;
+	}
+
+	private void allocate(int capacity) {
+		if (macs == null) {
+			this.macs = new long[capacity];
+			this.samples = new byte[capacity * window];
+			this.sampleCounts = new int[capacity];
+			this.smoothed = new float[capacity];
+			this.isLow = new boolean[capacity];
+			this.isAlerted = new boolean[capacity];
+			this.lastAlert = new long[capacity];
+			return;
+		}
+		this.macs = Arrays.copyOf(macs, capacity);
+		this.samples = Arrays.copyOf(samples, capacity * window);
+		this.sampleCounts = Arrays.copyOf(sampleCounts, capacity);
+		this.smoothed = Arrays.copyOf(smoothed, capacity);
+		this.isLow = Arrays.copyOf(isLow, capacity);
+		this.isAlerted = Arrays.copyOf(isAlerted, capacity);
+		this.lastAlert = Arrays.copyOf(lastAlert, capacity);
+	}
+
+	/**
+	 * @return median of the first count samples of the ring of the slot, by insertion sort of a few bytes
+	 */
+	private int median(int slot, int count) {
+		final int offset = slot * window;
+		for (int i = 0; i < count; i++) {
+			final int value = samples[offset + i];
+			int j = i - 1;
+			while (j >= 0 && median[j] > value) {
+				median[j + 1] = median[j];
+				j--;
+			}
+			median[j + 1] = value;
+		}
+		return median[count / 2];
+	}
+}
@@ -0,0 +1,137 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What has changed in the peripheral list since the last {@link ScanListener#onScanned(ScanDiff)}
+ */
+public class ScanDiff {
+
+	private final List<Peripheral> peripheralList;
+	private final List<Peripheral> added;
+	private final List<Peripheral> updated;
+	private final List<Peripheral> removed;
+	private final long changedSince;
+
+	public ScanDiff(List<Peripheral> peripheralList, List<Peripheral> added, List<Peripheral> updated, List<Peripheral> removed) {
+		this(peripheralList, added, updated, removed, UNKNOWN);
+	}
+
+	/**
+	 * @param changedSince time of the oldest change in the diff, on the clock of the {@link Scheduler}
+	 */
+	public ScanDiff(List<Peripheral> peripheralList, List<Peripheral> added, List<Peripheral> updated, List<Peripheral> removed,
+	                long changedSince) {
+		this.peripheralList = peripheralList;
+		this.added = Collections.unmodifiableList(added);
+		this.updated = Collections.unmodifiableList(updated);
+		this.removed = Collections.unmodifiableList(removed);
+		this.changedSince = changedSince;
+	}
+
+	public final static long UNKNOWN = -1;
+
+	/**
+	 * @return immutable snapshot of the peripherals discovered so far, with the changes applied
+	 */
+	public List<Peripheral> getPeripheralList() {
+		return peripheralList;
+	}
+
+	/**
+	 * @return peripherals which were not in the previous list
+	 */
+	public List<Peripheral> getAdded() {
+		return added;
+	}
+
+	/**
+	 * @return peripherals which were in the previous list, in their latest state
+	 */
+	public List<Peripheral> getUpdated() {
+		return updated;
+	}
+
+	/**
+	 * @return peripherals which are no longer in the list
+	 */
+	public List<Peripheral> getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * @return time of the oldest change in the diff, or {@link #UNKNOWN}. How long the changes wait to be shown
+	 */
+	public long getChangedSince() {
+		return changedSince;
+	}
+
+	public boolean isEmpty() {
+		return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+	}
+
+	/**
+	 * merge two consecutive diffs into one which applies to the list the older one applies to,
+	 * the same way {@link ScanDispatcher} merges the changes within a window
+	 *
+	 * @param older may be null, then the newer one is returned
+	 */
+	public static ScanDiff merge(ScanDiff older, ScanDiff newer) {
+		if (older == null) return newer;
+
+		final Map<Long, Peripheral> added = toMap(older.added);
+		final Map<Long, Peripheral> updated = toMap(older.updated);
+		final Map<Long, Peripheral> removed = toMap(older.removed);
+
+		//a peripheral is in one list at most of each diff
+		for (Peripheral peripheral : newer.added) {
+			final Long mac = peripheral.getMacAddress();
+			if (removed.remove(mac) != null) {
+				updated.put(mac, peripheral);
+			} else {
+				added.put(mac, peripheral);
+			}
+		}
+		for (Peripheral peripheral : newer.updated) {
+			final Long mac = peripheral.getMacAddress();
+			if (added.containsKey(mac)) {
+				added.put(mac, peripheral);
+			} else {
+				updated.put(mac, peripheral);
+			}
+		}
+		for (Peripheral peripheral : newer.removed) {
+			final Long mac = peripheral.getMacAddress();
+			if (added.remove(mac) == null) {
+				updated.remove(mac);
+				removed.put(mac, peripheral);
+			}
+		}
+
+		return new ScanDiff(newer.peripheralList,
+			new ArrayList<>(added.values()),
+			new ArrayList<>(updated.values()),
+			new ArrayList<>(removed.values()),
+			oldest(older.changedSince, newer.changedSince));
+	}
+
+	private static long oldest(long a, long b) {
+		if (a == UNKNOWN) return b;
+		if (b == UNKNOWN) return a;
+		return Math.min(a, b);
+	}
+
+	private static Map<Long, Peripheral> toMap(List<Peripheral> peripherals) {
+		final Map<Long, Peripheral> map = new LinkedHashMap<>();
+		for (Peripheral peripheral : peripherals) {
+			map.put(peripheral.getMacAddress(), peripheral);
+		}
+		return map;
+	}
+}
@@ -0,0 +1,172 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Coalesces the discoveries of the scanner, and delivers them as one {@link ScanDiff}
+ * per window (or as soon as the batch is full) instead of once per advertisement.
+ *
+ * The changes of the same peripheral within a window are merged,
+ * e.g. added then updated is reported as added with the latest state.
+ * Not thread safe, it is owned by the event loop of the Central.
+ */
+public class ScanDispatcher {
+
+	//--------------------------------------------------
+	//data members
+	private final PeripheralRegistry registry;
+	private final Scheduler scheduler;
+	private final Executor executor;
+	private final ScanListener listener;
+	private final long windowMillis;
+	private final int maxBatchSize;
+
+	//pending changes, keyed by the mac address
+	private final Map<Long, Peripheral> added = new LinkedHashMap<>();
+	private final Map<Long, Peripheral> updated = new LinkedHashMap<>();
+	private final Map<Long, Peripheral> removed = new LinkedHashMap<>();
+
+	private long changedSince = ScanDiff.UNKNOWN;
+	private Scheduler.Task flushTask;
+	private boolean isCancelled = false;
+
+	private final Runnable flushRunnable = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+
+	//--------------------------------------------------
+	//class methods
+
+	/**
+	 * @param registry     where the snapshot of the whole list is taken from
+	 * @param scheduler    for timing the window
+	 * @param executor     where the listener is called, e.g. the main thread
+	 * @param windowMillis how long to collect the changes before delivery
+	 * @param maxBatchSize deliver earlier if this number of peripherals have changed
+	 */
+	public ScanDispatcher(PeripheralRegistry registry, Scheduler scheduler, Executor executor,
+	                      long windowMillis, int maxBatchSize, ScanListener listener) {
+		this.registry = registry;
+		this.scheduler = scheduler;
+		this.executor = executor;
+		this.windowMillis = windowMillis;
+		this.maxBatchSize = maxBatchSize;
+		this.listener = listener;
+	}
+
+	public void onAdded(Peripheral peripheral) {
+		final Long mac = peripheral.getMacAddress();
+		//removed and discovered again in the same window, for the listener it is just an update
+		if (removed.remove(mac) != null) {
+			updated.put(mac, peripheral);
+		} else {
+			added.put(mac, peripheral);
+		}
+		onChanged();
+	}
+
+	public void onUpdated(Peripheral peripheral) {
+		final Long mac = peripheral.getMacAddress();
+		if (added.containsKey(mac)) {
+			added.put(mac, peripheral);
+		} else {
+			updated.put(mac, peripheral);
+		}
+		onChanged();
+	}
+
+	public void onRemoved(Peripheral peripheral) {
+		remove(peripheral);
+		onChanged();
+	}
+
+	/**
+	 * the peripherals removed from the registry at once, e.g. by an eviction sweep.
+	 * A full batch is delivered only after all of them are recorded,
+	 * otherwise its snapshot would lack the ones not yet in the diff
+	 */
+	public void onRemoved(List<Peripheral> peripherals) {
+		if (peripherals.isEmpty()) return;
+		for (int i = 0; i < peripherals.size(); i++) {
+			remove(peripherals.get(i));
+		}
+		onChanged();
+	}
+
+	private void remove(Peripheral peripheral) {
+		final Long mac = peripheral.getMacAddress();
+		//the listener has never seen it, no need to tell
+		if (added.remove(mac) == null) {
+			updated.remove(mac);
+			removed.put(mac, peripheral);
+		}
+	}
+
+	/**
+	 * deliver the pending changes now
+	 */
+	public void flush() {
+		if (flushTask != null) {
+			flushTask.cancel();
+			flushTask = null;
+		}
+		if (isCancelled) return;
+		if (added.isEmpty() && updated.isEmpty() && removed.isEmpty()) {
+			//e.g. added then removed within the window, nothing to show
+			this.changedSince = ScanDiff.UNKNOWN;
+			return;
+		}
+
+		final ScanDiff diff = new ScanDiff(registry.snapshot(),
+			new ArrayList<>(added.values()),
+			new ArrayList<>(updated.values()),
+			new ArrayList<>(removed.values()),
+			changedSince);
+		added.clear();
+		updated.clear();
+		removed.clear();
+		this.changedSince = ScanDiff.UNKNOWN;
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				listener.onScanned(diff);
+			}
+		});
+	}
+
+	/**
+	 * drop the pending changes, nothing is delivered afterwards
+	 */
+	public void cancel() {
+		this.isCancelled = true;
+		if (flushTask != null) {
+			flushTask.cancel();
+			flushTask = null;
+		}
+		added.clear();
+		updated.clear();
+		removed.clear();
+	}
+
+	private void onChanged() {
+		if (changedSince == ScanDiff.UNKNOWN) this.changedSince = scheduler.now();
+		if (added.size() + updated.size() + removed.size() >= maxBatchSize) {
+			flush();
+		} else if (flushTask == null && false == isCancelled) {
+			//the window starts from the first pending change
+			this.flushTask = scheduler.schedule(flushRunnable, windowMillis);
+		}
+	}
+
+}
@@ -0,0 +1,14 @@
+package com.vinaya.blecentralrole.logic;
+
+/**
+ * what the {@link ScanDispatcher} delivers, on its executor
+ */
+public interface ScanListener {
+	/**
+	 * @param diff the changes since the last call, along with
+	 *             the immutable snapshot of the peripherals discovered so far
+	 */
+	void onScanned(ScanDiff diff);
+
+	void onFailed(int errorCode);
+}
@@ -0,0 +1,219 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.logic.scanner.BLEScanner;
+import com.vinaya.blecentralrole.logic.scanner.ScanConfig;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+/**
+ * Duty cycles the scanner: a scan window, then the radio is idle for a while, then the next window.
+ *
+ * The idle time adapts to the population around: it drops to the minimum, and the window is extended,
+ * while new peripherals keep appearing, and it doubles up to the maximum while nothing new is found.
+ * The starts are spaced so that there are never more than {@link #MAX_STARTS} within {@link #STARTS_PERIOD},
+ * beyond that Android silently stops reporting to the application.
+ * Not thread safe: the scanner reports on the thread of the scheduler, i.e. the event loop of the Central.
+ */
+public class ScanScheduler {
+	public final static int MAX_STARTS = 5;
+	public final static long STARTS_PERIOD = 30000;        //in millisecond
+	public final static long DEFAULT_MAX_IDLE = 30000;     //in millisecond
+	public final static int MAX_EXTENSIONS = 2;            //windows added to one while new peripherals appear
+
+	//--------------------------------------------------
+	//data members
+	private final BLEScanner scanner;
+	private final ScanConfig config;
+	private final Scheduler scheduler;
+	private final long scanWindow;
+	private final long minIdle;
+	private final long maxIdle;
+
+	private BLEScanner.BLEScanListener listener;
+	private BLEScanner.ScanTask scanTask;
+	private Scheduler.Task timer;
+	private boolean isRunning;
+
+	private long idle;
+	private int extensions;
+	private int newInWindow;
+
+	//time of the last starts, a ring indexed by startCount
+	private final long[] startTimes = new long[MAX_STARTS];
+	private int startCount;
+
+	//metrics
+	private long startedAt;
+	private long windowStartedAt;
+	private long radioTime;
+
+	private final Runnable startWindow = new Runnable() {
+		@Override
+		public void run() {
+			startWindow();
+		}
+	};
+
+	private final Runnable endWindow = new Runnable() {
+		@Override
+		public void run() {
+			endWindow();
+		}
+	};
+
+
+	//--------------------------------------------------
+	//class methods
+
+	/**
+	 * @param scanWindow how long the radio scans at a time, in millisecond
+	 * @param minIdle    idle time between the windows while new peripherals appear, in millisecond
+	 * @param maxIdle    idle time once the population is stable, in millisecond. 0 to scan continuously
+	 */
+	public ScanScheduler(BLEScanner scanner, ScanConfig config, Scheduler scheduler,
+	                     long scanWindow, long minIdle, long maxIdle) {
+		this.scanner = scanner;
+		this.config = config;
+		this.scheduler = scheduler;
+		this.scanWindow = scanWindow;
+		this.minIdle = Math.min(minIdle, maxIdle);
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * start the first window now
+	 *
+	 * @param listener called while the radio is scanning
+	 */
+	public void start(BLEScanner.BLEScanListener listener) {
+		if (isRunning) return;
+		this.listener = listener;
+		this.isRunning = true;
+		this.idle = minIdle;
+		this.startedAt = scheduler.now();
+		this.radioTime = 0;
+		startWindow();
+	}
+
+	/**
+	 * stop the radio and the timer, nothing is reported afterwards
+	 */
+	public void stop() {
+		if (false == isRunning) return;
+		this.isRunning = false;
+		if (timer != null) {
+			timer.cancel();
+			timer = null;
+		}
+		stopScanner();
+	}
+
+	/**
+	 * to be called by the listener for a peripheral which has not been seen before
+	 */
+	public void onNewPeripheral() {
+		newInWindow++;
+	}
+
+	private void startWindow() {
+		this.timer = null;
+		if (false == isRunning) return;
+
+		//wait until the oldest of the last starts leaves the period
+		final long now = scheduler.now();
+		if (startCount >= MAX_STARTS) {
+			final long oldest = startTimes[startCount % MAX_STARTS];
+			if (now - oldest < STARTS_PERIOD) {
+				this.timer = scheduler.schedule(startWindow, oldest + STARTS_PERIOD - now);
+				return;
+			}
+		}
+		startTimes[startCount % MAX_STARTS] = now;
+		startCount++;
+
+		this.windowStartedAt = now;
+		this.newInWindow = 0;
+		this.extensions = 0;
+		this.scanTask = scanner.asyncScan(config, forwarder);
+
+		if (maxIdle > 0) this.timer = scheduler.schedule(endWindow, scanWindow);
+	}
+
+	private void endWindow() {
+		this.timer = null;
+		if (false == isRunning) return;
+
+		//keep the radio on rather than spending a start, while peripherals keep coming
+		if (newInWindow > 0 && extensions < MAX_EXTENSIONS) {
+			extensions++;
+			this.newInWindow = 0;
+			this.idle = minIdle;
+			this.timer = scheduler.schedule(endWindow, scanWindow);
+			return;
+		}
+
+		if (newInWindow > 0 || extensions > 0) {
+			this.idle = minIdle;
+		} else {
+			this.idle = Math.min(Math.max(idle * 2, 1), maxIdle);
+		}
+		stopScanner();
+		this.timer = scheduler.schedule(startWindow, idle);
+	}
+
+	private void stopScanner() {
+		if (scanTask == null) return;
+		scanTask.stop();
+		scanTask = null;
+		radioTime += scheduler.now() - windowStartedAt;
+	}
+
+	private final BLEScanner.BLEScanListener forwarder = new BLEScanner.BLEScanListener() {
+		@Override
+		public void onDiscovered(Peripheral peripheral) {
+			//drop the reports of the last window still on their way after the stop
+			if (isRunning) listener.onDiscovered(peripheral);
+		}
+
+		@Override
+		public void onFailed(int errorCode) {
+			if (isRunning) listener.onFailed(errorCode);
+		}
+	};
+
+
+	//--------------------------------------------------
+	//metrics
+
+	public boolean isScanning() {
+		return scanTask != null;
+	}
+
+	/**
+	 * @return number of times the scanner has been started
+	 */
+	public int getStartCount() {
+		return startCount;
+	}
+
+	/**
+	 * @return idle time after the current or the last window, in millisecond
+	 */
+	public long getIdle() {
+		return idle;
+	}
+
+	/**
+	 * @return how long the radio has been scanning since start, in millisecond
+	 */
+	public long getRadioTime() {
+		return radioTime + ((scanTask != null) ? scheduler.now() - windowStartedAt : 0);
+	}
+
+	/**
+	 * @return fraction of the time since start the radio has been scanning, from 0 to 1
+	 */
+	public double getDutyCycle() {
+		final long elapsed = scheduler.now() - startedAt;
+		return (elapsed <= 0) ? 1 : (double) getRadioTime() / elapsed;
+	}
+}
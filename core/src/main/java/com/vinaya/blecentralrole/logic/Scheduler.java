@@ -0,0 +1,27 @@
+package com.vinaya.blecentralrole.logic;
+
+/**
+ * Source of time and delayed execution for the logic classes,
+ * so that they can be driven by a simulated clock in the tests
+ */
+public interface Scheduler {
+
+	/**
+	 * api to let user to cancel a scheduled runnable
+	 */
+	interface Task {
+		void cancel();
+	}
+
+	/**
+	 * @return monotonic time in millisecond, not related to the wall clock
+	 */
+	long now();
+
+	/**
+	 * run the runnable once after the delay
+	 *
+	 * @param delayMillis delay in millisecond, 0 means as soon as possible
+	 */
+	Task schedule(Runnable runnable, long delayMillis);
+}
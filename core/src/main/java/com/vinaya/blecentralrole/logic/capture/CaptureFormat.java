@@ -0,0 +1,75 @@
+package com.vinaya.blecentralrole.logic.capture;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The segment files written by {@link CaptureLog} and read by {@link CaptureReader}, all of the segment size:
+ *
+ * <pre>
+ * header   magic, version, segment size, index interval
+ * index    {@link #INDEX_SLOTS} slots of the time and offset of a record, 0 for the slots not filled yet.
+ *          Slot i is the first record at or after {@link #DATA_OFFSET} + i * index interval
+ * records  the length of what follows, the time in millisecond, the 48-bit address, the direction, the value.
+ *          The length is written last, so a record is complete once it is not 0; the rest of the file is 0
+ * </pre>
+ *
+ * Big endian. The segments are numbered in the order they are written, see {@link #getName(long)}.
+ */
+final class CaptureFormat {
+	final static int MAGIC = 0x424C4543;    //"BLEC"
+	final static int VERSION = 1;
+
+	final static int HEADER_SIZE = 16;
+	final static int INDEX_SLOTS = 256;
+	final static int SLOT_SIZE = 12;
+	final static int DATA_OFFSET = HEADER_SIZE + INDEX_SLOTS * SLOT_SIZE;
+
+	//what follows the length of a record before its value: time, address, direction
+	final static int RECORD_HEADER_SIZE = 4 + 8 + 8 + 1;
+
+	private final static String PREFIX = "capture-";
+	private final static String SUFFIX = ".seg";
+
+	private CaptureFormat() {
+	}
+
+	static String getName(long number) {
+		return String.format(Locale.US, "%s%010d%s", PREFIX, number, SUFFIX);
+	}
+
+	/**
+	 * @return -1 if it is not the name of a segment
+	 */
+	static long getNumber(String name) {
+		if (false == name.startsWith(PREFIX) || false == name.endsWith(SUFFIX)) return -1;
+		try {
+			return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the segments of the directory, from the oldest
+	 */
+	static File[] listSegments(File directory) {
+		final File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return getNumber(name) >= 0;
+			}
+		});
+		if (files == null) return new File[0];
+
+		//the numbers have a fixed width
+		Arrays.sort(files);
+		return files;
+	}
+
+	static int getIndexInterval(int segmentSize) {
+		return Math.max(1, (segmentSize - DATA_OFFSET) / INDEX_SLOTS);
+	}
+}
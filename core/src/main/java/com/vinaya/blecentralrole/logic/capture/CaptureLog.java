@@ -0,0 +1,302 @@
+package com.vinaya.blecentralrole.logic.capture;
+
+import com.vinaya.blecentralrole.logic.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Append-only capture of the values received and written, with their time and peripheral,
+ * in segment files which survive the process, to audit the sessions afterwards by {@link CaptureReader}.
+ *
+ * {@link #append} only copies the record into a buffer in memory, it never waits for I/O:
+ * if the buffer is full, the record is dropped and counted. A writer thread of its own takes everything
+ * appended meanwhile at once, and copies it into the segment mapped by a {@link MappedByteBuffer}.
+ * The pages belong to the system, so what is copied is kept even if the process dies; it is forced
+ * to the storage when a segment is full and on close.
+ *
+ * A new segment is started on every open and once the current one is full,
+ * the oldest are deleted beyond the maximum number. See {@link CaptureFormat} for the format.
+ */
+public class CaptureLog implements Closeable {
+	private final static String TAG = "CaptureLog";
+
+	public final static int RX = 0;    //a notification received
+	public final static int TX = 1;    //a value written
+
+	public final static int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+	public final static int DEFAULT_MAX_SEGMENTS = 8;
+	public final static int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	//--------------------------------------------------
+	//data members
+	private final File directory;
+	private final int segmentSize;
+	private final int maxSegments;
+	private final int indexInterval;
+	private final Thread writer;
+
+	//the records appended and not taken by the writer yet, guarded by the lock
+	private final Object lock = new Object();
+	private ByteBuffer pending;
+	private ByteBuffer spare;
+	private int pendingCount;
+	private long appendedCount;
+	private long committedCount;    //taken by the writer and done with
+	private long droppedCount;
+	private boolean isClosing;
+
+	//on the writer thread
+	private final Deque<File> segments = new ArrayDeque<>();
+	private long segmentNumber;
+	private MappedByteBuffer segment;
+	private int position;
+	private int nextSlot;
+	private int nextIndexedPosition;
+	private volatile long writtenCount;
+	private boolean isFailed;
+
+
+	//--------------------------------------------------
+	//class methods
+	public CaptureLog(File directory) {
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param segmentSize size of each file, a larger record is dropped
+	 * @param maxSegments the files kept, the oldest are deleted
+	 * @param bufferSize  what can be appended while the writer is busy, twice as much is allocated
+	 */
+	public CaptureLog(File directory, int segmentSize, int maxSegments, int bufferSize) {
+		if (segmentSize <= CaptureFormat.DATA_OFFSET) throw new IllegalArgumentException("segment size " + segmentSize);
+		if (maxSegments < 1) throw new IllegalArgumentException("max segments " + maxSegments);
+
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+		this.indexInterval = CaptureFormat.getIndexInterval(segmentSize);
+		this.pending = ByteBuffer.allocate(bufferSize);
+		this.spare = ByteBuffer.allocate(bufferSize);
+
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runWriter();
+			}
+		}, TAG);
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * add a record, from any thread, without waiting for I/O
+	 *
+	 * @param time       in millisecond, e.g. System.currentTimeMillis(). Seeking by time expects it not to go backwards
+	 * @param macAddress see {@link com.vinaya.blecentralrole.model.MacAddress}
+	 * @param direction  {@link #RX} or {@link #TX}
+	 * @return false if it is dropped: the buffer is full, it is larger than a segment, or it is closed
+	 */
+	public boolean append(long time, long macAddress, int direction, byte[] value, int offset, int length) {
+		final int size = CaptureFormat.RECORD_HEADER_SIZE + length;
+		synchronized (lock) {
+			if (isClosing || size > segmentSize - CaptureFormat.DATA_OFFSET || size > pending.remaining()) {
+				droppedCount++;
+				return false;
+			}
+
+			final boolean wasEmpty = pendingCount == 0;
+			pending.putInt(size - 4);
+			pending.putLong(time);
+			pending.putLong(macAddress);
+			pending.put((byte) direction);
+			pending.put(value, offset, length);
+			pendingCount++;
+			appendedCount++;
+			//the writer waits only while there is nothing, so once per batch
+			if (wasEmpty) lock.notifyAll();
+		}
+		return true;
+	}
+
+	/**
+	 * wait until what is appended so far is in the segments
+	 */
+	public void flush() throws InterruptedException {
+		synchronized (lock) {
+			final long target = appendedCount;
+			while (committedCount < target && writer.isAlive()) {
+				lock.wait();
+			}
+		}
+	}
+
+	/**
+	 * write what is appended so far, then stop. Later records are dropped
+	 */
+	@Override
+	public void close() {
+		synchronized (lock) {
+			isClosing = true;
+			lock.notifyAll();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return number of records in the segments
+	 */
+	public long getWrittenCount() {
+		return writtenCount;
+	}
+
+	/**
+	 * @return number of records dropped, for lack of buffer or of storage
+	 */
+	public long getDroppedCount() {
+		synchronized (lock) {
+			return droppedCount;
+		}
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	//--------------------------------------------------
+	//writer thread
+
+	private void runWriter() {
+		try {
+			openSegments();
+		} catch (IOException e) {
+			Logger.e(TAG, "cannot open the capture in " + directory, e);
+			this.isFailed = true;
+		}
+
+		while (true) {
+			final ByteBuffer batch;
+			final int count;
+			synchronized (lock) {
+				while (pendingCount == 0 && false == isClosing) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						//only close() ends it, so that nothing appended is lost
+					}
+				}
+				if (pendingCount == 0) break;
+
+				//group commit: the records appended while the previous batch was written
+				batch = pending;
+				count = pendingCount;
+				this.pending = spare;
+				this.pendingCount = 0;
+			}
+
+			batch.flip();
+			if (false == isFailed) {
+				try {
+					write(batch);
+					writtenCount += count;
+				} catch (IOException e) {
+					Logger.e(TAG, "cannot write the capture in " + directory, e);
+					this.isFailed = true;
+				}
+			}
+			batch.clear();
+
+			synchronized (lock) {
+				this.spare = batch;
+				if (isFailed) droppedCount += count;
+				committedCount += count;
+				lock.notifyAll();
+			}
+		}
+
+		if (segment != null) segment.force();
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * continue after the segments of a previous run, a new one is started
+	 */
+	private void openSegments() throws IOException {
+		if (false == directory.isDirectory() && false == directory.mkdirs()) {
+			throw new IOException("cannot create " + directory);
+		}
+		for (File file : CaptureFormat.listSegments(directory)) {
+			segments.addLast(file);
+			this.segmentNumber = Math.max(segmentNumber, CaptureFormat.getNumber(file.getName()));
+		}
+		nextSegment();
+	}
+
+	private void write(ByteBuffer batch) throws IOException {
+		final ByteBuffer record = batch.duplicate();
+		while (batch.hasRemaining()) {
+			final int start = batch.position();
+			final int length = batch.getInt(start);
+			final int size = 4 + length;
+			if (position + size > segmentSize) nextSegment();
+
+			//the record but its length, then the index, then the length which makes it complete
+			record.limit(start + size);
+			record.position(start + 4);
+			segment.position(position + 4);
+			segment.put(record);
+			if (position >= nextIndexedPosition && nextSlot < CaptureFormat.INDEX_SLOTS) {
+				final int slot = CaptureFormat.HEADER_SIZE + nextSlot * CaptureFormat.SLOT_SIZE;
+				segment.putLong(slot, batch.getLong(start + 4));
+				segment.putInt(slot + 8, position);
+				nextSlot++;
+				this.nextIndexedPosition = CaptureFormat.DATA_OFFSET + nextSlot * indexInterval;
+			}
+			segment.putInt(position, length);
+
+			position += size;
+			batch.position(start + size);
+		}
+	}
+
+	private void nextSegment() throws IOException {
+		if (segment != null) segment.force();
+
+		final File file = new File(directory, CaptureFormat.getName(++segmentNumber));
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			//a new file is all 0, so the index and the records past the end are empty
+			randomAccessFile.setLength(0);
+			this.segment = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		} finally {
+			//the mapping stays valid
+			randomAccessFile.close();
+		}
+		segment.putInt(0, CaptureFormat.MAGIC);
+		segment.putInt(4, CaptureFormat.VERSION);
+		segment.putInt(8, segmentSize);
+		segment.putInt(12, indexInterval);
+		this.position = CaptureFormat.DATA_OFFSET;
+		this.nextSlot = 0;
+		this.nextIndexedPosition = CaptureFormat.DATA_OFFSET;
+
+		segments.addLast(file);
+		while (segments.size() > maxSegments) {
+			final File oldest = segments.removeFirst();
+			if (false == oldest.delete()) Logger.w(TAG, "cannot delete " + oldest);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package com.vinaya.blecentralrole.logic.capture;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the segments written by {@link CaptureLog}, from a time on: the segment and the place in it
+ * are found by the index, then the records are read in order, through every later segment.
+ * It may run while the capture is written, it stops at the last complete record,
+ * skips the segments deleted meanwhile, and takes the newest one as empty while it is being started.
+ */
+public class CaptureReader {
+
+	/**
+	 * what to do with a record
+	 */
+	public interface Visitor {
+		/**
+		 * @param direction {@link CaptureLog#RX} or {@link CaptureLog#TX}
+		 * @param value     read-only, valid only during the call
+		 * @return false to stop reading
+		 */
+		boolean onRecord(long time, long macAddress, int direction, ByteBuffer value);
+	}
+
+	private final File directory;
+
+	public CaptureReader(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @return the segments, from the oldest
+	 */
+	public File[] getSegments() {
+		return CaptureFormat.listSegments(directory);
+	}
+
+	/**
+	 * read the records from the first one at or after the time
+	 *
+	 * @return number of records passed to the visitor
+	 */
+	public long read(long fromTime, Visitor visitor) throws IOException {
+		final File[] files = getSegments();
+
+		//the last segment which begins before the time, the earlier ones end before it too
+		int first = 0;
+		for (int i = files.length - 1; i > 0; i--) {
+			final ByteBuffer segment = map(files[i], i == files.length - 1);
+			if (segment != null && getSlotOffset(segment, 0) != 0 && getSlotTime(segment, 0) < fromTime) {
+				first = i;
+				break;
+			}
+		}
+
+		long count = 0;
+		for (int i = first; i < files.length; i++) {
+			final ByteBuffer segment = map(files[i], i == files.length - 1);
+			if (segment == null) continue;
+			int position = (i == first) ? seek(segment, fromTime) : CaptureFormat.DATA_OFFSET;
+			while (position + 4 <= segment.limit()) {
+				final int length = segment.getInt(position);
+				if (length == 0) break;
+
+				final long time = segment.getLong(position + 4);
+				if (time >= fromTime) {
+					final long macAddress = segment.getLong(position + 12);
+					final int direction = segment.get(position + 20);
+					final ByteBuffer value = segment.duplicate();
+					value.limit(position + 4 + length);
+					value.position(position + CaptureFormat.RECORD_HEADER_SIZE);
+					count++;
+					if (false == visitor.onRecord(time, macAddress, direction, value.slice().asReadOnlyBuffer())) return count;
+				}
+				position += 4 + length;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return where to start reading the records of the segment at or after the time
+	 */
+	private static int seek(ByteBuffer segment, long fromTime) {
+		//the last slot before the time, the slots are filled in order
+		int low = 0;
+		int high = CaptureFormat.INDEX_SLOTS - 1;
+		int found = -1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			if (getSlotOffset(segment, middle) != 0 && getSlotTime(segment, middle) < fromTime) {
+				found = middle;
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return (found < 0) ? CaptureFormat.DATA_OFFSET : getSlotOffset(segment, found);
+	}
+
+	private static long getSlotTime(ByteBuffer segment, int slot) {
+		return segment.getLong(CaptureFormat.HEADER_SIZE + slot * CaptureFormat.SLOT_SIZE);
+	}
+
+	private static int getSlotOffset(ByteBuffer segment, int slot) {
+		return segment.getInt(CaptureFormat.HEADER_SIZE + slot * CaptureFormat.SLOT_SIZE + 8);
+	}
+
+	/**
+	 * @param isLast the newest segment, which the writer may be starting: created, then extended, then its header written
+	 * @return null if it is deleted, or if it is the newest and its header is not written yet
+	 */
+	private static ByteBuffer map(File file, boolean isLast) throws IOException {
+		final RandomAccessFile randomAccessFile;
+		try {
+			randomAccessFile = new RandomAccessFile(file, "r");
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+		final MappedByteBuffer segment;
+		try {
+			segment = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+		} finally {
+			randomAccessFile.close();
+		}
+		if (isLast && (segment.limit() < CaptureFormat.DATA_OFFSET || segment.getInt(0) == 0 || segment.getInt(4) == 0)) {
+			return null;
+		}
+		if (segment.limit() < CaptureFormat.DATA_OFFSET || segment.getInt(0) != CaptureFormat.MAGIC
+			|| segment.getInt(4) != CaptureFormat.VERSION) {
+			throw new IOException("not a capture segment: " + file);
+		}
+		return segment;
+	}
+}
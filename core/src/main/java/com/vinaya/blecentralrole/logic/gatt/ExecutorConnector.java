@@ -0,0 +1,109 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Connector which calls the callbacks of its links on an executor, e.g. the event loop of the Central,
+ * instead of the binder threads of Android. The links themselves are those of the wrapped connector.
+ *
+ * The value of a notification is passed on as it is: Android gives a new array for every notification.
+ */
+public class ExecutorConnector implements GattLink.Connector {
+	private final GattLink.Connector connector;
+	private final Executor executor;
+
+	public ExecutorConnector(GattLink.Connector connector, Executor executor) {
+		this.connector = connector;
+		this.executor = executor;
+	}
+
+	@Override
+	public GattLink connect(String address, boolean autoConnect, GattLink.Callback callback) {
+		return connector.connect(address, autoConnect, new ExecutorCallback(callback, executor));
+	}
+
+
+	/**
+	 * hands every callback off to the executor, in the order they come
+	 */
+	private static class ExecutorCallback implements GattLink.Callback {
+		private final GattLink.Callback callback;
+		private final Executor executor;
+
+		ExecutorCallback(GattLink.Callback callback, Executor executor) {
+			this.callback = callback;
+			this.executor = executor;
+		}
+
+		@Override
+		public void onConnectionStateChange(final int status, final int newState) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					callback.onConnectionStateChange(status, newState);
+				}
+			});
+		}
+
+		@Override
+		public void onServicesDiscovered(final int status) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					callback.onServicesDiscovered(status);
+				}
+			});
+		}
+
+		@Override
+		public void onCharacteristicChanged(final UUID characteristic, final byte[] value) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					callback.onCharacteristicChanged(characteristic, value);
+				}
+			});
+		}
+
+		@Override
+		public void onCharacteristicWrite(final UUID characteristic, final int status) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					callback.onCharacteristicWrite(characteristic, status);
+				}
+			});
+		}
+
+		@Override
+		public void onDescriptorWrite(final UUID descriptor, final int status) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					callback.onDescriptorWrite(descriptor, status);
+				}
+			});
+		}
+
+		@Override
+		public void onMtuChanged(final int mtu, final int status) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					callback.onMtuChanged(mtu, status);
+				}
+			});
+		}
+
+		@Override
+		public void onPhyUpdate(final int txPhy, final int rxPhy, final int status) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					callback.onPhyUpdate(txPhy, rxPhy, status);
+				}
+			});
+		}
+	}
+}
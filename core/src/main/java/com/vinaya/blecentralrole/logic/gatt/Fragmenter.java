@@ -0,0 +1,40 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits a value into chunks which fit into one ATT packet of the negotiated MTU,
+ * since the part beyond it is truncated by the stack
+ */
+public final class Fragmenter {
+
+	private Fragmenter() {
+		//utility class
+	}
+
+	/**
+	 * @return the largest value which can be sent in one packet
+	 */
+	public static int getPayloadSize(int mtu) {
+		return Math.max(1, mtu - GattLink.ATT_HEADER_SIZE);
+	}
+
+	/**
+	 * @return the chunks in order, the value itself if it fits already
+	 */
+	public static List<byte[]> split(byte[] value, int mtu) {
+		final int payloadSize = getPayloadSize(mtu);
+		final List<byte[]> chunks = new ArrayList<>(value.length / payloadSize + 1);
+		if (value.length <= payloadSize) {
+			chunks.add(value);
+			return chunks;
+		}
+
+		for (int offset = 0; offset < value.length; offset += payloadSize) {
+			chunks.add(Arrays.copyOfRange(value, offset, Math.min(value.length, offset + payloadSize)));
+		}
+		return chunks;
+	}
+}
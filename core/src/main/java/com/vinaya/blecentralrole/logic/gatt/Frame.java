@@ -0,0 +1,72 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+/**
+ * The binary framing of the messages on RX and TX, instead of the zero terminated strings:
+ *
+ * <pre>
+ * length   varint, 1 to 4 bytes: size of the payload
+ * sequence 1 byte, wraps around after 255
+ * type     1 byte, e.g. {@link #TYPE_TEXT}
+ * payload  length bytes
+ * crc      2 bytes little endian: CRC-16/CCITT-FALSE of everything before it
+ * </pre>
+ *
+ * A frame may be split across notifications, and several may be packed into one,
+ * see {@link FrameParser}. Written by {@link FrameEncoder}.
+ */
+public final class Frame {
+	public final static int TYPE_TEXT = 0x01;      //UTF-8
+	public final static int TYPE_BINARY = 0x02;
+
+	public final static int MAX_LENGTH_SIZE = 4;   //varint of a length up to 2^28 - 1
+	public final static int HEADER_SIZE = 2;       //sequence and type
+	public final static int CRC_SIZE = 2;
+
+	final static int CRC_INITIAL = 0xFFFF;
+	private final static int CRC_POLYNOMIAL = 0x1021;
+	private final static char[] CRC_TABLE = new char[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			int crc = i << 8;
+			for (int bit = 0; bit < 8; bit++) {
+				crc = ((crc & 0x8000) != 0) ? (crc << 1) ^ CRC_POLYNOMIAL : crc << 1;
+			}
+			CRC_TABLE[i] = (char) crc;
+		}
+	}
+
+	private Frame() {
+		//utility class
+	}
+
+	/**
+	 * @return size of the whole frame of a payload
+	 */
+	public static int getFrameSize(int payloadLength) {
+		return getVarintSize(payloadLength) + HEADER_SIZE + payloadLength + CRC_SIZE;
+	}
+
+	static int getVarintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * @param crc the CRC so far, {@link #CRC_INITIAL} to begin with
+	 */
+	static int crc16(int crc, byte[] bytes, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			crc = ((crc << 8) ^ CRC_TABLE[((crc >>> 8) ^ bytes[i]) & 0xFF]) & 0xFFFF;
+		}
+		return crc;
+	}
+
+	static int crc16(int crc, int b) {
+		return ((crc << 8) ^ CRC_TABLE[((crc >>> 8) ^ b) & 0xFF]) & 0xFFFF;
+	}
+}
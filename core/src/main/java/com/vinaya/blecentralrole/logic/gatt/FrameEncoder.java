@@ -0,0 +1,52 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import java.nio.charset.Charset;
+
+/**
+ * Writes {@link Frame}s into a reused buffer, so that nothing is allocated for a frame once it is large enough.
+ *
+ * Not thread safe, one for each link.
+ */
+public class FrameEncoder {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private byte[] frame = new byte[64];
+
+	/**
+	 * @param sequence only the low 8 bits are written
+	 * @return length of the frame, which is in {@link #getFrame()}
+	 */
+	public int encode(int sequence, int type, byte[] payload, int offset, int length) {
+		final int frameLength = Frame.getFrameSize(length);
+		if (frame.length < frameLength) this.frame = new byte[frameLength * 2];
+
+		int at = 0;
+		int value = length;
+		while ((value & ~0x7F) != 0) {
+			frame[at++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		frame[at++] = (byte) value;
+		frame[at++] = (byte) sequence;
+		frame[at++] = (byte) type;
+		System.arraycopy(payload, offset, frame, at, length);
+		at += length;
+
+		final int crc = Frame.crc16(Frame.CRC_INITIAL, frame, 0, at);
+		frame[at++] = (byte) crc;
+		frame[at] = (byte) (crc >>> 8);
+		return frameLength;
+	}
+
+	/**
+	 * a {@link Frame#TYPE_TEXT} frame
+	 */
+	public int encode(int sequence, String text) {
+		final byte[] bytes = text.getBytes(UTF8);
+		return encode(sequence, Frame.TYPE_TEXT, bytes, 0, bytes.length);
+	}
+
+	public byte[] getFrame() {
+		return frame;
+	}
+}
@@ -0,0 +1,170 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import java.util.Arrays;
+
+/**
+ * Cuts the {@link Frame}s out of the notifications, whatever their boundaries: it goes on from where
+ * the previous notification stopped, and a notification may hold the end of a frame and several more.
+ *
+ * A frame with a bad CRC is dropped, and the parser starts over with the next byte.
+ * A frame longer than the maximum is skipped by its length, without being buffered.
+ * The payload buffer is reused for the next frame, so nothing is allocated once it is large enough.
+ * Not thread safe, one for each link whose notifications come one by one.
+ */
+public class FrameParser {
+	public final static int DEFAULT_MAX_PAYLOAD_SIZE = 4096;
+
+	/**
+	 * what to do with a complete frame
+	 */
+	public interface Listener {
+		/**
+		 * @param sequence 0 to 255
+		 * @param payload  the payload is its first length bytes, valid only during the call
+		 */
+		void onFrame(int sequence, int type, byte[] payload, int length);
+	}
+
+	//what the next byte is
+	private final static int LENGTH = 0;
+	private final static int SEQUENCE = 1;
+	private final static int TYPE = 2;
+	private final static int PAYLOAD = 3;
+	private final static int CRC_LOW = 4;
+	private final static int CRC_HIGH = 5;
+	private final static int SKIP = 6;
+
+	private final int maxPayloadSize;
+	private byte[] payload = new byte[64];
+
+	private int state = LENGTH;
+	private int crc = Frame.CRC_INITIAL;
+	private int length;
+	private int lengthShift;
+	private int sequence;
+	private int type;
+	private int received;
+	private int receivedCrc;
+	private int skipped;
+
+	private int frameCount;
+	private int errorCount;
+
+	public FrameParser() {
+		this(DEFAULT_MAX_PAYLOAD_SIZE);
+	}
+
+	/**
+	 * @param maxPayloadSize a longer frame is dropped, so that the buffer is bounded
+	 */
+	public FrameParser(int maxPayloadSize) {
+		this.maxPayloadSize = maxPayloadSize;
+	}
+
+	/**
+	 * @param chunk value of one notification
+	 */
+	public void append(byte[] chunk, Listener listener) {
+		append(chunk, 0, chunk.length, listener);
+	}
+
+	public void append(byte[] chunk, int offset, int count, Listener listener) {
+		final int end = offset + count;
+		int i = offset;
+		while (i < end) {
+			if (state == SKIP) {
+				final int n = Math.min(end - i, skipped);
+				skipped -= n;
+				i += n;
+				if (skipped == 0) reset();
+				continue;
+			}
+			if (state == PAYLOAD) {
+				//the bulk of a frame is copied at once
+				final int n = Math.min(end - i, length - received);
+				System.arraycopy(chunk, i, payload, received, n);
+				crc = Frame.crc16(crc, chunk, i, n);
+				received += n;
+				i += n;
+				if (received == length) state = CRC_LOW;
+				continue;
+			}
+
+			final int b = chunk[i++] & 0xFF;
+			switch (state) {
+				case LENGTH:
+					crc = Frame.crc16(crc, b);
+					length |= (b & 0x7F) << lengthShift;
+					lengthShift += 7;
+					if ((b & 0x80) != 0) {
+						if (lengthShift >= 7 * Frame.MAX_LENGTH_SIZE) drop();
+					} else if (length > maxPayloadSize) {
+						errorCount++;
+						skipped = Frame.HEADER_SIZE + length + Frame.CRC_SIZE;
+						state = SKIP;
+					} else {
+						state = SEQUENCE;
+					}
+					break;
+				case SEQUENCE:
+					crc = Frame.crc16(crc, b);
+					sequence = b;
+					state = TYPE;
+					break;
+				case TYPE:
+					crc = Frame.crc16(crc, b);
+					type = b;
+					if (payload.length < length) {
+						payload = Arrays.copyOf(payload, Math.min(maxPayloadSize, Math.max(payload.length * 2, length)));
+					}
+					state = (length == 0) ? CRC_LOW : PAYLOAD;
+					break;
+				case CRC_LOW:
+					receivedCrc = b;
+					state = CRC_HIGH;
+					break;
+				case CRC_HIGH:
+					receivedCrc |= b << 8;
+					if (receivedCrc == crc) {
+						final int length = this.length;
+						reset();
+						frameCount++;
+						listener.onFrame(sequence, type, payload, length);
+					} else {
+						drop();
+					}
+					break;
+			}
+		}
+	}
+
+	/**
+	 * drop the incomplete frame, e.g. on disconnect
+	 */
+	public void reset() {
+		state = LENGTH;
+		crc = Frame.CRC_INITIAL;
+		length = 0;
+		lengthShift = 0;
+		received = 0;
+	}
+
+	/**
+	 * @return number of frames passed on
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return number of frames dropped for their CRC or skipped for their length
+	 */
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	private void drop() {
+		errorCount++;
+		reset();
+	}
+}
@@ -0,0 +1,106 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import java.util.UUID;
+
+/**
+ * A GATT client connection to one peripheral,
+ * so as to hide BluetoothGatt from the logic and allow a fake one in the tests.
+ *
+ * Like BluetoothGatt, only one operation waiting for a callback can be outstanding at a time,
+ * see {@link GattOperationQueue}
+ */
+public interface GattLink {
+	//same values as BluetoothGatt and BluetoothProfile
+	int GATT_SUCCESS = 0;
+	int GATT_FAILURE = 257;
+	int STATE_DISCONNECTED = 0;
+	int STATE_CONNECTED = 2;
+
+	byte[] ENABLE_NOTIFICATION_VALUE = {0x01, 0x00};    //of the client characteristic configuration descriptor
+
+	int DEFAULT_MTU = 23;    //ATT MTU before any negotiation
+	int ATT_HEADER_SIZE = 3; //opcode and handle, the rest of the MTU is for the value
+
+	//same values as BluetoothGatt and BluetoothDevice
+	int CONNECTION_PRIORITY_BALANCED = 0;
+	int CONNECTION_PRIORITY_HIGH = 1;       //short connection interval, for bursts of traffic
+	int CONNECTION_PRIORITY_LOW_POWER = 2;
+	int PHY_LE_1M = 1;
+	int PHY_LE_2M = 2;
+
+	/**
+	 * create the links, e.g. by BluetoothDevice.connectGatt
+	 */
+	interface Connector {
+		/**
+		 * @param address     address of the peripheral
+		 * @param autoConnect connect as soon as the peripheral becomes available, instead of directly
+		 * @return the link which is connecting, or null if the peripheral cannot be found
+		 */
+		GattLink connect(String address, boolean autoConnect, Callback callback);
+	}
+
+	/**
+	 * callbacks of the link, called from a binder thread
+	 */
+	interface Callback {
+		void onConnectionStateChange(int status, int newState);
+
+		void onServicesDiscovered(int status);
+
+		void onCharacteristicChanged(UUID characteristic, byte[] value);
+
+		void onCharacteristicWrite(UUID characteristic, int status);
+
+		void onDescriptorWrite(UUID descriptor, int status);
+
+		void onMtuChanged(int mtu, int status);
+
+		/**
+		 * the PHY in use, after {@link GattLink#setPreferredPhy(int)} or when the peripheral changes it
+		 */
+		void onPhyUpdate(int txPhy, int rxPhy, int status);
+	}
+
+	boolean discoverServices();
+
+	/**
+	 * ask for a larger ATT MTU, the result comes by {@link Callback#onMtuChanged(int, int)}
+	 */
+	boolean requestMtu(int mtu);
+
+	/**
+	 * ask the controller for another connection interval, e.g. {@link #CONNECTION_PRIORITY_HIGH}.
+	 * There is no callback, and no GATT operation is held up by it
+	 */
+	boolean requestConnectionPriority(int priority);
+
+	/**
+	 * ask for a PHY in both directions, e.g. {@link #PHY_LE_2M}; the result comes by {@link Callback#onPhyUpdate(int, int, int)}.
+	 * The link stays on the 1M PHY if either side does not support it
+	 *
+	 * @return false if the platform cannot ask for it
+	 */
+	boolean setPreferredPhy(int phy);
+
+	/**
+	 * @return true if the characteristic is found after service discovery
+	 */
+	boolean hasCharacteristic(UUID service, UUID characteristic);
+
+	boolean setCharacteristicNotification(UUID service, UUID characteristic, boolean enable);
+
+	boolean writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value);
+
+	/**
+	 * @param withResponse false to write without response (WRITE_TYPE_NO_RESPONSE)
+	 */
+	boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value, boolean withResponse);
+
+	void disconnect();
+
+	/**
+	 * release the link, no callback is called afterwards
+	 */
+	void close();
+}
@@ -0,0 +1,225 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import java.util.UUID;
+
+/**
+ * One GATT request to be run by the {@link GattOperationQueue}
+ */
+public abstract class GattOperation {
+	public final static long DEFAULT_TIMEOUT = 3000;   //in millisecond
+	public final static int DEFAULT_MAX_RETRIES = 2;
+
+	/**
+	 * what to do when the operation is done, called from the thread of the link callback
+	 */
+	public interface Callback {
+		/**
+		 * @param status {@link GattLink#GATT_SUCCESS}, the status of the last attempt,
+		 *               or {@link GattLink#GATT_FAILURE} if it is timeout or cannot be started
+		 */
+		void onComplete(GattOperation operation, int status);
+	}
+
+	//--------------------------------------------------
+	//data members
+	private long timeoutMillis = DEFAULT_TIMEOUT;
+	private int maxRetries = DEFAULT_MAX_RETRIES;
+	private Callback callback;
+
+	//maintained by the queue
+	int attempts;
+	int status;           //of the completion
+	long deadline;        //of the timeout of the attempt in flight
+	Runnable timeout;     //kept with the operation, so that a recycled one does not need a new one
+
+
+	//--------------------------------------------------
+	//factory methods
+
+	public static GattOperation writeCharacteristic(UUID service, UUID characteristic, byte[] value, boolean withResponse) {
+		return new WriteCharacteristic(service, characteristic, value, withResponse);
+	}
+
+	/**
+	 * enable the notification locally, then write the Client Characteristic Configuration descriptor
+	 */
+	public static GattOperation enableNotification(UUID service, UUID characteristic, UUID descriptor, byte[] value) {
+		return new EnableNotification(service, characteristic, descriptor, value);
+	}
+
+	/**
+	 * ask for a larger ATT MTU, done on onMtuChanged
+	 */
+	public static GattOperation requestMtu(int mtu) {
+		return new RequestMtu(mtu);
+	}
+
+
+	//--------------------------------------------------
+	//class methods
+
+	/**
+	 * start the operation on the link
+	 *
+	 * @return false if the link refuses it, e.g. busy
+	 */
+	abstract boolean execute(GattLink link);
+
+	/**
+	 * @return true if it is done only after the callback from the peripheral,
+	 * false if it is done once started, e.g. pipelined write without response
+	 */
+	abstract boolean isAcknowledged(boolean isPipelining);
+
+	/**
+	 * @return true if the characteristic write callback is for this operation
+	 */
+	boolean isCharacteristicWrite(UUID characteristic) {
+		return false;
+	}
+
+	/**
+	 * @return true if the descriptor write callback is for this operation
+	 */
+	boolean isDescriptorWrite(UUID descriptor) {
+		return false;
+	}
+
+	/**
+	 * @return true if the MTU changed callback is for this operation
+	 */
+	boolean isMtuRequest() {
+		return false;
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public GattOperation setTimeoutMillis(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+		return this;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public GattOperation setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+		return this;
+	}
+
+	public Callback getCallback() {
+		return callback;
+	}
+
+	public GattOperation setCallback(Callback callback) {
+		this.callback = callback;
+		return this;
+	}
+
+	/**
+	 * @return how many times it has been started, including the retries
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+
+	/**
+	 * back to the initial state, before a recycled operation is queued again
+	 */
+	void reset() {
+		this.timeoutMillis = DEFAULT_TIMEOUT;
+		this.maxRetries = DEFAULT_MAX_RETRIES;
+		this.attempts = 0;
+		this.status = GattLink.GATT_SUCCESS;
+	}
+
+
+	//--------------------------------------------------
+	//operations
+
+	static class WriteCharacteristic extends GattOperation {
+		final UUID service;
+		final UUID characteristic;
+		final byte[] value;
+		final boolean withResponse;
+
+		WriteCharacteristic(UUID service, UUID characteristic, byte[] value, boolean withResponse) {
+			this.service = service;
+			this.characteristic = characteristic;
+			this.value = value;
+			this.withResponse = withResponse;
+		}
+
+		@Override
+		boolean execute(GattLink link) {
+			return link.writeCharacteristic(service, characteristic, value, withResponse);
+		}
+
+		@Override
+		boolean isAcknowledged(boolean isPipelining) {
+			return withResponse || false == isPipelining;
+		}
+
+		@Override
+		boolean isCharacteristicWrite(UUID uuid) {
+			return characteristic.equals(uuid);
+		}
+	}
+
+	static class EnableNotification extends GattOperation {
+		final UUID service;
+		final UUID characteristic;
+		final UUID descriptor;
+		final byte[] value;
+
+		EnableNotification(UUID service, UUID characteristic, UUID descriptor, byte[] value) {
+			this.service = service;
+			this.characteristic = characteristic;
+			this.descriptor = descriptor;
+			this.value = value;
+		}
+
+		@Override
+		boolean execute(GattLink link) {
+			if (false == link.setCharacteristicNotification(service, characteristic, true)) return false;
+			return link.writeDescriptor(service, characteristic, descriptor, value);
+		}
+
+		@Override
+		boolean isAcknowledged(boolean isPipelining) {
+			return true;
+		}
+
+		@Override
+		boolean isDescriptorWrite(UUID uuid) {
+			return descriptor.equals(uuid);
+		}
+	}
+
+	static class RequestMtu extends GattOperation {
+		final int mtu;
+
+		RequestMtu(int mtu) {
+			this.mtu = mtu;
+		}
+
+		@Override
+		boolean execute(GattLink link) {
+			return link.requestMtu(mtu);
+		}
+
+		@Override
+		boolean isAcknowledged(boolean isPipelining) {
+			return true;
+		}
+
+		@Override
+		boolean isMtuRequest() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import com.vinaya.blecentralrole.logic.Scheduler;
+
+import java.util.ArrayDeque;
+import java.util.UUID;
+
+/**
+ * Runs the GATT operations of a link one by one.
+ *
+ * Android silently drops an operation if another one is still waiting for its callback,
+ * so the next operation is started only after onCharacteristicWrite/onDescriptorWrite of the current one.
+ * An operation without callback in time, or with a failed status, is retried a bounded number of times.
+ *
+ * With pipelining on, a write without response is done as soon as the link accepts it,
+ * so that the writes can be buffered by the controller instead of waiting for each callback.
+ * The link must still call onCharacteristicWrite once for each of them, in order.
+ * Not thread safe, the operations and the callbacks of the link come on the event loop of the Central.
+ */
+public class GattOperationQueue {
+	public final static long RETRY_DELAY = 10;   //in millisecond, if the link refuses to start
+
+	//--------------------------------------------------
+	//data members
+	private final GattLink link;
+	private final Scheduler scheduler;
+	private final ArrayDeque<GattOperation> operations = new ArrayDeque<>();
+	private boolean isPipelining = false;
+	private boolean isClosed = false;
+
+	private GattOperation inFlight;     //head of the queue which is waiting for its callback
+	private int unacknowledgedWrites;   //pipelined writes whose callback has not arrived yet
+	private Scheduler.Task timeoutTask;
+	private Scheduler.Task retryTask;
+
+	//completions are reported once the queue is settled, in order, with the status kept in the operation
+	private final ArrayDeque<GattOperation> completions = new ArrayDeque<>();
+
+
+	//--------------------------------------------------
+	//class methods
+	public GattOperationQueue(GattLink link, Scheduler scheduler) {
+		this.link = link;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * @param isPipelining true to not wait for the callback of writes without response
+	 */
+	public void setPipelining(boolean isPipelining) {
+		this.isPipelining = isPipelining;
+	}
+
+	public void enqueue(GattOperation operation) {
+		if (isClosed) return;
+		operations.add(operation);
+		next();
+		reportCompletions();
+	}
+
+	/**
+	 * forward of {@link GattLink.Callback#onCharacteristicWrite(UUID, int)}
+	 */
+	public void onCharacteristicWrite(UUID characteristic, int status) {
+		if (unacknowledgedWrites > 0) {
+			//callbacks come in order, it belongs to the oldest pipelined write
+			unacknowledgedWrites--;
+			retryNow();
+		} else if (inFlight != null && inFlight.isCharacteristicWrite(characteristic)) {
+			onResult(status);
+		}
+		reportCompletions();
+	}
+
+	/**
+	 * forward of {@link GattLink.Callback#onDescriptorWrite(UUID, int)}
+	 */
+	public void onDescriptorWrite(UUID descriptor, int status) {
+		if (inFlight != null && inFlight.isDescriptorWrite(descriptor)) {
+			onResult(status);
+		}
+		reportCompletions();
+	}
+
+	/**
+	 * forward of {@link GattLink.Callback#onMtuChanged(int, int)}
+	 */
+	public void onMtuChanged(int mtu, int status) {
+		if (inFlight != null && inFlight.isMtuRequest()) {
+			onResult(status);
+		}
+		reportCompletions();
+	}
+
+	/**
+	 * drop all the operations without calling back, e.g. on disconnect
+	 */
+	public void close() {
+		this.isClosed = true;
+		cancelTasks();
+		operations.clear();
+		completions.clear();
+		inFlight = null;
+	}
+
+	/**
+	 * @return number of operations not done yet, including the one in flight
+	 */
+	public int size() {
+		return operations.size();
+	}
+
+
+	//--------------------------------------------------
+	//helpers
+
+	private void next() {
+		while (false == isClosed && inFlight == null && retryTask == null && false == operations.isEmpty()) {
+			final GattOperation operation = operations.peek();
+			final boolean isAcknowledged = operation.isAcknowledged(isPipelining);
+
+			//the link may call back before execute() returns
+			operation.attempts++;
+			if (isAcknowledged) {
+				inFlight = operation;
+			} else {
+				unacknowledgedWrites++;
+			}
+
+			if (false == operation.execute(link)) {
+				if (isAcknowledged) {
+					inFlight = null;
+				} else {
+					unacknowledgedWrites--;
+				}
+				onRefused(operation);
+				return;
+			}
+
+			if (isAcknowledged) {
+				if (inFlight == operation) scheduleTimeout(operation);
+				return;
+			}
+
+			operations.poll();
+			complete(operation, GattLink.GATT_SUCCESS);
+		}
+	}
+
+	private void onResult(int status) {
+		final GattOperation operation = inFlight;
+		inFlight = null;
+		cancelTasks();
+
+		if (status != GattLink.GATT_SUCCESS && operation.attempts <= operation.getMaxRetries()) {
+			next();
+			return;
+		}
+
+		operations.poll();
+		complete(operation, status);
+		next();
+	}
+
+	private void onRefused(GattOperation operation) {
+		//busy with our own pipelined writes is not a failure, wait for their callbacks
+		if (unacknowledgedWrites > 0) {
+			operation.attempts--;
+		} else if (operation.attempts > operation.getMaxRetries()) {
+			operations.poll();
+			complete(operation, GattLink.GATT_FAILURE);
+			next();
+			return;
+		}
+
+		this.retryTask = scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				retryNow();
+				reportCompletions();
+			}
+		}, RETRY_DELAY);
+	}
+
+	private void retryNow() {
+		if (retryTask == null) return;
+		retryTask.cancel();
+		retryTask = null;
+		next();
+	}
+
+	private void scheduleTimeout(final GattOperation operation) {
+		if (operation.timeout == null) {
+			operation.timeout = new Runnable() {
+				@Override
+				public void run() {
+					//a recycled operation may be in flight again, with a later deadline
+					if (inFlight != operation || scheduler.now() < operation.deadline) return;
+					timeoutTask = null;
+					onResult(GattLink.GATT_FAILURE);
+					reportCompletions();
+				}
+			};
+		}
+		operation.deadline = scheduler.now() + operation.getTimeoutMillis();
+		this.timeoutTask = scheduler.schedule(operation.timeout, operation.getTimeoutMillis());
+	}
+
+	private void complete(GattOperation operation, int status) {
+		operation.status = status;
+		completions.add(operation);
+	}
+
+	private void cancelTasks() {
+		if (timeoutTask != null) {
+			timeoutTask.cancel();
+			timeoutTask = null;
+		}
+		if (retryTask != null) {
+			retryTask.cancel();
+			retryTask = null;
+		}
+	}
+
+	/**
+	 * call the callbacks of the done operations, once the queue is settled: they may enqueue the next ones
+	 */
+	private void reportCompletions() {
+		GattOperation operation;
+		while ((operation = completions.poll()) != null) {
+			final GattOperation.Callback callback = operation.getCallback();
+			if (callback != null) callback.onComplete(operation, operation.status);
+		}
+	}
+}
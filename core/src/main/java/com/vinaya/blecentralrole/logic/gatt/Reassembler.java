@@ -0,0 +1,89 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import java.util.Arrays;
+
+/**
+ * Joins the notification chunks back into the zero terminated messages.
+ *
+ * A message ends at the zero byte, or at a chunk shorter than the MTU allows,
+ * since a peripheral does not send a partly filled chunk unless it has nothing more to send.
+ * The zero byte is not included in the message.
+ * The buffer is reused for the next message, so nothing is allocated once it is large enough.
+ */
+public class Reassembler {
+	public final static int DEFAULT_MAX_MESSAGE_SIZE = 4096;
+
+	/**
+	 * what to do with a complete message
+	 */
+	public interface Listener {
+		/**
+		 * @param buffer the message is its first length bytes, valid only during the call
+		 */
+		void onMessage(byte[] buffer, int length);
+	}
+
+	private final int maxMessageSize;
+	private byte[] buffer = new byte[64];
+	private int length;
+
+	public Reassembler() {
+		this(DEFAULT_MAX_MESSAGE_SIZE);
+	}
+
+	/**
+	 * @param maxMessageSize a message is cut if it is longer than this, so that the buffer is bounded
+	 */
+	public Reassembler(int maxMessageSize) {
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	/**
+	 * @param chunk value of one notification
+	 * @param mtu   the negotiated MTU, to tell if the chunk is full
+	 */
+	public void append(byte[] chunk, int mtu, Listener listener) {
+		int start = 0;
+		for (int i = 0; i < chunk.length; i++) {
+			if (chunk[i] != 0) continue;
+
+			write(chunk, start, i - start, listener);
+			emit(listener);
+			start = i + 1;
+		}
+		write(chunk, start, chunk.length - start, listener);
+
+		//a short chunk is the last one of the message
+		if (length > 0 && chunk.length < Fragmenter.getPayloadSize(mtu)) {
+			emit(listener);
+		}
+	}
+
+	/**
+	 * drop the incomplete message, e.g. on disconnect
+	 */
+	public void reset() {
+		length = 0;
+	}
+
+	private void write(byte[] chunk, int offset, int count, Listener listener) {
+		while (count > 0) {
+			final int n = Math.min(count, maxMessageSize - length);
+			if (length + n > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.min(maxMessageSize, Math.max(buffer.length * 2, length + n)));
+			}
+			System.arraycopy(chunk, offset, buffer, length, n);
+			length += n;
+			offset += n;
+			count -= n;
+
+			if (length == maxMessageSize) emit(listener);
+		}
+	}
+
+	private void emit(Listener listener) {
+		final int length = this.length;
+		this.length = 0;
+		listener.onMessage(buffer, length);
+	}
+}
@@ -0,0 +1,108 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Recycles the writes to one characteristic together with their values,
+ * so that a steady flow of writes does not allocate once the pool is warm.
+ *
+ * A write goes back to the pool after its callback, the link must not keep the value after starting it.
+ * Writes dropped by {@link GattOperationQueue#close()} are left to the garbage collector.
+ * Use one pool for each queue, since a write keeps the timeout of the queue it has been in.
+ * Not thread safe, like the queue it is used on the event loop of the Central.
+ */
+public class WritePool {
+	public final static int DEFAULT_MAX_POOLED = 16;    //for each length
+
+	/**
+	 * a write whose value is owned by the pool
+	 */
+	private static class PooledWrite extends GattOperation implements GattOperation.Callback {
+		final WritePool pool;
+		final byte[] value;
+		Callback callback;
+
+		PooledWrite(WritePool pool, int length) {
+			this.pool = pool;
+			this.value = new byte[length];
+			setCallback(this);
+		}
+
+		@Override
+		boolean execute(GattLink link) {
+			return link.writeCharacteristic(pool.service, pool.characteristic, value, pool.withResponse);
+		}
+
+		@Override
+		boolean isAcknowledged(boolean isPipelining) {
+			return pool.withResponse || false == isPipelining;
+		}
+
+		@Override
+		boolean isCharacteristicWrite(UUID uuid) {
+			return pool.characteristic.equals(uuid);
+		}
+
+		@Override
+		public void onComplete(GattOperation operation, int status) {
+			final Callback callback = this.callback;
+			this.callback = null;
+			if (callback != null) callback.onComplete(operation, status);
+			pool.recycle(this);
+		}
+	}
+
+	//--------------------------------------------------
+	//data members
+	private final UUID service;
+	private final UUID characteristic;
+	private final boolean withResponse;
+	private final int maxPooled;
+
+	//free writes, indexed by the length of their value
+	private ArrayDeque<PooledWrite>[] free = newFreeLists(GattLink.DEFAULT_MTU);
+
+
+	//--------------------------------------------------
+	//class methods
+	public WritePool(UUID service, UUID characteristic, boolean withResponse) {
+		this(service, characteristic, withResponse, DEFAULT_MAX_POOLED);
+	}
+
+	/**
+	 * @param maxPooled number of free writes kept for each length of value
+	 */
+	public WritePool(UUID service, UUID characteristic, boolean withResponse, int maxPooled) {
+		this.service = service;
+		this.characteristic = characteristic;
+		this.withResponse = withResponse;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * @return a write of a copy of the bytes, with the default timeout and retries
+	 */
+	public GattOperation obtain(byte[] source, int offset, int length, GattOperation.Callback callback) {
+		PooledWrite write = (length < free.length && free[length] != null) ? free[length].poll() : null;
+		if (write == null) write = new PooledWrite(this, length);
+
+		System.arraycopy(source, offset, write.value, 0, length);
+		write.reset();
+		write.callback = callback;
+		return write;
+	}
+
+	private void recycle(PooledWrite write) {
+		final int length = write.value.length;
+		if (length >= free.length) free = Arrays.copyOf(free, Math.max(length + 1, free.length * 2));
+		if (free[length] == null) free[length] = new ArrayDeque<>(maxPooled);
+		if (free[length].size() < maxPooled) free[length].add(write);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static ArrayDeque<PooledWrite>[] newFreeLists(int size) {
+		return new ArrayDeque[size];
+	}
+}
@@ -0,0 +1,111 @@
+package com.vinaya.blecentralrole.logic.metrics;
+
+import com.vinaya.blecentralrole.logic.ConnectionMetrics;
+import com.vinaya.blecentralrole.logic.ScanDiff;
+import com.vinaya.blecentralrole.logic.Scheduler;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts what the Central does, from the scan to the loop back, summed over all the peripherals.
+ *
+ * Every hook is a few atomic increments without a lock or an allocation, so it is always on.
+ * The times are in millisecond, on the clock of the {@link Scheduler}.
+ */
+public class CentralMetrics implements ConnectionMetrics {
+
+	//--------------------------------------------------
+	//data members
+	private final Scheduler scheduler;
+	private final long startTime;
+
+	private final AtomicLong advertisements = new AtomicLong();
+	private final AtomicLong duplicates = new AtomicLong();
+	private final AtomicLong connectAttempts = new AtomicLong();
+	private final AtomicLong reconnects = new AtomicLong();
+	private final AtomicLong connectFailures = new AtomicLong();
+	private final AtomicLong notifications = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong writeRetries = new AtomicLong();
+	private final AtomicLong writeFailures = new AtomicLong();
+
+	private final Histogram scanToDisplay = new Histogram();
+	private final Histogram connectTime = new Histogram();
+	private final Histogram discoveryTime = new Histogram();
+	private final Histogram echoRoundTrip = new Histogram();
+
+
+	//--------------------------------------------------
+	//class methods
+	public CentralMetrics(Scheduler scheduler) {
+		this.scheduler = scheduler;
+		this.startTime = scheduler.now();
+	}
+
+	/**
+	 * an advertisement reported by the scanner
+	 *
+	 * @param isNew false if the peripheral is already in the list, i.e. a duplicate which is only an update
+	 */
+	public void onAdvertisement(boolean isNew) {
+		advertisements.incrementAndGet();
+		if (false == isNew) duplicates.incrementAndGet();
+	}
+
+	/**
+	 * the diff is shown, e.g. applied to the list on screen
+	 */
+	public void onDisplayed(ScanDiff diff) {
+		final long changedSince = diff.getChangedSince();
+		if (changedSince != ScanDiff.UNKNOWN) scanToDisplay.record(scheduler.now() - changedSince);
+	}
+
+	@Override
+	public void onConnectAttempt(Peripheral peripheral, int attempt, boolean isAutoConnect) {
+		connectAttempts.incrementAndGet();
+		if (attempt > 1) reconnects.incrementAndGet();
+	}
+
+	@Override
+	public void onConnected(Peripheral peripheral, int attempts, long elapsedMillis) {
+		connectTime.record(elapsedMillis);
+	}
+
+	@Override
+	public void onConnectFailed(Peripheral peripheral, int failures, long nextDelay) {
+		connectFailures.incrementAndGet();
+	}
+
+	@Override
+	public void onServicesDiscovered(Peripheral peripheral, long elapsedMillis) {
+		discoveryTime.record(elapsedMillis);
+	}
+
+	@Override
+	public void onNotification(Peripheral peripheral) {
+		notifications.incrementAndGet();
+	}
+
+	@Override
+	public void onLoopBack(Peripheral peripheral, long roundTripMillis) {
+		echoRoundTrip.record(roundTripMillis);
+	}
+
+	@Override
+	public void onWrite(Peripheral peripheral, int attempts, boolean isSuccess) {
+		writes.incrementAndGet();
+		if (attempts > 1) writeRetries.addAndGet(attempts - 1);
+		if (false == isSuccess) writeFailures.incrementAndGet();
+	}
+
+	/**
+	 * the counters are read one by one while they may be moving, each one is exact but they may be apart by a few events
+	 */
+	public MetricsSnapshot snapshot() {
+		return new MetricsSnapshot(scheduler.now() - startTime,
+			advertisements.get(), duplicates.get(), scanToDisplay.snapshot(),
+			connectAttempts.get(), reconnects.get(), connectFailures.get(), connectTime.snapshot(), discoveryTime.snapshot(),
+			notifications.get(), writes.get(), writeRetries.get(), writeFailures.get(), echoRoundTrip.snapshot());
+	}
+}
@@ -0,0 +1,122 @@
+package com.vinaya.blecentralrole.logic.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies recorded from any thread without a lock, in the manner of HdrHistogram:
+ * the values below 16 have a bucket each, above that every power of two is split in 16 buckets,
+ * so a percentile is off by less than 1/16 of its value whatever the range.
+ */
+public class Histogram {
+	private final static int SUB_BUCKET_BITS = 4;
+	private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private final static int MAX_EXPONENT = 40 - SUB_BUCKET_BITS;    //up to 2^40, more than 30 years in millisecond
+	private final static int BUCKETS = (MAX_EXPONENT + 2) * SUB_BUCKETS;
+
+	/**
+	 * the values recorded until the snapshot is taken, immutable
+	 */
+	public static class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @return 0 if nothing is recorded
+		 */
+		public double getMean() {
+			return (count == 0) ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * @param percentile 0 to 100
+		 * @return the highest value of the bucket the percentile falls in, 0 if nothing is recorded
+		 */
+		public long getValueAtPercentile(double percentile) {
+			long total = 0;
+			for (long c : counts) {
+				total += c;
+			}
+			if (total == 0) return 0;
+
+			final long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, percentile) / 100));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) return Math.min(max, highestValueOf(i));
+			}
+			return max;
+		}
+	}
+
+	//--------------------------------------------------
+	//data members
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+
+	//--------------------------------------------------
+	//class methods
+
+	/**
+	 * @param value a negative one is recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0) value = 0;
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long current = max.get();
+		while (value > current && false == max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * the recordings going on meanwhile may be in it or not, but every bucket is read once
+	 */
+	public Snapshot snapshot() {
+		final long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+		}
+		return new Snapshot(copy, count.get(), sum.get(), max.get());
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+
+		//value >>> exponent is in [16, 32)
+		final int exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+		final long subBucket = Math.min(2 * SUB_BUCKETS - 1, value >>> exponent);
+		return exponent * SUB_BUCKETS + (int) subBucket;
+	}
+
+	static long highestValueOf(int index) {
+		if (index < 2 * SUB_BUCKETS) return index;
+
+		final int exponent = index / SUB_BUCKETS - 1;
+		final long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << exponent) - 1;
+	}
+}
@@ -0,0 +1,179 @@
+package com.vinaya.blecentralrole.logic.metrics;
+
+import java.util.Locale;
+
+/**
+ * The counters of {@link CentralMetrics} at one time, immutable.
+ * The counters only grow, the rates are taken between two snapshots
+ */
+public class MetricsSnapshot {
+
+	//--------------------------------------------------
+	//data members
+	private final long uptime;
+
+	private final long advertisements;
+	private final long duplicates;
+	private final Histogram.Snapshot scanToDisplay;
+
+	private final long connectAttempts;
+	private final long reconnects;
+	private final long connectFailures;
+	private final Histogram.Snapshot connectTime;
+	private final Histogram.Snapshot discoveryTime;
+
+	private final long notifications;
+	private final long writes;
+	private final long writeRetries;
+	private final long writeFailures;
+	private final Histogram.Snapshot echoRoundTrip;
+
+
+	//--------------------------------------------------
+	//class methods
+	MetricsSnapshot(long uptime,
+	                long advertisements, long duplicates, Histogram.Snapshot scanToDisplay,
+	                long connectAttempts, long reconnects, long connectFailures,
+	                Histogram.Snapshot connectTime, Histogram.Snapshot discoveryTime,
+	                long notifications, long writes, long writeRetries, long writeFailures, Histogram.Snapshot echoRoundTrip) {
+		this.uptime = uptime;
+		this.advertisements = advertisements;
+		this.duplicates = duplicates;
+		this.scanToDisplay = scanToDisplay;
+		this.connectAttempts = connectAttempts;
+		this.reconnects = reconnects;
+		this.connectFailures = connectFailures;
+		this.connectTime = connectTime;
+		this.discoveryTime = discoveryTime;
+		this.notifications = notifications;
+		this.writes = writes;
+		this.writeRetries = writeRetries;
+		this.writeFailures = writeFailures;
+		this.echoRoundTrip = echoRoundTrip;
+	}
+
+	/**
+	 * @return time since the metrics are created, in millisecond
+	 */
+	public long getUptime() {
+		return uptime;
+	}
+
+	public long getAdvertisements() {
+		return advertisements;
+	}
+
+	/**
+	 * @return advertisements of the peripherals already in the list
+	 */
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * @return share of the advertisements which are duplicates, 0 to 1
+	 */
+	public double getDedupeHitRate() {
+		return (advertisements == 0) ? 0 : (double) duplicates / advertisements;
+	}
+
+	/**
+	 * @return from the first change of a diff to its display
+	 */
+	public Histogram.Snapshot getScanToDisplay() {
+		return scanToDisplay;
+	}
+
+	public long getConnectAttempts() {
+		return connectAttempts;
+	}
+
+	/**
+	 * @return attempts after a failure or a lost link
+	 */
+	public long getReconnects() {
+		return reconnects;
+	}
+
+	public long getConnectFailures() {
+		return connectFailures;
+	}
+
+	/**
+	 * @return from the first attempt to connected, retries included
+	 */
+	public Histogram.Snapshot getConnectTime() {
+		return connectTime;
+	}
+
+	public Histogram.Snapshot getDiscoveryTime() {
+		return discoveryTime;
+	}
+
+	/**
+	 * @return notifications of the rx characteristic, a long message comes in several
+	 */
+	public long getNotifications() {
+		return notifications;
+	}
+
+	public long getWrites() {
+		return writes;
+	}
+
+	public long getWriteRetries() {
+		return writeRetries;
+	}
+
+	public long getWriteFailures() {
+		return writeFailures;
+	}
+
+	/**
+	 * @return from a message received to its echo written
+	 */
+	public Histogram.Snapshot getEchoRoundTrip() {
+		return echoRoundTrip;
+	}
+
+	/**
+	 * @param previous an older snapshot of the same metrics, or null for the rate since the start
+	 */
+	public double getAdvertisementRate(MetricsSnapshot previous) {
+		return (previous == null) ? perSecond(advertisements, uptime)
+			: perSecond(advertisements - previous.advertisements, uptime - previous.uptime);
+	}
+
+	/**
+	 * @param previous an older snapshot of the same metrics, or null for the rate since the start
+	 */
+	public double getNotificationRate(MetricsSnapshot previous) {
+		return (previous == null) ? perSecond(notifications, uptime)
+			: perSecond(notifications - previous.notifications, uptime - previous.uptime);
+	}
+
+	/**
+	 * a few lines for the debug overlay, with the rates since the previous snapshot
+	 */
+	public String format(MetricsSnapshot previous) {
+		return String.format(Locale.US,
+			"adv %.0f/s  dup %.0f%%  display p50 %d p99 %d ms%n"
+				+ "connect p50 %d p99 %d ms  discovery p50 %d ms  reconnects %d%n"
+				+ "rx %.0f/s  echo p50 %d p99 %d ms  writes %d  retries %d  failed %d",
+			getAdvertisementRate(previous), 100 * getDedupeHitRate(),
+			scanToDisplay.getValueAtPercentile(50), scanToDisplay.getValueAtPercentile(99),
+			connectTime.getValueAtPercentile(50), connectTime.getValueAtPercentile(99),
+			discoveryTime.getValueAtPercentile(50), reconnects,
+			getNotificationRate(previous), echoRoundTrip.getValueAtPercentile(50), echoRoundTrip.getValueAtPercentile(99),
+			writes, writeRetries, writeFailures);
+	}
+
+	@Override
+	public String toString() {
+		return format(null);
+	}
+
+	private static double perSecond(long count, long millis) {
+		return (millis <= 0) ? 0 : count * 1000.0 / millis;
+	}
+}
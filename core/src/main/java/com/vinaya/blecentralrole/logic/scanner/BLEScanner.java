@@ -27,7 +27,8 @@ public interface BLEScanner {
 
 	/**
 	 * scan the BLE peripherals around asynchronously
-	 * @param scanListener what to do after scanned or failed
+	 * @param config   filters and settings, the filters are applied by the controller when it can
+	 * @param listener what to do after scanned or failed
 	 */
-	ScanTask asyncScan(BLEScanListener listener);
+	ScanTask asyncScan(ScanConfig config, BLEScanListener listener);
 }
@@ -0,0 +1,44 @@
+package com.vinaya.blecentralrole.logic.scanner;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Scanner which calls its listener on an executor, e.g. the event loop of the Central,
+ * instead of the thread of Android. The peripheral is parsed before, on the thread of Android.
+ */
+public class ExecutorScanner implements BLEScanner {
+	private final BLEScanner scanner;
+	private final Executor executor;
+
+	public ExecutorScanner(BLEScanner scanner, Executor executor) {
+		this.scanner = scanner;
+		this.executor = executor;
+	}
+
+	@Override
+	public ScanTask asyncScan(ScanConfig config, final BLEScanListener listener) {
+		return scanner.asyncScan(config, new BLEScanListener() {
+			@Override
+			public void onDiscovered(final Peripheral peripheral) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						listener.onDiscovered(peripheral);
+					}
+				});
+			}
+
+			@Override
+			public void onFailed(final int errorCode) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						listener.onFailed(errorCode);
+					}
+				});
+			}
+		});
+	}
+}
@@ -0,0 +1,179 @@
+package com.vinaya.blecentralrole.logic.scanner;
+
+import com.vinaya.blecentralrole.model.ServiceProfile;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * What to scan for and how hard, independent of the Android version.
+ *
+ * The filters are given to the controller, so that the advertisements which match none of them
+ * neither wake the CPU nor allocate a {@link com.vinaya.blecentralrole.model.Peripheral}.
+ * An advertisement is reported if it matches any filter, or always if there is no filter.
+ * Immutable, build it by {@link Builder}.
+ */
+public final class ScanConfig {
+	//same values as android.bluetooth.le.ScanSettings
+	public final static int SCAN_MODE_LOW_POWER = 0;
+	public final static int SCAN_MODE_BALANCED = 1;
+	public final static int SCAN_MODE_LOW_LATENCY = 2;
+
+	public final static int MATCH_MODE_AGGRESSIVE = 1;  //report on a single weak advertisement
+	public final static int MATCH_MODE_STICKY = 2;      //wait for a few strong advertisements
+
+	/**
+	 * everything in range, the default settings of the platform
+	 */
+	public final static ScanConfig DEFAULT = new Builder().build();
+
+	/**
+	 * every field which is set must match, null matches anything
+	 */
+	public final static class Filter {
+		private final UUID serviceUUID;
+		private final String name;
+		private final String address;
+
+		public Filter(UUID serviceUUID, String name, String address) {
+			this.serviceUUID = serviceUUID;
+			this.name = name;
+			this.address = address;
+		}
+
+		public boolean matches(String address, String name, List<UUID> serviceUUIDs) {
+			if (this.address != null && false == this.address.equalsIgnoreCase(address)) return false;
+			if (this.name != null && false == this.name.equals(name)) return false;
+			if (this.serviceUUID != null && (serviceUUIDs == null || false == serviceUUIDs.contains(this.serviceUUID))) {
+				return false;
+			}
+			return true;
+		}
+
+		public UUID getServiceUUID() {
+			return serviceUUID;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getAddress() {
+			return address;
+		}
+	}
+
+	public final static class Builder {
+		private final List<Filter> filters = new ArrayList<>();
+		private int scanMode = SCAN_MODE_LOW_POWER;
+		private long reportDelay;
+		private int matchMode = MATCH_MODE_AGGRESSIVE;
+
+		public Builder addServiceFilter(UUID serviceUUID) {
+			filters.add(new Filter(serviceUUID, null, null));
+			return this;
+		}
+
+		/**
+		 * one filter on the service of every profile
+		 */
+		public Builder addServiceFilters(Collection<ServiceProfile> profiles) {
+			for (ServiceProfile profile : profiles) {
+				addServiceFilter(profile.getServiceID());
+			}
+			return this;
+		}
+
+		public Builder addNameFilter(String name) {
+			filters.add(new Filter(null, name, null));
+			return this;
+		}
+
+		public Builder addAddressFilter(String address) {
+			filters.add(new Filter(null, null, address));
+			return this;
+		}
+
+		public Builder addFilter(Filter filter) {
+			filters.add(filter);
+			return this;
+		}
+
+		/**
+		 * @param scanMode one of SCAN_MODE_*, the duty cycle of the radio
+		 */
+		public Builder setScanMode(int scanMode) {
+			this.scanMode = scanMode;
+			return this;
+		}
+
+		/**
+		 * @param reportDelay let the controller batch the results for this period, in millisecond, 0 to report at once.
+		 *                    Ignored if the controller does not support batching.
+		 */
+		public Builder setReportDelay(long reportDelay) {
+			this.reportDelay = reportDelay;
+			return this;
+		}
+
+		/**
+		 * @param matchMode one of MATCH_MODE_*, only used from Android M
+		 */
+		public Builder setMatchMode(int matchMode) {
+			this.matchMode = matchMode;
+			return this;
+		}
+
+		public ScanConfig build() {
+			return new ScanConfig(this);
+		}
+	}
+
+
+	//--------------------------------------------------
+	//data members
+	private final List<Filter> filters;
+	private final int scanMode;
+	private final long reportDelay;
+	private final int matchMode;
+
+
+	//--------------------------------------------------
+	//class methods
+	private ScanConfig(Builder builder) {
+		this.filters = Collections.unmodifiableList(new ArrayList<>(builder.filters));
+		this.scanMode = builder.scanMode;
+		this.reportDelay = builder.reportDelay;
+		this.matchMode = builder.matchMode;
+	}
+
+	/**
+	 * what the controller does with the filters, for the scanners without one
+	 */
+	public boolean matches(String address, String name, List<UUID> serviceUUIDs) {
+		if (filters.isEmpty()) return true;
+		for (int i = 0; i < filters.size(); i++) {
+			if (filters.get(i).matches(address, name, serviceUUIDs)) return true;
+		}
+		return false;
+	}
+
+	public List<Filter> getFilters() {
+		return filters;
+	}
+
+	public int getScanMode() {
+		return scanMode;
+	}
+
+	public long getReportDelay() {
+		return reportDelay;
+	}
+
+	public int getMatchMode() {
+		return matchMode;
+	}
+}
@@ -0,0 +1,224 @@
+package com.vinaya.blecentralrole.logic.sim;
+
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+import com.vinaya.blecentralrole.model.ServiceProfile;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * What a peripheral of the {@link SimulatedRadio} looks like on the air: how it advertises,
+ * how long it takes to answer, and what it notifies once subscribed.
+ * Immutable, build it by {@link Builder}.
+ */
+public final class SimulatedPeripheral {
+	//the controller adds 0 to 10 ms to every advertising interval, so that two devices do not collide for ever
+	public final static long MAX_ADVERTISING_DELAY = 10;
+	//LL payload of a packet, without and with the data length extension of Bluetooth 4.2
+	public final static int DEFAULT_DATA_LENGTH = 27;
+	public final static int MAX_DATA_LENGTH = 251;
+
+	public final static class Builder {
+		private final String address;
+		private final ServiceProfile profile;
+		private String name;
+		private int rssi = -60;
+		private int rssiNoise = 4;
+		private long advertisingInterval = 100;
+		private long connectionInterval = 15;
+		private int maxMtu = 247;
+		private int maxDataLength = DEFAULT_DATA_LENGTH;
+		private boolean isPhy2M = false;
+		private int discoveryEvents = 1;
+		private long notificationInterval = 1000;
+		private String message = "hello";
+
+		/**
+		 * @param profile the service it advertises and serves
+		 */
+		public Builder(String address, ServiceProfile profile) {
+			this.address = address;
+			this.profile = profile;
+			this.name = "sim " + address;
+		}
+
+		/**
+		 * @param name advertised name, null for none
+		 */
+		public Builder setName(String name) {
+			this.name = name;
+			return this;
+		}
+
+		/**
+		 * @param rssi  mean RSSI of the advertisements, in dBm
+		 * @param noise every advertisement is off by up to this, in dB
+		 */
+		public Builder setRssi(int rssi, int noise) {
+			this.rssi = rssi;
+			this.rssiNoise = noise;
+			return this;
+		}
+
+		/**
+		 * @param advertisingInterval in millisecond, 20 to 10240 by the specification
+		 */
+		public Builder setAdvertisingInterval(long advertisingInterval) {
+			this.advertisingInterval = advertisingInterval;
+			return this;
+		}
+
+		/**
+		 * @param connectionInterval every request is answered in a later connection event, in millisecond.
+		 *                           The one of the balanced priority, see {@link GattLink#requestConnectionPriority(int)}
+		 */
+		public Builder setConnectionInterval(long connectionInterval) {
+			this.connectionInterval = connectionInterval;
+			return this;
+		}
+
+		/**
+		 * @param maxMtu the largest ATT MTU it accepts
+		 */
+		public Builder setMaxMtu(int maxMtu) {
+			this.maxMtu = maxMtu;
+			return this;
+		}
+
+		/**
+		 * @param maxDataLength the largest LL payload it accepts, {@link #DEFAULT_DATA_LENGTH} to {@link #MAX_DATA_LENGTH}
+		 */
+		public Builder setMaxDataLength(int maxDataLength) {
+			this.maxDataLength = maxDataLength;
+			return this;
+		}
+
+		/**
+		 * @param isPhy2M true if it accepts the 2M PHY of Bluetooth 5
+		 */
+		public Builder setPhy2M(boolean isPhy2M) {
+			this.isPhy2M = isPhy2M;
+			return this;
+		}
+
+		/**
+		 * @param discoveryEvents the connection events the service discovery takes, many for a large GATT database
+		 */
+		public Builder setDiscoveryEvents(int discoveryEvents) {
+			this.discoveryEvents = discoveryEvents;
+			return this;
+		}
+
+		/**
+		 * @param notificationInterval how often the message is notified on RX once subscribed, in millisecond.
+		 *                             0 not to notify
+		 * @param message              sent zero terminated, in chunks of the negotiated MTU
+		 */
+		public Builder setNotifications(long notificationInterval, String message) {
+			this.notificationInterval = notificationInterval;
+			this.message = message;
+			return this;
+		}
+
+		public SimulatedPeripheral build() {
+			return new SimulatedPeripheral(this);
+		}
+	}
+
+	private final String address;
+	private final String name;
+	private final ServiceProfile profile;
+	private final List<UUID> serviceUUIDs;
+	private final int rssi;
+	private final int rssiNoise;
+	private final long advertisingInterval;
+	private final long connectionInterval;
+	private final int maxMtu;
+	private final int maxDataLength;
+	private final boolean isPhy2M;
+	private final int discoveryEvents;
+	private final long notificationInterval;
+	private final String message;
+
+	private SimulatedPeripheral(Builder builder) {
+		this.address = builder.address;
+		this.name = builder.name;
+		this.profile = builder.profile;
+		this.serviceUUIDs = Collections.singletonList(builder.profile.getServiceID());
+		this.rssi = builder.rssi;
+		this.rssiNoise = builder.rssiNoise;
+		this.advertisingInterval = builder.advertisingInterval;
+		this.connectionInterval = builder.connectionInterval;
+		this.maxMtu = Math.max(GattLink.DEFAULT_MTU, builder.maxMtu);
+		this.maxDataLength = Math.max(DEFAULT_DATA_LENGTH, Math.min(MAX_DATA_LENGTH, builder.maxDataLength));
+		this.isPhy2M = builder.isPhy2M;
+		this.discoveryEvents = Math.max(1, builder.discoveryEvents);
+		this.notificationInterval = builder.notificationInterval;
+		this.message = builder.message;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public ServiceProfile getProfile() {
+		return profile;
+	}
+
+	public List<UUID> getServiceUUIDs() {
+		return serviceUUIDs;
+	}
+
+	public int getRssi() {
+		return rssi;
+	}
+
+	public int getRssiNoise() {
+		return rssiNoise;
+	}
+
+	public long getAdvertisingInterval() {
+		return advertisingInterval;
+	}
+
+	public long getConnectionInterval() {
+		return connectionInterval;
+	}
+
+	public int getMaxMtu() {
+		return maxMtu;
+	}
+
+	public int getMaxDataLength() {
+		return maxDataLength;
+	}
+
+	public boolean isPhy2M() {
+		return isPhy2M;
+	}
+
+	public int getDiscoveryEvents() {
+		return discoveryEvents;
+	}
+
+	public long getNotificationInterval() {
+		return notificationInterval;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return true if a GATT client can find the characteristic once the services are discovered
+	 */
+	public boolean hasCharacteristic(UUID service, UUID characteristic) {
+		return profile.getServiceID().equals(service) &&
+			(profile.getTXCharacteristic().equals(characteristic) || profile.getRXCharacteristic().equals(characteristic));
+	}
+}
@@ -0,0 +1,545 @@
+package com.vinaya.blecentralrole.logic.sim;
+
+import com.vinaya.blecentralrole.logic.Scheduler;
+import com.vinaya.blecentralrole.logic.gatt.Fragmenter;
+import com.vinaya.blecentralrole.logic.gatt.Frame;
+import com.vinaya.blecentralrole.logic.gatt.FrameEncoder;
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+import com.vinaya.blecentralrole.logic.scanner.BLEScanner;
+import com.vinaya.blecentralrole.logic.scanner.ScanConfig;
+import com.vinaya.blecentralrole.model.Peripheral;
+import com.vinaya.blecentralrole.model.ServiceProfile;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * A radio without hardware: the scanner and the GATT connector of a set of {@link SimulatedPeripheral}s,
+ * running on a {@link Scheduler}. With a virtual clock and the same seed, every run is the same,
+ * so the Central can be tested and benchmarked on any JVM.
+ *
+ * The callbacks are called on the thread of the scheduler. Every GATT request is answered in a later
+ * connection event of the peripheral; the peripherals do not share the air time.
+ * A write takes the air time of its packets on top, by the PHY and the data length of the link.
+ */
+public class SimulatedRadio implements BLEScanner, GattLink.Connector {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	public final static int GATT_ERROR = 133;            //what Android reports when the peripheral does not answer
+	public final static long CONNECT_TIMEOUT = 30000;    //of a direct connection, in millisecond
+	public final static int WRITE_EVENTS = 2;            //a write response comes in the connection event after the next one
+	//connection intervals of the priorities other than balanced, 7.5 ms is rounded up to the clock
+	public final static long HIGH_PRIORITY_INTERVAL = 8;
+	public final static long LOW_POWER_INTERVAL = 100;
+
+	//on the air: preamble, access address, header and CRC of a packet in byte, the gap between two in microsecond
+	private final static int PACKET_OVERHEAD = 10;
+	private final static int INTER_FRAME_SPACE = 150;
+	private final static int L2CAP_HEADER_SIZE = 4;
+
+	//--------------------------------------------------
+	//data members
+	private final Scheduler scheduler;
+	private final Random random;
+
+	//keyed by the upper case address
+	private final Map<String, SimulatedPeripheral> peripherals = new LinkedHashMap<>();
+	private final List<Scan> scans = new ArrayList<>();
+	private final List<Link> links = new ArrayList<>();
+
+	private long writtenBytes;
+	private long notifiedBytes;
+
+
+	//--------------------------------------------------
+	//class methods
+
+	/**
+	 * @param seed of the advertising delays and the RSSI noise
+	 */
+	public SimulatedRadio(Scheduler scheduler, long seed) {
+		this.scheduler = scheduler;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * bring the peripheral in range, it advertises to the scans running and the next ones
+	 */
+	public synchronized void add(SimulatedPeripheral peripheral) {
+		final String address = peripheral.getAddress().toUpperCase(Locale.US);
+		peripherals.put(address, peripheral);
+		for (Scan scan : scans) {
+			scan.advertise(peripheral);
+		}
+		for (Link link : links) {
+			if (link.peripheral == null && link.address.equals(address)) link.open(peripheral);
+		}
+	}
+
+	/**
+	 * take the peripheral out of range: it stops advertising and its links are lost
+	 */
+	public synchronized void remove(String address) {
+		final SimulatedPeripheral peripheral = peripherals.remove(address.toUpperCase(Locale.US));
+		if (peripheral == null) return;
+		for (Link link : new ArrayList<>(links)) {
+			if (link.peripheral == peripheral) link.lose();
+		}
+	}
+
+	/**
+	 * @return bytes written to the TX characteristics and acknowledged
+	 */
+	public synchronized long getWrittenBytes() {
+		return writtenBytes;
+	}
+
+	/**
+	 * @return bytes notified on the RX characteristics
+	 */
+	public synchronized long getNotifiedBytes() {
+		return notifiedBytes;
+	}
+
+	/**
+	 * @return number of links not closed yet
+	 */
+	public synchronized int getLinkCount() {
+		return links.size();
+	}
+
+
+	//--------------------------------------------------
+	//BLEScanner
+
+	@Override
+	public synchronized ScanTask asyncScan(ScanConfig config, BLEScanListener listener) {
+		final Scan scan = new Scan(config, listener);
+		scans.add(scan);
+		for (SimulatedPeripheral peripheral : peripherals.values()) {
+			scan.advertise(peripheral);
+		}
+		return scan;
+	}
+
+	/**
+	 * one scan, every peripheral in range has its own advertising timer
+	 */
+	private class Scan implements ScanTask {
+		private final ScanConfig config;
+		private final BLEScanListener listener;
+		//the next advertisement of every peripheral
+		private final Map<SimulatedPeripheral, Scheduler.Task> tasks = new LinkedHashMap<>();
+
+		Scan(ScanConfig config, BLEScanListener listener) {
+			this.config = config;
+			this.listener = listener;
+		}
+
+		/**
+		 * called with the lock of the radio
+		 */
+		void advertise(final SimulatedPeripheral peripheral) {
+			//the filters are applied by the controller, the others never wake us up
+			if (false == config.matches(peripheral.getAddress(), peripheral.getName(), peripheral.getServiceUUIDs())) return;
+
+			tasks.put(peripheral, scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					final int rssi;
+					synchronized (SimulatedRadio.this) {
+						if (false == scans.contains(Scan.this)) return;
+						if (false == peripherals.containsValue(peripheral)) {
+							tasks.remove(peripheral);
+							return;
+						}
+						rssi = peripheral.getRssi() + noise(peripheral.getRssiNoise());
+						tasks.put(peripheral, scheduler.schedule(this, nextAdvertisement(peripheral)));
+					}
+					listener.onDiscovered(new Peripheral(peripheral.getAddress(), peripheral.getName(), rssi,
+						peripheral.getServiceUUIDs()));
+				}
+			}, nextAdvertisement(peripheral)));
+		}
+
+		@Override
+		public void stop() {
+			synchronized (SimulatedRadio.this) {
+				scans.remove(this);
+				for (Scheduler.Task task : tasks.values()) {
+					task.cancel();
+				}
+				tasks.clear();
+			}
+		}
+	}
+
+	private long nextAdvertisement(SimulatedPeripheral peripheral) {
+		return peripheral.getAdvertisingInterval() + random.nextInt((int) SimulatedPeripheral.MAX_ADVERTISING_DELAY + 1);
+	}
+
+	private int noise(int amplitude) {
+		return (amplitude <= 0) ? 0 : random.nextInt(2 * amplitude + 1) - amplitude;
+	}
+
+
+	//--------------------------------------------------
+	//GattLink.Connector
+
+	/**
+	 * a peripheral out of range is not connected: the direct connection fails after the timeout,
+	 * an auto connection waits until it comes in range
+	 */
+	@Override
+	public synchronized GattLink connect(String address, boolean autoConnect, GattLink.Callback callback) {
+		final Link link = new Link(address.toUpperCase(Locale.US), callback);
+		links.add(link);
+
+		final SimulatedPeripheral peripheral = peripherals.get(link.address);
+		if (peripheral != null) {
+			link.open(peripheral);
+		} else if (false == autoConnect) {
+			link.schedule(CONNECT_TIMEOUT, null, new Runnable() {
+				@Override
+				public void run() {
+					link.callback.onConnectionStateChange(GATT_ERROR, GattLink.STATE_DISCONNECTED);
+				}
+			});
+		}
+		return link;
+	}
+
+	/**
+	 * a GATT client connection to a peripheral, the state changes with the lock of the radio,
+	 * the callbacks are called without it
+	 */
+	private class Link implements GattLink {
+		final String address;
+		final GattLink.Callback callback;
+
+		SimulatedPeripheral peripheral;    //null until in range
+		boolean isConnected;
+		boolean isDiscovered;
+		boolean isClosed;
+		int mtu = DEFAULT_MTU;
+		int priority = CONNECTION_PRIORITY_BALANCED;
+		int phy = PHY_LE_1M;
+		int dataLength = SimulatedPeripheral.DEFAULT_DATA_LENGTH;
+		Scheduler.Task notificationTask;
+
+		Link(String address, GattLink.Callback callback) {
+			this.address = address;
+			this.callback = callback;
+		}
+
+		/**
+		 * the peripheral is in range, connect in its next connection event. Called with the lock of the radio
+		 */
+		void open(final SimulatedPeripheral peripheral) {
+			this.peripheral = peripheral;
+			later(1, new Runnable() {
+				@Override
+				public void run() {
+					isConnected = true;
+					//the controllers extend the data length by themselves once connected
+					dataLength = peripheral.getMaxDataLength();
+				}
+			}, new Runnable() {
+				@Override
+				public void run() {
+					callback.onConnectionStateChange(GATT_SUCCESS, STATE_CONNECTED);
+				}
+			});
+		}
+
+		/**
+		 * change the state then call back, in a later connection event
+		 */
+		void later(int events, Runnable change, Runnable callback) {
+			schedule(events * getConnectionInterval(), change, callback);
+		}
+
+		/**
+		 * called with the lock of the radio
+		 */
+		long getConnectionInterval() {
+			switch (priority) {
+				case CONNECTION_PRIORITY_HIGH:
+					return Math.min(HIGH_PRIORITY_INTERVAL, peripheral.getConnectionInterval());
+				case CONNECTION_PRIORITY_LOW_POWER:
+					return Math.max(LOW_POWER_INTERVAL, peripheral.getConnectionInterval());
+				default:
+					return peripheral.getConnectionInterval();
+			}
+		}
+
+		/**
+		 * time to send an ATT packet and get the empty packets acknowledging its fragments, called with the lock of the radio
+		 *
+		 * @return in millisecond, rounded up
+		 */
+		long getAirTime(int attLength) {
+			final int microsPerByte = 8 / phy;
+			long micros = 0;
+			for (int left = attLength + L2CAP_HEADER_SIZE; left > 0; left -= dataLength) {
+				final int packetLength = Math.min(left, dataLength);
+				micros += (PACKET_OVERHEAD + packetLength) * microsPerByte + INTER_FRAME_SPACE
+					+ PACKET_OVERHEAD * microsPerByte + INTER_FRAME_SPACE;
+			}
+			return (micros + 999) / 1000;
+		}
+
+		/**
+		 * nothing happens once the link is closed, like Android the late answers are dropped
+		 */
+		void schedule(long delayMillis, final Runnable change, final Runnable callback) {
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (SimulatedRadio.this) {
+						if (isClosed) return;
+						if (change != null) change.run();
+					}
+					callback.run();
+				}
+			}, delayMillis);
+		}
+
+		/**
+		 * out of range, the supervision timeout expires
+		 */
+		void lose() {
+			if (false == isConnected) return;
+			stopNotifications();
+			schedule(6 * getConnectionInterval(), new Runnable() {
+				@Override
+				public void run() {
+					isConnected = false;
+				}
+			}, new Runnable() {
+				@Override
+				public void run() {
+					callback.onConnectionStateChange(GATT_ERROR, STATE_DISCONNECTED);
+				}
+			});
+		}
+
+		@Override
+		public boolean discoverServices() {
+			synchronized (SimulatedRadio.this) {
+				if (false == isConnected) return false;
+				later(peripheral.getDiscoveryEvents(), new Runnable() {
+					@Override
+					public void run() {
+						isDiscovered = true;
+					}
+				}, new Runnable() {
+					@Override
+					public void run() {
+						callback.onServicesDiscovered(GATT_SUCCESS);
+					}
+				});
+				return true;
+			}
+		}
+
+		@Override
+		public boolean requestMtu(final int requested) {
+			synchronized (SimulatedRadio.this) {
+				if (false == isConnected) return false;
+				later(1, new Runnable() {
+					@Override
+					public void run() {
+						mtu = Math.max(DEFAULT_MTU, Math.min(requested, peripheral.getMaxMtu()));
+					}
+				}, new Runnable() {
+					@Override
+					public void run() {
+						final int mtu;
+						synchronized (SimulatedRadio.this) {
+							mtu = Link.this.mtu;
+						}
+						callback.onMtuChanged(mtu, GATT_SUCCESS);
+					}
+				});
+				return true;
+			}
+		}
+
+		/**
+		 * the new interval applies from the next request on
+		 */
+		@Override
+		public boolean requestConnectionPriority(int priority) {
+			synchronized (SimulatedRadio.this) {
+				if (false == isConnected) return false;
+				this.priority = priority;
+				return true;
+			}
+		}
+
+		@Override
+		public boolean setPreferredPhy(final int requested) {
+			synchronized (SimulatedRadio.this) {
+				if (false == isConnected) return false;
+				later(1, new Runnable() {
+					@Override
+					public void run() {
+						phy = (requested == PHY_LE_2M && peripheral.isPhy2M()) ? PHY_LE_2M : PHY_LE_1M;
+					}
+				}, new Runnable() {
+					@Override
+					public void run() {
+						final int phy;
+						synchronized (SimulatedRadio.this) {
+							phy = Link.this.phy;
+						}
+						callback.onPhyUpdate(phy, phy, GATT_SUCCESS);
+					}
+				});
+				return true;
+			}
+		}
+
+		@Override
+		public boolean hasCharacteristic(UUID service, UUID characteristic) {
+			synchronized (SimulatedRadio.this) {
+				return isDiscovered && peripheral.hasCharacteristic(service, characteristic);
+			}
+		}
+
+		@Override
+		public boolean setCharacteristicNotification(UUID service, UUID characteristic, boolean enable) {
+			return hasCharacteristic(service, characteristic);
+		}
+
+		@Override
+		public boolean writeDescriptor(UUID service, final UUID characteristic, final UUID descriptor, final byte[] value) {
+			synchronized (SimulatedRadio.this) {
+				if (false == isConnected || false == peripheral.hasCharacteristic(service, characteristic)) return false;
+				later(WRITE_EVENTS, new Runnable() {
+					@Override
+					public void run() {
+						final ServiceProfile profile = peripheral.getProfile();
+						if (false == descriptor.equals(profile.getSubscriptUUID())) return;
+						if (false == characteristic.equals(profile.getRXCharacteristic())) return;
+						//bit 0 of the client characteristic configuration: notifications
+						if (value != null && value.length > 0 && (value[0] & 1) != 0) {
+							startNotifications();
+						} else {
+							stopNotifications();
+						}
+					}
+				}, new Runnable() {
+					@Override
+					public void run() {
+						callback.onDescriptorWrite(descriptor, GATT_SUCCESS);
+					}
+				});
+				return true;
+			}
+		}
+
+		@Override
+		public boolean writeCharacteristic(UUID service, final UUID characteristic, final byte[] value, boolean withResponse) {
+			synchronized (SimulatedRadio.this) {
+				if (false == isConnected || false == peripheral.hasCharacteristic(service, characteristic)) return false;
+				//without response, Android calls back once the packet is queued for the next event
+				final int events = withResponse ? WRITE_EVENTS : 1;
+				schedule(events * getConnectionInterval() + getAirTime(ATT_HEADER_SIZE + value.length), new Runnable() {
+					@Override
+					public void run() {
+						writtenBytes += value.length;
+					}
+				}, new Runnable() {
+					@Override
+					public void run() {
+						callback.onCharacteristicWrite(characteristic, GATT_SUCCESS);
+					}
+				});
+				return true;
+			}
+		}
+
+		@Override
+		public void disconnect() {
+			synchronized (SimulatedRadio.this) {
+				if (false == isConnected) return;
+				stopNotifications();
+				later(1, new Runnable() {
+					@Override
+					public void run() {
+						isConnected = false;
+					}
+				}, new Runnable() {
+					@Override
+					public void run() {
+						callback.onConnectionStateChange(GATT_SUCCESS, STATE_DISCONNECTED);
+					}
+				});
+			}
+		}
+
+		@Override
+		public void close() {
+			synchronized (SimulatedRadio.this) {
+				isClosed = true;
+				isConnected = false;
+				stopNotifications();
+				links.remove(this);
+			}
+		}
+
+		/**
+		 * called with the lock of the radio
+		 */
+		private void startNotifications() {
+			if (notificationTask != null || peripheral.getNotificationInterval() <= 0) return;
+
+			//a text frame of the next sequence each time, or the zero terminated string
+			final boolean isBinary = peripheral.getProfile().getFraming() == ServiceProfile.Framing.BINARY;
+			final byte[] message = isBinary
+				? peripheral.getMessage().getBytes(UTF8)
+				: (peripheral.getMessage() + "\0").getBytes(UTF8);
+			final UUID rx = peripheral.getProfile().getRXCharacteristic();
+			this.notificationTask = scheduler.schedule(new Runnable() {
+				private final FrameEncoder encoder = isBinary ? new FrameEncoder() : null;
+				private int sequence;
+
+				@Override
+				public void run() {
+					final List<byte[]> chunks;
+					synchronized (SimulatedRadio.this) {
+						if (isClosed || false == isConnected || notificationTask == null) return;
+						final byte[] value;
+						if (isBinary) {
+							final int length = encoder.encode(sequence++, Frame.TYPE_TEXT, message, 0, message.length);
+							value = Arrays.copyOf(encoder.getFrame(), length);
+						} else {
+							value = message;
+						}
+						chunks = Fragmenter.split(value, mtu);
+						notifiedBytes += value.length;
+						notificationTask = scheduler.schedule(this, peripheral.getNotificationInterval());
+					}
+					for (int i = 0; i < chunks.size(); i++) {
+						callback.onCharacteristicChanged(rx, chunks.get(i));
+					}
+				}
+			}, peripheral.getNotificationInterval());
+		}
+
+		private void stopNotifications() {
+			if (notificationTask == null) return;
+			notificationTask.cancel();
+			notificationTask = null;
+		}
+	}
+}
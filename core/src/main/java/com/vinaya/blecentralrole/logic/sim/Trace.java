@@ -0,0 +1,155 @@
+package com.vinaya.blecentralrole.logic.sim;
+
+import com.vinaya.blecentralrole.model.MacAddress;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The binary format of the traces written by {@link TraceRecorder} and read by {@link TraceReplayer}.
+ *
+ * A header (magic, version), then one record per scan, connect, or callback of the scanner or of a link:
+ * the type, the time since the previous record as a varint, then the fields of the type.
+ * Small integers are varints, the addresses take 6 bytes, and a UUID or a name is written in full only the first time,
+ * afterwards it is its index in the order of appearance. Big endian like DataOutput.
+ */
+final class Trace {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	final static int MAGIC = 0x424C4554;    //"BLET"
+	//2 adds SCAN_RECORD, 1 is still read
+	final static int VERSION = 2;
+
+	//record types, the fields follow
+	final static int ADVERTISEMENT = 1;           //address, rssi, name, uuids
+	final static int SCAN_FAILED = 2;             //error code
+	final static int CONNECT = 3;                 //link, address, flags: auto connect, found
+	final static int CONNECTION_STATE = 4;        //link, status, state
+	final static int SERVICES_DISCOVERED = 5;     //link, status
+	final static int CHARACTERISTIC_CHANGED = 6;  //link, uuid, value
+	final static int CHARACTERISTIC_WRITE = 7;    //link, uuid, status
+	final static int DESCRIPTOR_WRITE = 8;        //link, uuid, status
+	final static int MTU_CHANGED = 9;             //link, mtu, status
+	final static int SCAN_STARTED = 10;           //none, where the scan records are timed from
+	final static int PHY_UPDATED = 11;            //link, tx phy, rx phy, status
+	final static int SCAN_RECORD = 12;            //address, rssi, name, raw advertisement
+
+	private Trace() {
+	}
+
+	static void writeVarint(DataOutput output, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			output.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		output.writeByte(value);
+	}
+
+	static int readVarint(DataInput input) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			final int b = input.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("malformed varint");
+	}
+
+	static void writeAddress(DataOutput output, String address) throws IOException {
+		final long mac = MacAddress.parse(address);
+		output.writeShort((int) (mac >>> 32));
+		output.writeInt((int) mac);
+	}
+
+	static String readAddress(DataInput input) throws IOException {
+		final long high = input.readUnsignedShort();
+		final long low = input.readInt() & 0xFFFFFFFFL;
+		return MacAddress.format((high << 32) | low);
+	}
+
+	/**
+	 * @param uuids the ones written before, this one is added if it is new
+	 */
+	static void writeUUID(DataOutput output, UUID uuid, List<UUID> uuids) throws IOException {
+		final int index = uuids.indexOf(uuid);
+		if (index >= 0) {
+			writeVarint(output, index);
+			return;
+		}
+		writeVarint(output, uuids.size());
+		output.writeLong(uuid.getMostSignificantBits());
+		output.writeLong(uuid.getLeastSignificantBits());
+		uuids.add(uuid);
+	}
+
+	static UUID readUUID(DataInput input, List<UUID> uuids) throws IOException {
+		final int index = readVarint(input);
+		if (index < uuids.size()) return uuids.get(index);
+		if (index > uuids.size()) throw new IOException("unknown uuid " + index);
+
+		final UUID uuid = new UUID(input.readLong(), input.readLong());
+		uuids.add(uuid);
+		return uuid;
+	}
+
+	/**
+	 * @param name  null for none
+	 * @param names the ones written before, this one is added if it is new
+	 */
+	static void writeName(DataOutput output, String name, List<String> names) throws IOException {
+		//0 for none, else the index plus one
+		if (name == null) {
+			writeVarint(output, 0);
+			return;
+		}
+		final int index = names.indexOf(name);
+		if (index >= 0) {
+			writeVarint(output, index + 1);
+			return;
+		}
+		writeVarint(output, names.size() + 1);
+		writeBytes(output, name.getBytes(UTF8));
+		names.add(name);
+	}
+
+	static String readName(DataInput input, List<String> names) throws IOException {
+		final int index = readVarint(input) - 1;
+		if (index < 0) return null;
+		if (index < names.size()) return names.get(index);
+		if (index > names.size()) throw new IOException("unknown name " + index);
+
+		final String name = new String(readBytes(input), UTF8);
+		names.add(name);
+		return name;
+	}
+
+	/**
+	 * @param value null is written as an empty array
+	 */
+	static void writeBytes(DataOutput output, byte[] value) throws IOException {
+		if (value == null) {
+			writeVarint(output, 0);
+			return;
+		}
+		writeVarint(output, value.length);
+		output.write(value);
+	}
+
+	static void writeBytes(DataOutput output, ByteBuffer value) throws IOException {
+		writeVarint(output, value.remaining());
+		while (value.hasRemaining()) {
+			output.writeByte(value.get());
+		}
+	}
+
+	static byte[] readBytes(DataInput input) throws IOException {
+		final byte[] value = new byte[readVarint(input)];
+		input.readFully(value);
+		return value;
+	}
+}
@@ -0,0 +1,290 @@
+package com.vinaya.blecentralrole.logic.sim;
+
+import com.vinaya.blecentralrole.logic.Logger;
+import com.vinaya.blecentralrole.logic.Scheduler;
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+import com.vinaya.blecentralrole.logic.scanner.BLEScanner;
+import com.vinaya.blecentralrole.logic.scanner.ScanConfig;
+import com.vinaya.blecentralrole.model.Advertisement;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Records what a scanner and a GATT connector report, e.g. those of Android, into a trace
+ * which {@link TraceReplayer} plays back later, off the device. See {@link Trace} for the format.
+ *
+ * Only the callbacks are recorded, along with the scans and the connects so that they can be timed
+ * and the links told apart; the other requests of the Central are not. The callbacks may come from any thread.
+ * The first write error stops the recording, the callbacks are passed on anyway.
+ */
+public class TraceRecorder implements Closeable {
+	private final static String TAG = "TraceRecorder";
+
+	//flags of a connect
+	final static int AUTO_CONNECT = 1;
+	final static int FOUND = 2;
+
+	//--------------------------------------------------
+	//data members
+	private final DataOutputStream output;
+	private final Scheduler clock;
+	private final List<UUID> uuids = new ArrayList<>();
+	private final List<String> names = new ArrayList<>();
+
+	private long lastTime;
+	private int linkCount;
+	private boolean isFailed;
+
+
+	//--------------------------------------------------
+	//class methods
+
+	/**
+	 * @param stream where the trace is written, closed along with the recorder
+	 * @param clock  of the record times
+	 */
+	public TraceRecorder(OutputStream stream, Scheduler clock) throws IOException {
+		this.output = new DataOutputStream(new BufferedOutputStream(stream));
+		this.clock = clock;
+		this.lastTime = clock.now();
+		output.writeInt(Trace.MAGIC);
+		output.writeByte(Trace.VERSION);
+	}
+
+	/**
+	 * @return the scanner recording what the given one reports
+	 */
+	public BLEScanner wrap(final BLEScanner scanner) {
+		return new BLEScanner() {
+			@Override
+			public ScanTask asyncScan(ScanConfig config, final BLEScanListener listener) {
+				synchronized (TraceRecorder.this) {
+					begin(Trace.SCAN_STARTED);
+				}
+				return scanner.asyncScan(config, new BLEScanListener() {
+					@Override
+					public void onDiscovered(Peripheral peripheral) {
+						if (peripheral != null) recordAdvertisement(peripheral);
+						listener.onDiscovered(peripheral);
+					}
+
+					@Override
+					public void onFailed(int errorCode) {
+						recordScanFailed(errorCode);
+						listener.onFailed(errorCode);
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * @return the connector recording the callbacks of the links of the given one
+	 */
+	public GattLink.Connector wrap(final GattLink.Connector connector) {
+		return new GattLink.Connector() {
+			@Override
+			public GattLink connect(String address, boolean autoConnect, GattLink.Callback callback) {
+				//with the lock, so that no callback of the link is recorded before its connect
+				synchronized (TraceRecorder.this) {
+					final int link = linkCount++;
+					final GattLink gattLink = connector.connect(address, autoConnect, new RecordingCallback(link, callback));
+					recordConnect(link, address, autoConnect, gattLink != null);
+					return gattLink;
+				}
+			}
+		};
+	}
+
+	public synchronized void flush() throws IOException {
+		output.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		this.isFailed = true;    //nothing is written afterwards
+		output.close();
+	}
+
+
+	//--------------------------------------------------
+	//records
+
+	/**
+	 * the callbacks of one link, tagged by its number
+	 */
+	private class RecordingCallback implements GattLink.Callback {
+		private final int link;
+		private final GattLink.Callback callback;
+
+		RecordingCallback(int link, GattLink.Callback callback) {
+			this.link = link;
+			this.callback = callback;
+		}
+
+		@Override
+		public void onConnectionStateChange(int status, int newState) {
+			record(Trace.CONNECTION_STATE, link, status, newState);
+			callback.onConnectionStateChange(status, newState);
+		}
+
+		@Override
+		public void onServicesDiscovered(int status) {
+			record(Trace.SERVICES_DISCOVERED, link, status, 0);
+			callback.onServicesDiscovered(status);
+		}
+
+		@Override
+		public void onCharacteristicChanged(UUID characteristic, byte[] value) {
+			recordValue(Trace.CHARACTERISTIC_CHANGED, link, characteristic, value);
+			callback.onCharacteristicChanged(characteristic, value);
+		}
+
+		@Override
+		public void onCharacteristicWrite(UUID characteristic, int status) {
+			recordStatus(Trace.CHARACTERISTIC_WRITE, link, characteristic, status);
+			callback.onCharacteristicWrite(characteristic, status);
+		}
+
+		@Override
+		public void onDescriptorWrite(UUID descriptor, int status) {
+			recordStatus(Trace.DESCRIPTOR_WRITE, link, descriptor, status);
+			callback.onDescriptorWrite(descriptor, status);
+		}
+
+		@Override
+		public void onMtuChanged(int mtu, int status) {
+			record(Trace.MTU_CHANGED, link, mtu, status);
+			callback.onMtuChanged(mtu, status);
+		}
+
+		@Override
+		public void onPhyUpdate(int txPhy, int rxPhy, int status) {
+			recordPhy(link, txPhy, rxPhy, status);
+			callback.onPhyUpdate(txPhy, rxPhy, status);
+		}
+	}
+
+	/**
+	 * the raw advertisement if there is one, with the manufacturer and service data, else what is decoded of it
+	 */
+	private synchronized void recordAdvertisement(Peripheral peripheral) {
+		final Advertisement advertisement = peripheral.getAdvertisement();
+		if (false == begin(advertisement != null ? Trace.SCAN_RECORD : Trace.ADVERTISEMENT)) return;
+		try {
+			Trace.writeAddress(output, peripheral.getAddress());
+			output.writeByte(Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, peripheral.getRssi())));
+			Trace.writeName(output, peripheral.getName(), names);
+			if (advertisement != null) {
+				Trace.writeBytes(output, advertisement.getBytes());
+				return;
+			}
+			final List<UUID> serviceUUIDs = (peripheral.getServiceUUIDs() == null) ?
+				Collections.<UUID>emptyList() : peripheral.getServiceUUIDs();
+			Trace.writeVarint(output, serviceUUIDs.size());
+			for (int i = 0; i < serviceUUIDs.size(); i++) {
+				Trace.writeUUID(output, serviceUUIDs.get(i), uuids);
+			}
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	private synchronized void recordScanFailed(int errorCode) {
+		if (false == begin(Trace.SCAN_FAILED)) return;
+		try {
+			Trace.writeVarint(output, errorCode);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	private synchronized void recordConnect(int link, String address, boolean autoConnect, boolean isFound) {
+		if (false == begin(Trace.CONNECT)) return;
+		try {
+			Trace.writeVarint(output, link);
+			Trace.writeAddress(output, address);
+			output.writeByte((autoConnect ? AUTO_CONNECT : 0) | (isFound ? FOUND : 0));
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	private synchronized void record(int type, int link, int first, int second) {
+		if (false == begin(type)) return;
+		try {
+			Trace.writeVarint(output, link);
+			Trace.writeVarint(output, first);
+			if (type != Trace.SERVICES_DISCOVERED) Trace.writeVarint(output, second);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	private synchronized void recordPhy(int link, int txPhy, int rxPhy, int status) {
+		if (false == begin(Trace.PHY_UPDATED)) return;
+		try {
+			Trace.writeVarint(output, link);
+			Trace.writeVarint(output, txPhy);
+			Trace.writeVarint(output, rxPhy);
+			Trace.writeVarint(output, status);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	private synchronized void recordStatus(int type, int link, UUID uuid, int status) {
+		if (false == begin(type)) return;
+		try {
+			Trace.writeVarint(output, link);
+			Trace.writeUUID(output, uuid, uuids);
+			Trace.writeVarint(output, status);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	private synchronized void recordValue(int type, int link, UUID uuid, byte[] value) {
+		if (false == begin(type)) return;
+		try {
+			Trace.writeVarint(output, link);
+			Trace.writeUUID(output, uuid, uuids);
+			Trace.writeBytes(output, value);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * write the type and the time of a record, called with the lock
+	 *
+	 * @return false if the recording has stopped
+	 */
+	private boolean begin(int type) {
+		if (isFailed) return false;
+		try {
+			final long now = clock.now();
+			output.writeByte(type);
+			Trace.writeVarint(output, (int) Math.max(0, now - lastTime));
+			this.lastTime = Math.max(lastTime, now);
+			return true;
+		} catch (IOException e) {
+			fail(e);
+			return false;
+		}
+	}
+
+	private void fail(IOException e) {
+		Logger.w(TAG, "recording stopped", e);
+		this.isFailed = true;
+	}
+}
@@ -0,0 +1,410 @@
+package com.vinaya.blecentralrole.logic.sim;
+
+import com.vinaya.blecentralrole.logic.Scheduler;
+import com.vinaya.blecentralrole.logic.gatt.GattLink;
+import com.vinaya.blecentralrole.logic.scanner.BLEScanner;
+import com.vinaya.blecentralrole.logic.scanner.ScanConfig;
+import com.vinaya.blecentralrole.model.Advertisement;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Plays back a trace written by {@link TraceRecorder}: the scanner and the GATT connector
+ * report what the recorded ones did, at the same pace, on a {@link Scheduler}.
+ *
+ * The scan records play from the first scan on, to the scan running at the time, and are dropped
+ * while none is. The n-th connect to an address gets the callbacks of the n-th recorded link to it,
+ * timed from the connect. The playback is open loop: the requests of the Central succeed
+ * but change nothing, so it must ask what it asked when recording.
+ */
+public class TraceReplayer implements BLEScanner, GattLink.Connector {
+	/**
+	 * a callback and its time in the trace
+	 */
+	private static class Record {
+		final int type;
+		final long time;
+		int first;
+		int second;
+		int third;
+		UUID uuid;
+		byte[] value;
+		Peripheral peripheral;
+
+		Record(int type, long time) {
+			this.type = type;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * the callbacks of one recorded link
+	 */
+	private static class LinkTrace {
+		final long time;
+		final boolean isFound;
+		final List<Record> records = new ArrayList<>();
+
+		LinkTrace(long time, boolean isFound) {
+			this.time = time;
+			this.isFound = isFound;
+		}
+	}
+
+	//--------------------------------------------------
+	//data members
+	private final Scheduler scheduler;
+	private final long scanStart;    //in the trace
+	private final List<Record> scanRecords;
+	//keyed by the upper case address, in the order of the connects
+	private final Map<String, LinkedList<LinkTrace>> linkTraces;
+
+	private long start = -1;
+	private int scanCursor;
+	private BLEScanListener scanListener;
+	private int replayedCount;
+
+
+	//--------------------------------------------------
+	//class methods
+
+	private TraceReplayer(Scheduler scheduler, long scanStart, List<Record> scanRecords,
+	                      Map<String, LinkedList<LinkTrace>> linkTraces) {
+		this.scheduler = scheduler;
+		this.scanStart = scanStart;
+		this.scanRecords = scanRecords;
+		this.linkTraces = linkTraces;
+	}
+
+	/**
+	 * read the whole trace, the stream is not closed
+	 *
+	 * @param scheduler of the playback
+	 * @throws IOException if the stream fails or is not a trace
+	 */
+	public static TraceReplayer read(InputStream stream, Scheduler scheduler) throws IOException {
+		final DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+		if (input.readInt() != Trace.MAGIC) throw new IOException("not a trace");
+		final int version = input.readUnsignedByte();
+		if (version < 1 || version > Trace.VERSION) throw new IOException("unsupported trace version " + version);
+
+		final List<Record> scanRecords = new ArrayList<>();
+		final Map<String, LinkedList<LinkTrace>> linkTraces = new HashMap<>();
+		final Map<Integer, LinkTrace> links = new HashMap<>();
+		final List<UUID> uuids = new ArrayList<>();
+		final List<String> names = new ArrayList<>();
+
+		long time = 0;
+		long scanStart = -1;
+		while (true) {
+			final int type = input.read();
+			if (type < 0) break;
+			time += Trace.readVarint(input);
+			final Record record = new Record(type, time);
+
+			switch (type) {
+				case Trace.ADVERTISEMENT: {
+					final String address = Trace.readAddress(input);
+					final int rssi = input.readByte();
+					final String name = Trace.readName(input, names);
+					final int uuidCount = Trace.readVarint(input);
+					final List<UUID> serviceUUIDs = new ArrayList<>(uuidCount);
+					for (int i = 0; i < uuidCount; i++) {
+						serviceUUIDs.add(Trace.readUUID(input, uuids));
+					}
+					record.peripheral = new Peripheral(address, name, rssi, serviceUUIDs);
+					scanRecords.add(record);
+					continue;
+				}
+				case Trace.SCAN_RECORD: {
+					final String address = Trace.readAddress(input);
+					final int rssi = input.readByte();
+					final String name = Trace.readName(input, names);
+					record.peripheral = Peripheral.fromAdvertisement(address, name, rssi, new Advertisement(Trace.readBytes(input)));
+					scanRecords.add(record);
+					continue;
+				}
+				case Trace.SCAN_STARTED:
+					if (scanStart < 0) scanStart = time;
+					continue;
+				case Trace.SCAN_FAILED:
+					record.first = Trace.readVarint(input);
+					scanRecords.add(record);
+					continue;
+				case Trace.CONNECT: {
+					final int link = Trace.readVarint(input);
+					final String address = Trace.readAddress(input);
+					final int flags = input.readUnsignedByte();
+					final LinkTrace linkTrace = new LinkTrace(time, (flags & TraceRecorder.FOUND) != 0);
+					links.put(link, linkTrace);
+					LinkedList<LinkTrace> traces = linkTraces.get(address);
+					if (traces == null) {
+						traces = new LinkedList<>();
+						linkTraces.put(address, traces);
+					}
+					traces.add(linkTrace);
+					continue;
+				}
+				case Trace.CONNECTION_STATE:
+				case Trace.MTU_CHANGED: {
+					final int link = Trace.readVarint(input);
+					record.first = Trace.readVarint(input);
+					record.second = Trace.readVarint(input);
+					addLinkRecord(links, link, record);
+					continue;
+				}
+				case Trace.SERVICES_DISCOVERED: {
+					final int link = Trace.readVarint(input);
+					record.first = Trace.readVarint(input);
+					addLinkRecord(links, link, record);
+					continue;
+				}
+				case Trace.PHY_UPDATED: {
+					final int link = Trace.readVarint(input);
+					record.first = Trace.readVarint(input);
+					record.second = Trace.readVarint(input);
+					record.third = Trace.readVarint(input);
+					addLinkRecord(links, link, record);
+					continue;
+				}
+				case Trace.CHARACTERISTIC_CHANGED: {
+					final int link = Trace.readVarint(input);
+					record.uuid = Trace.readUUID(input, uuids);
+					record.value = Trace.readBytes(input);
+					addLinkRecord(links, link, record);
+					continue;
+				}
+				case Trace.CHARACTERISTIC_WRITE:
+				case Trace.DESCRIPTOR_WRITE: {
+					final int link = Trace.readVarint(input);
+					record.uuid = Trace.readUUID(input, uuids);
+					record.first = Trace.readVarint(input);
+					addLinkRecord(links, link, record);
+					continue;
+				}
+				default:
+					throw new IOException("unknown record type " + type);
+			}
+		}
+
+		return new TraceReplayer(scheduler, Math.max(0, scanStart), scanRecords, linkTraces);
+	}
+
+	private static void addLinkRecord(Map<Integer, LinkTrace> links, int link, Record record) throws IOException {
+		final LinkTrace linkTrace = links.get(link);
+		if (linkTrace == null) throw new IOException("callback of link " + link + " before its connect");
+		linkTrace.records.add(record);
+	}
+
+	/**
+	 * @return number of scan records and link callbacks played back so far
+	 */
+	public synchronized int getReplayedCount() {
+		return replayedCount;
+	}
+
+	/**
+	 * @return true once every scan record is played back or dropped
+	 */
+	public synchronized boolean isScanFinished() {
+		return scanCursor >= scanRecords.size();
+	}
+
+
+	//--------------------------------------------------
+	//BLEScanner
+
+	@Override
+	public synchronized ScanTask asyncScan(ScanConfig config, final BLEScanListener listener) {
+		this.scanListener = listener;
+		if (start < 0) {
+			this.start = scheduler.now();
+			scheduleScanRecord();
+		}
+		return new ScanTask() {
+			@Override
+			public void stop() {
+				synchronized (TraceReplayer.this) {
+					if (scanListener == listener) scanListener = null;
+				}
+			}
+		};
+	}
+
+	/**
+	 * one task for the next scan record only, called with the lock
+	 */
+	private void scheduleScanRecord() {
+		if (scanCursor >= scanRecords.size()) return;
+		final long delay = Math.max(0, start + scanRecords.get(scanCursor).time - scanStart - scheduler.now());
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				final BLEScanListener listener;
+				final Record record;
+				synchronized (TraceReplayer.this) {
+					record = scanRecords.get(scanCursor++);
+					listener = scanListener;
+					if (listener != null) replayedCount++;
+					scheduleScanRecord();
+				}
+				if (listener == null) return;
+				if (record.peripheral != null) {
+					listener.onDiscovered(record.peripheral);
+				} else {
+					listener.onFailed(record.first);
+				}
+			}
+		}, delay);
+	}
+
+
+	//--------------------------------------------------
+	//GattLink.Connector
+
+	/**
+	 * @return null if there is no recorded link left for the address, or if it was not found when recording
+	 */
+	@Override
+	public synchronized GattLink connect(String address, boolean autoConnect, GattLink.Callback callback) {
+		final LinkedList<LinkTrace> traces = linkTraces.get(address.toUpperCase(Locale.US));
+		if (traces == null || traces.isEmpty()) return null;
+		final LinkTrace linkTrace = traces.removeFirst();
+		if (false == linkTrace.isFound) return null;
+
+		final ReplayedLink link = new ReplayedLink(linkTrace, callback, scheduler.now());
+		link.scheduleRecord();
+		return link;
+	}
+
+	private class ReplayedLink implements GattLink {
+		private final LinkTrace trace;
+		private final GattLink.Callback callback;
+		private final long start;
+
+		private int cursor;
+		private boolean isDiscovered;
+		private boolean isClosed;
+
+		ReplayedLink(LinkTrace trace, GattLink.Callback callback, long start) {
+			this.trace = trace;
+			this.callback = callback;
+			this.start = start;
+		}
+
+		/**
+		 * one task for the next callback only, called with the lock of the replayer
+		 */
+		void scheduleRecord() {
+			if (isClosed || cursor >= trace.records.size()) return;
+			final long delay = Math.max(0, start + trace.records.get(cursor).time - trace.time - scheduler.now());
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					final Record record;
+					synchronized (TraceReplayer.this) {
+						if (isClosed) return;
+						record = trace.records.get(cursor++);
+						if (record.type == Trace.SERVICES_DISCOVERED) isDiscovered = (record.first == GATT_SUCCESS);
+						replayedCount++;
+						scheduleRecord();
+					}
+					call(record);
+				}
+			}, delay);
+		}
+
+		private void call(Record record) {
+			switch (record.type) {
+				case Trace.CONNECTION_STATE:
+					callback.onConnectionStateChange(record.first, record.second);
+					break;
+				case Trace.SERVICES_DISCOVERED:
+					callback.onServicesDiscovered(record.first);
+					break;
+				case Trace.CHARACTERISTIC_CHANGED:
+					callback.onCharacteristicChanged(record.uuid, record.value);
+					break;
+				case Trace.CHARACTERISTIC_WRITE:
+					callback.onCharacteristicWrite(record.uuid, record.first);
+					break;
+				case Trace.DESCRIPTOR_WRITE:
+					callback.onDescriptorWrite(record.uuid, record.first);
+					break;
+				case Trace.MTU_CHANGED:
+					callback.onMtuChanged(record.first, record.second);
+					break;
+				case Trace.PHY_UPDATED:
+					callback.onPhyUpdate(record.first, record.second, record.third);
+					break;
+			}
+		}
+
+		@Override
+		public boolean discoverServices() {
+			return true;
+		}
+
+		@Override
+		public boolean requestMtu(int mtu) {
+			return true;
+		}
+
+		@Override
+		public boolean requestConnectionPriority(int priority) {
+			return true;
+		}
+
+		@Override
+		public boolean setPreferredPhy(int phy) {
+			return true;
+		}
+
+		/**
+		 * the recorded services are not known, any characteristic is found once discovered
+		 */
+		@Override
+		public boolean hasCharacteristic(UUID service, UUID characteristic) {
+			synchronized (TraceReplayer.this) {
+				return isDiscovered;
+			}
+		}
+
+		@Override
+		public boolean setCharacteristicNotification(UUID service, UUID characteristic, boolean enable) {
+			return hasCharacteristic(service, characteristic);
+		}
+
+		@Override
+		public boolean writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value) {
+			return true;
+		}
+
+		@Override
+		public boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value, boolean withResponse) {
+			return true;
+		}
+
+		@Override
+		public void disconnect() {
+		}
+
+		@Override
+		public void close() {
+			synchronized (TraceReplayer.this) {
+				isClosed = true;
+			}
+		}
+	}
+}
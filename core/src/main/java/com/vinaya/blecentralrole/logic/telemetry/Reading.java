@@ -0,0 +1,70 @@
+package com.vinaya.blecentralrole.logic.telemetry;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * One frame of sensor data taken from an advertisement, immutable
+ */
+public class Reading {
+
+	private final String address;
+	private final long macAddress;
+	private final long time;
+	private final int rssi;
+	private final int sequence;
+	private final byte[] payload;
+
+	/**
+	 * @param payload not copied
+	 */
+	public Reading(String address, long macAddress, long time, int rssi, int sequence, byte[] payload) {
+		this.address = address;
+		this.macAddress = macAddress;
+		this.time = time;
+		this.rssi = rssi;
+		this.sequence = sequence;
+		this.payload = payload;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return the address packed by {@link com.vinaya.blecentralrole.model.MacAddress#parse(String)}
+	 */
+	public long getMacAddress() {
+		return macAddress;
+	}
+
+	/**
+	 * @return when it was received, on the clock of the {@link com.vinaya.blecentralrole.logic.Scheduler}
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public int getRssi() {
+		return rssi;
+	}
+
+	/**
+	 * @return the frame counter of the sensor
+	 */
+	public int getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return read-only little endian view of the sensor data, as advertised
+	 */
+	public ByteBuffer getPayload() {
+		return ByteBuffer.wrap(payload).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Override
+	public String toString() {
+		return address + " #" + sequence + " " + payload.length + " bytes";
+	}
+}
@@ -0,0 +1,48 @@
+package com.vinaya.blecentralrole.logic.telemetry;
+
+import com.vinaya.blecentralrole.model.Advertisement;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * The frame of our sensors: the service data of their service, a one byte sequence number then the readings.
+ * The sensor repeats the same frame on every advertising interval until it has a new reading
+ */
+public class ServiceDataDecoder implements TelemetryDecoder {
+
+	private final UUID service;
+
+	/**
+	 * @param service the UUID the service data is tagged with, of any size
+	 */
+	public ServiceDataDecoder(UUID service) {
+		this.service = service;
+	}
+
+	@Override
+	public int getSequence(Peripheral peripheral) {
+		final ByteBuffer frame = findFrame(peripheral);
+		return (frame == null) ? NO_FRAME : frame.get(0) & 0xFF;
+	}
+
+	@Override
+	public Reading decode(Peripheral peripheral, int sequence, long time) {
+		final ByteBuffer frame = findFrame(peripheral);
+		if (frame == null) return null;
+
+		final byte[] payload = new byte[frame.remaining() - 1];
+		frame.position(1);
+		frame.get(payload);
+		return new Reading(peripheral.getAddress(), peripheral.getMacAddress(), time, peripheral.getRssi(), sequence, payload);
+	}
+
+	private ByteBuffer findFrame(Peripheral peripheral) {
+		final Advertisement advertisement = peripheral.getAdvertisement();
+		if (advertisement == null) return null;
+
+		final ByteBuffer frame = advertisement.getServiceData(service);
+		return (frame == null || frame.remaining() < 1) ? null : frame;
+	}
+}
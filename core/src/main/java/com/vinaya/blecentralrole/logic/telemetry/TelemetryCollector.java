@@ -0,0 +1,151 @@
+package com.vinaya.blecentralrole.logic.telemetry;
+
+import com.vinaya.blecentralrole.logic.Scheduler;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Takes the sensor frames out of the advertisements without connecting, drops the repeats of the same frame
+ * and delivers the new ones in batches, like {@link com.vinaya.blecentralrole.logic.ScanDispatcher} does the scan result:
+ * once per window, or as soon as the batch is full.
+ *
+ * A frame is a repeat if its sequence number is the last one of the same address.
+ * The last sequence numbers of the devices seen most recently are kept, up to a bound.
+ * Not thread safe, it is owned by the event loop of the Central.
+ */
+public class TelemetryCollector {
+	public final static int DEFAULT_MAX_DEVICES = 4096;
+
+	//--------------------------------------------------
+	//data members
+	private final TelemetryDecoder decoder;
+	private final Scheduler scheduler;
+	private final Executor executor;
+	private final TelemetryListener listener;
+	private final long windowMillis;
+	private final int maxBatchSize;
+
+	private final Map<Long, Integer> lastSequences;
+	private List<Reading> pending = new ArrayList<>();
+	private Scheduler.Task flushTask;
+	private boolean isCancelled = false;
+	private long frameCount;
+	private long repeatCount;
+
+	private final Runnable flushRunnable = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+
+	//--------------------------------------------------
+	//class methods
+
+	/**
+	 * @param scheduler    for timing the window and the readings
+	 * @param executor     where the listener is called
+	 * @param windowMillis how long to collect the readings before delivery
+	 * @param maxBatchSize deliver earlier if this number of readings are pending
+	 * @param maxDevices   number of devices whose last frame is remembered
+	 */
+	public TelemetryCollector(TelemetryDecoder decoder, Scheduler scheduler, Executor executor,
+	                          long windowMillis, int maxBatchSize, final int maxDevices, TelemetryListener listener) {
+		this.decoder = decoder;
+		this.scheduler = scheduler;
+		this.executor = executor;
+		this.windowMillis = windowMillis;
+		this.maxBatchSize = maxBatchSize;
+		this.listener = listener;
+		this.lastSequences = new LinkedHashMap<Long, Integer>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+				return size() > maxDevices;
+			}
+		};
+	}
+
+	/**
+	 * an advertisement of any device, the ones without a frame are ignored
+	 *
+	 * @return true if it has a new frame
+	 */
+	public boolean onAdvertisement(Peripheral peripheral) {
+		final int sequence = decoder.getSequence(peripheral);
+		if (sequence == TelemetryDecoder.NO_FRAME) return false;
+
+		if (isCancelled) return false;
+		frameCount++;
+		final Integer last = lastSequences.put(peripheral.getMacAddress(), sequence);
+		if (last != null && last == sequence) {
+			repeatCount++;
+			return false;
+		}
+
+		final Reading reading = decoder.decode(peripheral, sequence, scheduler.now());
+		if (reading == null) return false;
+		pending.add(reading);
+
+		if (pending.size() >= maxBatchSize) {
+			flush();
+		} else if (flushTask == null) {
+			//the window starts from the first pending reading
+			this.flushTask = scheduler.schedule(flushRunnable, windowMillis);
+		}
+		return true;
+	}
+
+	/**
+	 * deliver the pending readings now
+	 */
+	public void flush() {
+		if (flushTask != null) {
+			flushTask.cancel();
+			flushTask = null;
+		}
+		if (isCancelled || pending.isEmpty()) return;
+
+		final List<Reading> readings = pending;
+		this.pending = new ArrayList<>(readings.size());
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				listener.onReadings(readings);
+			}
+		});
+	}
+
+	/**
+	 * drop the pending readings, nothing is delivered afterwards
+	 */
+	public void cancel() {
+		this.isCancelled = true;
+		if (flushTask != null) {
+			flushTask.cancel();
+			flushTask = null;
+		}
+		pending.clear();
+		lastSequences.clear();
+	}
+
+	/**
+	 * @return advertisements with a frame, repeats included
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return frames dropped as the repeat of the last one
+	 */
+	public long getRepeatCount() {
+		return repeatCount;
+	}
+}
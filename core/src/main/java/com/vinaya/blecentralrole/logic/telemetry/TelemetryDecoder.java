@@ -0,0 +1,22 @@
+package com.vinaya.blecentralrole.logic.telemetry;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+
+/**
+ * Finds the sensor frame in an advertisement. {@link #getSequence(Peripheral)} is called for every advertisement
+ * on the event loop, keep it cheap: most of the frames are repeats, only the new ones are decoded
+ */
+public interface TelemetryDecoder {
+	int NO_FRAME = -1;
+
+	/**
+	 * @return the frame counter of the sensor data in the advertisement, or {@link #NO_FRAME}
+	 */
+	int getSequence(Peripheral peripheral);
+
+	/**
+	 * @param sequence as returned by {@link #getSequence(Peripheral)}
+	 * @param time     when it was received
+	 */
+	Reading decode(Peripheral peripheral, int sequence, long time);
+}
@@ -0,0 +1,15 @@
+package com.vinaya.blecentralrole.logic.telemetry;
+
+import java.util.List;
+
+/**
+ * What the {@link TelemetryCollector} delivers
+ */
+public interface TelemetryListener {
+	/**
+	 * @param readings the new frames since the last call, in the order received
+	 */
+	void onReadings(List<Reading> readings);
+
+	void onFailed(int errorCode);
+}
@@ -0,0 +1,251 @@
+package com.vinaya.blecentralrole.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The raw bytes of one advertisement (and scan response), as the controller reports them.
+ *
+ * Nothing is decoded up front: every getter walks the AD structures (length, type, data) of the bytes it needs,
+ * so an advertisement only costs its bytes until a field is asked for, e.g. by a peripheral on screen.
+ * Immutable as long as the bytes are not changed by the owner.
+ */
+public class Advertisement {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	//AD types, Bluetooth Assigned Numbers
+	public final static int TYPE_FLAGS = 0x01;
+	public final static int TYPE_UUID16_INCOMPLETE = 0x02;
+	public final static int TYPE_UUID16 = 0x03;
+	public final static int TYPE_UUID32_INCOMPLETE = 0x04;
+	public final static int TYPE_UUID32 = 0x05;
+	public final static int TYPE_UUID128_INCOMPLETE = 0x06;
+	public final static int TYPE_UUID128 = 0x07;
+	public final static int TYPE_SHORT_NAME = 0x08;
+	public final static int TYPE_COMPLETE_NAME = 0x09;
+	public final static int TYPE_TX_POWER_LEVEL = 0x0A;
+	public final static int TYPE_SERVICE_DATA_UUID16 = 0x16;
+	public final static int TYPE_SERVICE_DATA_UUID32 = 0x20;
+	public final static int TYPE_SERVICE_DATA_UUID128 = 0x21;
+	public final static int TYPE_MANUFACTURER_DATA = 0xFF;
+
+	public final static int NO_FLAGS = -1;
+	public final static int NO_TX_POWER_LEVEL = Integer.MIN_VALUE;
+
+	//the 16 and 32 bit UUIDs are short forms of 0000xxxx-0000-1000-8000-00805F9B34FB
+	private final static long BASE_UUID_MSB = 0x0000000000001000L;
+	private final static long BASE_UUID_LSB = 0x800000805F9B34FBL;
+
+	//--------------------------------------------------
+	//data members
+	private final byte[] bytes;
+	private volatile List<UUID> serviceUUIDs;    //decoded on the first call
+
+
+	//--------------------------------------------------
+	//class methods
+
+	/**
+	 * @param bytes the scan record, not copied. A truncated structure at the end is ignored
+	 */
+	public Advertisement(byte[] bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * @return read-only view of the raw bytes
+	 */
+	public ByteBuffer getBytes() {
+		return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return the flags, or {@link #NO_FLAGS}
+	 */
+	public int getFlags() {
+		final int offset = find(TYPE_FLAGS, 0);
+		return (offset < 0 || dataLength(offset) < 1) ? NO_FLAGS : bytes[offset + 2] & 0xFF;
+	}
+
+	/**
+	 * @return the transmitted power in dBm, or {@link #NO_TX_POWER_LEVEL}
+	 */
+	public int getTxPowerLevel() {
+		final int offset = find(TYPE_TX_POWER_LEVEL, 0);
+		return (offset < 0 || dataLength(offset) < 1) ? NO_TX_POWER_LEVEL : bytes[offset + 2];
+	}
+
+	/**
+	 * @return the complete name, or the short one, or null
+	 */
+	public String getLocalName() {
+		int offset = find(TYPE_COMPLETE_NAME, 0);
+		if (offset < 0) offset = find(TYPE_SHORT_NAME, 0);
+		return (offset < 0) ? null : new String(bytes, offset + 2, dataLength(offset), UTF8);
+	}
+
+	/**
+	 * @return the advertised services of all sizes, in the order they come. Decoded once
+	 */
+	public List<UUID> getServiceUUIDs() {
+		List<UUID> serviceUUIDs = this.serviceUUIDs;
+		if (serviceUUIDs != null) return serviceUUIDs;
+
+		final List<UUID> decoded = new ArrayList<>(2);
+		for (int offset = first(0); offset >= 0; offset = next(offset)) {
+			final int size = uuidSize(bytes[offset + 1] & 0xFF);
+			if (size == 0) continue;
+			final int end = offset + 2 + dataLength(offset);
+			for (int at = offset + 2; at + size <= end; at += size) {
+				decoded.add(new UUID(msb(at, size), lsb(at, size)));
+			}
+		}
+
+		serviceUUIDs = decoded.isEmpty() ? Collections.<UUID>emptyList() : Collections.unmodifiableList(decoded);
+		this.serviceUUIDs = serviceUUIDs;
+		return serviceUUIDs;
+	}
+
+	/**
+	 * look for several services without decoding any UUID
+	 *
+	 * @param msbs most significant bits of the services looked for
+	 * @param lsbs least significant bits of the services looked for, in the same order
+	 * @return index of the first of them advertised, in the order of the advertisement, or -1
+	 */
+	public int indexOfService(long[] msbs, long[] lsbs) {
+		for (int offset = first(0); offset >= 0; offset = next(offset)) {
+			final int size = uuidSize(bytes[offset + 1] & 0xFF);
+			if (size == 0) continue;
+			final int end = offset + 2 + dataLength(offset);
+			for (int at = offset + 2; at + size <= end; at += size) {
+				final long msb = msb(at, size);
+				final long lsb = lsb(at, size);
+				for (int i = 0; i < msbs.length; i++) {
+					if (msbs[i] == msb && lsbs[i] == lsb) return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param companyId assigned by the Bluetooth SIG, e.g. 0x004C
+	 * @return read-only view of the data following the company id, or null
+	 */
+	public ByteBuffer getManufacturerData(int companyId) {
+		for (int offset = find(TYPE_MANUFACTURER_DATA, 0); offset >= 0; offset = find(TYPE_MANUFACTURER_DATA, next(offset))) {
+			if (dataLength(offset) < 2) continue;
+			if (readLittleEndian(offset + 2, 2) == companyId) return view(offset + 4, dataLength(offset) - 2);
+		}
+		return null;
+	}
+
+	/**
+	 * @param service the UUID of any size the data is tagged with
+	 * @return read-only view of the data following the UUID, or null
+	 */
+	public ByteBuffer getServiceData(UUID service) {
+		for (int offset = first(0); offset >= 0; offset = next(offset)) {
+			final int size = serviceDataUuidSize(bytes[offset + 1] & 0xFF);
+			if (size == 0 || dataLength(offset) < size) continue;
+			if (msb(offset + 2, size) == service.getMostSignificantBits()
+				&& lsb(offset + 2, size) == service.getLeastSignificantBits()) {
+				return view(offset + 2 + size, dataLength(offset) - size);
+			}
+		}
+		return null;
+	}
+
+
+	//--------------------------------------------------
+	//helpers, an offset is the one of the length byte of a structure, -1 when there is no more
+
+	private int next(int offset) {
+		return first(offset + 1 + (bytes[offset] & 0xFF));
+	}
+
+	/**
+	 * @return the structure at the offset if it is complete, or -1. A length of 0 ends the significant part
+	 */
+	private int first(int offset) {
+		if (bytes == null || offset + 1 >= bytes.length) return -1;
+		final int length = bytes[offset] & 0xFF;
+		if (length == 0 || offset + 1 + length > bytes.length) return -1;
+		return offset;
+	}
+
+	private int find(int type, int from) {
+		if (from < 0) return -1;
+		for (int offset = first(from); offset >= 0; offset = next(offset)) {
+			if ((bytes[offset + 1] & 0xFF) == type) return offset;
+		}
+		return -1;
+	}
+
+	private int dataLength(int offset) {
+		return (bytes[offset] & 0xFF) - 1;
+	}
+
+	/**
+	 * the fields of the AD structures are little endian, a read-only view comes back big endian otherwise
+	 */
+	private ByteBuffer view(int start, int length) {
+		return ByteBuffer.wrap(bytes, start, length).slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private long readLittleEndian(int start, int size) {
+		long value = 0;
+		for (int i = size - 1; i >= 0; i--) {
+			value = (value << 8) | (bytes[start + i] & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * the UUIDs are little endian, the short ones are expanded on the base UUID
+	 */
+	private long msb(int start, int size) {
+		if (size < 16) return (readLittleEndian(start, size) << 32) | BASE_UUID_MSB;
+		return readLittleEndian(start + 8, 8);
+	}
+
+	private long lsb(int start, int size) {
+		if (size < 16) return BASE_UUID_LSB;
+		return readLittleEndian(start, 8);
+	}
+
+	private static int uuidSize(int type) {
+		switch (type) {
+			case TYPE_UUID16_INCOMPLETE:
+			case TYPE_UUID16:
+				return 2;
+			case TYPE_UUID32_INCOMPLETE:
+			case TYPE_UUID32:
+				return 4;
+			case TYPE_UUID128_INCOMPLETE:
+			case TYPE_UUID128:
+				return 16;
+			default:
+				return 0;
+		}
+	}
+
+	private static int serviceDataUuidSize(int type) {
+		switch (type) {
+			case TYPE_SERVICE_DATA_UUID16:
+				return 2;
+			case TYPE_SERVICE_DATA_UUID32:
+				return 4;
+			case TYPE_SERVICE_DATA_UUID128:
+				return 16;
+			default:
+				return 0;
+		}
+	}
+}
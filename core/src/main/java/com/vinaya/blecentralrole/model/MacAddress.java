@@ -0,0 +1,57 @@
+package com.vinaya.blecentralrole.model;
+
+/**
+ * Helpers to pack a 48-bit bluetooth MAC address ("AA:BB:CC:DD:EE:FF") into a primitive long,
+ * so that it can be used as a cheap key without holding or comparing Strings
+ */
+public final class MacAddress {
+
+	/**
+	 * returned by {@link #parse(String)} if the address is malformed
+	 */
+	public static final long INVALID = -1L;
+
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private MacAddress() {
+		//utility class
+	}
+
+	/**
+	 * @param address address in the form of "AA:BB:CC:DD:EE:FF", case insensitive
+	 * @return the address packed into the lower 48 bits, or {@link #INVALID}
+	 */
+	public static long parse(String address) {
+		if (address == null || address.length() != 17) return INVALID;
+
+		long mac = 0;
+		for (int i = 0; i < 17; i++) {
+			final char c = address.charAt(i);
+			if (i % 3 == 2) {
+				if (c != ':') return INVALID;
+				continue;
+			}
+
+			final int digit = Character.digit(c, 16);
+			if (digit < 0) return INVALID;
+			mac = (mac << 4) | digit;
+		}
+		return mac;
+	}
+
+	/**
+	 * reverse of {@link #parse(String)}
+	 */
+	public static String format(long mac) {
+		final char[] chars = new char[17];
+		for (int i = 0, shift = 44; i < 17; i++) {
+			if (i % 3 == 2) {
+				chars[i] = ':';
+				continue;
+			}
+			chars[i] = HEX_DIGITS[(int) (mac >>> shift) & 0xF];
+			shift -= 4;
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,81 @@
+package com.vinaya.blecentralrole.model;
+
+/**
+ * The latest messages received, in a ring of fixed capacity: once full, every new one replaces the oldest,
+ * so the memory does not grow however long the peripherals stream.
+ *
+ * The messages are numbered from the first one ever added, so that a view can tell
+ * how many were added and dropped since it last looked, see {@link #getAddedCount()}.
+ * Not thread safe, used on the main thread.
+ */
+public class MessageLog {
+	private final CharSequence[] messages;
+	private int head;          //index of the oldest
+	private int size;
+	private long addedCount;
+
+	/**
+	 * @param capacity the most messages kept
+	 */
+	public MessageLog(int capacity) {
+		if (capacity <= 0) throw new IllegalArgumentException("capacity " + capacity);
+		this.messages = new CharSequence[capacity];
+	}
+
+	public void add(CharSequence message) {
+		final int capacity = messages.length;
+		if (size < capacity) {
+			messages[(head + size) % capacity] = message;
+			size++;
+		} else {
+			messages[head] = message;
+			head = (head + 1) % capacity;
+		}
+		addedCount++;
+	}
+
+	/**
+	 * @param index 0 for the oldest kept
+	 */
+	public CharSequence get(int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index + " size " + size);
+		return messages[(head + index) % messages.length];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return messages.length;
+	}
+
+	/**
+	 * @return number of messages added since created, including those dropped.
+	 * The message at index i is the one numbered getAddedCount() - size() + i
+	 */
+	public long getAddedCount() {
+		return addedCount;
+	}
+
+	/**
+	 * drop every message, the numbering goes on
+	 */
+	public void clear() {
+		for (int i = 0; i < messages.length; i++) {
+			messages[i] = null;
+		}
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * @param out where the messages are written from the oldest, one per line
+	 */
+	public StringBuilder appendTo(StringBuilder out) {
+		for (int i = 0; i < size; i++) {
+			out.append(get(i)).append('\n');
+		}
+		return out;
+	}
+}
@@ -0,0 +1,154 @@
+package com.vinaya.blecentralrole.model;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Representation of BLE Peripheral
+ */
+public class Peripheral {
+
+	private List<UUID> serviceUUIDs;
+	private Advertisement advertisement;
+	private String name;
+	private String address;
+	private long macAddress = MacAddress.INVALID;
+	private int rssi;
+	private int smoothedRssi;
+	private boolean isRssiLow;
+
+	private volatile boolean isConnected;   //set on the event loop, read by the UI
+	private long lastSeen;              //monotonic time of the latest advertisement, in millisecond
+	private int advertisementCount = 1;
+
+	//the profile found by UUIDRepository#findProfileOf(Peripheral), it does not change with the advertisement
+	volatile UUIDRepository.Match profileMatch;
+
+	/**
+	 * @param serviceUUIDs advertised services, not copied
+	 */
+	public Peripheral(String address, String name, int rssi, List<UUID> serviceUUIDs) {
+		this.name = name;
+		this.address = address;
+		this.macAddress = MacAddress.parse(address);
+		this.rssi = rssi;
+		this.smoothedRssi = rssi;
+		this.serviceUUIDs = serviceUUIDs;
+	}
+
+	/**
+	 * @param name         the name known by the system, or null for the one advertised
+	 * @param advertisement the raw advertisement, decoded only when its fields are asked for
+	 */
+	public static Peripheral fromAdvertisement(String address, String name, int rssi, Advertisement advertisement) {
+		final Peripheral peripheral = new Peripheral(address, name, rssi, null);
+		peripheral.advertisement = advertisement;
+		return peripheral;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this==o) return true;
+		if (o == null) return false;
+		if (o instanceof Peripheral == false) return false;
+
+		Peripheral p = (Peripheral)o;
+		return macAddress == p.macAddress;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (macAddress ^ (macAddress >>> 32));
+	}
+
+
+	//--------------------------------------------------
+	//getters and setters
+
+	/**
+	 * @return the RSSI of this advertisement
+	 */
+	public int getRssi() {
+		return this.rssi;
+	}
+
+	/**
+	 * @return the RSSI filtered over the advertisements so far, see {@link com.vinaya.blecentralrole.logic.RssiProcessor}
+	 */
+	public int getSmoothedRssi() {
+		return this.smoothedRssi;
+	}
+
+	/**
+	 * @return true if the smoothed RSSI is below the alert threshold, with hysteresis
+	 */
+	public boolean isRssiLow() {
+		return this.isRssiLow;
+	}
+
+	public void setSmoothedRssi(int smoothedRssi, boolean isRssiLow) {
+		this.smoothedRssi = smoothedRssi;
+		this.isRssiLow = isRssiLow;
+	}
+
+	public String getName() {
+		if (name == null && advertisement != null) this.name = advertisement.getLocalName();
+		return this.name;
+	}
+
+	public String getAddress() {
+		return this.address;
+	}
+
+	/**
+	 * @return the address packed by {@link MacAddress#parse(String)}
+	 */
+	public long getMacAddress() {
+		return this.macAddress;
+	}
+
+	/**
+	 * @return the advertised services, decoded on the first call if it comes from an {@link Advertisement}
+	 */
+	public List<UUID> getServiceUUIDs() {
+		if (serviceUUIDs == null && advertisement != null) this.serviceUUIDs = advertisement.getServiceUUIDs();
+		return this.serviceUUIDs;
+	}
+
+	/**
+	 * @return the raw advertisement, with the manufacturer and service data, or null if it is not known
+	 */
+	public Advertisement getAdvertisement() {
+		return this.advertisement;
+	}
+
+	public boolean isConnected() {
+		return this.isConnected;
+	}
+
+	public void setConnected(boolean isConnected) {
+		this.isConnected = isConnected;
+	}
+
+	/**
+	 * @return when it was last seen, on the clock of the {@link com.vinaya.blecentralrole.logic.Scheduler}
+	 */
+	public long getLastSeen() {
+		return this.lastSeen;
+	}
+
+	public void setLastSeen(long lastSeen) {
+		this.lastSeen = lastSeen;
+	}
+
+	/**
+	 * @return number of advertisements received from this address since it was discovered
+	 */
+	public int getAdvertisementCount() {
+		return this.advertisementCount;
+	}
+
+	public void setAdvertisementCount(int advertisementCount) {
+		this.advertisementCount = advertisementCount;
+	}
+}
@@ -0,0 +1,65 @@
+package com.vinaya.blecentralrole.model;
+
+import java.util.UUID;
+
+/**
+ * The UUIDs of one service the application talks to, parsed once.
+ * Immutable, so it can be shared by the connections without locking.
+ */
+public final class ServiceProfile {
+	//Client Characteristic Configuration descriptor, the usual one to subscribe
+	public final static UUID CCCD = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+	/**
+	 * how the messages are cut on RX and TX
+	 */
+	public enum Framing {
+		STRING,    //zero terminated, the loop back is prefixed by the counter in hex
+		BINARY     //see com.vinaya.blecentralrole.logic.gatt.Frame
+	}
+
+	private final String name;
+	private final UUID serviceID;
+	private final UUID txCharacteristic;
+	private final UUID rxCharacteristic;
+	private final UUID subscriptUUID;
+	private final Framing framing;
+
+	public ServiceProfile(String name, UUID serviceID, UUID txCharacteristic, UUID rxCharacteristic, UUID subscriptUUID) {
+		this(name, serviceID, txCharacteristic, rxCharacteristic, subscriptUUID, Framing.STRING);
+	}
+
+	public ServiceProfile(String name, UUID serviceID, UUID txCharacteristic, UUID rxCharacteristic, UUID subscriptUUID,
+	                      Framing framing) {
+		this.name = name;
+		this.serviceID = serviceID;
+		this.txCharacteristic = txCharacteristic;
+		this.rxCharacteristic = rxCharacteristic;
+		this.subscriptUUID = subscriptUUID;
+		this.framing = framing;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public UUID getServiceID() {
+		return serviceID;
+	}
+
+	public UUID getTXCharacteristic() {
+		return txCharacteristic;
+	}
+
+	public UUID getRXCharacteristic() {
+		return rxCharacteristic;
+	}
+
+	public UUID getSubscriptUUID() {
+		return subscriptUUID;
+	}
+
+	public Framing getFraming() {
+		return framing;
+	}
+}
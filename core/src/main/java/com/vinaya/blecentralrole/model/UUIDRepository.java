@@ -0,0 +1,194 @@
+package com.vinaya.blecentralrole.model;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The named service profiles the application talks to, read once from a JSON file, e.g. res/raw/service_profiles.json:
+ *
+ * <pre>
+ * {"default": "loopback",
+ *  "profiles": [{"name": "loopback", "service": "...", "tx": "...", "rx": "...", "subscript": "...", "framing": "string"}]}
+ * </pre>
+ *
+ * "subscript" may be left out for the Client Characteristic Configuration descriptor,
+ * "framing" for the zero terminated strings; "binary" is for the length prefixed frames.
+ * Immutable, so the UUIDs are parsed only once and it can be shared by the threads.
+ */
+public final class UUIDRepository {
+
+	private final Map<String, ServiceProfile> profiles;
+	private final Map<UUID, ServiceProfile> profilesByService;
+	private final ServiceProfile defaultProfile;
+
+	//the services of the profiles split in halves, to look for them in the raw advertisement
+	private final ServiceProfile[] profileArray;
+	private final long[] serviceMsbs;
+	private final long[] serviceLsbs;
+
+	/**
+	 * the profile of a peripheral, or null, as found by one repository
+	 */
+	static final class Match {
+		final UUIDRepository repository;
+		final ServiceProfile profile;
+
+		Match(UUIDRepository repository, ServiceProfile profile) {
+			this.repository = repository;
+			this.profile = profile;
+		}
+	}
+
+	/**
+	 * @param defaultName name of the profile used by the getters, and for the peripherals advertising no known service
+	 */
+	public UUIDRepository(Collection<ServiceProfile> profiles, String defaultName) {
+		final Map<String, ServiceProfile> byName = new LinkedHashMap<>();
+		final Map<UUID, ServiceProfile> byService = new HashMap<>();
+		for (ServiceProfile profile : profiles) {
+			byName.put(profile.getName(), profile);
+			byService.put(profile.getServiceID(), profile);
+		}
+
+		this.profiles = Collections.unmodifiableMap(byName);
+		this.profilesByService = byService;
+		this.profileArray = byService.values().toArray(new ServiceProfile[byService.size()]);
+		this.serviceMsbs = new long[profileArray.length];
+		this.serviceLsbs = new long[profileArray.length];
+		for (int i = 0; i < profileArray.length; i++) {
+			serviceMsbs[i] = profileArray[i].getServiceID().getMostSignificantBits();
+			serviceLsbs[i] = profileArray[i].getServiceID().getLeastSignificantBits();
+		}
+		this.defaultProfile = byName.get(defaultName);
+		if (defaultProfile == null) throw new IllegalArgumentException("no profile named " + defaultName);
+	}
+
+	public UUIDRepository(ServiceProfile profile) {
+		this(Collections.singletonList(profile), profile.getName());
+	}
+
+	/**
+	 * read the profiles from a stream, e.g. of an asset, and close it
+	 */
+	public static UUIDRepository load(InputStream in) throws IOException, JSONException {
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[1024];
+			int count;
+			while ((count = in.read(buffer)) > 0) {
+				out.write(buffer, 0, count);
+			}
+			return fromJson(out.toString("UTF-8"));
+		} finally {
+			in.close();
+		}
+	}
+
+	public static UUIDRepository fromJson(String json) throws JSONException {
+		final JSONObject root = new JSONObject(json);
+		final JSONArray array = root.getJSONArray("profiles");
+
+		final List<ServiceProfile> profiles = new ArrayList<>(array.length());
+		for (int i = 0; i < array.length(); i++) {
+			final JSONObject profile = array.getJSONObject(i);
+			profiles.add(new ServiceProfile(profile.getString("name"),
+				UUID.fromString(profile.getString("service")),
+				UUID.fromString(profile.getString("tx")),
+				UUID.fromString(profile.getString("rx")),
+				UUID.fromString(profile.optString("subscript", ServiceProfile.CCCD.toString())),
+				ServiceProfile.Framing.valueOf(profile.optString("framing", "string").toUpperCase(Locale.US))));
+		}
+		if (profiles.isEmpty()) throw new JSONException("no profile");
+
+		return new UUIDRepository(profiles, root.optString("default", profiles.get(0).getName()));
+	}
+
+
+	//--------------------------------------------------
+	//profiles
+
+	public ServiceProfile getDefaultProfile() {
+		return defaultProfile;
+	}
+
+	/**
+	 * @return the profile with this name, or null
+	 */
+	public ServiceProfile getProfile(String name) {
+		return profiles.get(name);
+	}
+
+	public Collection<ServiceProfile> getProfiles() {
+		return profiles.values();
+	}
+
+	/**
+	 * @param serviceUUIDs the services advertised by a peripheral, may be null
+	 * @return the profile of the first known service, or null if there is none
+	 */
+	public ServiceProfile findProfile(List<UUID> serviceUUIDs) {
+		if (serviceUUIDs == null) return null;
+		for (int i = 0; i < serviceUUIDs.size(); i++) {
+			final ServiceProfile profile = profilesByService.get(serviceUUIDs.get(i));
+			if (profile != null) return profile;
+		}
+		return null;
+	}
+
+
+	/**
+	 * the same as {@link #findProfile(List)} of its services, found once for each peripheral:
+	 * the list redraws ask for it on every bind. From the raw advertisement, no UUID is decoded
+	 *
+	 * @return the profile of the first known service, or null if there is none
+	 */
+	public ServiceProfile findProfileOf(Peripheral peripheral) {
+		final Match match = peripheral.profileMatch;
+		if (match != null && match.repository == this) return match.profile;
+
+		final ServiceProfile profile;
+		final Advertisement advertisement = peripheral.getAdvertisement();
+		if (advertisement != null) {
+			final int index = advertisement.indexOfService(serviceMsbs, serviceLsbs);
+			profile = (index < 0) ? null : profileArray[index];
+		} else {
+			profile = findProfile(peripheral.getServiceUUIDs());
+		}
+		peripheral.profileMatch = new Match(this, profile);
+		return profile;
+	}
+
+
+	//--------------------------------------------------
+	//UUIDs of the default profile
+
+	public UUID getServiceID() {
+		return defaultProfile.getServiceID();
+	}
+
+	public UUID getTXCharacteristic() {
+		return defaultProfile.getTXCharacteristic();
+	}
+
+	public UUID getRXCharacteristic() {
+		return defaultProfile.getRXCharacteristic();
+	}
+
+	public UUID getSubscriptUUID() {
+		return defaultProfile.getSubscriptUUID();
+	}
+}
@@ -0,0 +1,240 @@
+package com.vinaya.blecentralrole.logic;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * the handoff to the loop thread, alone and hammered by many producers
+ */
+public class EventLoopTest {
+	private final static long TIMEOUT = 10;    //in second
+
+	private EventLoop loop;
+
+	@Before
+	public void setUp() throws Exception {
+		this.loop = new EventLoop("test");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		loop.quit();
+	}
+
+	/**
+	 * @return after everything handed off before has run
+	 */
+	private void awaitIdle() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(TIMEOUT, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * @return after the timers due within the delay from now have run
+	 */
+	private void awaitTimers(long delayMillis) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		loop.schedule(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, delayMillis);
+		assertTrue(latch.await(TIMEOUT, TimeUnit.SECONDS));
+	}
+
+	private Runnable record(final List<String> events, final String event) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				assertTrue(loop.isInLoop());
+				events.add(event);
+			}
+		};
+	}
+
+	@Test
+	public void execute_runsInOrderOnTheLoop() throws Exception {
+		final List<String> events = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			loop.execute(record(events, "" + i));
+		}
+		awaitIdle();
+
+		assertFalse(loop.isInLoop());
+		assertEquals(100, events.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals("" + i, events.get(i));
+		}
+	}
+
+	@Test
+	public void schedule_runsByDueTimeThenArrival() throws Exception {
+		final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch latch = new CountDownLatch(1);
+		final long start = loop.now();
+
+		loop.schedule(record(events, "60 ms"), 60);
+		loop.schedule(record(events, "20 ms a"), 20);
+		loop.schedule(record(events, "20 ms b"), 20);
+		loop.schedule(record(events, "now"), 0);
+		loop.schedule(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 80);
+		assertTrue(latch.await(TIMEOUT, TimeUnit.SECONDS));
+
+		assertTrue(loop.now() - start >= 80);
+		assertEquals(4, events.size());
+		assertEquals("now", events.get(0));
+		assertEquals("20 ms a", events.get(1));
+		assertEquals("20 ms b", events.get(2));
+		assertEquals("60 ms", events.get(3));
+	}
+
+	@Test
+	public void cancel_neverRuns() throws Exception {
+		final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		loop.schedule(record(events, "cancelled"), 20).cancel();
+		//more cancelled timers than the purge threshold, the heap is purged on the way
+		for (int i = 0; i < 1000; i++) {
+			loop.schedule(record(events, "cancelled"), 10 + i % 30).cancel();
+		}
+		loop.schedule(record(events, "kept"), 30);
+		loop.schedule(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 60);
+		assertTrue(latch.await(TIMEOUT, TimeUnit.SECONDS));
+
+		assertEquals(Collections.singletonList("kept"), events);
+	}
+
+	@Test
+	public void failingTask_doesNotStopTheLoop() throws Exception {
+		final List<String> events = new ArrayList<>();
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException("test");
+			}
+		});
+		loop.execute(record(events, "after"));
+		awaitIdle();
+		assertEquals(Collections.singletonList("after"), events);
+	}
+
+	@Test
+	public void quit_runsWhatIsHandedOffBefore() throws Exception {
+		final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+		loop.execute(record(events, "before"));
+		loop.schedule(record(events, "delayed"), 10);
+		loop.quit();
+		loop.execute(record(events, "after"));
+
+		Thread.sleep(100);
+		assertEquals(Collections.singletonList("before"), events);
+	}
+
+	/**
+	 * producers hand off immediate and delayed tasks, and cancel some, all at once:
+	 * every task runs exactly once unless cancelled, and the tasks of a producer run in its order
+	 */
+	@Test
+	public void concurrentProducers_noTaskLostOrReordered() throws Exception {
+		final int producers = 8;
+		final int tasksPerProducer = 50000;
+		final int[] lastRun = new int[producers];    //only touched by the loop
+		final AtomicInteger runCount = new AtomicInteger();
+		final AtomicInteger delayedCount = new AtomicInteger();
+		final AtomicInteger cancelledRunCount = new AtomicInteger();
+		final AtomicInteger reorderCount = new AtomicInteger();
+		final int[] expectedDelayed = new int[producers];
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(producers);
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			lastRun[p] = -1;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < tasksPerProducer; i++) {
+						final int index = i;
+						loop.execute(new Runnable() {
+							@Override
+							public void run() {
+								if (index != lastRun[producer] + 1) reorderCount.incrementAndGet();
+								lastRun[producer] = index;
+								runCount.incrementAndGet();
+							}
+						});
+
+						if (i % 16 != 0) continue;
+						//a producer preempted past the delay cancels too late, only a run after the cancel is wrong
+						final AtomicBoolean isCancelled = new AtomicBoolean();
+						final Scheduler.Task task = loop.schedule(new Runnable() {
+							@Override
+							public void run() {
+								if (index % 32 != 0) {
+									delayedCount.incrementAndGet();
+								} else if (isCancelled.get()) {
+									cancelledRunCount.incrementAndGet();
+								}
+							}
+						}, 1 + i % 5);
+						if (index % 32 == 0) {
+							task.cancel();
+							isCancelled.set(true);
+						} else {
+							expectedDelayed[producer]++;
+						}
+					}
+					done.countDown();
+				}
+			}, "producer " + p).start();
+		}
+
+		start.countDown();
+		assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+		//the delayed ones are due within 5 ms after their handoff, a timer due later runs after all of them
+		awaitTimers(10);
+
+		int delayed = 0;
+		for (int count : expectedDelayed) {
+			delayed += count;
+		}
+		assertEquals(producers * tasksPerProducer, runCount.get());
+		assertEquals(0, reorderCount.get());
+		assertEquals(delayed, delayedCount.get());
+		assertEquals(0, cancelledRunCount.get());
+	}
+}
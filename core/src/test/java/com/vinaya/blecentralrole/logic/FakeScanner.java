@@ -0,0 +1,103 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.logic.scanner.BLEScanner;
+import com.vinaya.blecentralrole.logic.scanner.ScanConfig;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A BLEScanner without radio, the test decides what is discovered.
+ * The filters of the config are applied before a peripheral is allocated, as the controller does.
+ */
+public class FakeScanner implements BLEScanner {
+
+	private BLEScanListener listener;
+	private ScanConfig config = ScanConfig.DEFAULT;
+	private int startCount;
+	private int stopCount;
+	private int reportCount;
+
+	@Override
+	public ScanTask asyncScan(ScanConfig config, BLEScanListener listener) {
+		this.listener = listener;
+		this.config = config;
+		startCount++;
+
+		return new ScanTask() {
+			@Override
+			public void stop() {
+				stopCount++;
+				FakeScanner.this.listener = null;
+			}
+		};
+	}
+
+	public void advertise(Peripheral peripheral) {
+		if (listener == null) return;
+		if (peripheral != null && false == config.matches(peripheral.getAddress(), peripheral.getName(), peripheral.getServiceUUIDs())) {
+			return;
+		}
+		reportCount++;
+		listener.onDiscovered(peripheral);
+	}
+
+	public void advertise(String address, int rssi, UUID... serviceUUIDs) {
+		advertise(address, "device " + address, rssi, Collections.unmodifiableList(Arrays.asList(serviceUUIDs)));
+	}
+
+	/**
+	 * @param serviceUUIDs kept by the peripheral, so do not change it afterwards
+	 */
+	public void advertise(String address, String name, int rssi, List<UUID> serviceUUIDs) {
+		if (listener == null) return;
+		if (false == config.matches(address, name, serviceUUIDs)) return;
+		reportCount++;
+		listener.onDiscovered(new Peripheral(address, name, rssi, serviceUUIDs));
+	}
+
+	public void fail(int errorCode) {
+		if (listener != null) listener.onFailed(errorCode);
+	}
+
+	public boolean isScanning() {
+		return listener != null;
+	}
+
+	public int getStartCount() {
+		return startCount;
+	}
+
+	public int getStopCount() {
+		return stopCount;
+	}
+
+	/**
+	 * @return number of advertisements which passed the filters, i.e. the callbacks which would wake the CPU
+	 */
+	public int getReportCount() {
+		return reportCount;
+	}
+
+	public ScanConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return a valid, distinct address for every index
+	 */
+	public static String address(int index) {
+		return String.format("00:00:%02X:%02X:%02X:%02X",
+			(index >>> 24) & 0xFF, (index >>> 16) & 0xFF, (index >>> 8) & 0xFF, index & 0xFF);
+	}
+
+	/**
+	 * @return a peripheral at the address of the index, named after it
+	 */
+	public static Peripheral peripheral(int index, int rssi, UUID... serviceUUIDs) {
+		return new Peripheral(address(index), "device " + index, rssi, Collections.unmodifiableList(Arrays.asList(serviceUUIDs)));
+	}
+}
@@ -0,0 +1,85 @@
+package com.vinaya.blecentralrole.logic;
+
+import java.util.PriorityQueue;
+
+/**
+ * Scheduler with a simulated clock, time only moves when the test advances it
+ */
+public class FakeScheduler implements Scheduler {
+
+	private static class ScheduledTask implements Task, Comparable<ScheduledTask> {
+		final long dueTime;
+		final long sequence;
+		final Runnable runnable;
+		boolean isCancelled;
+
+		ScheduledTask(long dueTime, long sequence, Runnable runnable) {
+			this.dueTime = dueTime;
+			this.sequence = sequence;
+			this.runnable = runnable;
+		}
+
+		@Override
+		public void cancel() {
+			isCancelled = true;
+		}
+
+		@Override
+		public int compareTo(ScheduledTask o) {
+			if (dueTime != o.dueTime) return dueTime < o.dueTime ? -1 : 1;
+			return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+		}
+	}
+
+	private final PriorityQueue<ScheduledTask> queue = new PriorityQueue<>();
+	private long now;
+	private long sequence;
+
+	public FakeScheduler() {
+		this(0);
+	}
+
+	public FakeScheduler(long startTime) {
+		this.now = startTime;
+	}
+
+	@Override
+	public long now() {
+		return now;
+	}
+
+	@Override
+	public Task schedule(Runnable runnable, long delayMillis) {
+		final ScheduledTask task = new ScheduledTask(now + Math.max(0, delayMillis), sequence++, runnable);
+		queue.add(task);
+		return task;
+	}
+
+	/**
+	 * move the clock forward, running every task which becomes due in order
+	 */
+	public void advanceTo(long time) {
+		while (false == queue.isEmpty() && queue.peek().dueTime <= time) {
+			final ScheduledTask task = queue.poll();
+			if (task.isCancelled) continue;
+			now = Math.max(now, task.dueTime);
+			task.runnable.run();
+		}
+		now = Math.max(now, time);
+	}
+
+	public void advanceBy(long millis) {
+		advanceTo(now + millis);
+	}
+
+	/**
+	 * @return number of tasks waiting to run, cancelled ones excluded
+	 */
+	public int getPendingCount() {
+		int count = 0;
+		for (ScheduledTask task : queue) {
+			if (false == task.isCancelled) count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,38 @@
+package com.vinaya.blecentralrole.logic;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+public class LoopBackCodecTest {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	@Test
+	public void encode_isSameAsFormat() throws Exception {
+		final LoopBackCodec codec = new LoopBackCodec();
+		final byte[] message = "Hello".getBytes(UTF8);
+
+		for (int counter : new int[]{0, 1, 0xF, 0x10, 0xFF, 0x100, 0xABCDE, Integer.MAX_VALUE, -1}) {
+			final int length = codec.encodeLoopBack(counter, message, message.length);
+			final String expected = String.format("%02X", counter) + "Hello\0";
+			assertEquals(expected, new String(codec.getFrame(), 0, length, UTF8));
+		}
+	}
+
+	@Test
+	public void decode_reusesBufferAndGrows() throws Exception {
+		final LoopBackCodec codec = new LoopBackCodec();
+		assertEquals("héllo", codec.decode("héllo".getBytes(UTF8), "héllo".getBytes(UTF8).length).toString());
+
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 100; i++) builder.append("0123456789");
+		final byte[] longMessage = builder.toString().getBytes(UTF8);
+		assertEquals(builder.toString(), codec.decode(longMessage, longMessage.length).toString());
+
+		//malformed input is replaced as by new String
+		final byte[] malformed = {'a', (byte) 0xC3};
+		assertEquals(new String(malformed, UTF8), codec.decode(malformed, malformed.length).toString());
+	}
+}
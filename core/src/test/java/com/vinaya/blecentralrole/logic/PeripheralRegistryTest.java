@@ -0,0 +1,214 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.MacAddress;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PeripheralRegistryTest {
+
+	@Test
+	public void macAddress_roundTrip() throws Exception {
+		final long mac = MacAddress.parse("a4:C1:38:0F:e2:01");
+		assertEquals(0xA4C1380FE201L, mac);
+		assertEquals("A4:C1:38:0F:E2:01", MacAddress.format(mac));
+
+		assertEquals(MacAddress.INVALID, MacAddress.parse(null));
+		assertEquals(MacAddress.INVALID, MacAddress.parse("A4-C1-38-0F-E2-01"));
+		assertEquals(MacAddress.INVALID, MacAddress.parse("A4:C1:38:0F:E2:0G"));
+	}
+
+	@Test
+	public void upsert_addsThenReplaces() throws Exception {
+		final PeripheralRegistry registry = new PeripheralRegistry();
+
+		assertTrue(registry.upsert(FakeScanner.peripheral(1, -50)));
+		assertTrue(registry.upsert(FakeScanner.peripheral(2, -60)));
+		assertFalse(registry.upsert(FakeScanner.peripheral(1, -70)));
+
+		assertEquals(2, registry.size());
+		assertEquals(-70, registry.get(MacAddress.parse(FakeScanner.address(1))).getRssi());
+	}
+
+	@Test
+	public void upsert_keepsConnectedFlag() throws Exception {
+		final PeripheralRegistry registry = new PeripheralRegistry();
+		final long mac = MacAddress.parse(FakeScanner.address(1));
+		registry.upsert(FakeScanner.peripheral(1, -50));
+		assertTrue(registry.setConnected(mac, true, 0));
+
+		//a newer scan result does not know about the connection
+		registry.upsert(FakeScanner.peripheral(1, -55));
+		assertTrue(registry.get(mac).isConnected());
+
+		registry.setConnected(mac, false, 0);
+		assertFalse(registry.get(mac).isConnected());
+		assertFalse(registry.setConnected(MacAddress.parse(FakeScanner.address(2)), true, 0));
+	}
+
+	@Test
+	public void upsert_ignoresMalformedAddress() throws Exception {
+		final PeripheralRegistry registry = new PeripheralRegistry();
+		assertFalse(registry.upsert(new Peripheral("not an address", null, 0, null)));
+		assertEquals(0, registry.size());
+	}
+
+	@Test
+	public void snapshot_isImmutableAndDetached() throws Exception {
+		final PeripheralRegistry registry = new PeripheralRegistry();
+		registry.upsert(FakeScanner.peripheral(1, -50));
+
+		final List<Peripheral> snapshot = registry.snapshot();
+		assertSame(snapshot, registry.snapshot());
+
+		registry.upsert(FakeScanner.peripheral(2, -50));
+		assertEquals(1, snapshot.size());
+		assertEquals(2, registry.snapshot().size());
+
+		try {
+			snapshot.add(FakeScanner.peripheral(3, -50));
+			fail("snapshot should be immutable");
+		} catch (UnsupportedOperationException e) {
+			//expected
+		}
+	}
+
+	@Test
+	public void remove_keepsOtherEntriesReachable() throws Exception {
+		final PeripheralRegistry registry = new PeripheralRegistry();
+		final int count = 1000;
+		for (int i = 0; i < count; i++) registry.upsert(FakeScanner.peripheral(i, -i));
+
+		//remove in random order and check the remaining ones after every removal batch
+		final Random random = new Random(42);
+		final boolean[] removed = new boolean[count];
+		for (int n = 0; n < count / 2; n++) {
+			int i;
+			do { i = random.nextInt(count); } while (removed[i]);
+			removed[i] = true;
+			assertNotNull(registry.remove(MacAddress.parse(FakeScanner.address(i))));
+		}
+
+		assertEquals(count / 2, registry.size());
+		for (int i = 0; i < count; i++) {
+			final Peripheral p = registry.get(MacAddress.parse(FakeScanner.address(i)));
+			if (removed[i]) {
+				assertNull(p);
+			} else {
+				assertEquals(-i, p.getRssi());
+			}
+		}
+		assertEquals(count / 2, registry.snapshot().size());
+	}
+
+	private static Peripheral seen(int index, long lastSeen) {
+		final Peripheral peripheral = FakeScanner.peripheral(index, -50);
+		peripheral.setLastSeen(lastSeen);
+		return peripheral;
+	}
+
+	@Test
+	public void upsert_countsAdvertisements() throws Exception {
+		final PeripheralRegistry registry = new PeripheralRegistry();
+		registry.upsert(seen(1, 0));
+		registry.upsert(seen(1, 10));
+		registry.upsert(seen(1, 20));
+
+		final Peripheral peripheral = registry.get(MacAddress.parse(FakeScanner.address(1)));
+		assertEquals(3, peripheral.getAdvertisementCount());
+		assertEquals(20, peripheral.getLastSeen());
+	}
+
+	@Test
+	public void evict_removesOnlyStalePeripherals() throws Exception {
+		final PeripheralRegistry registry = new PeripheralRegistry();
+		for (int i = 0; i < 10; i++) registry.upsert(seen(i, i * 100));
+
+		//seen again, so no longer among the oldest
+		registry.upsert(seen(0, 1000));
+
+		final List<Peripheral> evicted = new ArrayList<>();
+		assertEquals(3, registry.evictSeenBefore(400, evicted));
+		assertEquals(FakeScanner.address(1), evicted.get(0).getAddress());
+		assertEquals(FakeScanner.address(2), evicted.get(1).getAddress());
+		assertEquals(FakeScanner.address(3), evicted.get(2).getAddress());
+		assertEquals(7, registry.size());
+		assertEquals(FakeScanner.address(4), registry.getOldest().getAddress());
+
+		assertEquals(6, registry.evictSeenBefore(1000, null));
+		assertEquals(1, registry.size());
+		assertTrue(registry.contains(MacAddress.parse(FakeScanner.address(0))));
+	}
+
+	@Test
+	public void evict_neverRemovesConnectedPeripherals() throws Exception {
+		final PeripheralRegistry registry = new PeripheralRegistry();
+		final long mac = MacAddress.parse(FakeScanner.address(1));
+		registry.upsert(seen(1, 0));
+		registry.upsert(seen(2, 0));
+		registry.setConnected(mac, true, 0);
+
+		assertEquals(1, registry.evictSeenBefore(10000, null));
+		assertTrue(registry.contains(mac));
+
+		//once disconnected it lives for another TTL from the disconnection
+		registry.setConnected(mac, false, 20000);
+		assertEquals(0, registry.evictSeenBefore(15000, null));
+		assertEquals(1, registry.evictSeenBefore(25000, null));
+		assertEquals(0, registry.size());
+	}
+
+	@Test
+	public void evict_followsLastSeenAcrossRandomOperations() throws Exception {
+		final PeripheralRegistry registry = new PeripheralRegistry();
+		final Random random = new Random(7);
+		final long[] lastSeen = new long[200];
+		final boolean[] present = new boolean[lastSeen.length];
+		long now = 0;
+
+		for (int step = 0; step < 20000; step++) {
+			now += random.nextInt(5);
+			final int i = random.nextInt(lastSeen.length);
+			if (random.nextInt(4) == 0) {
+				assertEquals(present[i], registry.remove(MacAddress.parse(FakeScanner.address(i))) != null);
+				present[i] = false;
+			} else {
+				registry.upsert(seen(i, now));
+				lastSeen[i] = now;
+				present[i] = true;
+			}
+
+			if (step % 100 == 0) {
+				final long deadline = now - 200;
+				final List<Peripheral> evicted = new ArrayList<>();
+				registry.evictSeenBefore(deadline, evicted);
+				for (Peripheral p : evicted) {
+					final int index = (int) (p.getMacAddress() & 0xFFFFFFFFL);
+					assertTrue(lastSeen[index] < deadline);
+					present[index] = false;
+				}
+				for (int j = 0; j < lastSeen.length; j++) {
+					assertEquals(present[j], registry.contains(MacAddress.parse(FakeScanner.address(j))));
+					if (present[j]) assertTrue(lastSeen[j] >= deadline);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void clear_removesEverything() throws Exception {
+		final PeripheralRegistry registry = new PeripheralRegistry();
+		for (int i = 0; i < 100; i++) registry.upsert(FakeScanner.peripheral(i, -50));
+
+		registry.clear();
+		assertEquals(0, registry.size());
+		assertTrue(registry.snapshot().isEmpty());
+		assertFalse(registry.contains(MacAddress.parse(FakeScanner.address(5))));
+	}
+}
@@ -0,0 +1,108 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class PeripheralStoreTest {
+	private final static UUID SERVICE_UUID = UUID.fromString("abc00001-1234-5678-1234-abcd0123abcd");
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		this.file = File.createTempFile("peripherals", ".bin");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	private static List<String> addresses(List<Peripheral> peripherals) {
+		final String[] addresses = new String[peripherals.size()];
+		for (int i = 0; i < addresses.length; i++) {
+			addresses[i] = peripherals.get(i).getAddress();
+		}
+		return Arrays.asList(addresses);
+	}
+
+	@Test
+	public void save_survivesRestart() throws Exception {
+		final PeripheralStore store = new PeripheralStore(file);
+		store.onConnected(FakeScanner.peripheral(1, -50, SERVICE_UUID), 1000);
+		store.onConnected(new Peripheral(FakeScanner.address(2), null, -70, Collections.<UUID>emptyList()), 2000);
+		store.save();
+		assertFalse(store.isDirty());
+
+		final PeripheralStore restarted = new PeripheralStore(file);
+		final List<Peripheral> peripherals = restarted.getPeripherals();
+		assertEquals(Arrays.asList(FakeScanner.address(2), FakeScanner.address(1)), addresses(peripherals));
+
+		final Peripheral first = peripherals.get(1);
+		assertEquals("device 1", first.getName());
+		assertEquals(-50, first.getRssi());
+		assertEquals(Collections.singletonList(SERVICE_UUID), first.getServiceUUIDs());
+		assertNull(peripherals.get(0).getName());
+		assertTrue(peripherals.get(0).getServiceUUIDs().isEmpty());
+
+		assertEquals(FakeScanner.address(2), restarted.getLastConnected().getAddress());
+	}
+
+	@Test
+	public void onConnected_movesToMostRecentAndIsBounded() throws Exception {
+		final PeripheralStore store = new PeripheralStore(file, 3);
+		for (int i = 1; i <= 4; i++) store.onConnected(FakeScanner.peripheral(i, -60, SERVICE_UUID), i);
+		store.onConnected(FakeScanner.peripheral(2, -60, SERVICE_UUID), 5);
+
+		assertEquals(Arrays.asList(FakeScanner.address(2), FakeScanner.address(4), FakeScanner.address(3)),
+			addresses(store.getPeripherals()));
+		assertFalse(store.contains(FakeScanner.peripheral(1, -60, SERVICE_UUID).getMacAddress()));
+	}
+
+	@Test
+	public void update_onlyKnownPeripherals() throws Exception {
+		final PeripheralStore store = new PeripheralStore(file);
+		store.update(FakeScanner.peripheral(1, -40, SERVICE_UUID));
+		assertFalse(store.isDirty());
+		assertNull(store.getLastConnected());
+
+		store.onConnected(FakeScanner.peripheral(1, -40, SERVICE_UUID), 1000);
+		store.save();
+
+		//an advertisement without the name keeps the stored one
+		store.update(new Peripheral(FakeScanner.address(1), null, -80, Collections.<UUID>emptyList()));
+		assertTrue(store.isDirty());
+		final Peripheral updated = store.getLastConnected();
+		assertEquals(-80, updated.getRssi());
+		assertEquals("device 1", updated.getName());
+		assertEquals(Collections.singletonList(SERVICE_UUID), updated.getServiceUUIDs());
+	}
+
+	@Test
+	public void load_ignoresDamagedFile() throws Exception {
+		final PeripheralStore store = new PeripheralStore(file);
+		store.onConnected(FakeScanner.peripheral(1, -50, SERVICE_UUID), 1000);
+		store.save();
+
+		//cut in the middle of the entry
+		final RandomAccessFile damaged = new RandomAccessFile(file, "rw");
+		damaged.setLength(file.length() / 2);
+		damaged.close();
+
+		assertTrue(new PeripheralStore(file).getPeripherals().isEmpty());
+		assertNull(new PeripheralStore(new File(file.getPath() + ".missing")).getLastConnected());
+	}
+}
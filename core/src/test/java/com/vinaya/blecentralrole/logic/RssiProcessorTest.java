@@ -0,0 +1,103 @@
+package com.vinaya.blecentralrole.logic;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RssiProcessorTest {
+	private final static long MAC = 0xA4C1380FE201L;
+
+	private final List<String> alerts = new ArrayList<>();
+
+	private final RssiProcessor.AlertListener listener = new RssiProcessor.AlertListener() {
+		@Override
+		public void onRssiAlert(long mac, int rssi, boolean isLow) {
+			alerts.add((isLow ? "low " : "recovered ") + rssi);
+		}
+	};
+
+	@Test
+	public void median_dropsSingleFade() throws Exception {
+		final RssiProcessor processor = new RssiProcessor(-80, 5, 0.5f, 5, 0, listener);
+		for (int i = 0; i < 10; i++) processor.add(MAC, -60, i * 100);
+
+		//a deep fade of one sample does not move the value at all
+		assertEquals(-60, processor.add(MAC, -95, 1000));
+		assertEquals(-60, processor.add(MAC, -60, 1100));
+		assertTrue(alerts.isEmpty());
+	}
+
+	@Test
+	public void average_followsLastingChange() throws Exception {
+		final RssiProcessor processor = new RssiProcessor(-100, 5, 0.25f, 3, 0, null);
+		assertEquals(-50, processor.add(MAC, -50, 0));
+
+		int rssi = 0;
+		for (int i = 1; i <= 30; i++) rssi = processor.add(MAC, -70, i * 100);
+		assertEquals(-70, rssi);
+		assertEquals(-70, processor.getRssi(MAC));
+		assertEquals(Integer.MIN_VALUE, processor.getRssi(MAC + 1));
+	}
+
+	@Test
+	public void hysteresis_noFlappingAroundThreshold() throws Exception {
+		final RssiProcessor processor = new RssiProcessor(-65, 6, 1f, 1, 0, listener);
+
+		processor.add(MAC, -60, 0);
+		processor.add(MAC, -66, 100);
+		assertTrue(processor.isLow(MAC));
+
+		//noise within the hysteresis does not clear the alert, nor raise it again
+		for (int i = 0; i < 20; i++) processor.add(MAC, (i % 2 == 0) ? -62 : -67, 200 + i * 100);
+		assertTrue(processor.isLow(MAC));
+
+		processor.add(MAC, -58, 5000);
+		assertFalse(processor.isLow(MAC));
+
+		final List<String> expected = new ArrayList<>();
+		expected.add("low -66");
+		expected.add("recovered -58");
+		assertEquals(expected, alerts);
+	}
+
+	@Test
+	public void alerts_rateLimitedPerPeripheral() throws Exception {
+		final RssiProcessor processor = new RssiProcessor(-65, 6, 1f, 1, 10000, listener);
+
+		//crosses the whole hysteresis band every second
+		for (int i = 0; i < 30; i++) processor.add(MAC, (i % 2 == 0) ? -70 : -50, i * 500);
+		assertEquals(2 * 2, alerts.size());
+		assertEquals("low -70", alerts.get(0));
+		assertEquals("recovered -50", alerts.get(1));
+
+		//another peripheral is not held back by the first one
+		processor.add(MAC + 1, -70, 15000);
+		assertEquals("low -70", alerts.get(alerts.size() - 1));
+	}
+
+	@Test
+	public void remove_keepsOtherPeripherals() throws Exception {
+		final RssiProcessor processor = new RssiProcessor(-100, null);
+		final int count = 1000;
+		for (int i = 0; i < count; i++) processor.add(i, -i % 100, 0);
+		assertEquals(count, processor.size());
+
+		for (int i = 0; i < count; i += 2) processor.remove(i);
+		processor.remove(count + 1);
+		assertEquals(count / 2, processor.size());
+
+		for (int i = 0; i < count; i++) {
+			if (i % 2 == 0) {
+				assertEquals(Integer.MIN_VALUE, processor.getRssi(i));
+			} else {
+				assertEquals(-i % 100, processor.getRssi(i));
+			}
+		}
+
+		//a new sample starts from scratch
+		assertEquals(-42, processor.add(0, -42, 100));
+	}
+}
@@ -0,0 +1,201 @@
+package com.vinaya.blecentralrole.logic;
+
+import com.vinaya.blecentralrole.logic.scanner.BLEScanner;
+import com.vinaya.blecentralrole.logic.scanner.ScanConfig;
+import com.vinaya.blecentralrole.model.Peripheral;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The duty cycle of the scanner on a simulated clock
+ */
+public class ScanSchedulerTest {
+	private final static long ADVERTISING_INTERVAL = 100;   //in millisecond
+
+	private FakeScheduler scheduler;
+	private FakeScanner fakeScanner;
+	private final List<Long> startTimes = new ArrayList<>();
+
+	//records when the radio is started
+	private final BLEScanner scanner = new BLEScanner() {
+		@Override
+		public ScanTask asyncScan(ScanConfig config, BLEScanListener listener) {
+			startTimes.add(scheduler.now());
+			return fakeScanner.asyncScan(config, listener);
+		}
+	};
+
+	private int discovered;
+
+	@Before
+	public void setUp() throws Exception {
+		this.scheduler = new FakeScheduler();
+		this.fakeScanner = new FakeScanner();
+	}
+
+	private ScanScheduler start(long scanWindow, long minIdle, long maxIdle) {
+		final ScanScheduler scanScheduler = new ScanScheduler(scanner, ScanConfig.DEFAULT, scheduler,
+			scanWindow, minIdle, maxIdle);
+		scanScheduler.start(new BLEScanner.BLEScanListener() {
+			@Override
+			public void onDiscovered(Peripheral peripheral) {
+				discovered++;
+				scanScheduler.onNewPeripheral();
+			}
+
+			@Override
+			public void onFailed(int errorCode) {
+				fail("unexpected scan failure");
+			}
+		});
+		return scanScheduler;
+	}
+
+	@Test
+	public void stablePopulation_idleDoublesUpToMax() throws Exception {
+		final ScanScheduler scanScheduler = start(2000, 2000, 30000);
+		assertTrue(fakeScanner.isScanning());
+
+		scheduler.advanceTo(2000);
+		assertFalse(fakeScanner.isScanning());
+		assertEquals(4000, scanScheduler.getIdle());
+
+		scheduler.advanceTo(99000);
+		assertEquals(Arrays.asList(0L, 6000L, 16000L, 34000L, 66000L, 98000L), startTimes);
+		assertEquals(30000, scanScheduler.getIdle());
+		assertEquals(startTimes.size(), fakeScanner.getStopCount() + 1);
+	}
+
+	@Test
+	public void newPeripherals_extendWindowAndShortenIdle() throws Exception {
+		final ScanScheduler scanScheduler = start(2000, 2000, 30000);
+		scheduler.advanceTo(10000);
+		assertEquals(8000, scanScheduler.getIdle());
+
+		//window from 16000, one new peripheral extends it by a window, then the idle is back to the minimum
+		scheduler.advanceTo(16500);
+		fakeScanner.advertise(FakeScanner.address(1), -50);
+		scheduler.advanceTo(19000);
+		assertTrue(fakeScanner.isScanning());
+		scheduler.advanceTo(20000);
+		assertFalse(fakeScanner.isScanning());
+		assertEquals(2000, scanScheduler.getIdle());
+
+		scheduler.advanceTo(22000);
+		assertTrue(fakeScanner.isScanning());
+		assertEquals(1, discovered);
+	}
+
+	@Test
+	public void busyPopulation_windowExtendedAtMostTwice() throws Exception {
+		start(2000, 2000, 30000);
+
+		int index = 0;
+		while (scheduler.now() < 20000) {
+			fakeScanner.advertise(FakeScanner.address(index++), -50);
+			scheduler.advanceBy(ADVERTISING_INTERVAL);
+		}
+
+		//a window of three, then idle for the minimum
+		assertEquals(0L, (long) startTimes.get(0));
+		assertEquals(8000L, (long) startTimes.get(1));
+		assertEquals(16000L, (long) startTimes.get(2));
+	}
+
+	@Test
+	public void starts_neverExceedAndroidLimit() throws Exception {
+		//would start every 200 ms without the limit
+		final ScanScheduler scanScheduler = start(100, 100, 100);
+		scheduler.advanceTo(5 * 60 * 1000 - 1);
+
+		for (int i = ScanScheduler.MAX_STARTS; i < startTimes.size(); i++) {
+			assertTrue("start " + i, startTimes.get(i) - startTimes.get(i - ScanScheduler.MAX_STARTS)
+				>= ScanScheduler.STARTS_PERIOD);
+		}
+		assertEquals(ScanScheduler.MAX_STARTS * 10, startTimes.size());
+		assertEquals(startTimes.size(), scanScheduler.getStartCount());
+	}
+
+	@Test
+	public void noMaxIdle_scansContinuously() throws Exception {
+		final ScanScheduler scanScheduler = start(2000, 2000, 0);
+		scheduler.advanceTo(10 * 60 * 1000);
+
+		assertTrue(fakeScanner.isScanning());
+		assertEquals(1, startTimes.size());
+		assertEquals(1.0, scanScheduler.getDutyCycle(), 0.0001);
+	}
+
+	@Test
+	public void stop_releasesRadioAndTimer() throws Exception {
+		final ScanScheduler scanScheduler = start(2000, 2000, 30000);
+		scheduler.advanceTo(1000);
+		scanScheduler.stop();
+
+		assertFalse(fakeScanner.isScanning());
+		assertFalse(scanScheduler.isScanning());
+		assertEquals(0, scheduler.getPendingCount());
+		assertEquals(1000, scanScheduler.getRadioTime());
+
+		scanScheduler.stop();
+		assertEquals(1, fakeScanner.getStopCount());
+	}
+
+	/**
+	 * time from a peripheral appearing in a stable population to its first report,
+	 * against the fraction of the time the radio is on
+	 */
+	@Test
+	public void powerVersusLatency() throws Exception {
+		final long[][] configs = {
+			//window, min idle, max idle
+			{2000, 2000, 0},
+			{2000, 2000, 2000},
+			{2000, 2000, 10000},
+			{2000, 2000, 30000},
+		};
+		final Random random = new Random(42);
+		final int trials = 50;
+
+		double lastDuty = 1.1;
+		for (long[] config : configs) {
+			double dutySum = 0;
+			long latencySum = 0;
+			for (int trial = 0; trial < trials; trial++) {
+				setUp();
+				startTimes.clear();
+				discovered = 0;
+				final ScanScheduler scanScheduler = start(config[0], config[1], config[2]);
+
+				//appears once the idle time has settled
+				final long appearAt = 5 * 60 * 1000 + random.nextInt(5 * 60 * 1000);
+				scheduler.advanceTo(appearAt);
+				dutySum += scanScheduler.getDutyCycle();
+
+				while (discovered == 0) {
+					fakeScanner.advertise(FakeScanner.address(1), -50);
+					if (discovered == 0) scheduler.advanceBy(ADVERTISING_INTERVAL);
+				}
+				final long latency = scheduler.now() - appearAt;
+				latencySum += latency;
+				scanScheduler.stop();
+
+				assertTrue(latency <= Math.max(config[2], ScanScheduler.STARTS_PERIOD));
+			}
+
+			final double duty = dutySum / trials;
+			assertTrue("found within an idle and a window on average", latencySum / trials <= config[2] + config[0]);
+			assertTrue("longer idle uses the radio less", duty < lastDuty);
+			lastDuty = duty;
+		}
+		assertTrue(lastDuty < 0.1);
+	}
+}
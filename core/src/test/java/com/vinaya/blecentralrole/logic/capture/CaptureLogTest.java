@@ -0,0 +1,213 @@
+package com.vinaya.blecentralrole.logic.capture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CaptureLogTest {
+	private final static long MAC = 0x001122334455L;
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		this.directory = File.createTempFile("capture", "");
+		directory.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	/**
+	 * @return "time direction value" of the records read
+	 */
+	private List<String> read(long fromTime) throws Exception {
+		final List<String> records = new ArrayList<>();
+		new CaptureReader(directory).read(fromTime, new CaptureReader.Visitor() {
+			@Override
+			public boolean onRecord(long time, long macAddress, int direction, ByteBuffer value) {
+				assertEquals(MAC, macAddress);
+				final byte[] bytes = new byte[value.remaining()];
+				value.get(bytes);
+				records.add(time + (direction == CaptureLog.RX ? " rx " : " tx ") + new String(bytes));
+				return true;
+			}
+		});
+		return records;
+	}
+
+	private static boolean append(CaptureLog log, long time, int direction, String value) {
+		final byte[] bytes = value.getBytes();
+		return log.append(time, MAC, direction, bytes, 0, bytes.length);
+	}
+
+	@Test
+	public void appendAndRead() throws Exception {
+		final CaptureLog log = new CaptureLog(directory);
+		assertTrue(append(log, 1000, CaptureLog.RX, "Hello"));
+		assertTrue(append(log, 1001, CaptureLog.TX, "01Hello"));
+		assertTrue(append(log, 1002, CaptureLog.RX, ""));
+		log.flush();
+
+		//readable while it is written
+		assertEquals("[1000 rx Hello, 1001 tx 01Hello, 1002 rx ]", read(0).toString());
+		assertEquals(3, log.getWrittenCount());
+		log.close();
+		assertEquals(1, new CaptureReader(directory).getSegments().length);
+	}
+
+	@Test
+	public void fullSegments_rotateAndOldestDeleted() throws Exception {
+		//19 records of 51 bytes in each segment
+		final CaptureLog log = new CaptureLog(directory, CaptureFormat.DATA_OFFSET + 1000, 3, 64 * 1024);
+		for (int i = 0; i < 200; i++) {
+			assertTrue(append(log, i, CaptureLog.RX, String.format("%030d", i)));
+		}
+		log.close();
+
+		assertEquals(3, new CaptureReader(directory).getSegments().length);
+		final List<String> records = read(0);
+		//2 full segments and the last one
+		assertEquals(2 * 19 + (200 - 10 * 19), records.size());
+		assertEquals("199 rx " + String.format("%030d", 199), records.get(records.size() - 1));
+		for (int i = 1; i < records.size(); i++) {
+			assertTrue(records.get(i - 1).compareTo(records.get(i)) < 0);
+		}
+	}
+
+	@Test
+	public void read_seeksByTime() throws Exception {
+		//the buffer holds every record, none is dropped however fast they come
+		final CaptureLog log = new CaptureLog(directory, 64 * 1024, 100, 1024 * 1024);
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(append(log, i * 10, CaptureLog.TX, "value " + i));
+		}
+		log.close();
+		assertTrue(new CaptureReader(directory).getSegments().length >= 5);
+
+		final List<String> records = read(54321);
+		assertEquals(10000 - 5433, records.size());
+		assertEquals("54330 tx value 5433", records.get(0));
+		assertEquals(10000, read(0).size());
+		assertEquals(0, read(100000).size());
+
+		//the visitor stops it
+		final long count = new CaptureReader(directory).read(0, new CaptureReader.Visitor() {
+			@Override
+			public boolean onRecord(long time, long macAddress, int direction, ByteBuffer value) {
+				return time < 50;
+			}
+		});
+		assertEquals(6, count);
+	}
+
+	@Test
+	public void reopen_continuesInNewSegment() throws Exception {
+		CaptureLog log = new CaptureLog(directory);
+		append(log, 1, CaptureLog.RX, "first run");
+		log.close();
+
+		log = new CaptureLog(directory);
+		append(log, 2, CaptureLog.RX, "second run");
+		log.close();
+
+		assertEquals(2, new CaptureReader(directory).getSegments().length);
+		assertEquals("[1 rx first run, 2 rx second run]", read(0).toString());
+	}
+
+	@Test
+	public void concurrentLinks_everyFrameWritten() throws Exception {
+		//4 links of bursts of 20 bytes, each waiting for its burst to be written, as CaptureLogBenchmark does
+		final int links = 4;
+		final int bursts = 20;
+		final int burstSize = 1000;
+		final CaptureLog log = new CaptureLog(directory);
+		final Thread[] threads = new Thread[links];
+		for (int l = 0; l < links; l++) {
+			final long mac = MAC + l;
+			threads[l] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					final byte[] value = new byte[20];
+					try {
+						for (int burst = 0; burst < bursts; burst++) {
+							for (int i = 0; i < burstSize; i++) {
+								value[0] = (byte) i;
+								log.append(System.currentTimeMillis(), mac, CaptureLog.RX, value, 0, value.length);
+							}
+							log.flush();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			threads[l].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		log.close();
+
+		assertEquals(0, log.getDroppedCount());
+		assertEquals(links * bursts * burstSize, log.getWrittenCount());
+	}
+
+	@Test
+	public void read_newestSegmentBeingStarted_isEmpty() throws Exception {
+		final CaptureLog log = new CaptureLog(directory);
+		append(log, 1, CaptureLog.RX, "before");
+		log.close();
+
+		//created, not extended yet
+		final File created = new File(directory, CaptureFormat.getName(1000));
+		assertTrue(created.createNewFile());
+		assertEquals("[1 rx before]", read(0).toString());
+
+		//extended, the header not written yet
+		final RandomAccessFile extended = new RandomAccessFile(created, "rw");
+		extended.setLength(CaptureFormat.DATA_OFFSET + 100);
+		extended.close();
+		assertEquals("[1 rx before]", read(0).toString());
+		assertEquals("[]", read(2).toString());
+
+		//not the newest anymore, so it is not a capture segment
+		assertTrue(new File(directory, CaptureFormat.getName(1001)).createNewFile());
+		try {
+			read(0);
+			fail();
+		} catch (IOException e) {
+			//expected
+		}
+	}
+
+	@Test
+	public void append_dropsWhatDoesNotFit() throws Exception {
+		final CaptureLog log = new CaptureLog(directory, CaptureFormat.DATA_OFFSET + 100, 2, 1000);
+		assertFalse(log.append(0, MAC, CaptureLog.RX, new byte[100], 0, 100));
+		assertFalse(log.append(0, MAC, CaptureLog.RX, new byte[2000], 0, 2000));
+		assertEquals(2, log.getDroppedCount());
+
+		log.close();
+		assertFalse(append(log, 0, CaptureLog.RX, "closed"));
+		assertEquals(3, log.getDroppedCount());
+		assertEquals(0, log.getWrittenCount());
+	}
+}
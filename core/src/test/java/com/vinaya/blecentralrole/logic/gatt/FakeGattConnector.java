@@ -0,0 +1,45 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates FakeGattLinks, and remembers them for the test to drive
+ */
+public class FakeGattConnector implements GattLink.Connector {
+
+	private final List<FakeGattLink> links = new ArrayList<>();
+	private boolean isDeviceFound = true;
+
+	@Override
+	public GattLink connect(String address, boolean autoConnect, GattLink.Callback callback) {
+		if (false == isDeviceFound) return null;
+
+		final FakeGattLink link = new FakeGattLink(address, autoConnect, callback);
+		links.add(link);
+		return link;
+	}
+
+	public void setDeviceFound(boolean isDeviceFound) {
+		this.isDeviceFound = isDeviceFound;
+	}
+
+	public List<FakeGattLink> getLinks() {
+		return links;
+	}
+
+	public FakeGattLink getLastLink() {
+		return links.isEmpty() ? null : links.get(links.size() - 1);
+	}
+
+	/**
+	 * @return number of links not closed yet
+	 */
+	public int getOpenCount() {
+		int count = 0;
+		for (FakeGattLink link : links) {
+			if (false == link.isClosed()) count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,220 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A GattLink without radio, it records what is asked and the test decides when to call back
+ */
+public class FakeGattLink implements GattLink {
+
+	/**
+	 * what the link has been asked to do
+	 */
+	public static class Request {
+		public final String type;
+		public final UUID uuid;
+		public final byte[] value;
+		public final boolean withResponse;
+
+		Request(String type, UUID uuid, byte[] value, boolean withResponse) {
+			this.type = type;
+			this.uuid = uuid;
+			this.value = value;
+			this.withResponse = withResponse;
+		}
+	}
+
+	public final static String DISCOVER = "discover";
+	public final static String REQUEST_MTU = "requestMtu";
+	public final static String NOTIFICATION = "notification";
+	public final static String WRITE_DESCRIPTOR = "writeDescriptor";
+	public final static String WRITE_CHARACTERISTIC = "writeCharacteristic";
+
+	private final String address;
+	private final boolean autoConnect;
+	private Callback callback;
+	private final List<Request> requests = new ArrayList<>();
+	//kept apart from the requests, they do not wait for a callback
+	private final List<Integer> connectionPriorities = new ArrayList<>();
+	private int preferredPhy = 0;
+	private boolean isRefusing = false;
+	private boolean isDisconnected = false;
+	private boolean isClosed = false;
+
+	public FakeGattLink(String address, boolean autoConnect, Callback callback) {
+		this.address = address;
+		this.autoConnect = autoConnect;
+		this.callback = callback;
+	}
+
+	public FakeGattLink(Callback callback) {
+		this(null, false, callback);
+	}
+
+	//--------------------------------------------------
+	//GattLink
+
+	@Override
+	public boolean discoverServices() {
+		return record(DISCOVER, null, null, true);
+	}
+
+	@Override
+	public boolean requestMtu(int mtu) {
+		return record(REQUEST_MTU, null, new byte[]{(byte) (mtu >> 8), (byte) mtu}, true);
+	}
+
+	@Override
+	public boolean requestConnectionPriority(int priority) {
+		if (isRefusing || isClosed) return false;
+		connectionPriorities.add(priority);
+		return true;
+	}
+
+	@Override
+	public boolean setPreferredPhy(int phy) {
+		if (isRefusing || isClosed) return false;
+		this.preferredPhy = phy;
+		return true;
+	}
+
+	@Override
+	public boolean hasCharacteristic(UUID service, UUID characteristic) {
+		return true;
+	}
+
+	@Override
+	public boolean setCharacteristicNotification(UUID service, UUID characteristic, boolean enable) {
+		return record(NOTIFICATION, characteristic, null, true);
+	}
+
+	@Override
+	public boolean writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value) {
+		return record(WRITE_DESCRIPTOR, descriptor, value, true);
+	}
+
+	@Override
+	public boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value, boolean withResponse) {
+		return record(WRITE_CHARACTERISTIC, characteristic, value, withResponse);
+	}
+
+	@Override
+	public void disconnect() {
+		isDisconnected = true;
+	}
+
+	@Override
+	public void close() {
+		isClosed = true;
+	}
+
+	protected boolean record(String type, UUID uuid, byte[] value, boolean withResponse) {
+		if (isRefusing || isClosed) return false;
+		requests.add(new Request(type, uuid, value == null ? null : value.clone(), withResponse));
+		return true;
+	}
+
+	//--------------------------------------------------
+	//test helpers
+
+	public void setCallback(Callback callback) {
+		this.callback = callback;
+	}
+
+	public Callback getCallback() {
+		return callback;
+	}
+
+	public void setRefusing(boolean isRefusing) {
+		this.isRefusing = isRefusing;
+	}
+
+	public List<Request> getRequests() {
+		return requests;
+	}
+
+	public List<Request> getRequests(String type) {
+		final List<Request> result = new ArrayList<>();
+		for (Request request : requests) {
+			if (request.type.equals(type)) result.add(request);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the priorities asked for, in order
+	 */
+	public List<Integer> getConnectionPriorities() {
+		return connectionPriorities;
+	}
+
+	/**
+	 * @return the PHY asked for, 0 if none
+	 */
+	public int getPreferredPhy() {
+		return preferredPhy;
+	}
+
+	public Request getLastRequest() {
+		return requests.isEmpty() ? null : requests.get(requests.size() - 1);
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public boolean isAutoConnect() {
+		return autoConnect;
+	}
+
+	public boolean isDisconnected() {
+		return isDisconnected;
+	}
+
+	public boolean isClosed() {
+		return isClosed;
+	}
+
+	public void connected() {
+		callback.onConnectionStateChange(GATT_SUCCESS, STATE_CONNECTED);
+	}
+
+	public void disconnected(int status) {
+		callback.onConnectionStateChange(status, STATE_DISCONNECTED);
+	}
+
+	public void servicesDiscovered() {
+		callback.onServicesDiscovered(GATT_SUCCESS);
+	}
+
+	public void notify(UUID characteristic, byte[] value) {
+		callback.onCharacteristicChanged(characteristic, value);
+	}
+
+	/**
+	 * the peripheral accepts the MTU, or the smaller one it supports
+	 */
+	public void mtuChanged(int mtu) {
+		callback.onMtuChanged(mtu, GATT_SUCCESS);
+	}
+
+	public void phyUpdated(int phy) {
+		callback.onPhyUpdate(phy, phy, GATT_SUCCESS);
+	}
+
+	/**
+	 * acknowledge the last request, which must be a write or an MTU request
+	 */
+	public void acknowledge(int status) {
+		final Request request = getLastRequest();
+		if (request.type.equals(REQUEST_MTU)) {
+			callback.onMtuChanged(((request.value[0] & 0xFF) << 8) | (request.value[1] & 0xFF), status);
+		} else if (request.type.equals(WRITE_DESCRIPTOR)) {
+			callback.onDescriptorWrite(request.uuid, status);
+		} else {
+			callback.onCharacteristicWrite(request.uuid, status);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameParserTest {
+	private final List<String> frames = new ArrayList<>();
+
+	private final FrameParser.Listener recorder = new FrameParser.Listener() {
+		@Override
+		public void onFrame(int sequence, int type, byte[] payload, int length) {
+			frames.add(sequence + "/" + type + ":" + new String(payload, 0, length));
+		}
+	};
+
+	private static byte[] frame(int sequence, String text) {
+		final FrameEncoder encoder = new FrameEncoder();
+		final int length = encoder.encode(sequence, text);
+		return Arrays.copyOf(encoder.getFrame(), length);
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		int length = 0;
+		for (byte[] part : parts) length += part.length;
+		final byte[] all = new byte[length];
+		int at = 0;
+		for (byte[] part : parts) {
+			System.arraycopy(part, 0, all, at, part.length);
+			at += part.length;
+		}
+		return all;
+	}
+
+	@Test
+	public void encode_layout() throws Exception {
+		final byte[] frame = frame(0x105, "Hi");
+		assertEquals(Frame.getFrameSize(2), frame.length);
+		assertEquals(2, frame[0]);
+		//only the low 8 bits of the sequence
+		assertEquals(0x05, frame[1]);
+		assertEquals(Frame.TYPE_TEXT, frame[2]);
+		assertEquals('H', frame[3]);
+		assertEquals('i', frame[4]);
+		//CRC-16/CCITT-FALSE of "123456789" is 0x29B1
+		assertEquals(0x29B1, Frame.crc16(Frame.CRC_INITIAL, "123456789".getBytes(), 0, 9));
+	}
+
+	@Test
+	public void oneFrame_roundTrip() throws Exception {
+		final FrameParser parser = new FrameParser();
+		parser.append(frame(7, "Hello"), recorder);
+		assertEquals("[7/1:Hello]", frames.toString());
+		assertEquals(1, parser.getFrameCount());
+		assertEquals(0, parser.getErrorCount());
+	}
+
+	@Test
+	public void splitAnywhere_sameFrames() throws Exception {
+		final byte[] stream = concat(frame(1, "first"), frame(2, ""), frame(3, "third"));
+		for (int cut = 0; cut <= stream.length; cut++) {
+			frames.clear();
+			final FrameParser parser = new FrameParser();
+			parser.append(stream, 0, cut, recorder);
+			parser.append(stream, cut, stream.length - cut, recorder);
+			assertEquals("cut at " + cut, "[1/1:first, 2/1:, 3/1:third]", frames.toString());
+		}
+	}
+
+	@Test
+	public void byteByByte_longFrame() throws Exception {
+		final StringBuilder text = new StringBuilder();
+		while (text.length() < 200) text.append("0123456789");
+		final byte[] frame = frame(255, text.toString());
+		//the length takes 2 bytes
+		assertEquals(Frame.getFrameSize(200), frame.length);
+		assertEquals(2, Frame.getVarintSize(200));
+
+		final FrameParser parser = new FrameParser();
+		for (byte b : frame) parser.append(new byte[]{b}, recorder);
+		assertEquals("[255/1:" + text + "]", frames.toString());
+	}
+
+	@Test
+	public void badCrc_isDropped() throws Exception {
+		final byte[] bad = frame(1, "bad");
+		bad[4] ^= 0x01;
+
+		final FrameParser parser = new FrameParser();
+		parser.append(concat(bad, frame(2, "good")), recorder);
+		assertEquals("[2/1:good]", frames.toString());
+		assertEquals(1, parser.getErrorCount());
+	}
+
+	@Test
+	public void longFrame_isSkipped() throws Exception {
+		final FrameParser parser = new FrameParser(8);
+		final byte[] stream = concat(frame(1, "0123456789"), frame(2, "short"));
+		parser.append(stream, 0, 7, recorder);
+		parser.append(stream, 7, stream.length - 7, recorder);
+		assertEquals("[2/1:short]", frames.toString());
+		assertEquals(1, parser.getErrorCount());
+	}
+
+	@Test
+	public void reset_dropsIncompleteFrame() throws Exception {
+		final FrameParser parser = new FrameParser();
+		final byte[] frame = frame(1, "lost");
+		parser.append(frame, 0, 4, recorder);
+		parser.reset();
+		parser.append(frame(2, "next"), recorder);
+		assertEquals("[2/1:next]", frames.toString());
+	}
+}
@@ -0,0 +1,214 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import com.vinaya.blecentralrole.logic.FakeScheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class GattOperationQueueTest {
+	private final static UUID SERVICE = UUID.fromString("abc00001-1234-5678-1234-abcd0123abcd");
+	private final static UUID TX = UUID.fromString("abc00002-1234-5678-1234-abcd0123abcd");
+	private final static UUID RX = UUID.fromString("abc00003-1234-5678-1234-abcd0123abcd");
+	private final static UUID CCCD = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+	private FakeScheduler scheduler;
+	private FakeGattLink link;
+	private GattOperationQueue queue;
+	private final List<String> completions = new ArrayList<>();
+
+	private final GattOperation.Callback recorder = new GattOperation.Callback() {
+		@Override
+		public void onComplete(GattOperation operation, int status) {
+			final byte[] value = ((GattOperation.WriteCharacteristic) operation).value;
+			completions.add(new String(value) + ":" + status);
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		this.scheduler = new FakeScheduler();
+		this.link = new FakeGattLink(null);
+		this.queue = new GattOperationQueue(link, scheduler);
+		link.setCallback(new GattLink.Callback() {
+			@Override
+			public void onConnectionStateChange(int status, int newState) {
+			}
+
+			@Override
+			public void onServicesDiscovered(int status) {
+			}
+
+			@Override
+			public void onCharacteristicChanged(UUID characteristic, byte[] value) {
+			}
+
+			@Override
+			public void onCharacteristicWrite(UUID characteristic, int status) {
+				queue.onCharacteristicWrite(characteristic, status);
+			}
+
+			@Override
+			public void onDescriptorWrite(UUID descriptor, int status) {
+				queue.onDescriptorWrite(descriptor, status);
+			}
+
+			@Override
+			public void onMtuChanged(int mtu, int status) {
+				queue.onMtuChanged(mtu, status);
+			}
+
+			@Override
+			public void onPhyUpdate(int txPhy, int rxPhy, int status) {
+			}
+		});
+	}
+
+	private GattOperation write(String value, boolean withResponse) {
+		return GattOperation.writeCharacteristic(SERVICE, TX, value.getBytes(), withResponse).setCallback(recorder);
+	}
+
+	@Test
+	public void onlyOneOperationInFlight() throws Exception {
+		queue.enqueue(GattOperation.enableNotification(SERVICE, RX, CCCD, new byte[]{1, 0}));
+		queue.enqueue(write("Ready", true));
+		queue.enqueue(write("01Hello", true));
+
+		//the write waits for the descriptor
+		assertEquals(2, link.getRequests().size());
+		assertEquals(FakeGattLink.WRITE_DESCRIPTOR, link.getLastRequest().type);
+
+		//a callback of something else does not complete it
+		queue.onCharacteristicWrite(TX, GattLink.GATT_SUCCESS);
+		assertEquals(2, link.getRequests().size());
+
+		link.acknowledge(GattLink.GATT_SUCCESS);
+		assertEquals("Ready", new String(link.getLastRequest().value));
+
+		link.acknowledge(GattLink.GATT_SUCCESS);
+		assertEquals("01Hello", new String(link.getLastRequest().value));
+
+		link.acknowledge(GattLink.GATT_SUCCESS);
+		assertEquals(0, queue.size());
+		assertEquals("[Ready:0, 01Hello:0]", completions.toString());
+	}
+
+	@Test
+	public void timeout_isRetriedThenFailed() throws Exception {
+		queue.enqueue(write("lost", true).setTimeoutMillis(100).setMaxRetries(2));
+		queue.enqueue(write("next", true));
+
+		scheduler.advanceBy(99);
+		assertEquals(1, link.getRequests().size());
+
+		scheduler.advanceBy(1);
+		assertEquals(2, link.getRequests().size());
+		assertEquals("lost", new String(link.getLastRequest().value));
+
+		scheduler.advanceBy(200);
+		assertEquals("[lost:" + GattLink.GATT_FAILURE + "]", completions.toString());
+		assertEquals("next", new String(link.getLastRequest().value));
+		//3 attempts of the lost one, then the next one
+		assertEquals(4, link.getRequests(FakeGattLink.WRITE_CHARACTERISTIC).size());
+	}
+
+	@Test
+	public void failedStatus_isRetried() throws Exception {
+		queue.enqueue(write("retry", true).setMaxRetries(1));
+
+		link.acknowledge(133);
+		assertEquals(2, link.getRequests().size());
+
+		link.acknowledge(GattLink.GATT_SUCCESS);
+		assertEquals("[retry:0]", completions.toString());
+	}
+
+	@Test
+	public void refusedOperation_isStartedAgainLater() throws Exception {
+		link.setRefusing(true);
+		queue.enqueue(write("busy", true));
+		assertEquals(0, link.getRequests().size());
+
+		link.setRefusing(false);
+		scheduler.advanceBy(GattOperationQueue.RETRY_DELAY);
+		assertEquals(1, link.getRequests().size());
+	}
+
+	@Test
+	public void close_dropsEverything() throws Exception {
+		queue.enqueue(write("a", true));
+		queue.enqueue(write("b", true));
+		queue.close();
+
+		link.acknowledge(GattLink.GATT_SUCCESS);
+		scheduler.advanceBy(10000);
+		assertEquals(1, link.getRequests().size());
+		assertTrue(completions.isEmpty());
+		assertEquals(0, scheduler.getPendingCount());
+	}
+
+	/**
+	 * A link whose controller sends a few packets per connection interval,
+	 * and buffers writes without response until it is full
+	 */
+	private static class ControllerLink extends FakeGattLink {
+		final static long INTERVAL = 15;           //connection interval, in millisecond
+		final static int PACKETS_PER_INTERVAL = 4;
+		final static int BUFFER_SIZE = 8;
+
+		private final List<Request> buffer = new ArrayList<>();
+
+		ControllerLink(final FakeScheduler scheduler) {
+			super(null);
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					//what is written during this event goes out in the next one
+					final int count = Math.min(PACKETS_PER_INTERVAL, buffer.size());
+					for (int i = 0; i < count; i++) {
+						getCallback().onCharacteristicWrite(buffer.remove(0).uuid, GATT_SUCCESS);
+					}
+					scheduler.schedule(this, INTERVAL);
+				}
+			}, INTERVAL);
+		}
+
+		@Override
+		protected boolean record(String type, UUID uuid, byte[] value, boolean withResponse) {
+			if (buffer.size() >= BUFFER_SIZE) return false;
+			buffer.add(new Request(type, uuid, value, withResponse));
+			return super.record(type, uuid, value, withResponse);
+		}
+	}
+
+	private int measureWritesPerSecond(boolean isPipelining) {
+		final FakeScheduler scheduler = new FakeScheduler();
+		final ControllerLink controllerLink = new ControllerLink(scheduler);
+		final GattOperationQueue queue = new GattOperationQueue(controllerLink, scheduler);
+		queue.setPipelining(isPipelining);
+		controllerLink.setCallback(link.getCallback());
+		this.queue = queue;
+
+		for (int i = 0; i < 2000; i++) {
+			queue.enqueue(GattOperation.writeCharacteristic(SERVICE, TX, new byte[20], false));
+		}
+		scheduler.advanceBy(1000);
+
+		//done ones are those acknowledged by the controller
+		return 2000 - queue.size() - (isPipelining ? ControllerLink.BUFFER_SIZE : 0);
+	}
+
+	@Test
+	public void pipelining_increasesThroughput() throws Exception {
+		final int serial = measureWritesPerSecond(false);
+		final int pipelined = measureWritesPerSecond(true);
+
+		assertTrue(serial > 0);
+		assertTrue(pipelined >= serial * ControllerLink.PACKETS_PER_INTERVAL - ControllerLink.BUFFER_SIZE);
+	}
+}
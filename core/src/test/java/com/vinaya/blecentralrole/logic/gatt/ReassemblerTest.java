@@ -0,0 +1,54 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReassemblerTest {
+	private final List<String> messages = new ArrayList<>();
+
+	private final Reassembler.Listener recorder = new Reassembler.Listener() {
+		@Override
+		public void onMessage(byte[] buffer, int length) {
+			messages.add(new String(buffer, 0, length));
+		}
+	};
+
+	@Test
+	public void fullChunks_waitForTerminator() throws Exception {
+		final Reassembler reassembler = new Reassembler();
+		reassembler.append("0123456789012345678".getBytes(), 22, recorder);
+		assertTrue(messages.isEmpty());
+
+		reassembler.append("ab\0cd\0".getBytes(), 22, recorder);
+		assertEquals("[0123456789012345678ab, cd]", messages.toString());
+	}
+
+	@Test
+	public void shortChunk_endsMessageWithoutTerminator() throws Exception {
+		final Reassembler reassembler = new Reassembler();
+		reassembler.append("Hello".getBytes(), GattLink.DEFAULT_MTU, recorder);
+		reassembler.append("World\0".getBytes(), GattLink.DEFAULT_MTU, recorder);
+		assertEquals("[Hello, World]", messages.toString());
+	}
+
+	@Test
+	public void longMessage_isCut() throws Exception {
+		final Reassembler reassembler = new Reassembler(8);
+		reassembler.append("0123456789".getBytes(), 13, recorder);
+		reassembler.append("\0".getBytes(), 13, recorder);
+		assertEquals("[01234567, 89]", messages.toString());
+	}
+
+	@Test
+	public void split_fitsPayloadSize() throws Exception {
+		final List<byte[]> chunks = Fragmenter.split(new byte[45], GattLink.DEFAULT_MTU);
+		assertEquals(3, chunks.size());
+		assertEquals(20, chunks.get(0).length);
+		assertEquals(5, chunks.get(2).length);
+		assertEquals(1, Fragmenter.split(new byte[20], GattLink.DEFAULT_MTU).size());
+	}
+}
@@ -0,0 +1,132 @@
+package com.vinaya.blecentralrole.logic.gatt;
+
+import com.vinaya.blecentralrole.logic.FakeScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A backend of several simulated devices, each link answers by itself on the virtual clock.
+ * Every request is answered after some connection intervals, the links do not share the air time.
+ */
+public class SimulatedGattConnector implements GattLink.Connector {
+	public final static long INTERVAL = 15;      //connection interval, in millisecond
+	public final static int WRITE_INTERVALS = 2; //a write response comes in the connection event after the next one
+
+	/**
+	 * a device which answers every request
+	 */
+	public class SimulatedGattLink extends FakeGattLink {
+		private int mtu = DEFAULT_MTU;
+		private long writtenBytes;
+
+		SimulatedGattLink(String address, boolean autoConnect, Callback callback) {
+			super(address, autoConnect, callback);
+		}
+
+		@Override
+		protected boolean record(final String type, final UUID uuid, final byte[] value, boolean withResponse) {
+			if (false == super.record(type, uuid, value, withResponse)) return false;
+
+			if (type.equals(REQUEST_MTU)) {
+				final int requested = ((value[0] & 0xFF) << 8) | (value[1] & 0xFF);
+				later(1, new Runnable() {
+					@Override
+					public void run() {
+						mtu = Math.min(requested, maxMtu);
+						getCallback().onMtuChanged(mtu, GATT_SUCCESS);
+					}
+				});
+			} else if (type.equals(DISCOVER)) {
+				later(1, new Runnable() {
+					@Override
+					public void run() {
+						getCallback().onServicesDiscovered(GATT_SUCCESS);
+					}
+				});
+			} else if (type.equals(WRITE_DESCRIPTOR)) {
+				later(WRITE_INTERVALS, new Runnable() {
+					@Override
+					public void run() {
+						getCallback().onDescriptorWrite(uuid, GATT_SUCCESS);
+					}
+				});
+			} else if (type.equals(WRITE_CHARACTERISTIC)) {
+				later(WRITE_INTERVALS, new Runnable() {
+					@Override
+					public void run() {
+						writtenBytes += value.length;
+						getCallback().onCharacteristicWrite(uuid, GATT_SUCCESS);
+					}
+				});
+			}
+			return true;
+		}
+
+		private void later(int intervals, final Runnable runnable) {
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (false == isClosed()) runnable.run();
+				}
+			}, intervals * INTERVAL);
+		}
+
+		/**
+		 * send a zero terminated message, in chunks of the negotiated MTU
+		 */
+		public void notifyMessage(UUID characteristic, String message) {
+			for (byte[] chunk : Fragmenter.split((message + "\0").getBytes(), mtu)) {
+				notify(characteristic, chunk);
+			}
+		}
+
+		/**
+		 * @return bytes written and acknowledged so far
+		 */
+		public long getWrittenBytes() {
+			return writtenBytes;
+		}
+	}
+
+	private final FakeScheduler scheduler;
+	private final int maxMtu;
+	private final List<SimulatedGattLink> links = new ArrayList<>();
+
+	/**
+	 * @param maxMtu the largest MTU the devices accept
+	 */
+	public SimulatedGattConnector(FakeScheduler scheduler, int maxMtu) {
+		this.scheduler = scheduler;
+		this.maxMtu = maxMtu;
+	}
+
+	@Override
+	public GattLink connect(String address, boolean autoConnect, GattLink.Callback callback) {
+		final SimulatedGattLink link = new SimulatedGattLink(address, autoConnect, callback);
+		links.add(link);
+		link.later(1, new Runnable() {
+			@Override
+			public void run() {
+				link.connected();
+			}
+		});
+		return link;
+	}
+
+	public List<SimulatedGattLink> getLinks() {
+		return links;
+	}
+
+	/**
+	 * @return bytes written and acknowledged on all the links
+	 */
+	public long getWrittenBytes() {
+		long bytes = 0;
+		for (SimulatedGattLink link : links) {
+			bytes += link.getWrittenBytes();
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,93 @@
+package com.vinaya.blecentralrole.logic.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+	@Test
+	public void empty_isZero() throws Exception {
+		final Histogram.Snapshot snapshot = new Histogram().snapshot();
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getValueAtPercentile(99));
+		assertEquals(0, snapshot.getMean(), 0);
+	}
+
+	@Test
+	public void smallValues_areExact() throws Exception {
+		final Histogram histogram = new Histogram();
+		for (int i = 1; i <= 10; i++) {
+			histogram.record(i);
+		}
+
+		final Histogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(10, snapshot.getCount());
+		assertEquals(10, snapshot.getMax());
+		assertEquals(5.5, snapshot.getMean(), 0);
+		assertEquals(5, snapshot.getValueAtPercentile(50));
+		assertEquals(9, snapshot.getValueAtPercentile(90));
+		assertEquals(10, snapshot.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void percentile_isWithinOneSixteenth() throws Exception {
+		final Histogram histogram = new Histogram();
+		final Random random = new Random(1);
+		final long[] values = new long[10000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (long) Math.exp(random.nextDouble() * 20);
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+
+		final Histogram.Snapshot snapshot = histogram.snapshot();
+		for (double percentile : new double[]{50, 90, 99, 99.9}) {
+			final long exact = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+			final long value = snapshot.getValueAtPercentile(percentile);
+			assertTrue(percentile + ": " + value + " for " + exact, value >= exact && value <= exact + exact / 16);
+		}
+		assertEquals(values[values.length - 1], snapshot.getMax());
+	}
+
+	@Test
+	public void buckets_coverEveryValue() throws Exception {
+		int previous = -1;
+		for (long value = 0; value < 1 << 20; value++) {
+			final int index = Histogram.indexOf(value);
+			assertTrue(index == previous || index == previous + 1);
+			assertTrue(Histogram.highestValueOf(index) >= value);
+			previous = index;
+		}
+		//out of range is kept in the last bucket
+		Histogram.indexOf(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void record_fromSeveralThreads() throws Exception {
+		final Histogram histogram = new Histogram();
+		final Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int n = 0; n < 100000; n++) {
+						histogram.record(n % 1000);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		final Histogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(400000, snapshot.getCount());
+		assertEquals(999, snapshot.getMax());
+		assertEquals(499.5, snapshot.getMean(), 0.001);
+	}
+}
@@ -0,0 +1,128 @@
+package com.vinaya.blecentralrole.model;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class AdvertisementTest {
+	private final static UUID BATTERY_SERVICE = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+	private final static UUID LONG_SERVICE_32 = UUID.fromString("12345678-0000-1000-8000-00805f9b34fb");
+	private final static UUID LOOPBACK_SERVICE = UUID.fromString("abc00001-1234-5678-1234-abcd0123abcd");
+
+	/**
+	 * one AD structure: length, type, data
+	 */
+	static byte[] structure(int type, int... data) {
+		final byte[] bytes = new byte[data.length + 2];
+		bytes[0] = (byte) (data.length + 1);
+		bytes[1] = (byte) type;
+		for (int i = 0; i < data.length; i++) {
+			bytes[i + 2] = (byte) data[i];
+		}
+		return bytes;
+	}
+
+	static byte[] uuid128(UUID uuid) {
+		final ByteBuffer buffer = ByteBuffer.allocate(18);
+		buffer.put((byte) 17).put((byte) Advertisement.TYPE_UUID128);
+		//little endian, least significant byte first
+		for (int i = 0; i < 8; i++) {
+			buffer.put((byte) (uuid.getLeastSignificantBits() >>> (8 * i)));
+		}
+		for (int i = 0; i < 8; i++) {
+			buffer.put((byte) (uuid.getMostSignificantBits() >>> (8 * i)));
+		}
+		return buffer.array();
+	}
+
+	static byte[] concat(byte[]... structures) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] structure : structures) {
+			out.write(structure, 0, structure.length);
+		}
+		//the scan record is padded with zeros up to its full size
+		out.write(new byte[8], 0, 8);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void fields_areDecoded() throws Exception {
+		final Advertisement advertisement = new Advertisement(concat(
+			structure(Advertisement.TYPE_FLAGS, 0x06),
+			structure(Advertisement.TYPE_UUID16, 0x0f, 0x18),
+			structure(Advertisement.TYPE_UUID32_INCOMPLETE, 0x78, 0x56, 0x34, 0x12),
+			uuid128(LOOPBACK_SERVICE),
+			structure(Advertisement.TYPE_TX_POWER_LEVEL, -8),
+			structure(Advertisement.TYPE_COMPLETE_NAME, 'b', 'e', 'a', 'c', 'o', 'n'),
+			structure(Advertisement.TYPE_MANUFACTURER_DATA, 0x59, 0x00, 0x01, 0x02, 0x03),
+			structure(Advertisement.TYPE_SERVICE_DATA_UUID16, 0x0f, 0x18, 87)));
+
+		assertEquals(0x06, advertisement.getFlags());
+		assertEquals(-8, advertisement.getTxPowerLevel());
+		assertEquals("beacon", advertisement.getLocalName());
+		assertEquals(Arrays.asList(BATTERY_SERVICE, LONG_SERVICE_32, LOOPBACK_SERVICE), advertisement.getServiceUUIDs());
+		//decoded once
+		assertSame(advertisement.getServiceUUIDs(), advertisement.getServiceUUIDs());
+
+		final ByteBuffer manufacturerData = advertisement.getManufacturerData(0x0059);
+		assertEquals(3, manufacturerData.remaining());
+		assertEquals(0x0201, manufacturerData.getShort(0));
+		assertTrue(manufacturerData.isReadOnly());
+		assertNull(advertisement.getManufacturerData(0x004C));
+
+		final ByteBuffer serviceData = advertisement.getServiceData(BATTERY_SERVICE);
+		assertEquals(1, serviceData.remaining());
+		assertEquals(87, serviceData.get());
+		assertNull(advertisement.getServiceData(LOOPBACK_SERVICE));
+	}
+
+	@Test
+	public void indexOfService_withoutDecoding() throws Exception {
+		final Advertisement advertisement = new Advertisement(concat(
+			structure(Advertisement.TYPE_UUID16, 0x0f, 0x18), uuid128(LOOPBACK_SERVICE)));
+
+		final UUID[] services = {LOOPBACK_SERVICE, BATTERY_SERVICE, LONG_SERVICE_32};
+		final long[] msbs = new long[services.length];
+		final long[] lsbs = new long[services.length];
+		for (int i = 0; i < services.length; i++) {
+			msbs[i] = services[i].getMostSignificantBits();
+			lsbs[i] = services[i].getLeastSignificantBits();
+		}
+
+		//in the order of the advertisement
+		assertEquals(1, advertisement.indexOfService(msbs, lsbs));
+		assertEquals(-1, advertisement.indexOfService(new long[]{msbs[2]}, new long[]{lsbs[2]}));
+	}
+
+	@Test
+	public void missingOrTruncated_isIgnored() throws Exception {
+		final byte[] truncated = concat(structure(Advertisement.TYPE_FLAGS, 0x06), uuid128(LOOPBACK_SERVICE));
+		final Advertisement advertisement = new Advertisement(Arrays.copyOf(truncated, 3 + 10));
+
+		assertEquals(0x06, advertisement.getFlags());
+		assertTrue(advertisement.getServiceUUIDs().isEmpty());
+		assertEquals(Advertisement.NO_TX_POWER_LEVEL, advertisement.getTxPowerLevel());
+		assertNull(advertisement.getLocalName());
+		assertNull(advertisement.getManufacturerData(0x0059));
+
+		final Advertisement empty = new Advertisement(new byte[0]);
+		assertEquals(Advertisement.NO_FLAGS, empty.getFlags());
+		assertTrue(empty.getServiceUUIDs().isEmpty());
+	}
+
+	@Test
+	public void peripheral_decodesOnDemand() throws Exception {
+		final Advertisement advertisement = new Advertisement(concat(
+			uuid128(LOOPBACK_SERVICE), structure(Advertisement.TYPE_SHORT_NAME, 'l', 'b')));
+		final Peripheral peripheral = Peripheral.fromAdvertisement("00:11:22:33:44:55", null, -60, advertisement);
+
+		assertSame(advertisement, peripheral.getAdvertisement());
+		assertEquals("lb", peripheral.getName());
+		assertEquals(Arrays.asList(LOOPBACK_SERVICE), peripheral.getServiceUUIDs());
+	}
+}
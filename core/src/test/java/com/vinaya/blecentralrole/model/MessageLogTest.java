@@ -0,0 +1,53 @@
+package com.vinaya.blecentralrole.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MessageLogTest {
+
+	@Test
+	public void belowCapacity_keepsEveryMessage() throws Exception {
+		final MessageLog log = new MessageLog(4);
+		log.add("a");
+		log.add("b");
+
+		assertEquals(2, log.size());
+		assertEquals("a", log.get(0));
+		assertEquals("b", log.get(1));
+		assertEquals(2, log.getAddedCount());
+	}
+
+	@Test
+	public void full_dropsTheOldest() throws Exception {
+		final MessageLog log = new MessageLog(3);
+		for (int i = 0; i < 10; i++) {
+			log.add(String.valueOf(i));
+		}
+
+		assertEquals(3, log.size());
+		assertEquals(10, log.getAddedCount());
+		assertEquals("7\n8\n9\n", log.appendTo(new StringBuilder()).toString());
+	}
+
+	@Test
+	public void clear_keepsNumbering() throws Exception {
+		final MessageLog log = new MessageLog(3);
+		log.add("a");
+		log.add("b");
+		log.clear();
+		assertEquals(0, log.size());
+		assertEquals(2, log.getAddedCount());
+
+		log.add("c");
+		assertEquals("c", log.get(0));
+		assertEquals(3, log.getAddedCount());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void get_outOfRange() throws Exception {
+		final MessageLog log = new MessageLog(3);
+		log.add("a");
+		log.get(1);
+	}
+}